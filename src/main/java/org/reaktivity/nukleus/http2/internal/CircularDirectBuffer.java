@@ -21,7 +21,7 @@ import org.agrona.MutableDirectBuffer;
 
 class CircularDirectBuffer
 {
-    private final int capacity;
+    private int capacity;
     /*
      *  +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
      *  |   |x x x x x x x x x x|         |
@@ -47,6 +47,15 @@ class CircularDirectBuffer
         this.capacity = capacity;
     }
 
+    CircularDirectBuffer reset(int capacity)
+    {
+        this.capacity = capacity;
+        this.start = 0;
+        this.end = 0;
+        this.count = 0;
+        return this;
+    }
+
     boolean write(MutableDirectBuffer dstBuffer, DirectBuffer srcBuffer, int srcIndex, int length)
     {
         if (count + length > capacity)
@@ -95,6 +104,31 @@ class CircularDirectBuffer
         return read;
     }
 
+    /*
+     * Copies the buffered data in order to the start of dstBuffer and continues
+     * with the new capacity. The data is contiguous after the copy, so readers
+     * that consume it in previously written lengths are not affected.
+     */
+    void promote(DirectBuffer srcBuffer, MutableDirectBuffer dstBuffer, int newCapacity)
+    {
+        assert newCapacity >= count;
+
+        if (start + count > capacity)
+        {
+            int firstPart = capacity - start;
+            dstBuffer.putBytes(0, srcBuffer, start, firstPart);
+            dstBuffer.putBytes(firstPart, srcBuffer, 0, count - firstPart);
+        }
+        else if (count > 0)
+        {
+            dstBuffer.putBytes(0, srcBuffer, start, count);
+        }
+
+        capacity = newCapacity;
+        start = 0;
+        end = count % newCapacity;
+    }
+
     int readOffset()
     {
         return start;
@@ -105,6 +139,11 @@ class CircularDirectBuffer
         return count;
     }
 
+    int available()
+    {
+        return capacity - count;
+    }
+
     public String toString()
     {
         return "[capacity = " + capacity + " (start = " + start + " end = " + end + ")]";
@@ -0,0 +1,331 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.buffer.BufferPool;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http2.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http2.internal.types.ListFW;
+import org.reaktivity.nukleus.http2.internal.types.OctetsFW;
+import org.reaktivity.nukleus.http2.internal.types.control.HttpRouteExFW;
+import org.reaktivity.nukleus.http2.internal.types.control.RouteFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.AbortFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.EndFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.HpackHeaderBlockFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2ContinuationFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2DataFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameHeaderFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2GoawayFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2HeadersFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2PingFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2RstStreamFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2SettingsFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2WindowUpdateFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.ResetFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.WindowFW;
+import org.reaktivity.nukleus.route.RouteManager;
+import org.reaktivity.nukleus.stream.StreamFactory;
+
+/*
+ * Client role: HTTP requests from the application are sent as HTTP2 streams on a
+ * pool of multiplexed HTTP2 connections per route target, see Http2ClientPool.
+ */
+public final class ClientStreamFactory implements StreamFactory
+{
+    final RouteFW routeRO = new RouteFW();
+
+    private final BeginFW beginRO = new BeginFW();
+    final DataFW dataRO = new DataFW();
+    final EndFW endRO = new EndFW();
+    final AbortFW abortRO = new AbortFW();
+
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final AbortFW.Builder abortRW = new AbortFW.Builder();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+    private final ResetFW.Builder resetRW = new ResetFW.Builder();
+
+    final WindowFW windowRO = new WindowFW();
+    final ResetFW resetRO = new ResetFW();
+
+    final HttpRouteExFW httpRouteExRO = new HttpRouteExFW();
+    final HttpBeginExFW beginExRO = new HttpBeginExFW();
+    final HttpBeginExFW.Builder httpBeginExRW = new HttpBeginExFW.Builder();
+    final Http2FrameFW http2RO = new Http2FrameFW();
+    final Http2FrameHeaderFW http2HeaderRO = new Http2FrameHeaderFW();
+    final Http2SettingsFW settingsRO = new Http2SettingsFW();
+    final Http2DataFW http2DataRO = new Http2DataFW();
+    final Http2HeadersFW headersRO = new Http2HeadersFW();
+    final Http2ContinuationFW continationRO = new Http2ContinuationFW();
+    final Http2WindowUpdateFW http2WindowRO = new Http2WindowUpdateFW();
+    final Http2RstStreamFW http2RstStreamRO = new Http2RstStreamFW();
+    final Http2GoawayFW goawayRO = new Http2GoawayFW();
+    final Http2PingFW pingRO = new Http2PingFW();
+    final HpackHeaderBlockFW blockRO = new HpackHeaderBlockFW();
+    final HpackHeaderBlockFW.Builder blockRW = new HpackHeaderBlockFW.Builder();
+    final UnsafeBuffer scratch = new UnsafeBuffer(new byte[8192]);
+    final MutableDirectBuffer huffmanNameRW = new UnsafeBuffer(new byte[4096]);
+    final MutableDirectBuffer huffmanValueRW = new UnsafeBuffer(new byte[4096]);
+    final UnsafeBuffer huffmanNameRO = new UnsafeBuffer(new byte[0]);
+    final UnsafeBuffer huffmanValueRO = new UnsafeBuffer(new byte[0]);
+    final DirectBuffer nameRO = new UnsafeBuffer(new byte[0]);
+    final DirectBuffer valueRO = new UnsafeBuffer(new byte[0]);
+
+    final Http2Configuration config;
+    final RouteManager router;
+    final MutableDirectBuffer writeBuffer;
+    final BufferPool bufferPool;
+    final BufferPool framePool;
+    final BufferPool headersPool;
+    final BufferPool encodePool;
+    final LongSupplier supplyStreamId;
+    final LongSupplier supplyTrace;
+    final LongSupplier supplyCorrelationId;
+    final HttpWriter httpWriter;
+    final Http2Writer http2Writer;
+    final Http2Counters counters;
+    final MutableDirectBuffer headerBlockBuffer;
+
+    // target name -> target ref -> pool of connections, shared by the factories of all sources
+    private final Map<String, Long2ObjectHashMap<Http2ClientPool>> pools;
+    private final Long2ObjectHashMap<Http2ClientConnection> connectionsByCorrelationId;
+
+    ClientStreamFactory(
+        Http2Configuration config,
+        RouteManager router,
+        MutableDirectBuffer writeBuffer,
+        BufferPool bufferPool,
+        LongSupplier supplyStreamId,
+        LongSupplier supplyCorrelationId,
+        LongSupplier supplyTrace,
+        Function<String, LongSupplier> supplyCounter,
+        Map<String, Long2ObjectHashMap<Http2ClientPool>> pools,
+        Long2ObjectHashMap<Http2ClientConnection> connectionsByCorrelationId)
+    {
+        this.config = config;
+        this.router = requireNonNull(router);
+        this.writeBuffer = requireNonNull(writeBuffer);
+        this.bufferPool = requireNonNull(bufferPool);
+        this.framePool = bufferPool.duplicate();
+        this.headersPool = bufferPool.duplicate();
+        this.encodePool = bufferPool.duplicate();
+        this.supplyStreamId = requireNonNull(supplyStreamId);
+        this.supplyCorrelationId = requireNonNull(supplyCorrelationId);
+        this.supplyTrace = requireNonNull(supplyTrace);
+
+        this.httpWriter = new HttpWriter(writeBuffer);
+        this.http2Writer = new Http2Writer(writeBuffer);
+        this.counters = new Http2Counters(supplyCounter);
+        this.headerBlockBuffer = new UnsafeBuffer(new byte[2 * writeBuffer.capacity()]);
+        this.pools = requireNonNull(pools);
+        this.connectionsByCorrelationId = requireNonNull(connectionsByCorrelationId);
+    }
+
+    BeginFW beginRO()
+    {
+        return beginRO;
+    }
+
+    @Override
+    public MessageConsumer newStream(
+            int msgTypeId,
+            DirectBuffer buffer,
+            int index,
+            int length,
+            MessageConsumer throttle)
+    {
+        final BeginFW begin = beginRO.wrap(buffer, index, index + length);
+        final long sourceRef = begin.sourceRef();
+
+        MessageConsumer newStream;
+
+        if (sourceRef == 0L)
+        {
+            newStream = newConnectReplyStream(begin, throttle);
+        }
+        else
+        {
+            newStream = newAcceptStream(begin, throttle);
+        }
+
+        return newStream;
+    }
+
+    private MessageConsumer newAcceptStream(
+        final BeginFW begin,
+        final MessageConsumer applicationThrottle)
+    {
+        final long applicationRef = begin.sourceRef();
+        final String acceptName = begin.source().asString();
+        final OctetsFW extension = begin.extension();
+        final ListFW<HttpHeaderFW> requestHeaders =
+                extension.sizeof() > 0 ? extension.get(beginExRO::wrap).headers() : null;
+
+        final RouteFW route = router.resolve(begin.authorization(),
+            (t, b, o, l) ->
+            {
+                final RouteFW candidate = routeRO.wrap(b, o, o + l);
+                return applicationRef == candidate.sourceRef() &&
+                        acceptName.equals(candidate.source().asString()) &&
+                        matchHeaders(candidate, requestHeaders);
+            },
+            (t, b, o, l) -> routeRO.wrap(b, o, o + l));
+
+        MessageConsumer newStream = null;
+
+        if (route != null && requestHeaders != null)
+        {
+            final long applicationId = begin.streamId();
+            final Http2ClientPool pool = supplyPool(route.target().asString(), route.targetRef());
+
+            newStream = new Http2ClientStream(this, pool, applicationThrottle, applicationId)::handleStream;
+        }
+
+        return newStream;
+    }
+
+    private MessageConsumer newConnectReplyStream(
+        final BeginFW begin,
+        final MessageConsumer networkReplyThrottle)
+    {
+        final Http2ClientConnection connection = connectionsByCorrelationId.remove(begin.correlationId());
+
+        MessageConsumer newStream = null;
+
+        if (connection != null)
+        {
+            newStream = connection.newReplyStream(networkReplyThrottle, begin.streamId());
+        }
+
+        return newStream;
+    }
+
+    // all the route headers must be present in the request
+    private boolean matchHeaders(
+        RouteFW route,
+        ListFW<HttpHeaderFW> requestHeaders)
+    {
+        final OctetsFW extension = route.extension();
+        if (extension.sizeof() == 0)
+        {
+            return true;
+        }
+
+        final HttpRouteExFW routeEx = extension.get(httpRouteExRO::wrap);
+        return requestHeaders != null &&
+                !routeEx.headers().anyMatch(r -> !requestHeaders.anyMatch(h -> equals(r, h)));
+    }
+
+    private static boolean equals(
+        HttpHeaderFW header1,
+        HttpHeaderFW header2)
+    {
+        return header1.name().asString().equals(header2.name().asString()) &&
+                header1.value().asString().equals(header2.value().asString());
+    }
+
+    private Http2ClientPool supplyPool(
+        String targetName,
+        long targetRef)
+    {
+        return pools.computeIfAbsent(targetName, n -> new Long2ObjectHashMap<>())
+                    .computeIfAbsent(targetRef, r -> new Http2ClientPool(this, targetName, targetRef));
+    }
+
+    void correlate(
+        long correlationId,
+        Http2ClientConnection connection)
+    {
+        connectionsByCorrelationId.put(correlationId, connection);
+    }
+
+    void uncorrelate(
+        long correlationId)
+    {
+        connectionsByCorrelationId.remove(correlationId);
+    }
+
+    void doBegin(
+        final MessageConsumer target,
+        final long targetId,
+        final long traceId,
+        final long targetRef,
+        final long correlationId)
+    {
+        final BeginFW begin = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                                     .streamId(targetId)
+                                     .trace(traceId)
+                                     .source("http2")
+                                     .sourceRef(targetRef)
+                                     .correlationId(correlationId)
+                                     .extension(e -> e.reset())
+                                     .build();
+
+        target.accept(begin.typeId(), begin.buffer(), begin.offset(), begin.sizeof());
+    }
+
+    void doAbort(
+        final MessageConsumer target,
+        final long targetId)
+    {
+        final AbortFW abort = abortRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                                     .streamId(targetId)
+                                     .extension(e -> e.reset())
+                                     .build();
+
+        target.accept(abort.typeId(), abort.buffer(), abort.offset(), abort.sizeof());
+    }
+
+    void doWindow(
+        final MessageConsumer throttle,
+        final long throttleId,
+        final int credit,
+        final int padding)
+    {
+        final WindowFW window = windowRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                                        .streamId(throttleId)
+                                        .credit(credit)
+                                        .padding(padding)
+                                        .groupId(0)
+                                        .build();
+
+        throttle.accept(window.typeId(), window.buffer(), window.offset(), window.sizeof());
+    }
+
+    void doReset(
+        final MessageConsumer throttle,
+        final long throttleId)
+    {
+        final ResetFW reset = resetRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                                     .streamId(throttleId)
+                                     .build();
+
+        throttle.accept(reset.typeId(), reset.buffer(), reset.offset(), reset.sizeof());
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.reaktivity.nukleus.buffer.BufferPool;
+import org.reaktivity.nukleus.route.RouteManager;
+import org.reaktivity.nukleus.stream.StreamFactory;
+import org.reaktivity.nukleus.stream.StreamFactoryBuilder;
+
+public final class ClientStreamFactoryBuilder implements StreamFactoryBuilder
+{
+    private final Http2Configuration config;
+    private final Map<String, Long2ObjectHashMap<Http2ClientPool>> pools;
+    private final Long2ObjectHashMap<Http2ClientConnection> connectionsByCorrelationId;
+
+    private RouteManager router;
+    private MutableDirectBuffer writeBuffer;
+    private LongSupplier supplyStreamId;
+    private LongSupplier supplyTrace;
+    private LongSupplier supplyCorrelationId;
+    private Supplier<BufferPool> supplyBufferPool;
+    private Function<String, LongSupplier> supplyCounter;
+
+    ClientStreamFactoryBuilder(
+        Http2Configuration config)
+    {
+        this.config = config;
+        this.pools = new HashMap<>();
+        this.connectionsByCorrelationId = new Long2ObjectHashMap<>();
+    }
+
+    @Override
+    public ClientStreamFactoryBuilder setRouteManager(
+        RouteManager router)
+    {
+        this.router = router;
+        return this;
+    }
+
+    @Override
+    public ClientStreamFactoryBuilder setWriteBuffer(
+        MutableDirectBuffer writeBuffer)
+    {
+        this.writeBuffer = writeBuffer;
+        return this;
+    }
+
+    @Override
+    public ClientStreamFactoryBuilder setStreamIdSupplier(
+        LongSupplier supplyStreamId)
+    {
+        this.supplyStreamId = supplyStreamId;
+        return this;
+    }
+
+    @Override
+    public StreamFactoryBuilder setGroupIdSupplier(
+        LongSupplier supplyGroupId)
+    {
+        // client connections do not use group budgets
+        return this;
+    }
+
+    @Override
+    public StreamFactoryBuilder setTraceSupplier(
+        LongSupplier supplyTrace)
+    {
+        this.supplyTrace = supplyTrace;
+        return this;
+    }
+
+    @Override
+    public StreamFactoryBuilder setGroupBudgetClaimer(
+        LongFunction<IntUnaryOperator> groupBudgetClaimer)
+    {
+        return this;
+    }
+
+    @Override
+    public StreamFactoryBuilder setGroupBudgetReleaser(
+        LongFunction<IntUnaryOperator> groupBudgetReleaser)
+    {
+        return this;
+    }
+
+    @Override
+    public ClientStreamFactoryBuilder setTargetCorrelationIdSupplier(
+        LongSupplier supplyCorrelationId)
+    {
+        this.supplyCorrelationId = supplyCorrelationId;
+        return this;
+    }
+
+    @Override
+    public StreamFactoryBuilder setBufferPoolSupplier(
+        Supplier<BufferPool> supplyBufferPool)
+    {
+        this.supplyBufferPool = supplyBufferPool;
+        return this;
+    }
+
+    @Override
+    public StreamFactoryBuilder setCounterSupplier(
+        Function<String, LongSupplier> supplyCounter)
+    {
+        this.supplyCounter = supplyCounter;
+        return this;
+    }
+
+    @Override
+    public StreamFactory build()
+    {
+        final BufferPool bufferPool = supplyBufferPool.get();
+
+        return new ClientStreamFactory(config, router, writeBuffer, bufferPool, supplyStreamId, supplyCorrelationId,
+                supplyTrace, supplyCounter, pools, connectionsByCorrelationId);
+    }
+}
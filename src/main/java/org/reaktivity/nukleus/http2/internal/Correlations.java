@@ -0,0 +1,281 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.Arrays;
+
+import org.agrona.collections.Long2LongHashMap;
+
+/*
+ * Correlates application reply streams with the HTTP2 stream that originated
+ * the request. Correlation fields are held in parallel primitive arrays indexed
+ * by slot, so there is no per-stream allocation and the footprint is bounded by
+ * maxCapacity slots (arrays grow by doubling up to that limit).
+ *
+ * A handle encodes the slot and the slot's generation:
+ *
+ *  +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ *  |     generation (32 bits)      |         slot (32 bits)        |
+ *  +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ *
+ * The generation is bumped whenever a slot is freed, so a stale handle is
+ * detected instead of aliasing a newer correlation in the same slot.
+ *
+ * Live slots of a connection are chained in a doubly linked list (headed by
+ * Http2Connection.correlationHead), so that all correlations of a connection
+ * are swept when the connection is cleaned up. Free slots are chained through
+ * the same next array.
+ */
+final class Correlations
+{
+    static final long NO_HANDLE = -1L;
+    static final int NO_SLOT = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int maxCapacity;
+    private final Long2LongHashMap handlesById;      // correlation id --> handle
+
+    private long[] ids;
+    private int[] http2StreamIds;
+    private int[] generations;
+    private int[] next;
+    private int[] prev;
+    private Http2Connection[] connections;
+
+    private int freeHead = NO_SLOT;
+    private int limit;
+    private int size;
+
+    Correlations(
+        int maxCapacity)
+    {
+        assert maxCapacity > 0;
+
+        this.maxCapacity = maxCapacity;
+        this.handlesById = new Long2LongHashMap(NO_HANDLE);
+
+        int capacity = Math.min(INITIAL_CAPACITY, maxCapacity);
+        this.ids = new long[capacity];
+        this.http2StreamIds = new int[capacity];
+        this.generations = new int[capacity];
+        this.next = new int[capacity];
+        this.prev = new int[capacity];
+        this.connections = new Http2Connection[capacity];
+    }
+
+    /*
+     * @return handle for the added correlation
+     *         NO_HANDLE if maxCapacity correlations are already in use
+     */
+    long add(
+        long id,
+        Http2Connection connection,
+        int http2StreamId)
+    {
+        final int slot = acquireSlot();
+        if (slot == NO_SLOT)
+        {
+            return NO_HANDLE;
+        }
+
+        ids[slot] = id;
+        http2StreamIds[slot] = http2StreamId;
+        connections[slot] = connection;
+
+        // link at the head of the connection's list
+        final int head = connection.correlationHead;
+        prev[slot] = NO_SLOT;
+        next[slot] = head;
+        if (head != NO_SLOT)
+        {
+            prev[head] = slot;
+        }
+        connection.correlationHead = slot;
+
+        final long handle = handle(generations[slot], slot);
+        handlesById.put(id, handle);
+        size++;
+
+        return handle;
+    }
+
+    /*
+     * @return handle of the correlation with the given id
+     *         NO_HANDLE if there is no such correlation
+     */
+    long handle(
+        long id)
+    {
+        return handlesById.get(id);
+    }
+
+    boolean isValid(
+        long handle)
+    {
+        final int slot = slot(handle);
+        return handle != NO_HANDLE && slot < limit && generations[slot] == generation(handle) &&
+                connections[slot] != null;
+    }
+
+    Http2Connection connection(
+        long handle)
+    {
+        assert isValid(handle);
+        return connections[slot(handle)];
+    }
+
+    int http2StreamId(
+        long handle)
+    {
+        assert isValid(handle);
+        return http2StreamIds[slot(handle)];
+    }
+
+    /*
+     * Removes the correlation, a stale handle is ignored
+     *
+     * @return true if the correlation is removed
+     *         false otherwise
+     */
+    boolean remove(
+        long handle)
+    {
+        if (isValid(handle))
+        {
+            freeSlot(slot(handle));
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * Removes all the correlations of a connection
+     *
+     * @return number of removed correlations
+     */
+    int sweep(
+        Http2Connection connection)
+    {
+        int swept = 0;
+        int slot;
+        while ((slot = connection.correlationHead) != NO_SLOT)
+        {
+            freeSlot(slot);
+            swept++;
+        }
+        return swept;
+    }
+
+    boolean isFull()
+    {
+        return size == maxCapacity;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    int capacity()
+    {
+        return ids.length;
+    }
+
+    private int acquireSlot()
+    {
+        int slot = freeHead;
+        if (slot != NO_SLOT)
+        {
+            freeHead = next[slot];
+        }
+        else if (limit < ids.length || grow())
+        {
+            slot = limit++;
+        }
+        return slot;
+    }
+
+    private void freeSlot(
+        int slot)
+    {
+        final Http2Connection connection = connections[slot];
+
+        // unlink from the connection's list
+        final int prevSlot = prev[slot];
+        final int nextSlot = next[slot];
+        if (prevSlot == NO_SLOT)
+        {
+            connection.correlationHead = nextSlot;
+        }
+        else
+        {
+            next[prevSlot] = nextSlot;
+        }
+        if (nextSlot != NO_SLOT)
+        {
+            prev[nextSlot] = prevSlot;
+        }
+
+        handlesById.remove(ids[slot]);
+        ids[slot] = 0L;
+        http2StreamIds[slot] = 0;
+        connections[slot] = null;
+        generations[slot]++;
+
+        prev[slot] = NO_SLOT;
+        next[slot] = freeHead;
+        freeHead = slot;
+        size--;
+    }
+
+    private boolean grow()
+    {
+        final int capacity = ids.length;
+        if (capacity == maxCapacity)
+        {
+            return false;
+        }
+
+        final int newCapacity = (int) Math.min((long) capacity << 1, maxCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        http2StreamIds = Arrays.copyOf(http2StreamIds, newCapacity);
+        generations = Arrays.copyOf(generations, newCapacity);
+        next = Arrays.copyOf(next, newCapacity);
+        prev = Arrays.copyOf(prev, newCapacity);
+        connections = Arrays.copyOf(connections, newCapacity);
+        return true;
+    }
+
+    private static long handle(
+        int generation,
+        int slot)
+    {
+        return ((long) generation << 32) | slot;
+    }
+
+    private static int generation(
+        long handle)
+    {
+        return (int) (handle >>> 32);
+    }
+
+    private static int slot(
+        long handle)
+    {
+        return (int) handle;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import org.reaktivity.nukleus.Nukleus;
+
+/*
+ * Injected into the nukleus duty cycle, starts a graceful drain of the server connections
+ * when Http2Controller requests one and closes the connections left at the deadline.
+ */
+final class DrainAgent implements Nukleus
+{
+    private final DrainSignal signal;
+    private final LongSupplier currentTimeMillis;
+    private final List<ServerStreamFactory> factories;
+
+    private long generation;
+    private long deadline;
+
+    DrainAgent(
+        DrainSignal signal,
+        LongSupplier currentTimeMillis)
+    {
+        this.signal = signal;
+        this.currentTimeMillis = currentTimeMillis;
+        this.factories = new ArrayList<>();
+        this.generation = signal.generation();
+    }
+
+    void register(
+        ServerStreamFactory factory)
+    {
+        factories.add(factory);
+    }
+
+    @Override
+    public int process()
+    {
+        int workCount = 0;
+
+        final long candidate = signal.generation();
+        if (candidate != generation)
+        {
+            generation = candidate;
+            deadline = currentTimeMillis.getAsLong() + signal.gracePeriod();
+            factories.forEach(f -> f.drain(deadline));
+            workCount++;
+        }
+
+        if (deadline != 0L && currentTimeMillis.getAsLong() >= deadline)
+        {
+            for (int i = 0; i < factories.size(); i++)
+            {
+                workCount += factories.get(i).closeDrained();
+            }
+            deadline = 0L;
+        }
+
+        return workCount;
+    }
+
+    @Override
+    public String name()
+    {
+        return "http2.drain";
+    }
+
+    @Override
+    public void close()
+    {
+        signal.close();
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import org.agrona.IoUtil;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+/*
+ * Drain requests from Http2Controller to the nukleus. Controller and nukleus map the
+ * same file in the reaktor directory, a request publishes the grace period and then
+ * bumps the generation that the nukleus polls on its duty cycle.
+ */
+final class DrainSignal implements AutoCloseable
+{
+    static final int LENGTH = 16;
+
+    private static final int GENERATION_OFFSET = 0;
+    private static final int GRACE_PERIOD_OFFSET = 8;
+
+    private final MappedByteBuffer mapped;
+    private final AtomicBuffer buffer;
+
+    DrainSignal(
+        AtomicBuffer buffer)
+    {
+        this(null, buffer);
+    }
+
+    private DrainSignal(
+        MappedByteBuffer mapped,
+        AtomicBuffer buffer)
+    {
+        this.mapped = mapped;
+        this.buffer = buffer;
+    }
+
+    // nukleus side, a new file so that no stale request is seen on start
+    static DrainSignal create(
+        File file)
+    {
+        IoUtil.ensureDirectoryExists(file.getParentFile(), "http2");
+        final MappedByteBuffer mapped = IoUtil.mapNewFile(file, LENGTH);
+        return new DrainSignal(mapped, new UnsafeBuffer(mapped));
+    }
+
+    // controller side
+    static DrainSignal map(
+        File file)
+    {
+        final MappedByteBuffer mapped = IoUtil.mapExistingFile(file, "http2 drain");
+        return new DrainSignal(mapped, new UnsafeBuffer(mapped));
+    }
+
+    void request(
+        long gracePeriodMillis)
+    {
+        buffer.putLongOrdered(GRACE_PERIOD_OFFSET, gracePeriodMillis);
+        buffer.getAndAddLong(GENERATION_OFFSET, 1L);
+    }
+
+    long generation()
+    {
+        return buffer.getLongVolatile(GENERATION_OFFSET);
+    }
+
+    long gracePeriod()
+    {
+        return buffer.getLongVolatile(GRACE_PERIOD_OFFSET);
+    }
+
+    @Override
+    public void close()
+    {
+        if (mapped != null)
+        {
+            IoUtil.unmap(mapped);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static org.reaktivity.nukleus.http2.internal.types.stream.HpackLiteralHeaderFieldFW.LiteralType.INCREMENTAL_INDEXING;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.http2.internal.types.stream.HpackContext;
+import org.reaktivity.nukleus.http2.internal.types.stream.HpackHeaderBlockFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.HpackHuffman;
+import org.reaktivity.nukleus.http2.internal.types.stream.HpackLiteralHeaderFieldFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.HpackStringFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2ErrorCode;
+
+/*
+ * Decodes the header blocks of one HTTP2 connection against its HPACK decode context, in a
+ * single pass over each block (see HpackHeaderBlockFW.visit()). Indexes are validated, the
+ * dynamic table is maintained, and each header field is given to onHeaderField().
+ *
+ * Huffman encoded strings are decoded into the scratch buffers of the stream factory, so a
+ * decoded name or value is only valid until the next header field.
+ */
+abstract class HpackHeaderDecoder implements HpackHeaderBlockFW.Visitor
+{
+    private final HpackContext decodeContext;
+    private final HpackHeaderBlockFW blockRO;
+    private final MutableDirectBuffer huffmanNameRW;
+    private final UnsafeBuffer huffmanNameRO;
+    private final MutableDirectBuffer huffmanValueRW;
+    private final UnsafeBuffer huffmanValueRO;
+
+    private boolean expectDynamicTableSizeUpdate = true;
+
+    HpackHeaderDecoder(
+        HpackContext decodeContext,
+        HpackHeaderBlockFW blockRO,
+        MutableDirectBuffer huffmanNameRW,
+        UnsafeBuffer huffmanNameRO,
+        MutableDirectBuffer huffmanValueRW,
+        UnsafeBuffer huffmanValueRO)
+    {
+        this.decodeContext = decodeContext;
+        this.blockRO = blockRO;
+        this.huffmanNameRW = huffmanNameRW;
+        this.huffmanNameRO = huffmanNameRO;
+        this.huffmanValueRW = huffmanValueRW;
+        this.huffmanValueRO = huffmanValueRO;
+    }
+
+    /*
+     * @return true if all the header fields are decoded
+     *         false if a header field is malformed, or decoding is stopped by an error
+     */
+    final boolean decodeBlock(
+        DirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        return blockRO.visit(buffer, offset, limit, this);
+    }
+
+    /*
+     * @param nameIndex table index of the name, 0 for a literal name
+     * @param valueIndex table index of the value, 0 for a literal value
+     * @return true to continue with the next header field
+     */
+    abstract boolean onHeaderField(
+        DirectBuffer name,
+        DirectBuffer value,
+        int nameIndex,
+        int valueIndex);
+
+    abstract void onDecodeError(
+        Http2ErrorCode error);
+
+    // SETTINGS_HEADER_TABLE_SIZE advertised to the peer, the limit of a dynamic table size update
+    abstract int headerTableSize();
+
+    @Override
+    public final boolean visitIndexed(
+        int index)
+    {
+        expectDynamicTableSizeUpdate = false;
+        if (!decodeContext.valid(index))
+        {
+            onDecodeError(Http2ErrorCode.COMPRESSION_ERROR);
+            return false;
+        }
+
+        return onHeaderField(decodeContext.nameBuffer(index), decodeContext.valueBuffer(index), index, index);
+    }
+
+    @Override
+    public final boolean visitLiteral(
+        HpackLiteralHeaderFieldFW literal)
+    {
+        expectDynamicTableSizeUpdate = false;
+
+        DirectBuffer name = null;
+        int nameIndex = 0;
+        switch (literal.nameType())
+        {
+        case INDEXED:
+            final int index = literal.nameIndex();
+            if (decodeContext.valid(index))
+            {
+                name = decodeContext.nameBuffer(index);
+                nameIndex = index;
+            }
+            break;
+        case NEW:
+            name = decodeString(literal.nameLiteral(), huffmanNameRW, huffmanNameRO);
+            break;
+        }
+        final DirectBuffer value = decodeString(literal.valueLiteral(), huffmanValueRW, huffmanValueRO);
+
+        if (name == null || value == null)
+        {
+            onDecodeError(Http2ErrorCode.COMPRESSION_ERROR);
+            return false;
+        }
+
+        final boolean proceed = onHeaderField(name, value, nameIndex, 0);
+
+        if (literal.literalType() == INCREMENTAL_INDEXING)
+        {
+            // make a copy for name and value as they go into dynamic table (outlives current frame)
+            MutableDirectBuffer nameCopy = new UnsafeBuffer(new byte[name.capacity()]);
+            nameCopy.putBytes(0, name, 0, name.capacity());
+            MutableDirectBuffer valueCopy = new UnsafeBuffer(new byte[value.capacity()]);
+            valueCopy.putBytes(0, value, 0, value.capacity());
+            decodeContext.add(nameCopy, valueCopy);
+        }
+        return proceed;
+    }
+
+    @Override
+    public final boolean visitTableSizeUpdate(
+        int tableSize)
+    {
+        // dynamic table size update MUST occur at the beginning of the first header block
+        if (!expectDynamicTableSizeUpdate || tableSize > headerTableSize())
+        {
+            onDecodeError(Http2ErrorCode.COMPRESSION_ERROR);
+            return false;
+        }
+
+        decodeContext.updateSize(tableSize);
+        return true;
+    }
+
+    // huffman decoded strings use the scratch buffer until the next string of the same kind
+    private static DirectBuffer decodeString(
+        HpackStringFW string,
+        MutableDirectBuffer huffmanRW,
+        UnsafeBuffer huffmanRO)
+    {
+        DirectBuffer decoded = string.payload();
+        if (string.huffman())
+        {
+            final int length = HpackHuffman.decode(decoded, huffmanRW);
+            if (length == -1)
+            {
+                return null;
+            }
+            huffmanRO.wrap(huffmanRW, 0, length);
+            decoded = huffmanRO;
+        }
+        return decoded;
+    }
+}
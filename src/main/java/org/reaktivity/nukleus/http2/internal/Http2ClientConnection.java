@@ -0,0 +1,1387 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static org.reaktivity.nukleus.buffer.BufferPool.NO_SLOT;
+import static org.reaktivity.nukleus.http2.internal.types.stream.HpackContext.CONNECTION;
+import static org.reaktivity.nukleus.http2.internal.types.stream.HpackContext.KEEP_ALIVE;
+import static org.reaktivity.nukleus.http2.internal.types.stream.HpackContext.PROXY_CONNECTION;
+import static org.reaktivity.nukleus.http2.internal.types.stream.HpackContext.UPGRADE;
+import static org.reaktivity.nukleus.http2.internal.types.stream.HpackLiteralHeaderFieldFW.LiteralType.WITHOUT_INDEXING;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Int2ObjectHashMap;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http2.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http2.internal.types.ListFW;
+import org.reaktivity.nukleus.http2.internal.types.OctetsFW;
+import org.reaktivity.nukleus.http2.internal.types.String16FW;
+import org.reaktivity.nukleus.http2.internal.types.StringFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.AbortFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.EndFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.HpackContext;
+import org.reaktivity.nukleus.http2.internal.types.stream.HpackHeaderBlockFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.HpackHeaderFieldFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.HpackLiteralHeaderFieldFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2ContinuationFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2DataFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2ErrorCode;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2Flags;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameHeaderFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameType;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2GoawayFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2HeadersFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2PingFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2PrefaceFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2RstStreamFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2SettingsFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2SettingsId;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2WindowUpdateFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.ResetFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.WindowFW;
+
+/*
+ * Client side of a HTTP2 connection, multiplexes the requests of Http2ClientPool.
+ *
+ * Frames are written to the network as soon as the network window allows, otherwise
+ * they are queued in an encode slot and written on the next network WINDOW. The
+ * application's request credit is bounded by the HTTP2 windows and the free space
+ * in the encode slot, so the slot never overflows.
+ *
+ * Response DATA is flow controlled by the application: the initial stream window is
+ * advertised as 0 and the reply stream's credit is passed on as WINDOW_UPDATE.
+ */
+final class Http2ClientConnection
+{
+    private static final int FRAME_HEADER_SIZE = 9;
+    private static final int INITIAL_MAX_CONCURRENT_STREAMS = 100;     // until peer's SETTINGS
+    private static final int MAX_STREAM_ID = Integer.MAX_VALUE;
+    private static final int MAX_RETRIES = 1;
+
+    private final ClientStreamFactory factory;
+    private final Http2ClientPool pool;
+    private final Int2ObjectHashMap<Http2ClientStream> streams;
+    private final HpackContext decodeContext;
+    private final HpackContext encodeContext;
+    private final ResponseHeaderDecoder headerDecoder;
+    private final Settings remoteSettings;
+    private final BiConsumer<Http2SettingsId, Long> applySetting;
+    private final List<String> connectionHeaders;
+
+    private final MessageConsumer network;
+    private final long networkId;
+    private final long networkCorrelationId;
+    private int networkBudget;
+    private int networkPadding;
+
+    private MessageConsumer networkReplyThrottle;
+    private long networkReplyId;
+    private int networkReplyBudget;
+
+    // slab to queue the encoded frames while the network window is exhausted
+    private int encodeSlot = NO_SLOT;
+    private int encodeSlotLimit;
+
+    // slab to assemble a complete HTTP2 frame
+    private int frameSlot = NO_SLOT;
+    private int frameSlotLimit;
+
+    // slab to assemble a complete header block(HEADERS and its CONTINUATION frames)
+    private int headersSlot = NO_SLOT;
+    private int headersSlotLimit;
+    private int continuationStreamId;
+    private boolean continuationEndStream;
+
+    private int nextStreamId = 1;
+    private long http2OutWindow;
+    private int requestBudget;                  // credit given to the applications, not yet used
+    private int http2InWindowConsumed;          // connection window consumed since last WINDOW_UPDATE
+    private boolean informational;
+    private boolean pooled;
+    private boolean goaway;
+    private boolean closed;
+    private long traceId;
+
+    private Http2ErrorCode decodeError;
+
+    Http2ClientConnection(
+        ClientStreamFactory factory,
+        Http2ClientPool pool)
+    {
+        this.factory = factory;
+        this.pool = pool;
+        this.streams = new Int2ObjectHashMap<>();
+        this.remoteSettings = new Settings();
+        this.remoteSettings.maxConcurrentStreams = INITIAL_MAX_CONCURRENT_STREAMS;
+        this.decodeContext = new HpackContext(Settings.DEFAULT_HEADER_TABLE_SIZE, false);
+        this.encodeContext = new HpackContext(remoteSettings.headerTableSize, true);
+        this.headerDecoder = new ResponseHeaderDecoder();
+        this.http2OutWindow = remoteSettings.initialWindowSize;
+        this.applySetting = this::applySetting;
+        this.connectionHeaders = new ArrayList<>();
+        this.network = factory.router.supplyTarget(pool.targetName);
+        this.networkId = factory.supplyStreamId.getAsLong();
+        this.networkCorrelationId = factory.supplyCorrelationId.getAsLong();
+        this.pooled = true;
+    }
+
+    boolean hasCapacity()
+    {
+        return !goaway && !closed &&
+                streams.size() < remoteSettings.maxConcurrentStreams &&
+                nextStreamId > 0 && nextStreamId <= MAX_STREAM_ID;
+    }
+
+    void doConnect()
+    {
+        factory.correlate(networkCorrelationId, this);
+        factory.doBegin(network, networkId, factory.supplyTrace.getAsLong(), pool.targetRef, networkCorrelationId);
+        factory.router.setThrottle(pool.targetName, networkId, this::handleThrottle);
+
+        // connection preface, the peer cannot push and sends DATA only after the application gives credit
+        final MutableDirectBuffer writeBuffer = factory.writeBuffer;
+        final int offset = DataFW.FIELD_OFFSET_PAYLOAD;
+        final int prefaceLength = Http2PrefaceFW.PRI_REQUEST.length;
+        writeBuffer.putBytes(offset, Http2PrefaceFW.PRI_REQUEST);
+        int written = prefaceLength;
+        written += factory.http2Writer.clientSettings(offset + written, FRAME_HEADER_SIZE + 12, 0);
+        doNetworkData(written);
+        factory.counters.settingsFramesWritten.getAsLong();
+    }
+
+    void startStream(
+        Http2ClientStream stream)
+    {
+        final int streamId = nextStreamId;
+        nextStreamId += 2;
+
+        stream.connection = this;
+        stream.http2StreamId = streamId;
+        stream.http2OutWindow = remoteSettings.initialWindowSize;
+        stream.http2InWindow = 0;
+        streams.put(streamId, stream);
+
+        final byte flags = stream.requestEnded ? Http2Flags.END_STREAM : Http2Flags.NONE;
+        doHeaders(streamId, flags, stream.headers());
+
+        if (!stream.requestEnded)
+        {
+            grantRequestCredit(stream);
+        }
+    }
+
+    /*
+     * HPACK encoding updates the dynamic table, so the block is encoded exactly once, then it is
+     * written as HEADERS and CONTINUATION frames no larger than the peer's SETTINGS_MAX_FRAME_SIZE
+     */
+    private void doHeaders(
+        int streamId,
+        byte flags,
+        ListFW<HttpHeaderFW> headers)
+    {
+        final MutableDirectBuffer blockBuffer = factory.headerBlockBuffer;
+        factory.blockRW.wrap(blockBuffer, 0, blockBuffer.capacity());
+        encodeHeaders(headers, factory.blockRW);
+        final int blockLength = factory.blockRW.build().sizeof();
+
+        final int offset = DataFW.FIELD_OFFSET_PAYLOAD;
+        final int maxFrameSize = remoteSettings.maxFrameSize;
+        final int frames = Http2Writer.headerBlockFrames(blockLength, 0, maxFrameSize);
+        final int length = FRAME_HEADER_SIZE * frames + blockLength;
+
+        if (length <= factory.writeBuffer.capacity() - offset)
+        {
+            final int written = factory.http2Writer.headers(offset, length, streamId, flags,
+                    blockBuffer, 0, blockLength, maxFrameSize);
+            doNetworkData(written);
+            countHeaderBlockFrames(frames);
+        }
+        else
+        {
+            // a block larger than the write buffer is written one frame at a time
+            final int fragmentLimit = Math.min(maxFrameSize, factory.writeBuffer.capacity() - offset - FRAME_HEADER_SIZE);
+            int blockOffset = 0;
+            int fragments = 0;
+            while (blockOffset < blockLength)
+            {
+                final int fragmentLength = Math.min(blockLength - blockOffset, fragmentLimit);
+                final boolean endHeaders = blockOffset + fragmentLength == blockLength;
+                final Http2Writer writer = factory.http2Writer;
+                final int written = blockOffset == 0
+                        ? writer.headersFragment(offset, streamId, flags, blockBuffer, 0, fragmentLength, endHeaders)
+                        : writer.continuation(offset, streamId, blockBuffer, blockOffset, fragmentLength, endHeaders);
+                doNetworkData(written);
+                blockOffset += fragmentLength;
+                fragments++;
+            }
+            countHeaderBlockFrames(fragments);
+        }
+    }
+
+    private void countHeaderBlockFrames(
+        int frames)
+    {
+        factory.counters.headersFramesWritten.getAsLong();
+        for (int i = 1; i < frames; i++)
+        {
+            factory.counters.continuationFramesWritten.getAsLong();
+        }
+    }
+
+    MessageConsumer newReplyStream(
+        MessageConsumer throttle,
+        long replyId)
+    {
+        this.networkReplyThrottle = throttle;
+        this.networkReplyId = replyId;
+        return this::handleReplyStream;
+    }
+
+    void onRequestData(
+        Http2ClientStream stream,
+        DataFW data)
+    {
+        final OctetsFW payload = data.payload();
+        final int length = payload.sizeof();
+
+        requestBudget -= length + data.padding();
+        stream.requestDataSent = true;
+        stream.http2OutWindow -= length;
+        http2OutWindow -= length;
+
+        final int maxFrameSize = remoteSettings.maxFrameSize;
+        final int offset = DataFW.FIELD_OFFSET_PAYLOAD;
+        int written = 0;
+        for (int remaining = length; remaining > 0; )
+        {
+            final int chunk = Math.min(remaining, maxFrameSize);
+            final int payloadOffset = payload.offset() + length - remaining;
+            written += factory.http2Writer.data(offset + written, FRAME_HEADER_SIZE + chunk, stream.http2StreamId,
+                    payload.buffer(), payloadOffset, chunk);
+            remaining -= chunk;
+            factory.counters.dataFramesWritten.getAsLong();
+        }
+        doNetworkData(written);
+
+        grantRequestCredit(stream);
+    }
+
+    void onRequestEnd(
+        Http2ClientStream stream,
+        long traceId)
+    {
+        requestBudget -= stream.requestBudget;
+        stream.requestBudget = 0;
+
+        final int written = factory.http2Writer.dataEos(DataFW.FIELD_OFFSET_PAYLOAD, FRAME_HEADER_SIZE, stream.http2StreamId);
+        doNetworkData(written);
+        factory.counters.dataFramesWritten.getAsLong();
+
+        if (stream.responseEnded)
+        {
+            closeStream(stream);
+        }
+    }
+
+    void onRequestAbort(
+        Http2ClientStream stream)
+    {
+        doRst(stream.http2StreamId, Http2ErrorCode.CANCEL);
+        if (stream.responseStarted && !stream.responseEnded)
+        {
+            factory.doAbort(stream.applicationReply, stream.applicationReplyId);
+        }
+        closeStream(stream);
+    }
+
+    void onReplyWindow(
+        Http2ClientStream stream,
+        int credit,
+        int padding)
+    {
+        stream.replyBudget += credit;
+        stream.replyPadding = padding;
+
+        // DATA is forwarded with the application's padding, so the window is what is left of its credit
+        final int update = stream.replyBudget - padding - stream.http2InWindow;
+        if (update > 0 && !stream.responseEnded)
+        {
+            stream.http2InWindow += update;
+            doWindowUpdate(stream.http2StreamId, update);
+        }
+    }
+
+    void onReplyReset(
+        Http2ClientStream stream)
+    {
+        doRst(stream.http2StreamId, Http2ErrorCode.CANCEL);
+        if (!stream.requestEnded)
+        {
+            factory.doReset(stream.applicationThrottle, stream.applicationId);
+        }
+        closeStream(stream);
+    }
+
+    private void handleThrottle(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+            case WindowFW.TYPE_ID:
+                final WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
+                networkBudget += window.credit();
+                networkPadding = window.padding();
+                flushEncodeSlot();
+                streams.values().forEach(this::grantRequestCredit);
+                break;
+            case ResetFW.TYPE_ID:
+                streams.values().forEach(this::failStream);
+                streams.clear();
+                if (networkReplyThrottle != null)
+                {
+                    factory.doReset(networkReplyThrottle, networkReplyId);
+                }
+                doCleanup();
+                break;
+            default:
+                // ignore
+                break;
+        }
+    }
+
+    private void handleReplyStream(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+            case BeginFW.TYPE_ID:
+                doNetworkReplyWindow();
+                break;
+            case DataFW.TYPE_ID:
+                final DataFW data = factory.dataRO.wrap(buffer, index, index + length);
+                handleReplyData(data);
+                break;
+            case EndFW.TYPE_ID:
+            case AbortFW.TYPE_ID:
+                streams.values().forEach(this::failStream);
+                streams.clear();
+                factory.http2Writer.doEnd(network, networkId);
+                doCleanup();
+                break;
+            default:
+                factory.doReset(networkReplyThrottle, networkReplyId);
+                break;
+        }
+    }
+
+    private void handleReplyData(
+        DataFW data)
+    {
+        networkReplyBudget -= data.length() + data.padding();
+        if (networkReplyBudget < 0 || closed)
+        {
+            onConnectionError(Http2ErrorCode.INTERNAL_ERROR);
+            return;
+        }
+
+        final OctetsFW payload = data.payload();
+        final DirectBuffer buffer = payload.buffer();
+        final int offset = payload.offset();
+        final int limit = payload.limit();
+
+        DirectBuffer decodeBuffer = buffer;
+        int decodeOffset = offset;
+        int decodeLimit = limit;
+
+        if (frameSlot != NO_SLOT)
+        {
+            final MutableDirectBuffer frameBuffer = factory.framePool.buffer(frameSlot);
+            frameBuffer.putBytes(frameSlotLimit, buffer, offset, limit - offset);
+            frameSlotLimit += limit - offset;
+            decodeBuffer = frameBuffer;
+            decodeOffset = 0;
+            decodeLimit = frameSlotLimit;
+        }
+
+        this.traceId = data.trace();
+        int decodeProgress = 0;
+        while (decodeOffset < decodeLimit && decodeError == null && !closed)
+        {
+            decodeProgress = decodeFrame(decodeBuffer, decodeOffset, decodeLimit);
+            if (decodeProgress <= 0)
+            {
+                // incomplete frame
+                break;
+            }
+            decodeOffset += decodeProgress;
+        }
+        this.traceId = 0;
+
+        if (decodeError != null)
+        {
+            onConnectionError(decodeError);
+            return;
+        }
+
+        if (closed)
+        {
+            return;
+        }
+
+        final int decodeRemaining = decodeLimit - decodeOffset;
+        if (decodeRemaining > 0)
+        {
+            if (frameSlot == NO_SLOT)
+            {
+                frameSlot = factory.framePool.acquire(networkId);
+                if (frameSlot == NO_SLOT)
+                {
+                    onConnectionError(Http2ErrorCode.INTERNAL_ERROR);
+                    return;
+                }
+            }
+            final MutableDirectBuffer frameBuffer = factory.framePool.buffer(frameSlot);
+            frameBuffer.putBytes(0, decodeBuffer, decodeOffset, decodeRemaining);
+            frameSlotLimit = decodeRemaining;
+        }
+        else
+        {
+            releaseFrameSlot();
+        }
+
+        doNetworkReplyWindow();
+    }
+
+    private int decodeFrame(
+        final DirectBuffer buffer,
+        final int offset,
+        final int limit)
+    {
+        final Http2FrameFW http2Frame = factory.http2RO.tryWrap(buffer, offset, limit);
+
+        if (http2Frame != null)
+        {
+            if (http2Frame.payloadLength() > Settings.DEFAULT_MAX_FRAME_SIZE)
+            {
+                decodeError = Http2ErrorCode.FRAME_SIZE_ERROR;
+            }
+            else if (headersSlot != NO_SLOT &&
+                    (http2Frame.type() != Http2FrameType.CONTINUATION || http2Frame.streamId() != continuationStreamId))
+            {
+                decodeError = Http2ErrorCode.PROTOCOL_ERROR;
+            }
+            else if (http2Frame.streamId() == 0)
+            {
+                onConnectionFrame(http2Frame);
+            }
+            else if ((http2Frame.streamId() & 0x01) != 0x01 || http2Frame.streamId() >= nextStreamId)
+            {
+                // no server-initiated streams with ENABLE_PUSH = 0
+                decodeError = Http2ErrorCode.PROTOCOL_ERROR;
+            }
+            else
+            {
+                onStreamFrame(http2Frame);
+            }
+        }
+        else
+        {
+            final Http2FrameHeaderFW http2FrameHeader = factory.http2HeaderRO.tryWrap(buffer, offset, limit);
+            if (http2FrameHeader != null && http2FrameHeader.payloadLength() > Settings.DEFAULT_MAX_FRAME_SIZE)
+            {
+                decodeError = Http2ErrorCode.FRAME_SIZE_ERROR;
+            }
+        }
+
+        return http2Frame != null ? http2Frame.sizeof() : 0;
+    }
+
+    private void onConnectionFrame(
+        Http2FrameFW http2Frame)
+    {
+        switch (http2Frame.type())
+        {
+            case SETTINGS:
+                factory.counters.settingsFramesRead.getAsLong();
+                onSettings(http2Frame);
+                break;
+            case PING:
+                factory.counters.pingFramesRead.getAsLong();
+                onPing(http2Frame);
+                break;
+            case GO_AWAY:
+                factory.counters.goawayFramesRead.getAsLong();
+                onGoaway(http2Frame);
+                break;
+            case WINDOW_UPDATE:
+                factory.counters.windowUpdateFramesRead.getAsLong();
+                onWindowUpdate(http2Frame, null);
+                break;
+            case UNKNOWN:
+                break;
+            default:
+                decodeError = Http2ErrorCode.PROTOCOL_ERROR;
+                break;
+        }
+    }
+
+    private void onStreamFrame(
+        Http2FrameFW http2Frame)
+    {
+        final Http2ClientStream stream = streams.get(http2Frame.streamId());
+
+        switch (http2Frame.type())
+        {
+            case HEADERS:
+                factory.counters.headersFramesRead.getAsLong();
+                onHeaders(http2Frame);
+                break;
+            case CONTINUATION:
+                factory.counters.continuationFramesRead.getAsLong();
+                onContinuation(http2Frame);
+                break;
+            case DATA:
+                factory.counters.dataFramesRead.getAsLong();
+                onData(http2Frame, stream);
+                break;
+            case WINDOW_UPDATE:
+                factory.counters.windowUpdateFramesRead.getAsLong();
+                if (stream != null)
+                {
+                    onWindowUpdate(http2Frame, stream);
+                }
+                break;
+            case RST_STREAM:
+                factory.counters.resetStreamFramesRead.getAsLong();
+                if (stream != null)
+                {
+                    onRstStream(http2Frame, stream);
+                }
+                break;
+            case PUSH_PROMISE:
+                factory.counters.pushPromiseFramesRead.getAsLong();
+                decodeError = Http2ErrorCode.PROTOCOL_ERROR;
+                break;
+            case PRIORITY:
+                factory.counters.priorityFramesRead.getAsLong();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onSettings(
+        Http2FrameFW http2Frame)
+    {
+        final Http2SettingsFW settings =
+                factory.settingsRO.tryWrap(http2Frame.buffer(), http2Frame.offset(), http2Frame.limit());
+
+        if (settings == null || settings.ack() && settings.payloadLength() != 0)
+        {
+            decodeError = Http2ErrorCode.FRAME_SIZE_ERROR;
+        }
+        else if (!settings.ack())
+        {
+            settings.forEach(applySetting);
+            if (decodeError == null)
+            {
+                final int written = factory.http2Writer.settingsAck(DataFW.FIELD_OFFSET_PAYLOAD, FRAME_HEADER_SIZE);
+                doNetworkData(written);
+                factory.counters.settingsFramesWritten.getAsLong();
+
+                streams.values().forEach(this::grantRequestCredit);
+                pool.onAvailable();
+            }
+        }
+    }
+
+    private void applySetting(
+        Http2SettingsId id,
+        Long value)
+    {
+        switch (id)
+        {
+            case HEADER_TABLE_SIZE:
+                // the encoder does not insert into the dynamic table
+                remoteSettings.headerTableSize = value.intValue();
+                break;
+            case ENABLE_PUSH:
+                // 8.2 a client cannot push
+                decodeError = Http2ErrorCode.PROTOCOL_ERROR;
+                break;
+            case MAX_CONCURRENT_STREAMS:
+                remoteSettings.maxConcurrentStreams = (int) Math.min(value, Integer.MAX_VALUE);
+                break;
+            case INITIAL_WINDOW_SIZE:
+                if (value > Integer.MAX_VALUE)
+                {
+                    decodeError = Http2ErrorCode.FLOW_CONTROL_ERROR;
+                    return;
+                }
+                final int update = value.intValue() - remoteSettings.initialWindowSize;
+                remoteSettings.initialWindowSize = value.intValue();
+                for (Http2ClientStream stream : streams.values())
+                {
+                    stream.http2OutWindow += update;        // can become negative
+                    if (stream.http2OutWindow > Integer.MAX_VALUE)
+                    {
+                        decodeError = Http2ErrorCode.FLOW_CONTROL_ERROR;
+                        return;
+                    }
+                }
+                break;
+            case MAX_FRAME_SIZE:
+                if (value < Settings.DEFAULT_MAX_FRAME_SIZE || value > (1 << 24) - 1)
+                {
+                    decodeError = Http2ErrorCode.PROTOCOL_ERROR;
+                    return;
+                }
+                remoteSettings.maxFrameSize = value.intValue();
+                break;
+            case MAX_HEADER_LIST_SIZE:
+                remoteSettings.maxHeaderListSize = value.intValue();
+                break;
+            default:
+                // Ignore the unknown setting
+                break;
+        }
+    }
+
+    private void onPing(
+        Http2FrameFW http2Frame)
+    {
+        final Http2PingFW ping = factory.pingRO.tryWrap(http2Frame.buffer(), http2Frame.offset(), http2Frame.limit());
+        if (ping == null)
+        {
+            decodeError = Http2ErrorCode.FRAME_SIZE_ERROR;
+        }
+        else if (!ping.ack())
+        {
+            final DirectBuffer payload = ping.payload();
+            final int written = factory.http2Writer.pingAck(DataFW.FIELD_OFFSET_PAYLOAD, FRAME_HEADER_SIZE + 8,
+                    payload, 0, payload.capacity());
+            doNetworkData(written);
+            factory.counters.pingFramesWritten.getAsLong();
+        }
+    }
+
+    private void onGoaway(
+        Http2FrameFW http2Frame)
+    {
+        final Http2GoawayFW goawayFrame =
+                factory.goawayRO.wrap(http2Frame.buffer(), http2Frame.offset(), http2Frame.limit());
+        final int lastStreamId = goawayFrame.lastStreamId();
+
+        goaway = true;
+        leavePool();
+
+        // streams that the peer has not processed can be retried on another connection
+        final List<Http2ClientStream> unprocessed = new ArrayList<>();
+        streams.values().forEach(s ->
+        {
+            if (s.http2StreamId > lastStreamId)
+            {
+                unprocessed.add(s);
+            }
+        });
+        unprocessed.forEach(this::retryOrFailStream);
+
+        if (streams.isEmpty())
+        {
+            doEndNetwork();
+        }
+    }
+
+    private void onWindowUpdate(
+        Http2FrameFW http2Frame,
+        Http2ClientStream stream)
+    {
+        final Http2WindowUpdateFW http2Window =
+                factory.http2WindowRO.tryWrap(http2Frame.buffer(), http2Frame.offset(), http2Frame.limit());
+        if (http2Window == null)
+        {
+            decodeError = Http2ErrorCode.FRAME_SIZE_ERROR;
+            return;
+        }
+
+        // 6.9 WINDOW_UPDATE - legal range for flow-control window increment is 1 to 2^31-1 octets.
+        if (http2Window.size() < 1)
+        {
+            decodeError = Http2ErrorCode.PROTOCOL_ERROR;
+            return;
+        }
+
+        if (stream == null)
+        {
+            http2OutWindow += http2Window.size();
+            if (http2OutWindow > Integer.MAX_VALUE)
+            {
+                decodeError = Http2ErrorCode.FLOW_CONTROL_ERROR;
+                return;
+            }
+            streams.values().forEach(this::grantRequestCredit);
+        }
+        else
+        {
+            stream.http2OutWindow += http2Window.size();
+            if (stream.http2OutWindow > Integer.MAX_VALUE)
+            {
+                doRst(stream.http2StreamId, Http2ErrorCode.FLOW_CONTROL_ERROR);
+                failStream(stream);
+                closeStream(stream);
+                return;
+            }
+            grantRequestCredit(stream);
+        }
+    }
+
+    private void onRstStream(
+        Http2FrameFW http2Frame,
+        Http2ClientStream stream)
+    {
+        final Http2RstStreamFW rst =
+                factory.http2RstStreamRO.tryWrap(http2Frame.buffer(), http2Frame.offset(), http2Frame.limit());
+        if (rst == null)
+        {
+            decodeError = Http2ErrorCode.FRAME_SIZE_ERROR;
+        }
+        else if (rst.errorCode() == Http2ErrorCode.REFUSED_STREAM.errorCode)
+        {
+            retryOrFailStream(stream);
+        }
+        else
+        {
+            failStream(stream);
+            closeStream(stream);
+        }
+    }
+
+    private void onHeaders(
+        Http2FrameFW http2Frame)
+    {
+        final Http2HeadersFW headers =
+                factory.headersRO.wrap(http2Frame.buffer(), http2Frame.offset(), http2Frame.limit());
+        if (headers.dataLength() < 0)
+        {
+            decodeError = Http2ErrorCode.PROTOCOL_ERROR;
+            return;
+        }
+
+        final int streamId = headers.streamId();
+        final boolean endStream = headers.endStream();
+
+        if (headers.endHeaders())
+        {
+            onHeadersEnd(streamId, endStream, headers.buffer(), headers.dataOffset(), headers.dataLength());
+        }
+        else
+        {
+            headersSlot = factory.headersPool.acquire(networkId);
+            if (headersSlot == NO_SLOT)
+            {
+                decodeError = Http2ErrorCode.INTERNAL_ERROR;
+                return;
+            }
+            final MutableDirectBuffer headersBuffer = factory.headersPool.buffer(headersSlot);
+            headersBuffer.putBytes(0, headers.buffer(), headers.dataOffset(), headers.dataLength());
+            headersSlotLimit = headers.dataLength();
+            continuationStreamId = streamId;
+            continuationEndStream = endStream;
+        }
+    }
+
+    private void onContinuation(
+        Http2FrameFW http2Frame)
+    {
+        final Http2ContinuationFW continuation =
+                factory.continationRO.wrap(http2Frame.buffer(), http2Frame.offset(), http2Frame.limit());
+        final DirectBuffer payload = continuation.payload();
+        final MutableDirectBuffer headersBuffer = factory.headersPool.buffer(headersSlot);
+
+        if (headersSlotLimit + payload.capacity() > headersBuffer.capacity())
+        {
+            decodeError = Http2ErrorCode.ENHANCE_YOUR_CALM;
+            return;
+        }
+
+        headersBuffer.putBytes(headersSlotLimit, payload, 0, payload.capacity());
+        headersSlotLimit += payload.capacity();
+
+        if (continuation.endHeaders())
+        {
+            onHeadersEnd(continuationStreamId, continuationEndStream, headersBuffer, 0, headersSlotLimit);
+            releaseHeadersSlot();
+        }
+    }
+
+    private void onHeadersEnd(
+        int streamId,
+        boolean endStream,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        // the header block is decoded even for a closed stream to keep the HPACK context in sync
+        informational = false;
+        factory.httpBeginExRW.wrap(factory.scratch, 0, factory.scratch.capacity());
+        if (!headerDecoder.decodeBlock(buffer, offset, offset + length) && decodeError == null)
+        {
+            // malformed header field
+            decodeError = Http2ErrorCode.COMPRESSION_ERROR;
+        }
+
+        if (decodeError != null)
+        {
+            return;
+        }
+
+        final Http2ClientStream stream = streams.get(streamId);
+        if (stream == null)
+        {
+            return;
+        }
+
+        if (!stream.responseStarted)
+        {
+            if (informational && !endStream)
+            {
+                // 1xx interim response, the final response follows
+                return;
+            }
+
+            final HttpBeginExFW beginEx = factory.httpBeginExRW.build();
+            stream.applicationReply = factory.router.supplyTarget(stream.applicationReplyName);
+            stream.applicationReplyId = factory.supplyStreamId.getAsLong();
+            factory.httpWriter.doHttpBegin(stream.applicationReply, stream.applicationReplyId, traceId, 0L,
+                    stream.correlationId, beginEx.buffer(), beginEx.offset(), beginEx.sizeof());
+            factory.router.setThrottle(stream.applicationReplyName, stream.applicationReplyId, stream.replyThrottle);
+            stream.responseStarted = true;
+            stream.releaseHeaders();
+        }
+        // trailers are not forwarded to the application
+
+        if (endStream)
+        {
+            onResponseEnd(stream);
+        }
+    }
+
+    private void onData(
+        Http2FrameFW http2Frame,
+        Http2ClientStream stream)
+    {
+        final Http2DataFW data = factory.http2DataRO.wrap(http2Frame.buffer(), http2Frame.offset(), http2Frame.limit());
+        if (data.dataLength() < 0)
+        {
+            decodeError = Http2ErrorCode.PROTOCOL_ERROR;
+            return;
+        }
+
+        final int payloadLength = data.payloadLength();
+        http2InWindowConsumed += payloadLength;
+        if (http2InWindowConsumed >= Settings.DEFAULT_INITIAL_WINDOW_SIZE / 2)
+        {
+            doWindowUpdate(0, http2InWindowConsumed);
+            http2InWindowConsumed = 0;
+        }
+
+        if (stream == null)
+        {
+            // stream is already reset by us
+            return;
+        }
+
+        if (!stream.responseStarted || stream.responseEnded)
+        {
+            doRst(stream.http2StreamId, Http2ErrorCode.PROTOCOL_ERROR);
+            failStream(stream);
+            closeStream(stream);
+            return;
+        }
+
+        stream.http2InWindow -= payloadLength;
+        final int length = data.dataLength();
+        stream.replyBudget -= length + stream.replyPadding;
+        if (stream.http2InWindow < 0 || stream.replyBudget < 0)
+        {
+            doRst(stream.http2StreamId, Http2ErrorCode.FLOW_CONTROL_ERROR);
+            failStream(stream);
+            closeStream(stream);
+            return;
+        }
+
+        if (length > 0)
+        {
+            factory.httpWriter.doHttpData(stream.applicationReply, stream.applicationReplyId, traceId,
+                    stream.replyPadding, data.buffer(), data.dataOffset(), length);
+        }
+
+        if (data.endStream())
+        {
+            onResponseEnd(stream);
+        }
+    }
+
+    private void onResponseEnd(
+        Http2ClientStream stream)
+    {
+        factory.httpWriter.doHttpEnd(stream.applicationReply, stream.applicationReplyId, traceId);
+        stream.responseEnded = true;
+
+        if (!stream.requestEnded)
+        {
+            // complete response before the request, no need to send the rest of the request
+            doRst(stream.http2StreamId, Http2ErrorCode.NO_ERROR);
+            factory.doReset(stream.applicationThrottle, stream.applicationId);
+            stream.requestEnded = true;
+        }
+        closeStream(stream);
+    }
+
+    // Response headers are decoded in a single pass over the header block
+    private final class ResponseHeaderDecoder extends HpackHeaderDecoder
+    {
+        ResponseHeaderDecoder()
+        {
+            super(decodeContext, factory.blockRO, factory.huffmanNameRW, factory.huffmanNameRO,
+                    factory.huffmanValueRW, factory.huffmanValueRO);
+        }
+
+        @Override
+        int headerTableSize()
+        {
+            return Settings.DEFAULT_HEADER_TABLE_SIZE;
+        }
+
+        @Override
+        void onDecodeError(
+            Http2ErrorCode error)
+        {
+            decodeError = error;
+        }
+
+        @Override
+        boolean onHeaderField(
+            DirectBuffer name,
+            DirectBuffer value,
+            int nameIndex,
+            int valueIndex)
+        {
+            if (name.equals(decodeContext.nameBuffer(8)) && value.capacity() > 0 && value.getByte(0) == '1')
+            {
+                informational = true;       // :status 1xx
+            }
+
+            factory.httpBeginExRW.headersItem(item -> item.name(name, 0, name.capacity())
+                                                          .value(value, 0, value.capacity()));
+            return true;
+        }
+    }
+
+    // pseudo-header fields first, connection-specific header fields are not sent (8.1.2.2)
+    private void encodeHeaders(
+        ListFW<HttpHeaderFW> headers,
+        HpackHeaderBlockFW.Builder builder)
+    {
+        connectionHeaders.clear();
+        headers.forEach(this::collectConnectionHeaders);
+
+        headers.forEach(h ->
+        {
+            if (isPseudoHeader(h))
+            {
+                builder.header(b -> encodeHeader(h, b));
+            }
+        });
+        headers.forEach(h ->
+        {
+            if (!isPseudoHeader(h) && validHeader(h))
+            {
+                builder.header(b -> encodeHeader(h, b));
+            }
+        });
+    }
+
+    private void collectConnectionHeaders(
+        HttpHeaderFW header)
+    {
+        final StringFW name = header.name();
+        factory.nameRO.wrap(name.buffer(), name.offset() + 1, name.sizeof() - 1); // +1, -1 for length-prefixed buffer
+
+        if (factory.nameRO.equals(CONNECTION))
+        {
+            for (String connectionHeader : header.value().asString().split(","))
+            {
+                connectionHeaders.add(connectionHeader.trim());
+            }
+        }
+    }
+
+    private static boolean isPseudoHeader(
+        HttpHeaderFW header)
+    {
+        final StringFW name = header.name();
+        return name.sizeof() > 1 && name.buffer().getByte(name.offset() + 1) == ':';
+    }
+
+    private boolean validHeader(
+        HttpHeaderFW header)
+    {
+        final StringFW name = header.name();
+        factory.nameRO.wrap(name.buffer(), name.offset() + 1, name.sizeof() - 1); // +1, -1 for length-prefixed buffer
+
+        return !factory.nameRO.equals(encodeContext.nameBuffer(57)) &&     // transfer-encoding
+                !factory.nameRO.equals(encodeContext.nameBuffer(38)) &&    // host, :authority instead
+                !factory.nameRO.equals(CONNECTION) &&
+                !factory.nameRO.equals(KEEP_ALIVE) &&
+                !factory.nameRO.equals(PROXY_CONNECTION) &&
+                !factory.nameRO.equals(UPGRADE) &&
+                !connectionHeaders.contains(name.asString());
+    }
+
+    private void encodeHeader(
+        HttpHeaderFW header,
+        HpackHeaderFieldFW.Builder builder)
+    {
+        final StringFW name = header.name();
+        final String16FW value = header.value();
+        factory.nameRO.wrap(name.buffer(), name.offset() + 1, name.sizeof() - 1); // +1, -1 for length-prefixed buffer
+        factory.valueRO.wrap(value.buffer(), value.offset() + 2, value.sizeof() - 2);
+
+        final int index = encodeContext.index(factory.nameRO, factory.valueRO);
+        if (index != -1)
+        {
+            builder.indexed(index);
+        }
+        else
+        {
+            builder.literal(this::encodeLiteral);
+        }
+    }
+
+    private void encodeLiteral(
+        HpackLiteralHeaderFieldFW.Builder builder)
+    {
+        final int nameIndex = encodeContext.index(factory.nameRO);
+        builder.type(WITHOUT_INDEXING);
+        if (nameIndex != -1)
+        {
+            builder.name(nameIndex);
+        }
+        else
+        {
+            builder.name(factory.nameRO, 0, factory.nameRO.capacity());
+        }
+        builder.value(factory.valueRO, 0, factory.valueRO.capacity());
+    }
+
+    /*
+     * Request credit is bounded by the stream and connection HTTP2 windows, and by the free
+     * space in the encode slot so that DATA can always be queued when the network is busy.
+     * The padding covers the DATA frame headers when a payload is split by MAX_FRAME_SIZE.
+     */
+    private void grantRequestCredit(
+        Http2ClientStream stream)
+    {
+        if (stream.requestEnded || closed)
+        {
+            return;
+        }
+
+        final int padding = FRAME_HEADER_SIZE * (1 + factory.encodePool.slotCapacity() / remoteSettings.maxFrameSize);
+        final long encodeSpace = factory.encodePool.slotCapacity() - encodeSlotLimit;
+        final long streamAvailable = stream.http2OutWindow - stream.requestBudget;
+        final long connectionAvailable = Math.min(http2OutWindow, encodeSpace) - requestBudget;
+        final int credit = (int) Math.min(streamAvailable, connectionAvailable);
+
+        if (credit > padding)
+        {
+            stream.requestBudget += credit;
+            stream.requestPadding = padding;
+            requestBudget += credit;
+            factory.doWindow(stream.applicationThrottle, stream.applicationId, credit, padding);
+        }
+    }
+
+    private void retryOrFailStream(
+        Http2ClientStream stream)
+    {
+        final boolean retry = stream.requestEnded && !stream.requestDataSent &&
+                !stream.responseStarted && stream.retries < MAX_RETRIES;
+
+        if (retry)
+        {
+            streams.remove(stream.http2StreamId);
+            stream.connection = null;
+            stream.retries++;
+            pool.acquire(stream);
+            if (!closeIfDrained())
+            {
+                pool.onAvailable();
+            }
+        }
+        else
+        {
+            failStream(stream);
+            closeStream(stream);
+        }
+    }
+
+    // the application streams are reset or aborted, the stream is not removed
+    private void failStream(
+        Http2ClientStream stream)
+    {
+        if (!stream.requestEnded || !stream.responseStarted)
+        {
+            factory.doReset(stream.applicationThrottle, stream.applicationId);
+        }
+        if (stream.responseStarted && !stream.responseEnded)
+        {
+            factory.httpWriter.doHttpAbort(stream.applicationReply, stream.applicationReplyId, traceId);
+        }
+        stream.requestEnded = true;
+        stream.responseEnded = true;
+        stream.connection = null;
+        requestBudget -= stream.requestBudget;
+        stream.requestBudget = 0;
+    }
+
+    private void closeStream(
+        Http2ClientStream stream)
+    {
+        if (streams.remove(stream.http2StreamId) != null)
+        {
+            requestBudget -= stream.requestBudget;
+            stream.requestBudget = 0;
+            stream.connection = null;
+            stream.releaseHeaders();
+
+            if (!closeIfDrained())
+            {
+                pool.onAvailable();
+            }
+        }
+    }
+
+    private boolean closeIfDrained()
+    {
+        final boolean drained = goaway && streams.isEmpty() && !closed;
+        if (drained)
+        {
+            doEndNetwork();
+        }
+        return drained;
+    }
+
+    private void onConnectionError(
+        Http2ErrorCode error)
+    {
+        if (!closed)
+        {
+            final int written = factory.http2Writer.goaway(DataFW.FIELD_OFFSET_PAYLOAD, FRAME_HEADER_SIZE + 8, 0, error);
+            doNetworkData(written);
+            factory.counters.goawayFramesWritten.getAsLong();
+
+            streams.values().forEach(this::failStream);
+            streams.clear();
+            factory.doReset(networkReplyThrottle, networkReplyId);
+            factory.http2Writer.doEnd(network, networkId);
+            doCleanup();
+        }
+    }
+
+    private void doEndNetwork()
+    {
+        if (!closed)
+        {
+            factory.http2Writer.doEnd(network, networkId);
+            doCleanup();
+        }
+    }
+
+    private void doRst(
+        int streamId,
+        Http2ErrorCode error)
+    {
+        final int written = factory.http2Writer.rst(DataFW.FIELD_OFFSET_PAYLOAD, FRAME_HEADER_SIZE + 4, streamId, error);
+        doNetworkData(written);
+        factory.counters.resetStreamFramesWritten.getAsLong();
+    }
+
+    private void doWindowUpdate(
+        int streamId,
+        int update)
+    {
+        final int written = factory.http2Writer.windowUpdate(DataFW.FIELD_OFFSET_PAYLOAD, FRAME_HEADER_SIZE + 4,
+                streamId, update);
+        doNetworkData(written);
+        factory.counters.windowUpdateFramesWritten.getAsLong();
+    }
+
+    private void doNetworkReplyWindow()
+    {
+        final int credit = factory.framePool.slotCapacity() - frameSlotLimit - networkReplyBudget;
+        if (credit > 0)
+        {
+            networkReplyBudget += credit;
+            factory.doWindow(networkReplyThrottle, networkReplyId, credit, 0);
+        }
+    }
+
+    /*
+     * Sends the frames encoded at DataFW.FIELD_OFFSET_PAYLOAD in the write buffer, or
+     * queues them behind the frames already waiting for the network window.
+     */
+    private void doNetworkData(
+        int length)
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        final MutableDirectBuffer writeBuffer = factory.writeBuffer;
+        final int offset = DataFW.FIELD_OFFSET_PAYLOAD;
+
+        if (encodeSlot == NO_SLOT && length + networkPadding <= networkBudget)
+        {
+            factory.http2Writer.doData(network, networkId, traceId, networkPadding, writeBuffer, offset, length);
+            networkBudget -= length + networkPadding;
+        }
+        else
+        {
+            if (encodeSlot == NO_SLOT)
+            {
+                encodeSlot = factory.encodePool.acquire(networkId);
+            }
+
+            if (encodeSlot == NO_SLOT ||
+                    encodeSlotLimit + length > factory.encodePool.buffer(encodeSlot).capacity())
+            {
+                // peer is not reading, or no memory to queue the frames
+                streams.values().forEach(this::failStream);
+                streams.clear();
+                if (networkReplyThrottle != null)
+                {
+                    factory.doReset(networkReplyThrottle, networkReplyId);
+                }
+                factory.doAbort(network, networkId);
+                doCleanup();
+                return;
+            }
+
+            final MutableDirectBuffer encodeBuffer = factory.encodePool.buffer(encodeSlot);
+            encodeBuffer.putBytes(encodeSlotLimit, writeBuffer, offset, length);
+            encodeSlotLimit += length;
+        }
+    }
+
+    private void flushEncodeSlot()
+    {
+        if (encodeSlot != NO_SLOT)
+        {
+            final MutableDirectBuffer writeBuffer = factory.writeBuffer;
+            final int offset = DataFW.FIELD_OFFSET_PAYLOAD;
+            final int writable = Math.min(networkBudget - networkPadding, writeBuffer.capacity() - offset);
+            final int length = Math.min(encodeSlotLimit, writable);
+
+            if (length > 0)
+            {
+                final MutableDirectBuffer encodeBuffer = factory.encodePool.buffer(encodeSlot);
+                writeBuffer.putBytes(offset, encodeBuffer, 0, length);
+                factory.http2Writer.doData(network, networkId, 0L, networkPadding, writeBuffer, offset, length);
+                networkBudget -= length + networkPadding;
+
+                encodeSlotLimit -= length;
+                if (encodeSlotLimit == 0)
+                {
+                    releaseEncodeSlot();
+                }
+                else
+                {
+                    encodeBuffer.putBytes(0, encodeBuffer, length, encodeSlotLimit);
+                }
+            }
+        }
+    }
+
+    private void leavePool()
+    {
+        if (pooled)
+        {
+            pooled = false;
+            pool.onClosed(this);
+        }
+    }
+
+    private void doCleanup()
+    {
+        if (!closed)
+        {
+            closed = true;
+            releaseFrameSlot();
+            releaseHeadersSlot();
+            releaseEncodeSlot();
+            factory.uncorrelate(networkCorrelationId);
+            leavePool();
+        }
+    }
+
+    private void releaseFrameSlot()
+    {
+        if (frameSlot != NO_SLOT)
+        {
+            factory.framePool.release(frameSlot);
+            frameSlot = NO_SLOT;
+            frameSlotLimit = 0;
+        }
+    }
+
+    private void releaseHeadersSlot()
+    {
+        if (headersSlot != NO_SLOT)
+        {
+            factory.headersPool.release(headersSlot);
+            headersSlot = NO_SLOT;
+            headersSlotLimit = 0;
+        }
+    }
+
+    private void releaseEncodeSlot()
+    {
+        if (encodeSlot != NO_SLOT)
+        {
+            factory.encodePool.release(encodeSlot);
+            encodeSlot = NO_SLOT;
+            encodeSlotLimit = 0;
+        }
+    }
+}
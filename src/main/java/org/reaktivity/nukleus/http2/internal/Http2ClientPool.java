@@ -0,0 +1,118 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/*
+ * Pool of multiplexed HTTP2 connections to a route target. A request is started on
+ * the first connection with a free stream (as per the peer's MAX_CONCURRENT_STREAMS),
+ * a new connection is opened when all are busy, and requests wait in the pool once
+ * the connection limit is reached.
+ */
+final class Http2ClientPool
+{
+    private final ClientStreamFactory factory;
+    final String targetName;
+    final long targetRef;
+    private final int maxConnections;
+    private final List<Http2ClientConnection> connections;
+    private final Deque<Http2ClientStream> pending;
+
+    Http2ClientPool(
+        ClientStreamFactory factory,
+        String targetName,
+        long targetRef)
+    {
+        this.factory = factory;
+        this.targetName = targetName;
+        this.targetRef = targetRef;
+        this.maxConnections = factory.config.clientMaxConnections();
+        this.connections = new ArrayList<>();
+        this.pending = new ArrayDeque<>();
+    }
+
+    void acquire(
+        Http2ClientStream stream)
+    {
+        Http2ClientConnection connection = available();
+        if (connection == null && connections.size() < maxConnections)
+        {
+            connection = new Http2ClientConnection(factory, this);
+            connections.add(connection);
+            connection.doConnect();
+        }
+
+        if (connection != null)
+        {
+            connection.startStream(stream);
+        }
+        else
+        {
+            pending.add(stream);
+        }
+    }
+
+    void cancel(
+        Http2ClientStream stream)
+    {
+        pending.remove(stream);
+    }
+
+    // A stream is closed or the peer allows more concurrent streams
+    void onAvailable()
+    {
+        Http2ClientConnection connection;
+        while (!pending.isEmpty() && (connection = available()) != null)
+        {
+            connection.startStream(pending.poll());
+        }
+    }
+
+    void onClosed(
+        Http2ClientConnection connection)
+    {
+        connections.remove(connection);
+
+        // requests that are still waiting get a new connection
+        if (!pending.isEmpty())
+        {
+            acquire(pending.poll());
+            onAvailable();
+        }
+    }
+
+    int connections()
+    {
+        return connections.size();
+    }
+
+    private Http2ClientConnection available()
+    {
+        for (int i = 0; i < connections.size(); i++)
+        {
+            Http2ClientConnection connection = connections.get(i);
+            if (connection.hasCapacity())
+            {
+                return connection;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http2.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http2.internal.types.ListFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.AbortFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.BeginFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.DataFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.EndFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.HttpBeginExFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.ResetFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.WindowFW;
+
+/*
+ * An HTTP request from the application, and its response, carried on a HTTP2
+ * stream of a pooled Http2ClientConnection.
+ */
+final class Http2ClientStream
+{
+    private final ClientStreamFactory factory;
+    private final Http2ClientPool pool;
+    final MessageConsumer applicationThrottle;
+    final long applicationId;
+    private final ListFW<HttpHeaderFW> headersRO = new ListFW<>(new HttpHeaderFW());
+
+    final MessageConsumer replyThrottle;
+    private MessageConsumer streamState;
+    private MutableDirectBuffer headersBuffer;        // request headers, until the response starts (for a retry)
+
+    Http2ClientConnection connection;
+    int http2StreamId;
+    long traceId;
+    int retries;
+
+    // request
+    long http2OutWindow;
+    int requestBudget;
+    int requestPadding;
+    boolean requestEnded;
+    boolean requestDataSent;
+
+    // response
+    long correlationId;
+    String applicationReplyName;
+    MessageConsumer applicationReply;
+    long applicationReplyId;
+    int http2InWindow;
+    int replyBudget;
+    int replyPadding;
+    boolean responseStarted;
+    boolean responseEnded;
+
+    Http2ClientStream(
+        ClientStreamFactory factory,
+        Http2ClientPool pool,
+        MessageConsumer applicationThrottle,
+        long applicationId)
+    {
+        this.factory = factory;
+        this.pool = pool;
+        this.applicationThrottle = applicationThrottle;
+        this.applicationId = applicationId;
+        this.streamState = this::beforeBegin;
+        this.replyThrottle = this::handleReplyThrottle;
+    }
+
+    void handleStream(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        streamState.accept(msgTypeId, buffer, index, length);
+    }
+
+    ListFW<HttpHeaderFW> headers()
+    {
+        return headersRO.wrap(headersBuffer, 0, headersBuffer.capacity());
+    }
+
+    void releaseHeaders()
+    {
+        headersBuffer = null;
+    }
+
+    boolean isStarted()
+    {
+        return connection != null;
+    }
+
+    private void beforeBegin(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        if (msgTypeId == BeginFW.TYPE_ID)
+        {
+            final BeginFW begin = factory.beginRO().wrap(buffer, index, index + length);
+            handleBegin(begin);
+        }
+        else
+        {
+            factory.doReset(applicationThrottle, applicationId);
+        }
+    }
+
+    private void afterBegin(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+            case DataFW.TYPE_ID:
+                final DataFW data = factory.dataRO.wrap(buffer, index, index + length);
+                handleData(data);
+                break;
+            case EndFW.TYPE_ID:
+                final EndFW end = factory.endRO.wrap(buffer, index, index + length);
+                handleEnd(end);
+                break;
+            case AbortFW.TYPE_ID:
+                handleAbort();
+                break;
+            default:
+                factory.doReset(applicationThrottle, applicationId);
+                break;
+        }
+    }
+
+    private void handleBegin(
+        BeginFW begin)
+    {
+        final HttpBeginExFW beginEx = begin.extension().get(factory.beginExRO::wrap);
+        final ListFW<HttpHeaderFW> headers = beginEx.headers();
+
+        this.traceId = begin.trace();
+        this.correlationId = begin.correlationId();
+        this.applicationReplyName = begin.source().asString();
+        this.headersBuffer = new UnsafeBuffer(new byte[headers.sizeof()]);
+        headersBuffer.putBytes(0, headers.buffer(), headers.offset(), headers.sizeof());
+
+        this.streamState = this::afterBegin;
+        pool.acquire(this);
+    }
+
+    private void handleData(
+        DataFW data)
+    {
+        requestBudget -= data.length() + data.padding();
+        if (connection == null || requestBudget < 0)
+        {
+            // no credit is given before the stream is started
+            factory.doReset(applicationThrottle, applicationId);
+            onRequestAborted();
+        }
+        else
+        {
+            connection.onRequestData(this, data);
+        }
+    }
+
+    private void handleEnd(
+        EndFW end)
+    {
+        requestEnded = true;
+        if (connection != null)
+        {
+            connection.onRequestEnd(this, end.trace());
+        }
+    }
+
+    private void handleAbort()
+    {
+        requestEnded = true;
+        onRequestAborted();
+    }
+
+    private void onRequestAborted()
+    {
+        if (connection != null)
+        {
+            connection.onRequestAbort(this);
+        }
+        else
+        {
+            pool.cancel(this);
+        }
+    }
+
+    void handleReplyThrottle(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        switch (msgTypeId)
+        {
+            case WindowFW.TYPE_ID:
+                final WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
+                if (connection != null)
+                {
+                    connection.onReplyWindow(this, window.credit(), window.padding());
+                }
+                break;
+            case ResetFW.TYPE_ID:
+                if (connection != null)
+                {
+                    connection.onReplyReset(this);
+                }
+                break;
+            default:
+                // ignore
+                break;
+        }
+    }
+}
@@ -15,15 +15,85 @@
  */
 package org.reaktivity.nukleus.http2.internal;
 
+import java.io.File;
+
 import org.reaktivity.nukleus.Configuration;
 
 public class Http2Configuration extends Configuration
 {
     public static final String HTTP2_SERVER_CONCURRENT_STREAMS = "nukleus.http2.server.concurrent.streams";
+    public static final String HTTP2_SERVER_MAX_FRAME_SIZE = "nukleus.http2.server.max.frame.size";
+    public static final String HTTP2_SERVER_HEADER_TABLE_SIZE = "nukleus.http2.server.header.table.size";
     public static final String HTTP2_ACCESS_CONTROL_ALLOW_ORIGIN = "nukleus.http2.server.access.control.allow.origin";
+    public static final String HTTP2_SERVER_STREAM_POOL_CAPACITY = "nukleus.http2.server.stream.pool.capacity";
+    public static final String HTTP2_SERVER_CORRELATIONS_CAPACITY = "nukleus.http2.server.correlations.capacity";
+    public static final String HTTP2_SERVER_CONNECTION_SLOTS = "nukleus.http2.server.connection.slots";
+    public static final String HTTP2_SERVER_PUSH_FILTER_BITS = "nukleus.http2.server.push.filter.bits";
+    public static final String HTTP2_SERVER_CACHE_CAPACITY = "nukleus.http2.server.cache.capacity";
+    public static final String HTTP2_SERVER_PUSH_QUEUE_THRESHOLD = "nukleus.http2.server.push.queue.threshold";
+    public static final String HTTP2_SERVER_IDLE_TIMEOUT = "nukleus.http2.server.idle.timeout";
+    public static final String HTTP2_SERVER_STREAM_IDLE_TIMEOUT = "nukleus.http2.server.stream.idle.timeout";
+    public static final String HTTP2_SERVER_PING_INTERVAL = "nukleus.http2.server.ping.interval";
+    public static final String HTTP2_SERVER_PING_TIMEOUT = "nukleus.http2.server.ping.timeout";
+    public static final String HTTP2_SERVER_CONTROL_FRAME_RATE = "nukleus.http2.server.control.frame.rate";
+    public static final String HTTP2_SERVER_CONTROL_FRAME_BURST = "nukleus.http2.server.control.frame.burst";
+    public static final String HTTP2_SERVER_STREAM_RESET_RATE = "nukleus.http2.server.stream.reset.rate";
+    public static final String HTTP2_SERVER_STREAM_RESET_BURST = "nukleus.http2.server.stream.reset.burst";
+    public static final String HTTP2_SERVER_COMPRESSION_CONTENT_TYPES = "nukleus.http2.server.compression.content.types";
+    public static final String HTTP2_SERVER_COMPRESSION_LEVEL = "nukleus.http2.server.compression.level";
+    public static final String HTTP2_SERVER_COMPRESSION_MIN_LENGTH = "nukleus.http2.server.compression.min.length";
+    public static final String HTTP2_SERVER_COMPRESSION_POOL_CAPACITY = "nukleus.http2.server.compression.pool.capacity";
+    public static final String HTTP2_SERVER_DECOMPRESSION = "nukleus.http2.server.decompression";
+    public static final String HTTP2_SERVER_DECOMPRESSION_RATIO_LIMIT = "nukleus.http2.server.decompression.ratio.limit";
+    public static final String HTTP2_SERVER_DECOMPRESSION_POOL_CAPACITY = "nukleus.http2.server.decompression.pool.capacity";
+    public static final String HTTP2_SERVER_UPGRADE = "nukleus.http2.server.upgrade";
+    public static final String HTTP2_SERVER_TARGET_CONCURRENT_STREAMS = "nukleus.http2.server.target.concurrent.streams";
+    public static final String HTTP2_SERVER_TARGET_QUEUE_CAPACITY = "nukleus.http2.server.target.queue.capacity";
+    public static final String HTTP2_SERVER_TARGET_QUEUE_TIMEOUT = "nukleus.http2.server.target.queue.timeout";
+    public static final String HTTP2_SERVER_TARGET_BALANCER = "nukleus.http2.server.target.balancer";
+    public static final String HTTP2_SERVER_TARGET_WEIGHTS = "nukleus.http2.server.target.weights";
+    public static final String HTTP2_SERVER_MAX_CONNECTION_STREAMS = "nukleus.http2.server.max.connection.streams";
+    public static final String HTTP2_TIMER_TICK = "nukleus.http2.timer.tick";
+    public static final String HTTP2_CONTROLLER_COMMAND_CAPACITY = "nukleus.http2.controller.command.capacity";
+    public static final String HTTP2_CONTROLLER_ROUTE_BATCH_SIZE = "nukleus.http2.controller.route.batch.size";
+    public static final String HTTP2_CLIENT_MAX_CONNECTIONS = "nukleus.http2.client.max.connections";
 
     private static final int HTTP2_SERVER_CONCURRENT_STREAMS_DEFAULT = Integer.MAX_VALUE;
+    private static final int HTTP2_SERVER_MAX_FRAME_SIZE_DEFAULT = 16_384;           // bytes, protocol default
+    private static final int HTTP2_SERVER_HEADER_TABLE_SIZE_DEFAULT = 4_096;         // bytes, protocol default
     private static final boolean HTTP2_ACCESS_CONTROL_ALLOW_ORIGIN_DEFALUT = false;
+    private static final int HTTP2_SERVER_STREAM_POOL_CAPACITY_DEFAULT = 1024;
+    private static final int HTTP2_SERVER_CORRELATIONS_CAPACITY_DEFAULT = 262_144;
+    private static final int HTTP2_SERVER_CONNECTION_SLOTS_DEFAULT = 128;
+    private static final int HTTP2_SERVER_PUSH_FILTER_BITS_DEFAULT = 4096;
+    private static final int HTTP2_SERVER_CACHE_CAPACITY_DEFAULT = 0;         // disabled
+    private static final int HTTP2_SERVER_PUSH_QUEUE_THRESHOLD_DEFAULT = 64;
+    private static final int HTTP2_SERVER_IDLE_TIMEOUT_DEFAULT = 60_000;             // millis, 0 disables
+    private static final int HTTP2_SERVER_STREAM_IDLE_TIMEOUT_DEFAULT = 30_000;      // millis, 0 disables
+    private static final int HTTP2_SERVER_PING_INTERVAL_DEFAULT = 0;                 // millis, 0 disables
+    private static final int HTTP2_SERVER_PING_TIMEOUT_DEFAULT = 10_000;             // millis
+    private static final int HTTP2_SERVER_CONTROL_FRAME_RATE_DEFAULT = 200;          // per second
+    private static final int HTTP2_SERVER_CONTROL_FRAME_BURST_DEFAULT = 1000;
+    private static final int HTTP2_SERVER_STREAM_RESET_RATE_DEFAULT = 100;           // per second
+    private static final int HTTP2_SERVER_STREAM_RESET_BURST_DEFAULT = 500;
+    private static final String HTTP2_SERVER_COMPRESSION_CONTENT_TYPES_DEFAULT = "";  // disabled
+    private static final int HTTP2_SERVER_COMPRESSION_LEVEL_DEFAULT = 6;
+    private static final int HTTP2_SERVER_COMPRESSION_MIN_LENGTH_DEFAULT = 256;      // bytes
+    private static final int HTTP2_SERVER_COMPRESSION_POOL_CAPACITY_DEFAULT = 64;
+    private static final boolean HTTP2_SERVER_DECOMPRESSION_DEFAULT = false;
+    private static final int HTTP2_SERVER_DECOMPRESSION_RATIO_LIMIT_DEFAULT = 100;
+    private static final int HTTP2_SERVER_DECOMPRESSION_POOL_CAPACITY_DEFAULT = 64;
+    private static final boolean HTTP2_SERVER_UPGRADE_DEFAULT = false;               // prior knowledge only
+    private static final String HTTP2_SERVER_TARGET_CONCURRENT_STREAMS_DEFAULT = "";   // [target=]limit,... no limit
+    private static final int HTTP2_SERVER_TARGET_QUEUE_CAPACITY_DEFAULT = 16;
+    private static final int HTTP2_SERVER_TARGET_QUEUE_TIMEOUT_DEFAULT = 1_000;      // millis
+    private static final String HTTP2_SERVER_TARGET_BALANCER_DEFAULT = "first";   // round-robin, least-streams, two-choices
+    private static final String HTTP2_SERVER_TARGET_WEIGHTS_DEFAULT = "";         // target=weight,... weight 1
+    private static final int HTTP2_SERVER_MAX_CONNECTION_STREAMS_DEFAULT = 0;       // 0 disables
+    private static final int HTTP2_TIMER_TICK_DEFAULT = 100;                         // millis
+    private static final int HTTP2_CONTROLLER_COMMAND_CAPACITY_DEFAULT = 65_536;     // bytes
+    private static final int HTTP2_CONTROLLER_ROUTE_BATCH_SIZE_DEFAULT = 256;
+    private static final int HTTP2_CLIENT_MAX_CONNECTIONS_DEFAULT = 8;
 
     public Http2Configuration(
         Configuration config)
@@ -36,9 +106,194 @@ public class Http2Configuration extends Configuration
         return getInteger(HTTP2_SERVER_CONCURRENT_STREAMS, HTTP2_SERVER_CONCURRENT_STREAMS_DEFAULT);
     }
 
+    public int serverMaxFrameSize()
+    {
+        return getInteger(HTTP2_SERVER_MAX_FRAME_SIZE, HTTP2_SERVER_MAX_FRAME_SIZE_DEFAULT);
+    }
+
+    public int serverHeaderTableSize()
+    {
+        return getInteger(HTTP2_SERVER_HEADER_TABLE_SIZE, HTTP2_SERVER_HEADER_TABLE_SIZE_DEFAULT);
+    }
+
     public boolean accessControlAllowOrigin()
     {
         return getBoolean(HTTP2_ACCESS_CONTROL_ALLOW_ORIGIN, HTTP2_ACCESS_CONTROL_ALLOW_ORIGIN_DEFALUT);
     }
 
+    public int streamPoolCapacity()
+    {
+        return getInteger(HTTP2_SERVER_STREAM_POOL_CAPACITY, HTTP2_SERVER_STREAM_POOL_CAPACITY_DEFAULT);
+    }
+
+    public int correlationsCapacity()
+    {
+        return getInteger(HTTP2_SERVER_CORRELATIONS_CAPACITY, HTTP2_SERVER_CORRELATIONS_CAPACITY_DEFAULT);
+    }
+
+    public int connectionSlots()
+    {
+        return getInteger(HTTP2_SERVER_CONNECTION_SLOTS, HTTP2_SERVER_CONNECTION_SLOTS_DEFAULT);
+    }
+
+    public int pushFilterBits()
+    {
+        return getInteger(HTTP2_SERVER_PUSH_FILTER_BITS, HTTP2_SERVER_PUSH_FILTER_BITS_DEFAULT);
+    }
+
+    public int cacheCapacity()
+    {
+        return getInteger(HTTP2_SERVER_CACHE_CAPACITY, HTTP2_SERVER_CACHE_CAPACITY_DEFAULT);
+    }
+
+    public int pushQueueThreshold()
+    {
+        return getInteger(HTTP2_SERVER_PUSH_QUEUE_THRESHOLD, HTTP2_SERVER_PUSH_QUEUE_THRESHOLD_DEFAULT);
+    }
+
+    public int idleTimeout()
+    {
+        return getInteger(HTTP2_SERVER_IDLE_TIMEOUT, HTTP2_SERVER_IDLE_TIMEOUT_DEFAULT);
+    }
+
+    public int streamIdleTimeout()
+    {
+        return getInteger(HTTP2_SERVER_STREAM_IDLE_TIMEOUT, HTTP2_SERVER_STREAM_IDLE_TIMEOUT_DEFAULT);
+    }
+
+    public int pingInterval()
+    {
+        return getInteger(HTTP2_SERVER_PING_INTERVAL, HTTP2_SERVER_PING_INTERVAL_DEFAULT);
+    }
+
+    public int pingTimeout()
+    {
+        return getInteger(HTTP2_SERVER_PING_TIMEOUT, HTTP2_SERVER_PING_TIMEOUT_DEFAULT);
+    }
+
+    public int controlFrameRate()
+    {
+        return getInteger(HTTP2_SERVER_CONTROL_FRAME_RATE, HTTP2_SERVER_CONTROL_FRAME_RATE_DEFAULT);
+    }
+
+    public int controlFrameBurst()
+    {
+        return getInteger(HTTP2_SERVER_CONTROL_FRAME_BURST, HTTP2_SERVER_CONTROL_FRAME_BURST_DEFAULT);
+    }
+
+    public int streamResetRate()
+    {
+        return getInteger(HTTP2_SERVER_STREAM_RESET_RATE, HTTP2_SERVER_STREAM_RESET_RATE_DEFAULT);
+    }
+
+    public int streamResetBurst()
+    {
+        return getInteger(HTTP2_SERVER_STREAM_RESET_BURST, HTTP2_SERVER_STREAM_RESET_BURST_DEFAULT);
+    }
+
+    /*
+     * @return comma separated content-type prefixes of responses to compress, e.g. "text/,application/json"
+     */
+    public String compressionContentTypes()
+    {
+        return getProperty(HTTP2_SERVER_COMPRESSION_CONTENT_TYPES, HTTP2_SERVER_COMPRESSION_CONTENT_TYPES_DEFAULT);
+    }
+
+    public int compressionLevel()
+    {
+        return getInteger(HTTP2_SERVER_COMPRESSION_LEVEL, HTTP2_SERVER_COMPRESSION_LEVEL_DEFAULT);
+    }
+
+    public int compressionMinLength()
+    {
+        return getInteger(HTTP2_SERVER_COMPRESSION_MIN_LENGTH, HTTP2_SERVER_COMPRESSION_MIN_LENGTH_DEFAULT);
+    }
+
+    public int compressionPoolCapacity()
+    {
+        return getInteger(HTTP2_SERVER_COMPRESSION_POOL_CAPACITY, HTTP2_SERVER_COMPRESSION_POOL_CAPACITY_DEFAULT);
+    }
+
+    public boolean decompression()
+    {
+        return getBoolean(HTTP2_SERVER_DECOMPRESSION, HTTP2_SERVER_DECOMPRESSION_DEFAULT);
+    }
+
+    /*
+     * @return true if connections may also start with an HTTP/1.1 request that upgrades to h2c,
+     *         in which case the server SETTINGS wait for the first bytes of the connection
+     */
+    public boolean upgrade()
+    {
+        return getBoolean(HTTP2_SERVER_UPGRADE, HTTP2_SERVER_UPGRADE_DEFAULT);
+    }
+
+    /*
+     * @return how many times larger than its compressed size a request body may inflate to
+     */
+    public int decompressionRatioLimit()
+    {
+        return getInteger(HTTP2_SERVER_DECOMPRESSION_RATIO_LIMIT, HTTP2_SERVER_DECOMPRESSION_RATIO_LIMIT_DEFAULT);
+    }
+
+    public int decompressionPoolCapacity()
+    {
+        return getInteger(HTTP2_SERVER_DECOMPRESSION_POOL_CAPACITY, HTTP2_SERVER_DECOMPRESSION_POOL_CAPACITY_DEFAULT);
+    }
+
+    public String targetConcurrentStreams()
+    {
+        return getProperty(HTTP2_SERVER_TARGET_CONCURRENT_STREAMS, HTTP2_SERVER_TARGET_CONCURRENT_STREAMS_DEFAULT);
+    }
+
+    public int targetQueueCapacity()
+    {
+        return getInteger(HTTP2_SERVER_TARGET_QUEUE_CAPACITY, HTTP2_SERVER_TARGET_QUEUE_CAPACITY_DEFAULT);
+    }
+
+    public int targetQueueTimeout()
+    {
+        return getInteger(HTTP2_SERVER_TARGET_QUEUE_TIMEOUT, HTTP2_SERVER_TARGET_QUEUE_TIMEOUT_DEFAULT);
+    }
+
+    public String targetBalancer()
+    {
+        return getProperty(HTTP2_SERVER_TARGET_BALANCER, HTTP2_SERVER_TARGET_BALANCER_DEFAULT);
+    }
+
+    public String targetWeights()
+    {
+        return getProperty(HTTP2_SERVER_TARGET_WEIGHTS, HTTP2_SERVER_TARGET_WEIGHTS_DEFAULT);
+    }
+
+    public int maxConnectionStreams()
+    {
+        return getInteger(HTTP2_SERVER_MAX_CONNECTION_STREAMS, HTTP2_SERVER_MAX_CONNECTION_STREAMS_DEFAULT);
+    }
+
+    public int timerTick()
+    {
+        return getInteger(HTTP2_TIMER_TICK, HTTP2_TIMER_TICK_DEFAULT);
+    }
+
+    public File drainFile()
+    {
+        return new File(getProperty(DIRECTORY_PROPERTY_NAME, "."), "http2/drain");
+    }
+
+    public int controllerCommandCapacity()
+    {
+        return getInteger(HTTP2_CONTROLLER_COMMAND_CAPACITY, HTTP2_CONTROLLER_COMMAND_CAPACITY_DEFAULT);
+    }
+
+    public int controllerRouteBatchSize()
+    {
+        return getInteger(HTTP2_CONTROLLER_ROUTE_BATCH_SIZE, HTTP2_CONTROLLER_ROUTE_BATCH_SIZE_DEFAULT);
+    }
+
+    public int clientMaxConnections()
+    {
+        return getInteger(HTTP2_CLIENT_MAX_CONNECTIONS, HTTP2_CLIENT_MAX_CONNECTIONS_DEFAULT);
+    }
+
 }
@@ -15,6 +15,7 @@
  */
 package org.reaktivity.nukleus.http2.internal;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.reaktivity.nukleus.buffer.BufferPool.NO_SLOT;
 import static org.reaktivity.nukleus.http2.internal.Http2StreamState.CLOSED;
 import static org.reaktivity.nukleus.http2.internal.Http2StreamState.HALF_CLOSED_REMOTE;
@@ -26,33 +27,27 @@ import static org.reaktivity.nukleus.http2.internal.types.stream.HpackContext.PR
 import static org.reaktivity.nukleus.http2.internal.types.stream.HpackContext.TE;
 import static org.reaktivity.nukleus.http2.internal.types.stream.HpackContext.TRAILERS;
 import static org.reaktivity.nukleus.http2.internal.types.stream.HpackContext.UPGRADE;
-import static org.reaktivity.nukleus.http2.internal.types.stream.HpackHeaderFieldFW.HeaderFieldType.UNKNOWN;
-import static org.reaktivity.nukleus.http2.internal.types.stream.HpackLiteralHeaderFieldFW.LiteralType.INCREMENTAL_INDEXING;
 import static org.reaktivity.nukleus.http2.internal.types.stream.HpackLiteralHeaderFieldFW.LiteralType.WITHOUT_INDEXING;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.BiConsumer;
-import java.util.function.Consumer;
 
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
 import org.agrona.collections.Int2ObjectHashMap;
 import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.buffer.BufferPool;
 import org.reaktivity.nukleus.function.MessageConsumer;
-import org.reaktivity.nukleus.function.MessageFunction;
 import org.reaktivity.nukleus.function.MessagePredicate;
 import org.reaktivity.nukleus.http2.internal.types.HttpHeaderFW;
 import org.reaktivity.nukleus.http2.internal.types.ListFW;
 import org.reaktivity.nukleus.http2.internal.types.OctetsFW;
 import org.reaktivity.nukleus.http2.internal.types.String16FW;
 import org.reaktivity.nukleus.http2.internal.types.StringFW;
-import org.reaktivity.nukleus.http2.internal.types.control.HttpRouteExFW;
-import org.reaktivity.nukleus.http2.internal.types.control.RouteFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.AbortFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.BeginFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.DataFW;
@@ -60,9 +55,7 @@ import org.reaktivity.nukleus.http2.internal.types.stream.EndFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.HpackContext;
 import org.reaktivity.nukleus.http2.internal.types.stream.HpackHeaderBlockFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.HpackHeaderFieldFW;
-import org.reaktivity.nukleus.http2.internal.types.stream.HpackHuffman;
 import org.reaktivity.nukleus.http2.internal.types.stream.HpackLiteralHeaderFieldFW;
-import org.reaktivity.nukleus.http2.internal.types.stream.HpackStringFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.Http2ContinuationFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.Http2DataExFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.Http2DataFW;
@@ -86,7 +79,8 @@ import org.reaktivity.nukleus.route.RouteManager;
 
 final class Http2Connection
 {
-    private static final Map<String, String> EMPTY_HEADERS = Collections.emptyMap();
+    private static final int PRI_METHOD_LENGTH = 4;        // "PRI " of the connection preface
+    private static final DirectBuffer DRAIN_PING = new UnsafeBuffer("h2-drain".getBytes(US_ASCII));
 
     ServerStreamFactory factory;
     private DecoderState decoderState;
@@ -116,11 +110,17 @@ final class Http2Connection
     final long networkReplyId;
     private final HpackContext decodeContext;
     private final HpackContext encodeContext;
-    private final MessageFunction<RouteFW> wrapRoute;
 
     final long networkReplyGroupId;
 
     final Int2ObjectHashMap<Http2Stream> http2Streams;      // HTTP2 stream-id --> Http2Stream
+    private final StreamIdSet pushableStreamIds;            // client-initiated streams that are not closed
+    private PushedResources pushedResources;                // created on first push
+    private Deque<DeferredPush> deferredPushes;             // created on first deferred push
+    private boolean resumingPushes;
+    private Deque<Http2Stream> pausedCompressions;          // created on first paused compressed response
+    private boolean resumingCompressions;
+    int correlationHead = Correlations.NO_SLOT;             // list of this connection's slots in Correlations
 
     private int clientStreamCount;
     private int promisedStreamCount;
@@ -128,17 +128,29 @@ final class Http2Connection
     private int maxPushPromiseStreamId;
 
     private boolean goaway;
+    private boolean goawaySent;
+    private boolean initialSettingsSent;
+    private long drainDeadline;
+    private int acceptedStreams;
+    private boolean closed;
+    private final TimerWheel.Timer idleTimer;
+    private long lastActive;
+    private final TimerWheel.Timer pingTimer;
+    private long pingSentNanos;
+    private long smoothedRtt;
+    private TokenBucket controlFrames;
+    private TokenBucket streamResets;
+    final SlotBudget slotBudget;
     Settings initialSettings;
+    private final Deque<Settings> pendingSettings;
     Settings localSettings;
     Settings remoteSettings;
     private boolean expectContinuation;
     private int expectContinuationStreamId;
-    private boolean expectDynamicTableSizeUpdate = true;
     long http2OutWindow;
     long http2InWindow;
 
-    private final Consumer<HpackHeaderFieldFW> headerFieldConsumer;
-    private final Consumer<HpackHeaderFieldFW> trailerFieldConsumer;
+    private final HeaderFieldDecoder headerFieldDecoder;
     private final HeadersContext headersContext = new HeadersContext();
     private final EncodeHeadersContext encodeHeadersContext = new EncodeHeadersContext();
     final Http2Writer http2Writer;
@@ -149,26 +161,37 @@ final class Http2Connection
 
     private Http2ErrorCode decodeError;
 
+    private final MessagePredicate routeFilter;
+    private final MessagePredicate candidateFilter;
+    private final MessagePredicate selectedFilter;
+    private int candidate;
+    private int selectedCandidate;
+    private RouteTable.Route firstCandidate;
+    private final Map<String, String> promisedHeaders;
+    private Map<String, String> requestHeaders;
+
     Http2Connection(
         ServerStreamFactory factory,
         RouteManager router,
         MessageConsumer network,
         long networkId,
         MessageConsumer networkReply,
-        long networkReplyId,
-        MessageFunction<RouteFW> wrapRoute)
+        long networkReplyId)
     {
         this.factory = factory;
         this.router = router;
-        this.wrapRoute = wrapRoute;
         this.network = network;
         this.networkId = networkId;
         this.networkReplyId = networkReplyId;
         this.http2Streams = new Int2ObjectHashMap<>();
+        this.pushableStreamIds = new StreamIdSet();
+        this.slotBudget = new SlotBudget(factory.config.connectionSlots());
         this.localSettings = new Settings();
+        this.pendingSettings = new ArrayDeque<>();
         this.remoteSettings = new Settings();
         this.decodeContext = new HpackContext(localSettings.headerTableSize, false);
         this.encodeContext = new HpackContext(remoteSettings.headerTableSize, true);
+        this.headerFieldDecoder = new HeaderFieldDecoder();
         this.http2Writer = factory.http2Writer;
         this.writeScheduler = new Http2WriteScheduler(this, networkReply, http2Writer, this.networkReplyId);
         this.http2InWindow = localSettings.initialWindowSize;
@@ -176,19 +199,12 @@ final class Http2Connection
         this.networkReply = networkReply;
         this.networkReplyGroupId = factory.supplyGroupId.getAsLong();
 
-        BiConsumer<DirectBuffer, DirectBuffer> nameValue =
-                ((BiConsumer<DirectBuffer, DirectBuffer>)this::collectHeaders)
-                        .andThen(this::mapToHttp)
-                        .andThen(this::validatePseudoHeaders)
-                        .andThen(this::uppercaseHeaders)
-                        .andThen(this::connectionHeaders)
-                        .andThen(this::contentLengthHeader)
-                        .andThen(this::teHeader);
-
-        Consumer<HpackHeaderFieldFW> consumer = this::validateHeaderFieldType;
-        consumer = consumer.andThen(this::dynamicTableSizeUpdate);
-        this.headerFieldConsumer = consumer.andThen(h -> decodeHeaderField(h, nameValue));
-        this.trailerFieldConsumer = h -> decodeHeaderField(h, this::validateTrailerFieldName);
+        this.routeFilter = this::matchRoute;
+        this.candidateFilter = this::collectRoute;
+        this.selectedFilter = this::matchSelectedRoute;
+        this.idleTimer = new TimerWheel.Timer(this::onIdleTimeout);
+        this.pingTimer = new TimerWheel.Timer(this::onPingTimer);
+        this.promisedHeaders = new HashMap<>();
     }
 
     void handleBegin(
@@ -197,10 +213,32 @@ final class Http2Connection
         this.authorization = beginRO.authorization();
         this.sourceRef = beginRO.sourceRef();
         this.sourceName = beginRO.source().asString();
-        this.decoderState = this::decodePreface;
+        this.decoderState = factory.config.upgrade() ? this::decodeProtocol : this::decodePreface;
         this.initialSettings = new Settings(factory.config.serverConcurrentStreams(), 0);
-        writeScheduler.settings(initialSettings.maxConcurrentStreams, initialSettings.initialWindowSize);
-        factory.counters.settingsFramesWritten.getAsLong();
+        this.initialSettings.headerTableSize = factory.config.serverHeaderTableSize();
+        this.initialSettings.maxFrameSize = factory.maxFrameSize;
+
+        factory.connections.put(networkId, this);
+        if (factory.drainDeadline != 0L)
+        {
+            drain(factory.drainDeadline);
+        }
+
+        lastActive = factory.timers.now();
+        controlFrames = new TokenBucket(factory.config.controlFrameRate(), factory.config.controlFrameBurst(), lastActive);
+        streamResets = new TokenBucket(factory.config.streamResetRate(), factory.config.streamResetBurst(), lastActive);
+
+        final int idleTimeout = factory.config.idleTimeout();
+        if (idleTimeout > 0)
+        {
+            factory.timers.schedule(idleTimer, lastActive + idleTimeout);
+        }
+
+        if (!factory.config.upgrade())
+        {
+            // 3.5 with prior knowledge only, the server connection preface is sent right away
+            doInitialSettings();
+        }
     }
 
     void handleData(
@@ -249,7 +287,7 @@ final class Http2Connection
             {
                 assert frameSlotLimit == 0;
 
-                final int newFrameSlot = factory.framePool.acquire(networkId);
+                final int newFrameSlot = acquireSlot(factory.framePool, networkId);
                 if (newFrameSlot != NO_SLOT)
                 {
                     frameSlot = newFrameSlot;
@@ -310,6 +348,255 @@ final class Http2Connection
         doCleanup();
     }
 
+    /*
+     * Connection preface with prior knowledge, otherwise an HTTP/1.1 request that may upgrade to h2c.
+     * The server SETTINGS are sent once the client preface is recognized, or after the 101 response,
+     * as they must not precede an HTTP/1.1 response on the same connection
+     */
+    private int decodeProtocol(
+        final DirectBuffer buffer,
+        final int offset,
+        final int limit)
+    {
+        final int length = Math.min(limit - offset, PRI_METHOD_LENGTH);
+        boolean priorKnowledge = true;
+        for (int i = 0; i < length && priorKnowledge; i++)
+        {
+            priorKnowledge = buffer.getByte(offset + i) == Http2PrefaceFW.PRI_REQUEST[i];
+        }
+
+        if (priorKnowledge && length < PRI_METHOD_LENGTH)
+        {
+            return 0;
+        }
+
+        if (priorKnowledge)
+        {
+            doInitialSettings();
+            this.decoderState = this::decodePreface;
+        }
+        else
+        {
+            this.decoderState = this::decodeUpgrade;
+        }
+        return decoderState.decode(buffer, offset, limit);
+    }
+
+    private int decodeUpgrade(
+        final DirectBuffer buffer,
+        final int offset,
+        final int limit)
+    {
+        final Http2Upgrade upgrade = factory.upgradeRO;
+        int decodeProgress = upgrade.decode(buffer, offset, limit);
+
+        if (decodeProgress == 0 && limit - offset >= factory.framePool.slotCapacity())
+        {
+            decodeProgress = -1;            // request head does not fit in a frame slot
+        }
+
+        if (decodeProgress < 0)
+        {
+            // only HTTP2 is spoken here, the request cannot be served
+            writeScheduler.http11Response(Http2Upgrade.VERSION_NOT_SUPPORTED);
+            writeScheduler.doEnd();
+            this.decoderState = (b, o, l) -> l - o;
+            decodeProgress = limit - offset;
+            doCleanup();
+        }
+        else if (decodeProgress > 0)
+        {
+            // 3.2 server connection preface (SETTINGS) follows the 101 response
+            writeScheduler.http11Response(Http2Upgrade.SWITCHING_PROTOCOLS);
+            doInitialSettings();
+
+            // 3.2.1 HTTP2-Settings are acknowledged by the 101 response
+            final Http2SettingsFW settings = factory.settingsRO.tryWrap(upgrade.settings(), 0, upgrade.settingsLimit());
+            settings.forEach(this::applySetting);
+
+            this.decoderState = this::decodePreface;
+            if (decodeError == null)
+            {
+                doUpgradeRequest(upgrade.headers());
+            }
+        }
+
+        return decodeProgress;
+    }
+
+    private void doInitialSettings()
+    {
+        pendingSettings.add(initialSettings);
+        writeScheduler.settings(initialSettings);
+        factory.counters.settingsFramesWritten.getAsLong();
+        initialSettingsSent = true;
+
+        final int pingInterval = factory.config.pingInterval();
+        if (pingInterval > 0)
+        {
+            factory.timers.schedule(pingTimer, factory.timers.now() + pingInterval);
+        }
+
+        if (drainDeadline != 0L)
+        {
+            startDrain();
+        }
+    }
+
+    /*
+     * Starts a graceful shutdown (6.8). The first GOAWAY with the maximum stream id tells
+     * the client to stop opening streams, a PING measures one round trip so that streams
+     * already in flight reach us, and only then the second GOAWAY carries the real last
+     * stream id. Remaining streams are aborted once the deadline passes.
+     */
+    void drain(
+        long deadline)
+    {
+        if (drainDeadline == 0L && !closed)
+        {
+            drainDeadline = deadline;
+            if (initialSettingsSent)
+            {
+                startDrain();
+            }
+        }
+    }
+
+    /*
+     * Closes the connection if it is still draining after the deadline
+     *
+     * @return 1 if the connection is closed
+     *         0 otherwise
+     */
+    int closeDrained()
+    {
+        if (closed || drainDeadline == 0L)
+        {
+            return 0;
+        }
+
+        finishDrain();
+        if (!closed)
+        {
+            doGoawayAndCleanup();
+        }
+        return 1;
+    }
+
+    // A connection is idle when no frames are received and there are no streams
+    private void onIdleTimeout(
+        long now)
+    {
+        final int idleTimeout = factory.config.idleTimeout();
+        final long deadline = http2Streams.isEmpty() ? lastActive + idleTimeout : now + idleTimeout;
+        if (deadline > now)
+        {
+            factory.timers.schedule(idleTimer, deadline);
+        }
+        else
+        {
+            doGoawayAndCleanup();
+            factory.counters.idleConnectionsClosed.getAsLong();
+        }
+    }
+
+    private void doGoawayAndCleanup()
+    {
+        if (!goawaySent)
+        {
+            goawaySent = true;
+            writeScheduler.goaway(maxClientStreamId, Http2ErrorCode.NO_ERROR);
+            factory.counters.goawayFramesWritten.getAsLong();
+        }
+        http2Streams.forEach((i, s) -> s.onError(traceId));
+        writeScheduler.doEnd();
+        factory.doReset(network, networkId, factory.supplyTrace.getAsLong());
+        doCleanup();
+    }
+
+    private void startDrain()
+    {
+        if (!goawaySent)
+        {
+            writeScheduler.goaway(Integer.MAX_VALUE, Http2ErrorCode.NO_ERROR);
+            factory.counters.goawayFramesWritten.getAsLong();
+
+            writeScheduler.ping(DRAIN_PING, 0, DRAIN_PING.capacity());
+            factory.counters.pingFramesWritten.getAsLong();
+        }
+    }
+
+    private void finishDrain()
+    {
+        if (!goawaySent)
+        {
+            goawaySent = true;
+            writeScheduler.goaway(maxClientStreamId, Http2ErrorCode.NO_ERROR);
+            factory.counters.goawayFramesWritten.getAsLong();
+        }
+        endIfDrained();
+    }
+
+    /*
+     * A long lived connection stays on the core that accepted it. Once it has carried its share of
+     * streams, it is drained without a deadline, so that the client reconnects and the new connection
+     * can be distributed to any core (for e.g. SO_REUSEPORT hashes the new source port)
+     */
+    private void rebalanceIfExhausted()
+    {
+        final int maxConnectionStreams = factory.config.maxConnectionStreams();
+        if (maxConnectionStreams > 0 && ++acceptedStreams == maxConnectionStreams)
+        {
+            drain(Long.MAX_VALUE);
+            factory.counters.connectionsRebalanced.getAsLong();
+        }
+    }
+
+    private void endIfDrained()
+    {
+        if (drainDeadline != 0L && goawaySent && http2Streams.isEmpty() && !closed)
+        {
+            writeScheduler.doEnd();
+        }
+    }
+
+    // 3.2 the upgraded HTTP/1.1 request is stream 1, half-closed (remote)
+    private void doUpgradeRequest(
+        Map<String, String> headers)
+    {
+        final int streamId = 1;
+        maxClientStreamId = streamId;
+
+        RouteTable.Route route = resolveTarget(headers);
+        ResponseCache.Entry cached = route != null ? lookupCache(authorization, route, headers) : null;
+        if (route == null)
+        {
+            noRoute(streamId);
+        }
+        else if (cached != null)
+        {
+            doCachedResponse(streamId, headers, cached);
+        }
+        else if (factory.correlations.isFull() || !admitTarget(route.target))
+        {
+            doRstStream(streamId, Http2ErrorCode.REFUSED_STREAM);
+        }
+        else
+        {
+            final String applicationName = route.target;
+            final MessageConsumer applicationTarget = router.supplyTarget(applicationName);
+            Http2Stream stream = newStream(streamId, HALF_CLOSED_REMOTE, applicationTarget);
+            stream.target = factory.targetAdmission.supplyTarget(applicationName);
+            balanceTarget(stream, applicationName);
+            captureResponse(stream, authorization, route, headers);
+
+            factory.httpWriter.doHttpBegin(applicationTarget, stream.targetId, traceId, authorization, route.targetRef,
+                    stream.correlationId, hs -> headers.forEach((n, v) -> hs.item(b -> b.name(n).value(v))));
+            router.setThrottle(applicationName, stream.targetId, stream.throttle);
+            stream.endDeferred = true;
+        }
+    }
+
     private int decodePreface(
         final DirectBuffer buffer,
         final int offset,
@@ -350,10 +637,16 @@ final class Http2Connection
             }
             else if (http2Frame.streamId() == 0)
             {
+                if (http2Frame.type() != Http2FrameType.PING)
+                {
+                    // keepalive does not keep an idle connection open
+                    lastActive = factory.timers.now();
+                }
                 onConnectionFrame(http2Frame);
             }
             else
             {
+                lastActive = factory.timers.now();
                 onStreamFrame(http2Frame);
             }
         }
@@ -380,11 +673,17 @@ final class Http2Connection
         {
         case SETTINGS:
             factory.counters.settingsFramesRead.getAsLong();
-            onConnectionSettings(http2Frame);
+            if (admit(controlFrames))
+            {
+                onConnectionSettings(http2Frame);
+            }
             break;
         case PING:
             factory.counters.pingFramesRead.getAsLong();
-            onConnectionPing(http2Frame);
+            if (admit(controlFrames))
+            {
+                onConnectionPing(http2Frame);
+            }
             break;
         case GO_AWAY:
             factory.counters.goawayFramesRead.getAsLong();
@@ -444,7 +743,10 @@ final class Http2Connection
                 break;
             case CONTINUATION:
                 factory.counters.continuationFramesRead.getAsLong();
-                onStreamContinuation(http2Frame);
+                if (admit(controlFrames))
+                {
+                    onStreamContinuation(http2Frame);
+                }
                 break;
             case WINDOW_UPDATE:
                 // "half-closed (remote)" or "closed" stream MUST NOT be treated as error
@@ -454,7 +756,22 @@ final class Http2Connection
             case PRIORITY:
                 // "half-closed (remote)" or "closed" stream MUST NOT be treated as error
                 factory.counters.priorityFramesRead.getAsLong();
-                onStreamPriority(stream, http2Frame);
+                if (admit(controlFrames))
+                {
+                    onStreamPriority(stream, http2Frame);
+                }
+                break;
+            case RST_STREAM:
+                // client may cancel a promised stream whose request is still deferred
+                factory.counters.resetStreamFramesRead.getAsLong();
+                if (!admit(streamResets))
+                {
+                    break;
+                }
+                if (!cancelDeferredPush(streamId))
+                {
+                    this.decodeError = Http2ErrorCode.PROTOCOL_ERROR;
+                }
                 break;
             case UNKNOWN:
                 break;
@@ -477,11 +794,17 @@ final class Http2Connection
                 break;
             case PRIORITY:
                 factory.counters.priorityFramesRead.getAsLong();
-                onStreamPriority(stream, http2Frame);
+                if (admit(controlFrames))
+                {
+                    onStreamPriority(stream, http2Frame);
+                }
                 break;
             case RST_STREAM:
                 factory.counters.resetStreamFramesRead.getAsLong();
-                onStreamRst(stream, http2Frame);
+                if (admit(streamResets))
+                {
+                    onStreamRst(stream, http2Frame);
+                }
                 break;
             case WINDOW_UPDATE:
                 factory.counters.windowUpdateFramesRead.getAsLong();
@@ -496,6 +819,22 @@ final class Http2Connection
         }
     }
 
+    /*
+     * Frames that are cheap to send but cost us work are rate limited, so that a flood of
+     * SETTINGS, PING, PRIORITY, CONTINUATION or RST_STREAM (rapid reset) cannot pin the core
+     */
+    private boolean admit(
+        TokenBucket bucket)
+    {
+        final boolean admitted = bucket.tryAcquire(factory.timers.now());
+        if (!admitted)
+        {
+            decodeError = Http2ErrorCode.ENHANCE_YOUR_CALM;
+            factory.counters.floodsDetected.getAsLong();
+        }
+        return admitted;
+    }
+
     private void onConnectionSettings(
         final Http2FrameFW http2Frame)
     {
@@ -512,12 +851,12 @@ final class Http2Connection
             writeScheduler.settingsAck();
             factory.counters.settingsFramesWritten.getAsLong();
         }
-        else
+        else if (!pendingSettings.isEmpty())
         {
             http2Streams.values().forEach(this::applyInitialWindowDelta);
 
-            // now that peer acked our initial settings, can use them as our local settings
-            localSettings = initialSettings;
+            // SETTINGS are acked in the order they are sent, the oldest pending ones now apply locally
+            localSettings = pendingSettings.poll();
         }
     }
 
@@ -537,6 +876,54 @@ final class Http2Connection
 
             factory.counters.pingFramesWritten.getAsLong();
         }
+        else if (drainDeadline != 0L && DRAIN_PING.equals(ping.payload()))
+        {
+            finishDrain();
+        }
+        else if (pingSentNanos != 0L && ping.payload().getLong(0) == pingSentNanos)
+        {
+            onPingAck(System.nanoTime() - pingSentNanos);
+        }
+    }
+
+    /*
+     * @return smoothed round trip time in nanos, measured by server PINGs (0 until the first ack)
+     */
+    long smoothedRtt()
+    {
+        return smoothedRtt;
+    }
+
+    // A PING with the send time as its opaque payload, the connection is dead if it is not acked in time
+    private void onPingTimer(
+        long now)
+    {
+        if (pingSentNanos != 0L)
+        {
+            doGoawayAndCleanup();
+            factory.counters.deadConnectionsClosed.getAsLong();
+        }
+        else
+        {
+            pingSentNanos = System.nanoTime() | 1L;     // never 0
+            factory.pingBuffer.putLong(0, pingSentNanos);
+            writeScheduler.ping(factory.pingBuffer, 0, 8);
+            factory.counters.pingFramesWritten.getAsLong();
+
+            factory.timers.schedule(pingTimer, now + factory.config.pingTimeout());
+        }
+    }
+
+    private void onPingAck(
+        long rtt)
+    {
+        pingSentNanos = 0L;
+
+        // RFC 6298 smoothing
+        smoothedRtt = smoothedRtt == 0L ? rtt : (7 * smoothedRtt + rtt) / 8;
+        factory.counters.recordRtt(rtt);
+
+        factory.timers.schedule(pingTimer, factory.timers.now() + factory.config.pingInterval());
     }
 
     private void onConnectionGoAway(
@@ -609,18 +996,12 @@ final class Http2Connection
 
         maxClientStreamId = streamId;
 
-        if (clientStreamCount >= localSettings.maxConcurrentStreams)
-        {
-            doRstStream(streamId, Http2ErrorCode.REFUSED_STREAM);
-            return;
-        }
-
         if (!http2Headers.endHeaders())
         {
             assert headersSlotIndex == NO_SLOT;
             assert headersSlotOffset == 0;
 
-            headersSlotIndex = factory.headersPool.acquire(networkId);
+            headersSlotIndex = acquireSlot(factory.headersPool, networkId);
             if (headersSlotIndex == NO_SLOT)
             {
                 // all slots are in use, just reset the connection
@@ -654,9 +1035,8 @@ final class Http2Connection
         }
 
         Http2HeadersFW http2Trailers = factory.headersRO.wrap(http2Frame.buffer(), http2Frame.offset(), http2Frame.limit());
-        HpackHeaderBlockFW headerBlock = factory.blockRO.wrap(http2Trailers.buffer(), http2Trailers.dataOffset(),
-                http2Trailers.dataOffset() + http2Trailers.dataLength());
-        headerBlock.forEach(trailerFieldConsumer);
+        headerFieldDecoder.decode(http2Trailers.buffer(), http2Trailers.dataOffset(),
+                http2Trailers.dataOffset() + http2Trailers.dataLength(), true);
 
         if (headersContext.error())
         {
@@ -691,6 +1071,14 @@ final class Http2Connection
         DirectBuffer payload = http2Continuation.payload();
 
         MutableDirectBuffer headersBuffer = factory.headersPool.buffer(headersSlotIndex);
+        if (headersSlotOffset + payload.capacity() > factory.headersPool.slotCapacity())
+        {
+            // header block does not fit the slot, CONTINUATION frames are not buffered without limit
+            decodeError = Http2ErrorCode.ENHANCE_YOUR_CALM;
+            factory.counters.floodsDetected.getAsLong();
+            return;
+        }
+
         headersBuffer.putBytes(headersSlotOffset, payload, 0, payload.capacity());
         headersSlotOffset += payload.capacity();
 
@@ -719,9 +1107,23 @@ final class Http2Connection
 
         headersContext.reset();
 
+        if (clientStreamCount >= localSettings.maxConcurrentStreams || goawaySent)
+        {
+            // a refused header block is still decoded to keep the dynamic table in sync with the client
+            headerFieldDecoder.discard(headersBuffer, headersOffset, headersLimit);
+            if (headersContext.connectionError != null)
+            {
+                decodeError = headersContext.connectionError;
+            }
+            else
+            {
+                doRstStream(streamId, Http2ErrorCode.REFUSED_STREAM);
+            }
+            return;
+        }
+
         factory.httpBeginExRW.wrap(factory.scratch, 0, factory.scratch.capacity());
-        HpackHeaderBlockFW headerBlock = factory.blockRO.wrap(headersBuffer, headersOffset, headersLimit);
-        headerBlock.forEach(headerFieldConsumer);
+        headerFieldDecoder.decode(headersBuffer, headersOffset, headersLimit, false);
 
         // All HTTP/2 requests MUST include exactly one valid value for the
         // ":method", ":scheme", and ":path" pseudo-header fields, unless it is
@@ -748,15 +1150,30 @@ final class Http2Connection
             }
         }
 
-        RouteFW route = resolveTarget(sourceRef, sourceName, headersContext.headers);
+        RouteTable.Route route = resolveTarget(headersContext.headers);
         if (route == null)
         {
             noRoute(streamId);
         }
+        else if (factory.correlations.isFull())
+        {
+            // correlation table is at capacity, client may retry the request
+            doRstStream(streamId, Http2ErrorCode.REFUSED_STREAM);
+        }
         else
         {
             Http2StreamState nextState = http2Frame.endStream() ? HALF_CLOSED_REMOTE : OPEN;
-            followRoute(streamId, nextState, route);
+            ResponseCache.Entry cached = nextState == HALF_CLOSED_REMOTE
+                    ? lookupCache(authorization, route, headersContext.headers)
+                    : null;
+            if (cached != null)
+            {
+                doCachedResponse(streamId, headersContext.headers, cached);
+            }
+            else
+            {
+                followRoute(streamId, nextState, route);
+            }
         }
     }
 
@@ -947,7 +1364,7 @@ final class Http2Connection
     private void applyInitialWindowDelta(
         Http2Stream http2Stream)
     {
-        final int initialWindowDelta = initialSettings.initialWindowSize - localSettings.initialWindowSize;
+        final int initialWindowDelta = pendingSettings.peek().initialWindowSize - localSettings.initialWindowSize;
         http2Stream.http2InWindow += initialWindowDelta;           // http2InWindow can become negative
     }
 
@@ -955,7 +1372,7 @@ final class Http2Connection
     {
         if (frameSlot != NO_SLOT)
         {
-            factory.framePool.release(frameSlot);
+            releaseSlot(factory.framePool, frameSlot);
             frameSlot = NO_SLOT;
             frameSlotLimit = 0;
         }
@@ -965,7 +1382,7 @@ final class Http2Connection
     {
         if (headersSlotIndex != NO_SLOT)
         {
-            factory.headersPool.release(headersSlotIndex);
+            releaseSlot(factory.headersPool, headersSlotIndex);
             headersSlotIndex = NO_SLOT;
             headersSlotOffset = 0;
         }
@@ -979,29 +1396,69 @@ final class Http2Connection
 
     private void doCleanup()
     {
+        goawaySent = true;      // no SETTINGS or GOAWAY while releasing the slots
+        closed = true;
+        factory.connections.remove(networkId);
+        factory.timers.cancel(idleTimer);
+        factory.timers.cancel(pingTimer);
         releaseFrameSlot();
         releaseHeadersSlot();
+        if (deferredPushes != null)
+        {
+            deferredPushes.clear();
+        }
+        if (pausedCompressions != null)
+        {
+            pausedCompressions.clear();
+        }
         http2Streams.values().forEach(this::closeStream);
         http2Streams.clear();
+        factory.correlations.sweep(this);
     }
 
     private void followRoute(
         int streamId,
         Http2StreamState state,
-        RouteFW route)
+        RouteTable.Route route)
     {
-        final String applicationName = route.target().asString();
+        final String applicationName = route.target;
+        final TargetAdmission.Target<Http2Stream> target = factory.targetAdmission.supplyTarget(applicationName);
+        final int admission = target != null ? target.admit() : TargetAdmission.ADMIT;
+        if (admission == TargetAdmission.REFUSE)
+        {
+            // route target is at its limit and its queue is full, client may retry the request
+            doRstStream(streamId, Http2ErrorCode.REFUSED_STREAM);
+            factory.counters.targetStreamsRefused.getAsLong();
+            return;
+        }
+
         final MessageConsumer applicationTarget = router.supplyTarget(applicationName);
         HttpWriter httpWriter = factory.httpWriter;
-        Http2Stream stream = newStream(streamId, state, applicationTarget, httpWriter);
-        final long targetRef = route.targetRef();
+        Http2Stream stream = newStream(streamId, state, applicationTarget);
+        stream.target = target;
+        balanceTarget(stream, applicationName);
+        final long targetRef = route.targetRef;
 
         stream.contentLength = headersContext.contentLength;
+        captureResponse(stream, authorization, route, headersContext.headers);
+        if (factory.decompression)
+        {
+            decodeRequest(stream, state);
+        }
 
         HttpBeginExFW beginEx = factory.httpBeginExRW.build();
-        httpWriter.doHttpBegin(applicationTarget, stream.targetId, traceId, targetRef, stream.correlationId,
-                beginEx.buffer(), beginEx.offset(), beginEx.sizeof());
-        router.setThrottle(applicationName, stream.targetId, stream::onThrottle);
+        if (admission == TargetAdmission.QUEUE)
+        {
+            target.enqueue(stream);
+            stream.enqueue(applicationName, targetRef, traceId, beginEx.buffer(), beginEx.offset(), beginEx.sizeof());
+            factory.counters.targetStreamsQueued.getAsLong();
+        }
+        else
+        {
+            httpWriter.doHttpBegin(applicationTarget, stream.targetId, traceId, targetRef, stream.correlationId,
+                    beginEx.buffer(), beginEx.offset(), beginEx.sizeof());
+            router.setThrottle(applicationName, stream.targetId, stream.throttle);
+        }
 
         if (state == HALF_CLOSED_REMOTE)
         {
@@ -1010,21 +1467,131 @@ final class Http2Connection
         }
     }
 
-    // No route for the HTTP2 request, send 404 on the corresponding HTTP2 stream
-    private void noRoute(
-        int streamId)
+    // Begins the request of a queued stream, once a stream of its route target is closed
+    private void admitStream(
+        Http2Stream stream)
     {
-        send404(streamId);
+        factory.counters.recordQueueWait(stream.dequeue());
+        factory.counters.targetStreamsDequeued.getAsLong();
+
+        final MessageConsumer applicationTarget = router.supplyTarget(stream.applicationName);
+        factory.httpWriter.doHttpBegin(applicationTarget, stream.targetId, stream.beginTraceId, stream.applicationRef,
+                stream.correlationId, stream.beginEx, 0, stream.beginExLength);
+        router.setThrottle(stream.applicationName, stream.targetId, stream.throttle);
     }
 
-    // No route for the HTTP2 request, send 404 on the corresponding HTTP2 stream
-    void send404(
-        int streamId)
+    // Refuses a queued stream that is not admitted within the queue timeout, client may retry the request
+    void refuseStream(
+        Http2Stream stream)
     {
-        ListFW<HttpHeaderFW> headers =
-                factory.headersRW.wrap(factory.errorBuf, 0, factory.errorBuf.capacity())
-                                 .item(b -> b.name(":status").value("404"))
-                                 .build();
+        doRstStream(stream.http2StreamId, Http2ErrorCode.REFUSED_STREAM);
+        closeStream(stream);
+    }
+
+    /*
+     * Admits a request that does not wait in the queue of its route target
+     *
+     * @return true if the request is admitted, false if the route target is at its limit
+     */
+    private boolean admitTarget(
+        String applicationName)
+    {
+        final TargetAdmission.Target<Http2Stream> target = factory.targetAdmission.supplyTarget(applicationName);
+        final boolean admitted = target == null || target.admit() == TargetAdmission.ADMIT;
+        if (!admitted)
+        {
+            factory.counters.targetStreamsRefused.getAsLong();
+        }
+        return admitted;
+    }
+
+    // Counts the outstanding streams of the route target, when requests are balanced over targets
+    private void balanceTarget(
+        Http2Stream stream,
+        String applicationName)
+    {
+        final TargetBalancer.Target balancerTarget = factory.targetBalancer.supplyTarget(applicationName);
+        if (balancerTarget != null)
+        {
+            balancerTarget.acquire();
+            stream.balancerTarget = balancerTarget;
+        }
+    }
+
+    /*
+     * Releases the place of a closed stream on its route target
+     *
+     * @return the queued stream that takes the place
+     *         null otherwise
+     */
+    private Http2Stream releaseTarget(
+        Http2Stream stream)
+    {
+        if (stream.balancerTarget != null)
+        {
+            stream.balancerTarget.release();
+        }
+
+        Http2Stream admitted = null;
+        final TargetAdmission.Target<Http2Stream> target = stream.target;
+        if (target != null)
+        {
+            if (stream.queued)
+            {
+                target.remove(stream);
+                factory.counters.targetStreamsDequeued.getAsLong();
+            }
+            else
+            {
+                admitted = target.release();
+            }
+        }
+        return admitted;
+    }
+
+    // content-encoding and content-length are held back while the request headers are decoded. The
+    // request body is inflated when it has a single coding that can be, else they are forwarded as is
+    private void decodeRequest(
+        Http2Stream stream,
+        Http2StreamState state)
+    {
+        final String contentEncoding = headersContext.headers.get("content-encoding");
+        final String contentLength = headersContext.headers.get("content-length");
+        final int encoding = state == OPEN ? RequestDecompressor.encoding(contentEncoding) : ResponseCompressor.IDENTITY;
+        if (encoding != ResponseCompressor.IDENTITY)
+        {
+            final int ratioLimit = factory.config.decompressionRatioLimit();
+            stream.httpWriteScheduler.decode(factory.decompressors.acquire().init(encoding, ratioLimit));
+            factory.counters.requestsDecompressed.getAsLong();
+        }
+        else
+        {
+            if (contentEncoding != null)
+            {
+                factory.httpBeginExRW.headersItem(item -> item.name("content-encoding").value(contentEncoding));
+            }
+            if (contentLength != null)
+            {
+                factory.httpBeginExRW.headersItem(item -> item.name("content-length").value(contentLength));
+            }
+        }
+    }
+
+    // No route for the HTTP2 request, send 404 on the corresponding HTTP2 stream
+    private void noRoute(
+        int streamId)
+    {
+        send404(streamId);
+    }
+
+    // No route for the HTTP2 request, send 404 on the corresponding HTTP2 stream
+    void send404(
+        int streamId)
+    {
+        ListFW<HttpHeaderFW> headers =
+                factory.headersRW.wrap(factory.errorBuf, 0, factory.errorBuf.capacity())
+                                 .item(b -> b.name(":status").value("404"))
+                                 .build();
 
         writeScheduler.headers(0, streamId, Http2Flags.END_STREAM, headers);
 
@@ -1048,46 +1615,182 @@ final class Http2Connection
             if (stream.isClientInitiated())
             {
                 clientStreamCount--;
+                pushableStreamIds.remove(stream.http2StreamId);
             }
             else
             {
                 promisedStreamCount--;
             }
-            factory.correlations.remove(stream.correlationId);
+            factory.correlations.remove(stream.correlationHandle);
             http2Streams.remove(stream.http2StreamId);
+            final Http2Stream admitted = releaseTarget(stream);
             stream.close();
+            stream.reset();
+            factory.streamPool.release(stream);
+
+            if (admitted != null)
+            {
+                admitted.connection.admitStream(admitted);
+            }
+
+            endIfDrained();
         }
     }
 
-    RouteFW resolveTarget(
-            long sourceRef,
-            String sourceName,
-            Map<String, String> headers)
+    // Both client requests and promised requests are routed here, the filter is bound once per connection
+    RouteTable.Route resolveTarget(
+        Map<String, String> headers)
     {
-        MessagePredicate filter = (t, b, o, l) ->
+        this.requestHeaders = headers;
+        RouteTable.Route route;
+        final TargetBalancer balancer = factory.targetBalancer;
+        if (balancer.enabled())
+        {
+            // targets of the first matching route and of the matching routes with the same headers are the
+            // candidates, so a more specific route still takes precedence over a catch-all one
+            balancer.reset();
+            firstCandidate = null;
+            router.resolve(authorization, candidateFilter, factory.supplyRoute);
+            candidate = 0;
+            selectedCandidate = balancer.select();
+            route = selectedCandidate != -1 ? router.resolve(authorization, selectedFilter, factory.supplyRoute) : null;
+            firstCandidate = null;
+        }
+        else
         {
-            RouteFW route = factory.routeRO.wrap(b, o, l);
-            OctetsFW extension = route.extension();
-            if (sourceRef == route.sourceRef() && sourceName.equals(route.source().asString()))
+            route = router.resolve(authorization, routeFilter, factory.supplyRoute);
+        }
+        this.requestHeaders = null;
+        return route;
+    }
+
+    private boolean collectRoute(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        final RouteTable.Route route = factory.routeTable.supply(msgTypeId, buffer, index, length);
+        if (isCandidate(route))
+        {
+            if (firstCandidate == null)
             {
-                Map<String, String> routeHeaders;
-                if (extension.sizeof() == 0)
-                {
-                    routeHeaders = EMPTY_HEADERS;
-                }
-                else
-                {
-                    final HttpRouteExFW routeEx = extension.get(factory.httpRouteExRO::wrap);
-                    routeHeaders = new LinkedHashMap<>();
-                    routeEx.headers().forEach(h -> routeHeaders.put(h.name().asString(), h.value().asString()));
-                }
+                firstCandidate = route;
+            }
+            factory.targetBalancer.candidate(route.target);
+        }
+        return false;
+    }
+
+    private boolean matchSelectedRoute(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        final RouteTable.Route route = factory.routeTable.supply(msgTypeId, buffer, index, length);
+        return isCandidate(route) && candidate++ == selectedCandidate;
+    }
 
-                return headers.entrySet().containsAll(routeHeaders.entrySet());
+    private boolean isCandidate(
+        RouteTable.Route route)
+    {
+        return route.matches(sourceRef, sourceName, requestHeaders) &&
+                (firstCandidate == null || route.sameHeaders(firstCandidate));
+    }
+
+    private boolean matchRoute(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        return factory.routeTable.supply(msgTypeId, buffer, index, length).matches(sourceRef, sourceName, requestHeaders);
+    }
+
+    /*
+     * Acquires a slot from the pool, if the connection is within its slot budget
+     *
+     * @return slot if acquired
+     *         NO_SLOT if the connection is at its cap or all slots in the pool are taken
+     */
+    int acquireSlot(
+        BufferPool pool,
+        long streamId)
+    {
+        int slot = NO_SLOT;
+        if (acquireBudget())
+        {
+            slot = pool.acquire(streamId);
+            if (slot == NO_SLOT)
+            {
+                releaseBudget();
             }
-            return false;
-        };
+        }
+        return slot;
+    }
+
+    void releaseSlot(
+        BufferPool pool,
+        int slot)
+    {
+        pool.release(slot);
+        releaseBudget();
+    }
+
+    /*
+     * Accounts a slot against the connection's slot budget, the caller acquires the slot
+     *
+     * @return true if the connection is within its slot budget
+     *         false otherwise
+     */
+    boolean acquireBudget()
+    {
+        final boolean acquired = slotBudget.tryAcquire();
+
+        if (slotBudget.exhausted() && !goawaySent)
+        {
+            // connection is at its cap, existing streams continue but no new streams
+            goawaySent = true;
+            writeScheduler.goaway(maxClientStreamId, Http2ErrorCode.ENHANCE_YOUR_CALM);
+            factory.counters.goawayFramesWritten.getAsLong();
+        }
+
+        adjustConcurrentStreams();
+        return acquired;
+    }
 
-        return router.resolve(authorization, filter, wrapRoute);
+    void releaseBudget()
+    {
+        slotBudget.release();
+
+        adjustConcurrentStreams();
+    }
+
+    // Advertise fewer concurrent streams while the connection is pressured for slots
+    private void adjustConcurrentStreams()
+    {
+        if (goawaySent || !initialSettingsSent)
+        {
+            return;
+        }
+
+        final int configured = factory.config.serverConcurrentStreams();
+        final int maxConcurrentStreams = slotBudget.pressured()
+                ? Math.max(Math.min(clientStreamCount, configured), 1)
+                : configured;
+        final Settings advertised = pendingSettings.isEmpty() ? localSettings : pendingSettings.peekLast();
+        final boolean constrained = advertised.maxConcurrentStreams != configured;
+
+        if (slotBudget.pressured() != constrained && maxConcurrentStreams != advertised.maxConcurrentStreams)
+        {
+            // settings in use stay unchanged until the peer acks the new ones
+            final Settings settings = new Settings(advertised);
+            settings.maxConcurrentStreams = maxConcurrentStreams;
+            pendingSettings.add(settings);
+            writeScheduler.settings(settings);
+            factory.counters.settingsFramesWritten.getAsLong();
+        }
     }
 
     void handleWindow(
@@ -1099,6 +1802,7 @@ final class Http2Connection
     void error(
         Http2ErrorCode errorCode)
     {
+        goawaySent = true;
         writeScheduler.goaway(lastStreamId, errorCode);
 
         factory.counters.goawayFramesWritten.getAsLong();
@@ -1126,6 +1830,74 @@ final class Http2Connection
         factory.counters.resetStreamFramesWritten.getAsLong();
     }
 
+    private PushedResources pushedResources()
+    {
+        if (pushedResources == null)
+        {
+            pushedResources = new PushedResources(factory.config.pushFilterBits());
+        }
+        return pushedResources;
+    }
+
+    private int admitPush()
+    {
+        return factory.pushAdmission.admit(writeScheduler.entryCount(), http2OutWindow, pushWindow(), deferredPushCount());
+    }
+
+    // peer may advertise a large stream window without growing the connection window
+    private int pushWindow()
+    {
+        return Math.min(remoteSettings.initialWindowSize, Settings.DEFAULT_INITIAL_WINDOW_SIZE);
+    }
+
+    private int deferredPushCount()
+    {
+        return deferredPushes == null ? 0 : deferredPushes.size();
+    }
+
+    // PUSH_PROMISE is already sent, the promised request waits until the connection has capacity
+    private void deferPush(
+        int promisedStreamId,
+        long authorization,
+        ListFW<HttpHeaderFW> headers)
+    {
+        if (deferredPushes == null)
+        {
+            deferredPushes = new ArrayDeque<>();
+        }
+        deferredPushes.add(new DeferredPush(promisedStreamId, authorization, headers));
+
+        factory.counters.pushRequestsDeferred.getAsLong();
+    }
+
+    /*
+     * Starts deferred promised requests, in the order they are promised, while the
+     * connection write queue is empty and the connection window has capacity
+     */
+    void resumeDeferredPushes()
+    {
+        if (deferredPushes != null && !resumingPushes)
+        {
+            resumingPushes = true;
+            while (!deferredPushes.isEmpty() && !goawaySent &&
+                    factory.pushAdmission.resume(writeScheduler.entryCount(), http2OutWindow, pushWindow()))
+            {
+                DeferredPush push = deferredPushes.poll();
+                doPromisedRequest(push.promisedStreamId, push.authorization, push.headers());
+            }
+            resumingPushes = false;
+        }
+    }
+
+    /*
+     * @return true if the stream is a deferred push, which is now cancelled
+     */
+    private boolean cancelDeferredPush(
+        int promisedStreamId)
+    {
+        return deferredPushes != null && deferredPushes.removeIf(p -> p.promisedStreamId == promisedStreamId);
+    }
+
     private int nextPromisedId()
     {
         maxPushPromiseStreamId += 2;
@@ -1141,20 +1913,15 @@ final class Http2Connection
     private int findPushId(
         int streamId)
     {
-        if (remoteSettings.enablePush && promisedStreamCount +1 < remoteSettings.maxConcurrentStreams)
+        int pushCount = promisedStreamCount + deferredPushCount();
+        if (remoteSettings.enablePush && pushCount + 1 < remoteSettings.maxConcurrentStreams &&
+                !factory.correlations.isFull())
         {
             // PUSH_PROMISE frames MUST only be sent on a peer-initiated stream
             if (streamId%2 == 0)
             {
                 // Find a stream on which PUSH_PROMISE can be sent
-                return http2Streams.entrySet()
-                                   .stream()
-                                   .map(Map.Entry::getValue)
-                                   .filter(s -> (s.http2StreamId & 0x01) == 1)     // client-initiated stream
-                                   .filter(s -> s.state == OPEN || s.state == HALF_CLOSED_REMOTE)
-                                   .mapToInt(s -> s.http2StreamId)
-                                   .findAny()
-                                   .orElse(-1);
+                return pushableStreamIds.any();
             }
             else
             {
@@ -1169,90 +1936,164 @@ final class Http2Connection
         long authorization,
         ListFW<HttpHeaderFW> headers)
     {
-        Map<String, String> headersMap = new HashMap<>();
-        headers.forEach(
-                httpHeader -> headersMap.put(httpHeader.name().asString(), httpHeader.value().asString()));
-        RouteFW route = resolveTarget(sourceRef, sourceName, headersMap);
-        final String applicationName = route.target().asString();
+        promisedHeaders.clear();
+        headers.forEach(h -> promisedHeaders.put(h.name().asString(), h.value().asString()));
+
+        RouteTable.Route route = resolveTarget(promisedHeaders);
+        if (route == null)
+        {
+            noRoute(http2StreamId);
+            return;
+        }
+
+        ResponseCache.Entry cached = lookupCache(authorization, route, promisedHeaders);
+        if (cached != null)
+        {
+            doCachedResponse(http2StreamId, promisedHeaders, cached);
+            return;
+        }
+
+        final String applicationName = route.target;
+        if (!admitTarget(applicationName))
+        {
+            // the client fetches the resource itself when it is needed
+            doRstStream(http2StreamId, Http2ErrorCode.REFUSED_STREAM);
+            return;
+        }
+
         final MessageConsumer applicationTarget = router.supplyTarget(applicationName);
         HttpWriter httpWriter = factory.httpWriter;
-        Http2Stream http2Stream = newStream(http2StreamId, HALF_CLOSED_REMOTE, applicationTarget, httpWriter);
+        Http2Stream http2Stream = newStream(http2StreamId, HALF_CLOSED_REMOTE, applicationTarget);
+        http2Stream.target = factory.targetAdmission.supplyTarget(applicationName);
+        balanceTarget(http2Stream, applicationName);
         long targetId = http2Stream.targetId;
-        long targetRef = route.targetRef();
+        long targetRef = route.targetRef;
+        captureResponse(http2Stream, authorization, route, promisedHeaders);
 
         httpWriter.doHttpBegin(applicationTarget, targetId, factory.supplyTrace.getAsLong(), authorization,
                 targetRef, http2Stream.correlationId,
                 hs -> headers.forEach(h -> hs.item(b -> b.name(h.name())
                                                          .value(h.value()))));
-        router.setThrottle(applicationName, targetId, http2Stream::onThrottle);
+        router.setThrottle(applicationName, targetId, http2Stream.throttle);
         http2Stream.endDeferred = true;
     }
 
-    private Http2Stream newStream(
+    // responses are cached per route, the route of the request is resolved before the lookup
+    private ResponseCache.Entry lookupCache(
+        long authorization,
+        RouteTable.Route route,
+        Map<String, String> headers)
+    {
+        final ResponseCache cache = factory.responseCache;
+        return cache.enabled() && ResponseCache.isCacheable(authorization, headers)
+                ? cache.lookup(route, headers.get(":authority"), headers.get(":path"))
+                : null;
+    }
+
+    private void captureResponse(
+        Http2Stream stream,
+        long authorization,
+        RouteTable.Route route,
+        Map<String, String> headers)
+    {
+        if (factory.responseCache.enabled() && ResponseCache.isCacheable(authorization, headers))
+        {
+            stream.cacheRoute = route;
+            stream.cacheAuthority = headers.get(":authority");
+            stream.cachePath = headers.get(":path");
+        }
+
+        if (factory.compressionContentTypes.length > 0 && !"HEAD".equals(headers.get(":method")))
+        {
+            stream.acceptEncoding = ResponseCompressor.acceptEncoding(headers.get("accept-encoding"));
+        }
+    }
+
+    // Serves the request from the response cache, without a stream to the application
+    private void doCachedResponse(
         int http2StreamId,
-        Http2StreamState state,
-        MessageConsumer applicationTarget,
-        HttpWriter httpWriter)
+        Map<String, String> headers,
+        ResponseCache.Entry entry)
     {
-        assert http2StreamId != 0;
+        if (!acceptsStream(http2StreamId))
+        {
+            // a cached response takes a stream like any other, client may retry the request
+            doRstStream(http2StreamId, Http2ErrorCode.REFUSED_STREAM);
+            return;
+        }
 
-        Http2Stream http2Stream = new Http2Stream(factory, this, http2StreamId, state, applicationTarget, httpWriter);
-        http2Streams.put(http2StreamId, http2Stream);
+        final ResponseCache cache = factory.responseCache;
+        final Http2Stream stream = newStream(http2StreamId, HALF_CLOSED_REMOTE, null);
+        final boolean promised = !stream.isClientInitiated();
 
-        Correlation correlation = new Correlation(http2Stream.correlationId, networkReplyId, writeScheduler,
-                this::doPromisedRequest, this, http2StreamId, encodeContext, this::nextPromisedId, this::findPushId);
+        if (ResponseCache.notModified(entry, headers.get("if-none-match")))
+        {
+            writeScheduler.headers(traceId, http2StreamId, Http2Flags.NONE, cache.notModifiedHeaders(entry));
+        }
+        else
+        {
+            writeScheduler.headers(traceId, http2StreamId, Http2Flags.NONE, cache.headers(entry));
+            if (entry.bodyLength > 0)
+            {
+                if (!writeScheduler.data(traceId, http2StreamId, cache.buffer(entry), entry.headersLength, entry.bodyLength))
+                {
+                    // stream is already reset
+                    return;
+                }
+                factory.counters.dataFramesWritten.getAsLong();
+            }
+        }
 
-        factory.correlations.put(http2Stream.correlationId, correlation);
-        if (http2Stream.isClientInitiated())
+        if (promised)
         {
-            clientStreamCount++;
+            factory.counters.pushHeadersFramesWritten.getAsLong();
         }
         else
         {
-            promisedStreamCount++;
+            factory.counters.headersFramesWritten.getAsLong();
         }
-        return http2Stream;
+
+        writeScheduler.dataEos(traceId, http2StreamId);
+        factory.counters.dataFramesWritten.getAsLong();
     }
 
-    private void validateHeaderFieldType(
-        HpackHeaderFieldFW hf)
+    /*
+     * @return true if the correlation table and the concurrent streams limit of the
+     *         stream's initiator have room for one more stream
+     */
+    private boolean acceptsStream(
+        int http2StreamId)
     {
-        if (!headersContext.error() && hf.type() == UNKNOWN)
-        {
-            headersContext.connectionError = Http2ErrorCode.COMPRESSION_ERROR;
-        }
+        final boolean clientInitiated = (http2StreamId & 0x01) == 0x01;
+        return !factory.correlations.isFull() &&
+                (clientInitiated ? clientStreamCount < localSettings.maxConcurrentStreams
+                                 : promisedStreamCount < remoteSettings.maxConcurrentStreams);
     }
 
-    private void dynamicTableSizeUpdate(
-        HpackHeaderFieldFW hf)
+    private Http2Stream newStream(
+        int http2StreamId,
+        Http2StreamState state,
+        MessageConsumer applicationTarget)
     {
-        if (!headersContext.error())
+        assert http2StreamId != 0;
+
+        Http2Stream http2Stream = factory.streamPool.acquire().init(this, http2StreamId, state, applicationTarget);
+        http2Streams.put(http2StreamId, http2Stream);
+
+        http2Stream.correlationHandle = factory.correlations.add(http2Stream.correlationId, this, http2StreamId);
+        assert http2Stream.correlationHandle != Correlations.NO_HANDLE;
+
+        if (http2Stream.isClientInitiated())
         {
-            switch (hf.type())
-            {
-                case INDEXED:
-                case LITERAL:
-                    expectDynamicTableSizeUpdate = false;
-                    break;
-                case UPDATE:
-                    if (!expectDynamicTableSizeUpdate)
-                    {
-                        // dynamic table size update MUST occur at the beginning of the first header block
-                        headersContext.connectionError = Http2ErrorCode.COMPRESSION_ERROR;
-                        return;
-                    }
-                    int maxTableSize = hf.tableSize();
-                    if (maxTableSize > localSettings.headerTableSize)
-                    {
-                        headersContext.connectionError = Http2ErrorCode.COMPRESSION_ERROR;
-                        return;
-                    }
-                    decodeContext.updateSize(hf.tableSize());
-                    break;
-                default:
-                    break;
-            }
+            clientStreamCount++;
+            pushableStreamIds.add(http2StreamId);   // OPEN or HALF_CLOSED_REMOTE until closed
+            rebalanceIfExhausted();
         }
+        else
+        {
+            promisedStreamCount++;
+        }
+        return http2Stream;
     }
 
     private void validatePseudoHeaders(
@@ -1365,14 +2206,22 @@ final class Http2Connection
 
     // Collect headers into map to resolve target
     // TODO avoid this
+    /*
+     * Routing, caching and content coding match requests by a Map of header Strings, so the map is
+     * kept rather than matching on the decoded buffers. Names and values that come from the HPACK
+     * tables reuse the Strings cached by the table, so that only literal fields create new Strings.
+     */
     private void collectHeaders(
         DirectBuffer name,
-        DirectBuffer value)
+        DirectBuffer value,
+        int nameIndex,
+        int valueIndex)
     {
         if (!headersContext.error())
         {
-            String nameStr = name.getStringWithoutLengthUtf8(0, name.capacity());
-            String valueStr = value.getStringWithoutLengthUtf8(0, value.capacity());
+            String nameStr = nameIndex != 0 ? decodeContext.name(nameIndex) : name.getStringWithoutLengthUtf8(0, name.capacity());
+            String valueStr = valueIndex != 0 ? decodeContext.value(valueIndex)
+                    : value.getStringWithoutLengthUtf8(0, value.capacity());
             headersContext.headers.put(nameStr, valueStr);
         }
     }
@@ -1382,128 +2231,109 @@ final class Http2Connection
         DirectBuffer name,
         DirectBuffer value)
     {
-        if (!headersContext.error())
+        if (!headersContext.error() && !(factory.decompression && contentCodingHeader(name)))
         {
             factory.httpBeginExRW.headersItem(item -> item.name(name, 0, name.capacity())
                                                           .value(value, 0, value.capacity()));
         }
     }
 
-    private void decodeHeaderField(
-        HpackHeaderFieldFW hf,
-        BiConsumer<DirectBuffer, DirectBuffer> nameValue)
+    private boolean contentCodingHeader(
+        DirectBuffer name)
     {
-        if (!headersContext.error())
-        {
-            decodeHF(hf, nameValue);
-        }
+        return name.equals(decodeContext.nameBuffer(26)) ||          // content-encoding
+                name.equals(decodeContext.nameBuffer(28));          // content-length
     }
 
-    private void decodeHF(
-        HpackHeaderFieldFW hf,
-        BiConsumer<DirectBuffer, DirectBuffer> nameValue)
+    // Request headers and trailers are decoded in a single pass over the header block
+    private final class HeaderFieldDecoder extends HpackHeaderDecoder
     {
-        int index;
-        DirectBuffer name = null;
-        DirectBuffer value = null;
+        private boolean trailers;
+        private boolean discarding;
 
-        switch (hf.type())
+        HeaderFieldDecoder()
         {
-            case INDEXED :
-                index = hf.index();
-                if (!decodeContext.valid(index))
-                {
-                    headersContext.connectionError = Http2ErrorCode.COMPRESSION_ERROR;
-                    return;
-                }
-                name = decodeContext.nameBuffer(index);
-                value = decodeContext.valueBuffer(index);
-                nameValue.accept(name, value);
-                break;
+            super(decodeContext, factory.blockRO, factory.huffmanNameRW, factory.huffmanNameRO,
+                    factory.huffmanValueRW, factory.huffmanValueRO);
+        }
 
-            case LITERAL :
-                HpackLiteralHeaderFieldFW literalRO = hf.literal();
-                if (literalRO.error())
-                {
-                    headersContext.connectionError = Http2ErrorCode.COMPRESSION_ERROR;
-                    return;
-                }
-                switch (literalRO.nameType())
-                {
-                    case INDEXED:
-                    {
-                        index = literalRO.nameIndex();
-                        if (!decodeContext.valid(index))
-                        {
-                            headersContext.connectionError = Http2ErrorCode.COMPRESSION_ERROR;
-                            return;
-                        }
-                        name = decodeContext.nameBuffer(index);
+        void decode(
+            DirectBuffer buffer,
+            int offset,
+            int limit,
+            boolean trailers)
+        {
+            this.trailers = trailers;
+            this.discarding = false;
+            visit(buffer, offset, limit);
+        }
 
-                        HpackStringFW valueRO = literalRO.valueLiteral();
-                        value = valueRO.payload();
-                        if (valueRO.huffman())
-                        {
-                            MutableDirectBuffer dst = new UnsafeBuffer(new byte[4096]); // TODO
-                            int length = HpackHuffman.decode(value, dst);
-                            if (length == -1)
-                            {
-                                headersContext.connectionError = Http2ErrorCode.COMPRESSION_ERROR;
-                                return;
-                            }
-                            value = new UnsafeBuffer(dst, 0, length);
-                        }
-                        nameValue.accept(name, value);
-                    }
-                    break;
-                    case NEW:
-                    {
-                        HpackStringFW nameRO = literalRO.nameLiteral();
-                        name = nameRO.payload();
-                        if (nameRO.huffman())
-                        {
-                            MutableDirectBuffer dst = new UnsafeBuffer(new byte[4096]); // TODO
-                            int length = HpackHuffman.decode(name, dst);
-                            if (length == -1)
-                            {
-                                headersContext.connectionError = Http2ErrorCode.COMPRESSION_ERROR;
-                                return;
-                            }
-                            name = new UnsafeBuffer(dst, 0, length);
-                        }
+        // updates the dynamic table only, the header fields are not used
+        void discard(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            this.trailers = false;
+            this.discarding = true;
+            visit(buffer, offset, limit);
+        }
 
-                        HpackStringFW valueRO = literalRO.valueLiteral();
-                        value = valueRO.payload();
-                        if (valueRO.huffman())
-                        {
-                            MutableDirectBuffer dst = new UnsafeBuffer(new byte[4096]); // TODO
-                            int length = HpackHuffman.decode(value, dst);
-                            if (length == -1)
-                            {
-                                headersContext.connectionError = Http2ErrorCode.COMPRESSION_ERROR;
-                                return;
-                            }
-                            value = new UnsafeBuffer(dst, 0, length);
-                        }
-                        nameValue.accept(name, value);
-                    }
-                    break;
-                }
-                if (literalRO.literalType() == INCREMENTAL_INDEXING)
-                {
-                    // make a copy for name and value as they go into dynamic table (outlives current frame)
-                    MutableDirectBuffer nameCopy = new UnsafeBuffer(new byte[name.capacity()]);
-                    nameCopy.putBytes(0, name, 0, name.capacity());
-                    MutableDirectBuffer valueCopy = new UnsafeBuffer(new byte[value.capacity()]);
-                    valueCopy.putBytes(0, value, 0, value.capacity());
-                    decodeContext.add(nameCopy, valueCopy);
-                }
-                break;
-            default:
-                break;
+        private void visit(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            if (!decodeBlock(buffer, offset, limit) && !headersContext.error())
+            {
+                // malformed header field
+                headersContext.connectionError = Http2ErrorCode.COMPRESSION_ERROR;
+            }
         }
-    }
 
+        @Override
+        int headerTableSize()
+        {
+            return localSettings.headerTableSize;
+        }
+
+        @Override
+        void onDecodeError(
+            Http2ErrorCode error)
+        {
+            headersContext.connectionError = error;
+        }
+
+        // after a stream error, fields are still decoded to keep the dynamic table in sync
+        @Override
+        boolean onHeaderField(
+            DirectBuffer name,
+            DirectBuffer value,
+            int nameIndex,
+            int valueIndex)
+        {
+            if (discarding)
+            {
+                return true;
+            }
+
+            if (trailers)
+            {
+                validateTrailerFieldName(name, value);
+            }
+            else
+            {
+                collectHeaders(name, value, nameIndex, valueIndex);
+                mapToHttp(name, value);
+                validatePseudoHeaders(name, value);
+                uppercaseHeaders(name, value);
+                connectionHeaders(name, value);
+                contentLengthHeader(name, value);
+                teHeader(name, value);
+            }
+            return headersContext.connectionError == null;
+        }
+    }
 
     void mapPushPromise(
         ListFW<HttpHeaderFW> httpHeaders,
@@ -1679,16 +2509,17 @@ final class Http2Connection
         BeginFW begin,
         MessageConsumer applicationReplyThrottle,
         long applicationReplyId,
-        Correlation correlation)
+        int http2StreamId)
     {
         OctetsFW extension = begin.extension();
-        Http2Stream stream = http2Streams.get(correlation.http2StreamId);
+        Http2Stream stream = http2Streams.get(http2StreamId);
         if (stream == null)
         {
             factory.doReset(applicationReplyThrottle, applicationReplyId, 0);
         }
         else
         {
+            stream.touch();
             stream.applicationReplyThrottle = applicationReplyThrottle;
             stream.applicationReplyId = applicationReplyId;
 
@@ -1697,9 +2528,19 @@ final class Http2Connection
             if (extension.sizeof() > 0)
             {
                 HttpBeginExFW beginEx = extension.get(factory.beginExRO::wrap);
-                writeScheduler.headers(begin.trace(), correlation.http2StreamId, Http2Flags.NONE, beginEx.headers());
+                if (stream.cachePath != null)
+                {
+                    stream.cacheEntry = factory.responseCache.begin(stream.cacheRoute, stream.cacheAuthority, stream.cachePath,
+                            beginEx.headers());
+                }
+                ListFW<HttpHeaderFW> headers = beginEx.headers();
+                if (stream.acceptEncoding != ResponseCompressor.IDENTITY)
+                {
+                    headers = encodeResponse(stream, headers);
+                }
+                writeScheduler.headers(begin.trace(), http2StreamId, Http2Flags.NONE, headers);
 
-                if ((correlation.http2StreamId & 0x01L) == 0x00L)
+                if ((http2StreamId & 0x01L) == 0x00L)
                 {
                     factory.counters.pushHeadersFramesWritten.getAsLong();
                 }
@@ -1713,7 +2554,7 @@ final class Http2Connection
 
     void handleHttpData(
         DataFW dataRO,
-        Correlation correlation)
+        int http2StreamId)
     {
         OctetsFW extension = dataRO.extension();
         OctetsFW payload = dataRO.payload();
@@ -1721,59 +2562,285 @@ final class Http2Connection
 
         if (extension.sizeof() > 0)
         {
-
-            int pushStreamId = correlation.pushStreamIds.applyAsInt(correlation.http2StreamId);
-            if (pushStreamId != -1)
+            Http2DataExFW dataEx = extension.get(factory.dataExRO::wrap);
+            int pushStreamId = findPushId(http2StreamId);
+            int admission = pushStreamId != -1 ? admitPush() : PushAdmission.SKIP;
+            if (admission != PushAdmission.SKIP && pushedResources().add(dataEx.headers()))
             {
-                int promisedStreamId = correlation.promisedStreamIds.getAsInt();
-                Http2DataExFW dataEx = extension.get(factory.dataExRO::wrap);
+                int promisedStreamId = nextPromisedId();
                 writeScheduler.pushPromise(traceId, pushStreamId, promisedStreamId, dataEx.headers());
-                correlation.pushHandler.accept(promisedStreamId, dataRO.authorization(), dataEx.headers());
+                if (admission == PushAdmission.ADMIT)
+                {
+                    doPromisedRequest(promisedStreamId, dataRO.authorization(), dataEx.headers());
+                }
+                else
+                {
+                    deferPush(promisedStreamId, dataRO.authorization(), dataEx.headers());
+                }
 
                 factory.counters.pushPromiseFramesWritten.getAsLong();
             }
             else
             {
+                // no stream to push on, connection is under pressure, or the resource is already pushed
                 factory.counters.pushPromiseFramesSkipped.getAsLong();
             }
         }
 
         if (payload != null)
         {
-            Http2Stream stream = http2Streams.get(correlation.http2StreamId);
+            Http2Stream stream = http2Streams.get(http2StreamId);
             if (stream != null)
             {
+                stream.touch();
                 stream.applicationReplyBudget -= dataRO.length() + dataRO.padding();
                 if (stream.applicationReplyBudget < 0)
                 {
                     doRstByUs(stream, Http2ErrorCode.INTERNAL_ERROR);
                     return;
                 }
+
+                final ResponseCache.Entry cacheEntry = stream.cacheEntry;
+                if (cacheEntry != null &&
+                        !factory.responseCache.append(cacheEntry, payload.buffer(), payload.offset(), payload.sizeof()))
+                {
+                    // response is too large to cache
+                    factory.responseCache.abandon(cacheEntry);
+                    stream.cacheEntry = null;
+                }
             }
 
-            writeScheduler.data(traceId, correlation.http2StreamId, payload.buffer(), payload.offset(), payload.sizeof());
+            final ResponseCompressor compressor = stream != null ? stream.compressor : null;
+            if (compressor != null)
+            {
+                if (!compressor.setInput(payload.buffer(), payload.offset(), payload.sizeof()))
+                {
+                    // more input than the window offered to the application
+                    doRstByUs(stream, Http2ErrorCode.INTERNAL_ERROR);
+                    return;
+                }
+                writeCompressed(traceId, stream);
+            }
+            else
+            {
+                writeScheduler.data(traceId, http2StreamId, payload.buffer(), payload.offset(), payload.sizeof());
+            }
 
             factory.counters.dataFramesWritten.getAsLong();
         }
     }
 
+    /*
+     * Chooses a content coding for the response and rewrites its headers to match. A response
+     * that is already encoded, such as a precompressed variant the application chose from the
+     * request's accept-encoding, is passed through as is.
+     */
+    private ListFW<HttpHeaderFW> encodeResponse(
+        Http2Stream stream,
+        ListFW<HttpHeaderFW> headers)
+    {
+        final Map<String, String> responseHeaders = factory.responseHeaders;
+        responseHeaders.clear();
+        headers.forEach(h -> responseHeaders.put(h.name().asString(), h.value().asString()));
+
+        if (!compressible(responseHeaders))
+        {
+            return headers;
+        }
+
+        final int encoding = (stream.acceptEncoding & ResponseCompressor.GZIP) != 0
+                ? ResponseCompressor.GZIP
+                : ResponseCompressor.DEFLATE;
+        stream.compressor = factory.compressors.acquire().init(encoding);
+        factory.counters.responsesCompressed.getAsLong();
+
+        final String vary = responseHeaders.get("vary");
+        final String etag = responseHeaders.get("etag");
+        final MutableDirectBuffer buffer = factory.encodedHeadersBuffer;
+        final ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW> headersRW = factory.headersRW.wrap(buffer, 0, buffer.capacity());
+        headers.forEach(h ->
+        {
+            final String name = h.name().asString();
+            if (!"content-length".equals(name) && !"vary".equals(name) && !"etag".equals(name))
+            {
+                headersRW.item(b -> b.name(h.name()).value(h.value()));
+            }
+        });
+        headersRW.item(b -> b.name("content-encoding").value(ResponseCompressor.codingName(encoding)));
+        headersRW.item(b -> b.name("vary").value(vary == null ? "accept-encoding" : vary + ", accept-encoding"));
+        if (etag != null)
+        {
+            // the encoded representation is not byte for byte the same as the identity one
+            headersRW.item(b -> b.name("etag").value(etag.startsWith("W/") ? etag : "W/" + etag));
+        }
+        return headersRW.build();
+    }
+
+    private boolean compressible(
+        Map<String, String> responseHeaders)
+    {
+        final String status = responseHeaders.get(":status");
+        if (responseHeaders.containsKey("content-encoding") ||
+                status != null && (status.startsWith("1") || "204".equals(status) || "206".equals(status) ||
+                        "304".equals(status)))
+        {
+            return false;
+        }
+
+        final String cacheControl = responseHeaders.get("cache-control");
+        if (cacheControl != null && cacheControl.contains("no-transform"))
+        {
+            return false;
+        }
+
+        final String contentLength = responseHeaders.get("content-length");
+        if (contentLength != null)
+        {
+            try
+            {
+                if (Long.parseLong(contentLength.trim()) < factory.config.compressionMinLength())
+                {
+                    return false;
+                }
+            }
+            catch (NumberFormatException ex)
+            {
+                return false;
+            }
+        }
+
+        final String contentType = responseHeaders.get("content-type");
+        if (contentType != null)
+        {
+            for (String compressible : factory.compressionContentTypes)
+            {
+                if (contentType.regionMatches(true, 0, compressible, 0, compressible.length()))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Writes the output of the compressor for the input so far as DATA frames, as far as the
+     * reply buffer has room for it. The rest is written by resumeCompressions() once the
+     * buffered DATA is sent.
+     *
+     * @return false if the stream is reset
+     */
+    private boolean writeCompressed(
+        long traceId,
+        Http2Stream stream)
+    {
+        final ResponseCompressor compressor = stream.compressor;
+        while (!compressor.done())
+        {
+            final int limit = Math.min(factory.compressOutput.length, stream.replySpace());
+            if (limit < ResponseCompressor.MIN_OUTPUT)
+            {
+                pauseCompression(stream, traceId);
+                break;
+            }
+
+            final int length = compressor.compress(factory.compressOutput, limit);
+            if (length > 0 && !writeScheduler.data(traceId, stream.http2StreamId, factory.compressOutputRO, 0, length))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void pauseCompression(
+        Http2Stream stream,
+        long traceId)
+    {
+        if (pausedCompressions == null)
+        {
+            pausedCompressions = new ArrayDeque<>();
+        }
+        if (!pausedCompressions.contains(stream))
+        {
+            pausedCompressions.add(stream);
+            factory.counters.compressionsPaused.getAsLong();
+        }
+        if (stream.replyEndDeferred)
+        {
+            stream.replyEndTraceId = traceId;
+        }
+    }
+
+    /*
+     * Writes more of the compressor output of paused responses, after buffered DATA is sent
+     */
+    void resumeCompressions()
+    {
+        if (pausedCompressions != null && !resumingCompressions)
+        {
+            resumingCompressions = true;
+            for (int i = pausedCompressions.size(); i > 0; i--)
+            {
+                final Http2Stream stream = pausedCompressions.poll();
+                if (stream.connection != this || http2Streams.get(stream.http2StreamId) != stream ||
+                        stream.compressor == null)
+                {
+                    // stream is closed since
+                    continue;
+                }
+
+                if (writeCompressed(stream.replyEndTraceId, stream) && stream.compressor.done() && stream.replyEndDeferred)
+                {
+                    stream.replyEndDeferred = false;
+                    stream.onHttpEnd(stream.replyEndTraceId);
+                }
+            }
+            resumingCompressions = false;
+        }
+    }
+
     void handleHttpEnd(
         EndFW end,
-        Correlation correlation)
+        int http2StreamId)
     {
-        Http2Stream stream = http2Streams.get(correlation.http2StreamId);
+        Http2Stream stream = http2Streams.get(http2StreamId);
 
         if (stream != null)
         {
+            if (stream.cacheEntry != null)
+            {
+                factory.responseCache.commit(stream.cacheEntry);
+                stream.cacheEntry = null;
+            }
+
+            final ResponseCompressor compressor = stream.compressor;
+            if (compressor != null)
+            {
+                compressor.finish();
+                stream.replyEndDeferred = true;
+                if (!writeCompressed(end.trace(), stream))
+                {
+                    // stream is already reset
+                    return;
+                }
+                if (!compressor.done())
+                {
+                    // END follows the rest of the compressor output, and the application gets no more windows
+                    stream.applicationReplyThrottle = null;
+                    return;
+                }
+                stream.replyEndDeferred = false;
+            }
             stream.onHttpEnd(end.trace());
         }
     }
 
     void handleHttpAbort(
         AbortFW abort,
-        Correlation correlation)
+        int http2StreamId)
     {
-        Http2Stream stream = http2Streams.get(correlation.http2StreamId);
+        Http2Stream stream = http2Streams.get(http2StreamId);
 
         if (stream != null)
         {
@@ -1781,6 +2848,31 @@ final class Http2Connection
         }
     }
 
+    private static final class DeferredPush
+    {
+        private final int promisedStreamId;
+        private final long authorization;
+        private final MutableDirectBuffer headersBuffer;
+        private final ListFW<HttpHeaderFW> headersRO;
+
+        DeferredPush(
+            int promisedStreamId,
+            long authorization,
+            ListFW<HttpHeaderFW> headers)
+        {
+            this.promisedStreamId = promisedStreamId;
+            this.authorization = authorization;
+            this.headersBuffer = new UnsafeBuffer(new byte[headers.sizeof()]);
+            this.headersBuffer.putBytes(0, headers.buffer(), headers.offset(), headers.sizeof());
+            this.headersRO = new ListFW<>(new HttpHeaderFW());
+        }
+
+        ListFW<HttpHeaderFW> headers()
+        {
+            return headersRO.wrap(headersBuffer, 0, headersBuffer.capacity());
+        }
+    }
+
     private static final class HeadersContext
     {
         Http2ErrorCode connectionError;
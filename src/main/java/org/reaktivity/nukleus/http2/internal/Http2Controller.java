@@ -18,6 +18,8 @@ package org.reaktivity.nukleus.http2.internal;
 import static java.nio.ByteBuffer.allocateDirect;
 import static java.nio.ByteOrder.nativeOrder;
 
+import java.io.File;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
@@ -39,9 +41,7 @@ import org.reaktivity.nukleus.http2.internal.types.control.UnrouteFW;
 
 public final class Http2Controller implements Controller
 {
-    private static final int MAX_SEND_LENGTH = 1024; // TODO: Configuration and Context
-
-    // TODO: thread-safe flyweights or command queue from public methods
+    // flyweights are shared, so commands are encoded and sent under the controller monitor
     private final RouteFW.Builder routeRW = new RouteFW.Builder();
     private final UnrouteFW.Builder unrouteRW = new UnrouteFW.Builder();
     private final FreezeFW.Builder freezeRW = new FreezeFW.Builder();
@@ -50,11 +50,17 @@ public final class Http2Controller implements Controller
 
     private final ControllerSpi controllerSpi;
     private final MutableDirectBuffer writeBuffer;
+    private final File drainFile;
+    private final int routeBatchSize;
 
-    public Http2Controller(ControllerSpi controllerSpi)
+    public Http2Controller(
+        ControllerSpi controllerSpi,
+        Http2Configuration config)
     {
         this.controllerSpi = controllerSpi;
-        this.writeBuffer = new UnsafeBuffer(allocateDirect(MAX_SEND_LENGTH).order(nativeOrder()));
+        this.writeBuffer = new UnsafeBuffer(allocateDirect(config.controllerCommandCapacity()).order(nativeOrder()));
+        this.drainFile = config.drainFile();
+        this.routeBatchSize = config.controllerRouteBatchSize();
     }
 
     @Override
@@ -95,7 +101,7 @@ public final class Http2Controller implements Controller
         return controllerSpi.doSupplyTarget(target, factory);
     }
 
-    public CompletableFuture<Long> routeServer(
+    public synchronized CompletableFuture<Long> routeServer(
             String source,
             long sourceRef,
             String target,
@@ -117,7 +123,25 @@ public final class Http2Controller implements Controller
         return controllerSpi.doRoute(route.typeId(), route.buffer(), route.offset(), route.sizeof());
     }
 
-    public CompletableFuture<Long> routeClient(
+    /*
+     * Routes the source to the target once for each header set, for e.g. the virtual hosts of a server.
+     * Route commands are pipelined, up to the batch size of them are outstanding and the next is sent as
+     * each one completes. The future completes with the route references in the order of the header
+     * sets, or exceptionally as soon as a route fails, in which case the remaining routes are not sent.
+     */
+    public CompletableFuture<long[]> routeServers(
+            String source,
+            long sourceRef,
+            String target,
+            long targetRef,
+            List<Map<String, String>> headerSets)
+    {
+        RouteBatch batch = new RouteBatch(source, sourceRef, target, targetRef, headerSets);
+        batch.flush();
+        return batch.future;
+    }
+
+    public synchronized CompletableFuture<Long> routeClient(
             String source,
             long sourceRef,
             String target,
@@ -139,7 +163,7 @@ public final class Http2Controller implements Controller
         return controllerSpi.doRoute(route.typeId(), route.buffer(), route.offset(), route.sizeof());
     }
 
-    public CompletableFuture<Void> unrouteServer(
+    public synchronized CompletableFuture<Void> unrouteServer(
             String source,
             long sourceRef,
             String target,
@@ -161,7 +185,7 @@ public final class Http2Controller implements Controller
         return controllerSpi.doUnroute(unroute.typeId(), unroute.buffer(), unroute.offset(), unroute.sizeof());
     }
 
-    public CompletableFuture<Void> unrouteClient(
+    public synchronized CompletableFuture<Void> unrouteClient(
             String source,
             long sourceRef,
             String target,
@@ -183,7 +207,7 @@ public final class Http2Controller implements Controller
         return controllerSpi.doUnroute(unroute.typeId(), unroute.buffer(), unroute.offset(), unroute.sizeof());
     }
 
-    public CompletableFuture<Void> freeze()
+    public synchronized CompletableFuture<Void> freeze()
     {
         long correlationId = controllerSpi.nextCorrelationId();
 
@@ -194,6 +218,29 @@ public final class Http2Controller implements Controller
         return controllerSpi.doFreeze(freeze.typeId(), freeze.buffer(), freeze.offset(), freeze.sizeof());
     }
 
+    /*
+     * Gracefully shuts down the server connections, streams still open after the grace
+     * period are aborted. The future completes once the nukleus has been signalled.
+     */
+    public CompletableFuture<Void> drain(
+            long gracePeriodMillis)
+    {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        try (DrainSignal signal = DrainSignal.map(drainFile))
+        {
+            signal.request(gracePeriodMillis);
+            future.complete(null);
+        }
+        catch (Exception ex)
+        {
+            // drain file not yet created by the nukleus
+            future.completeExceptionally(ex);
+        }
+
+        return future;
+    }
+
     private Consumer<OctetsFW.Builder> extension(
             Map<String, String> headers)
     {
@@ -217,4 +264,72 @@ public final class Http2Controller implements Controller
         }
     }
 
+    private final class RouteBatch
+    {
+        private final String source;
+        private final long sourceRef;
+        private final String target;
+        private final long targetRef;
+        private final List<Map<String, String>> headerSets;
+        private final long[] references;
+        private final CompletableFuture<long[]> future;
+
+        private int sent;
+        private int routed;
+        private boolean flushing;
+
+        RouteBatch(
+            String source,
+            long sourceRef,
+            String target,
+            long targetRef,
+            List<Map<String, String>> headerSets)
+        {
+            this.source = source;
+            this.sourceRef = sourceRef;
+            this.target = target;
+            this.targetRef = targetRef;
+            this.headerSets = headerSets;
+            this.references = new long[headerSets.size()];
+            this.future = new CompletableFuture<>();
+        }
+
+        // a route may complete while it is sent, so completions only count and the loop sends the next
+        synchronized void flush()
+        {
+            if (!flushing)
+            {
+                flushing = true;
+                while (sent < headerSets.size() && sent - routed < routeBatchSize && !future.isDone())
+                {
+                    final int index = sent++;
+                    routeServer(source, sourceRef, target, targetRef, headerSets.get(index))
+                        .whenComplete((r, ex) -> onRouted(index, r, ex));
+                }
+                flushing = false;
+            }
+
+            if (routed == headerSets.size())
+            {
+                future.complete(references);
+            }
+        }
+
+        private synchronized void onRouted(
+            int index,
+            Long reference,
+            Throwable ex)
+        {
+            if (ex != null)
+            {
+                future.completeExceptionally(ex);
+            }
+            else
+            {
+                references[index] = reference;
+                routed++;
+                flush();
+            }
+        }
+    }
 }
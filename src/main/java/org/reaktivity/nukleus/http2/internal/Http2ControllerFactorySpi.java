@@ -39,7 +39,7 @@ public final class Http2ControllerFactorySpi implements ControllerFactorySpi<Htt
             ControllerBuilder<Http2Controller> builder)
     {
         return builder.setName(name())
-                      .setFactory(Http2Controller::new)
+                      .setFactory(controllerSpi -> new Http2Controller(controllerSpi, new Http2Configuration(config)))
                       .build();
     }
 
@@ -20,6 +20,9 @@ import java.util.function.LongSupplier;
 
 public class Http2Counters
 {
+    private static final int RTT_BUCKETS = 12;      // up to 1, 2, 4 ... 1024 millis, and above
+    private static final int WAIT_BUCKETS = 12;     // up to 1, 2, 4 ... 1024 millis, and above
+
     public final LongSupplier headersFramesRead;
     public final LongSupplier dataFramesRead;
     public final LongSupplier priorityFramesRead;
@@ -43,6 +46,28 @@ public class Http2Counters
     public final LongSupplier pushPromiseFramesWritten;
     public final LongSupplier pushPromiseFramesSkipped;
     public final LongSupplier pushHeadersFramesWritten;
+    public final LongSupplier pushRequestsDeferred;
+
+    public final LongSupplier idleConnectionsClosed;
+    public final LongSupplier idleStreamsReset;
+    public final LongSupplier deadConnectionsClosed;
+    public final LongSupplier floodsDetected;
+    public final LongSupplier connectionsRebalanced;
+    public final LongSupplier[] pingRtt;
+
+    public final LongSupplier cacheHits;
+    public final LongSupplier cacheMisses;
+    public final LongSupplier cacheEvictions;
+
+    public final LongSupplier responsesCompressed;
+    public final LongSupplier compressionsPaused;
+    public final LongSupplier requestsDecompressed;
+
+    public final LongSupplier targetStreamsQueued;
+    public final LongSupplier targetStreamsDequeued;
+    public final LongSupplier targetStreamsRefused;
+    public final LongSupplier targetQueueTimeouts;
+    public final LongSupplier[] targetQueueWait;
 
     public Http2Counters(
         Function<String, LongSupplier> supplyCounter)
@@ -70,5 +95,55 @@ public class Http2Counters
         this.pushPromiseFramesWritten = supplyCounter.apply("frames.written.push.promise");
         this.pushPromiseFramesSkipped = supplyCounter.apply("frames.skipped.push.promise");
         this.pushHeadersFramesWritten = supplyCounter.apply("frames.written.push.headers");
+        this.pushRequestsDeferred = supplyCounter.apply("push.requests.deferred");
+
+        this.idleConnectionsClosed = supplyCounter.apply("idle.connections.closed");
+        this.idleStreamsReset = supplyCounter.apply("idle.streams.reset");
+        this.deadConnectionsClosed = supplyCounter.apply("dead.connections.closed");
+        this.floodsDetected = supplyCounter.apply("floods.detected");
+        this.connectionsRebalanced = supplyCounter.apply("connections.rebalanced");
+        this.pingRtt = new LongSupplier[RTT_BUCKETS];
+        for (int i = 0; i < RTT_BUCKETS - 1; i++)
+        {
+            pingRtt[i] = supplyCounter.apply("ping.rtt." + (1 << i) + "ms");
+        }
+        pingRtt[RTT_BUCKETS - 1] = supplyCounter.apply("ping.rtt.overflow");
+
+        this.cacheHits = supplyCounter.apply("cache.hits");
+        this.cacheMisses = supplyCounter.apply("cache.misses");
+        this.cacheEvictions = supplyCounter.apply("cache.evictions");
+
+        this.responsesCompressed = supplyCounter.apply("responses.compressed");
+        this.compressionsPaused = supplyCounter.apply("compressions.paused");
+        this.requestsDecompressed = supplyCounter.apply("requests.decompressed");
+
+        // queue depth is target.streams.queued - target.streams.dequeued
+        this.targetStreamsQueued = supplyCounter.apply("target.streams.queued");
+        this.targetStreamsDequeued = supplyCounter.apply("target.streams.dequeued");
+        this.targetStreamsRefused = supplyCounter.apply("target.streams.refused");
+        this.targetQueueTimeouts = supplyCounter.apply("target.queue.timeouts");
+        this.targetQueueWait = new LongSupplier[WAIT_BUCKETS];
+        for (int i = 0; i < WAIT_BUCKETS - 1; i++)
+        {
+            targetQueueWait[i] = supplyCounter.apply("target.queue.wait." + (1 << i) + "ms");
+        }
+        targetQueueWait[WAIT_BUCKETS - 1] = supplyCounter.apply("target.queue.wait.overflow");
+    }
+
+    // Counts the round trip in the smallest power of 2 millis bucket that holds it
+    public void recordRtt(
+        long rttNanos)
+    {
+        final long rttMillis = Math.max((rttNanos + 999_999L) / 1_000_000L, 1L);
+        final int bucket = 64 - Long.numberOfLeadingZeros(rttMillis - 1);
+        pingRtt[Math.min(bucket, RTT_BUCKETS - 1)].getAsLong();
+    }
+
+    // Counts the wait of a stream admitted from a target queue, in the smallest power of 2 millis bucket that holds it
+    public void recordQueueWait(
+        long waitMillis)
+    {
+        final int bucket = 64 - Long.numberOfLeadingZeros(Math.max(waitMillis, 1L) - 1);
+        targetQueueWait[Math.min(bucket, WAIT_BUCKETS - 1)].getAsLong();
     }
 }
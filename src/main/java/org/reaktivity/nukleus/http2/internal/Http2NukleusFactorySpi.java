@@ -20,10 +20,13 @@ import org.reaktivity.nukleus.Nukleus;
 import org.reaktivity.nukleus.NukleusBuilder;
 import org.reaktivity.nukleus.NukleusFactorySpi;
 
+import static org.reaktivity.nukleus.route.RouteKind.CLIENT;
 import static org.reaktivity.nukleus.route.RouteKind.SERVER;
 
 public final class Http2NukleusFactorySpi implements NukleusFactorySpi
 {
+    private static final int TICKS_PER_WHEEL = 512;
+
     @Override
     public String name()
     {
@@ -36,8 +39,15 @@ public final class Http2NukleusFactorySpi implements NukleusFactorySpi
             NukleusBuilder builder)
     {
         Http2Configuration http2Config = new Http2Configuration(config);
-        ServerStreamFactoryBuilder streamFactoryBuilder = new ServerStreamFactoryBuilder(http2Config);
-        return builder.streamFactory(SERVER, streamFactoryBuilder)
+        DrainAgent drainAgent = new DrainAgent(DrainSignal.create(http2Config.drainFile()), System::currentTimeMillis);
+        TimerWheel timers = new TimerWheel(System::currentTimeMillis, http2Config.timerTick(), TICKS_PER_WHEEL);
+        ServerStreamFactoryBuilder serverStreamFactoryBuilder =
+                new ServerStreamFactoryBuilder(http2Config, drainAgent, timers);
+        ClientStreamFactoryBuilder clientStreamFactoryBuilder = new ClientStreamFactoryBuilder(http2Config);
+        return builder.streamFactory(SERVER, serverStreamFactoryBuilder)
+                      .streamFactory(CLIENT, clientStreamFactoryBuilder)
+                      .inject(drainAgent)
+                      .inject(timers)
                       .build();
     }
 }
@@ -17,25 +17,35 @@ package org.reaktivity.nukleus.http2.internal;
 
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
 import org.reaktivity.nukleus.function.MessageConsumer;
 import org.reaktivity.nukleus.http2.internal.types.stream.Http2DataFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.Http2ErrorCode;
 import org.reaktivity.nukleus.http2.internal.types.stream.ResetFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.WindowFW;
 
+import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.LinkedList;
 
 import static org.reaktivity.nukleus.buffer.BufferPool.NO_SLOT;
 
+/*
+ * Http2Stream instances are pooled by ServerStreamFactory. An instance is
+ * initialized via init() when a HTTP2 stream is opened and reset via reset()
+ * once the stream is closed and released back to the pool.
+ */
 class Http2Stream
 {
-    final Http2Connection connection;
+    private final ServerStreamFactory factory;
     final HttpWriteScheduler httpWriteScheduler;
-    final int http2StreamId;
+    final MessageConsumer throttle;
     final int maxHeaderSize;
-    final long targetId;
-    final long correlationId;
+
+    Http2Connection connection;
+    int http2StreamId;
+    long targetId;
+    long correlationId;
+    long correlationHandle = Correlations.NO_HANDLE;
     boolean endDeferred;
     Http2StreamState state;
     long http2OutWindow;
@@ -45,21 +55,63 @@ class Http2Stream
     long contentLength;
     long totalData;
 
+    // request key and the response being captured, when the response may be cached
+    RouteTable.Route cacheRoute;
+    String cacheAuthority;
+    String cachePath;
+    ResponseCache.Entry cacheEntry;
+    int acceptEncoding;
+    ResponseCompressor compressor;
+    boolean replyEndDeferred;                   // END is sent once the compressor output is written
+    long replyEndTraceId;
+
+    // buffering state is created only when the stream first has to buffer DATA,
+    // and is then kept for the reuse of this (pooled) stream
+    Deque<WriteScheduler.Entry> replyQueue;
+    private CircularDirectBuffer replyBufferRW;
+
     private int replySlot = NO_SLOT;
     CircularDirectBuffer replyBuffer;
-    Deque<WriteScheduler.Entry> replyQueue = new LinkedList<>();
     boolean endStream;
 
     long totalOutData;
-    private ServerStreamFactory factory;
 
     MessageConsumer applicationReplyThrottle;
     long applicationReplyId;
 
-    Http2Stream(ServerStreamFactory factory, Http2Connection connection, int http2StreamId, Http2StreamState state,
-                MessageConsumer applicationTarget, HttpWriter httpWriter)
+    // a stream over the limit of its route target is queued, and the request is begun once it is admitted
+    TargetAdmission.Target<Http2Stream> target;
+    TargetBalancer.Target balancerTarget;
+    boolean queued;
+    String applicationName;
+    long applicationRef;
+    long beginTraceId;
+    MutableDirectBuffer beginEx;
+    int beginExLength;
+    private long queuedAt;
+
+    private final TimerWheel.Timer idleTimer;
+    private final TimerWheel.Timer queueTimer;
+    private long lastActive;
+
+    Http2Stream(
+        ServerStreamFactory factory)
     {
         this.factory = factory;
+        this.httpWriteScheduler = new HttpWriteScheduler(factory, factory.httpWriter, this);
+        this.throttle = this::onThrottle;
+        // Setting the overhead to zero for now. Doesn't help when multiple streams are in picture
+        this.maxHeaderSize = 0;     // maxHeaderSize();
+        this.idleTimer = new TimerWheel.Timer(this::onIdleTimeout);
+        this.queueTimer = new TimerWheel.Timer(this::onQueueTimeout);
+    }
+
+    Http2Stream init(
+        Http2Connection connection,
+        int http2StreamId,
+        Http2StreamState state,
+        MessageConsumer applicationTarget)
+    {
         this.connection = connection;
         this.http2StreamId = http2StreamId;
         this.targetId = factory.supplyStreamId.getAsLong();
@@ -68,9 +120,120 @@ class Http2Stream
 
         this.http2OutWindow = connection.remoteSettings.initialWindowSize;
         this.state = state;
-        this.httpWriteScheduler = new HttpWriteScheduler(factory, applicationTarget, httpWriter, targetId, this);
-        // Setting the overhead to zero for now. Doesn't help when multiple streams are in picture
-        this.maxHeaderSize = 0;     // maxHeaderSize();
+        this.httpWriteScheduler.init(applicationTarget, targetId);
+
+        this.lastActive = factory.timers.now();
+        final int idleTimeout = factory.config.streamIdleTimeout();
+        if (idleTimeout > 0)
+        {
+            factory.timers.schedule(idleTimer, lastActive + idleTimeout);
+        }
+        return this;
+    }
+
+    // Frames in either direction keep the stream alive
+    void touch()
+    {
+        lastActive = factory.timers.now();
+    }
+
+    private void onIdleTimeout(
+        long now)
+    {
+        final long deadline = lastActive + factory.config.streamIdleTimeout();
+        if (deadline > now)
+        {
+            factory.timers.schedule(idleTimer, deadline);
+        }
+        else
+        {
+            connection.doRstByUs(this, Http2ErrorCode.CANCEL);
+            factory.counters.idleStreamsReset.getAsLong();
+        }
+    }
+
+    // Holds the request until the route target admits the stream, or the queue timeout
+    void enqueue(
+        String applicationName,
+        long applicationRef,
+        long traceId,
+        DirectBuffer beginEx,
+        int beginExOffset,
+        int beginExLength)
+    {
+        if (this.beginEx == null || this.beginEx.capacity() < beginExLength)
+        {
+            this.beginEx = new UnsafeBuffer(new byte[beginExLength]);
+        }
+        this.beginEx.putBytes(0, beginEx, beginExOffset, beginExLength);
+        this.beginExLength = beginExLength;
+        this.applicationName = applicationName;
+        this.applicationRef = applicationRef;
+        this.beginTraceId = traceId;
+        this.queued = true;
+        this.queuedAt = factory.timers.now();
+        factory.timers.schedule(queueTimer, queuedAt + factory.config.targetQueueTimeout());
+    }
+
+    /*
+     * @return millis the stream waited in the queue
+     */
+    long dequeue()
+    {
+        assert queued;
+
+        factory.timers.cancel(queueTimer);
+        queued = false;
+        return factory.timers.now() - queuedAt;
+    }
+
+    private void onQueueTimeout(
+        long now)
+    {
+        connection.refuseStream(this);
+        factory.counters.targetQueueTimeouts.getAsLong();
+    }
+
+    // Clears per-stream state after the stream is closed, before it goes back to the pool
+    void reset()
+    {
+        assert state == Http2StreamState.CLOSED;
+        assert replySlot == NO_SLOT;
+
+        connection = null;
+        http2StreamId = 0;
+        targetId = 0L;
+        correlationId = 0L;
+        correlationHandle = Correlations.NO_HANDLE;
+        endDeferred = false;
+        http2OutWindow = 0L;
+        applicationReplyBudget = 0L;
+        http2InWindow = 0L;
+        contentLength = 0L;
+        totalData = 0L;
+        cacheRoute = null;
+        cacheAuthority = null;
+        cachePath = null;
+        acceptEncoding = ResponseCompressor.IDENTITY;
+        replyEndDeferred = false;
+        replyEndTraceId = 0L;
+        if (replyQueue != null)
+        {
+            replyQueue.clear();
+        }
+        endStream = false;
+        totalOutData = 0L;
+        applicationReplyThrottle = null;
+        applicationReplyId = 0L;
+        target = null;
+        balancerTarget = null;
+        queued = false;
+        applicationName = null;
+        applicationRef = 0L;
+        beginTraceId = 0L;
+        beginExLength = 0;
+        queuedAt = 0L;
+        lastActive = 0L;
     }
 
     // Estimate only - no of DATA frames + WINDOW frames
@@ -116,7 +279,7 @@ class Http2Stream
             factory.doReset(applicationReplyThrottle, applicationReplyId, 0);
         }
 
-        if (factory.correlations.containsKey(correlationId))
+        if (factory.correlations.isValid(correlationHandle))
         {
             connection.send404(http2StreamId);
         }
@@ -133,16 +296,24 @@ class Http2Stream
         long traceId,
         Http2DataFW http2Data)
     {
+        touch();
+
         boolean written = httpWriteScheduler.onData(traceId, http2Data);
         if (!written)
         {
-            connection.writeScheduler.rst(http2StreamId, Http2ErrorCode.ENHANCE_YOUR_CALM);
-            onAbort(0);
-
-            factory.counters.resetStreamFramesWritten.getAsLong();
+            onDataRejected();
         }
     }
 
+    // Request data cannot be stored, or cannot be decoded, for the application
+    void onDataRejected()
+    {
+        connection.writeScheduler.rst(http2StreamId, Http2ErrorCode.ENHANCE_YOUR_CALM);
+        onAbort(0);
+
+        factory.counters.resetStreamFramesWritten.getAsLong();
+    }
+
     void onError(long traceId)
     {
         // more request data to be sent, so send ABORT
@@ -216,17 +387,25 @@ class Http2Stream
             int index,
             int length)
     {
+        // throttle is bound once per pooled instance, so ignore frames for a previous use
         switch (msgTypeId)
         {
             case WindowFW.TYPE_ID:
-                factory.windowRO.wrap(buffer, index, index + length);
-                int credit = factory.windowRO.credit();
-                int padding = factory.windowRO.padding();
-                long groupId = factory.windowRO.groupId();
-                httpWriteScheduler.onWindow(credit, padding, groupId);
+                final WindowFW window = factory.windowRO.wrap(buffer, index, index + length);
+                if (window.streamId() == targetId)
+                {
+                    int credit = window.credit();
+                    int padding = window.padding();
+                    long groupId = window.groupId();
+                    httpWriteScheduler.onWindow(credit, padding, groupId);
+                }
                 break;
             case ResetFW.TYPE_ID:
-                onHttpReset();
+                final ResetFW reset = factory.resetRO.wrap(buffer, index, index + length);
+                if (reset.streamId() == targetId)
+                {
+                    onHttpReset();
+                }
                 break;
             default:
                 // ignore
@@ -235,28 +414,73 @@ class Http2Stream
     }
 
     /*
-     * @return true if there is a buffer
-     *         false if all slots are taken
+     * Acquires a reply buffer of the smallest size class that fits length bytes, or
+     * promotes the current buffer to a larger size class when length bytes do not fit
+     *
+     * @return buffer with space for length bytes
+     *         null if all slots are taken
      */
-    MutableDirectBuffer acquireReplyBuffer()
+    MutableDirectBuffer acquireReplyBuffer(
+        int length)
     {
         if (replySlot == NO_SLOT)
         {
-            replySlot = factory.http2ReplyPool.acquire(connection.networkReplyId);
-            if (replySlot != NO_SLOT)
+            if (connection.acquireBudget())
             {
-                int capacity = factory.http2ReplyPool.buffer(replySlot).capacity();
-                replyBuffer = new CircularDirectBuffer(capacity);
+                replySlot = factory.http2ReplyPool.acquire(connection.networkReplyId, length);
+                if (replySlot != NO_SLOT)
+                {
+                    int capacity = factory.http2ReplyPool.capacity(replySlot);
+                    if (replyBufferRW == null)
+                    {
+                        replyBufferRW = new CircularDirectBuffer(capacity);
+                    }
+                    replyBuffer = replyBufferRW.reset(capacity);
+                }
+                else
+                {
+                    connection.releaseBudget();
+                }
             }
         }
+        else if (replyBuffer.available() < length && !promoteReplyBuffer(replyBuffer.size() + length))
+        {
+            return null;
+        }
         return replySlot != NO_SLOT ? factory.http2ReplyPool.buffer(replySlot) : null;
     }
 
+    private boolean promoteReplyBuffer(
+        int capacity)
+    {
+        int newReplySlot = factory.http2ReplyPool.acquire(connection.networkReplyId, capacity);
+        if (newReplySlot != NO_SLOT)
+        {
+            MutableDirectBuffer src = factory.http2ReplyPool.buffer(replySlot, factory.promoteRO);
+            MutableDirectBuffer dst = factory.http2ReplyPool.buffer(newReplySlot);
+            replyBuffer.promote(src, dst, factory.http2ReplyPool.capacity(newReplySlot));
+
+            factory.http2ReplyPool.release(replySlot);
+            replySlot = newReplySlot;
+        }
+        return newReplySlot != NO_SLOT;
+    }
+
+    Deque<WriteScheduler.Entry> replyQueue()
+    {
+        if (replyQueue == null)
+        {
+            replyQueue = new ArrayDeque<>();
+        }
+        return replyQueue;
+    }
+
     void releaseReplyBuffer()
     {
         if (replySlot != NO_SLOT)
         {
             factory.http2ReplyPool.release(replySlot);
+            connection.releaseBudget();
             replySlot = NO_SLOT;
             replyBuffer = null;
         }
@@ -264,15 +488,41 @@ class Http2Stream
 
     void close()
     {
+        factory.timers.cancel(idleTimer);
+        factory.timers.cancel(queueTimer);
         httpWriteScheduler.onReset();
         releaseReplyBuffer();
+        if (cacheEntry != null)
+        {
+            // response did not complete, so it is not cached
+            factory.responseCache.abandon(cacheEntry);
+            cacheEntry = null;
+        }
+        if (compressor != null)
+        {
+            if (!factory.compressors.release(compressor))
+            {
+                compressor.close();
+            }
+            compressor = null;
+        }
     }
 
-    void sendHttpWindow()
+    /*
+     * @return room left in the reply buffer, out of what the application may fill
+     */
+    int replySpace()
     {
-        // buffer may already have some data, so can only send window for remaining
         int occupied = replyBuffer == null ? 0 : replyBuffer.size();
-        long maxWindow = Math.min(http2OutWindow, connection.factory.bufferPool.slotCapacity() - occupied);
+        int capacity = connection.slotBudget.scale(connection.factory.bufferPool.slotCapacity());
+        return capacity - occupied;
+    }
+
+    void sendHttpWindow()
+    {
+        // buffer may already have some data, and the compressor some input, so can only send window for remaining
+        int pending = compressor == null ? 0 : compressor.pending();
+        long maxWindow = Math.min(http2OutWindow, replySpace() - pending);
         long applicationReplyCredit = maxWindow - applicationReplyBudget;
         if (applicationReplyCredit > 0)
         {
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameType;
+
+/*
+ * Decodes the HTTP/1.1 request that starts a cleartext connection with "Upgrade: h2c"
+ * (RFC 7540 3.2). The request becomes HTTP2 stream 1 and its HTTP2-Settings are the
+ * client's initial settings. Only requests without a body are upgraded.
+ */
+final class Http2Upgrade
+{
+    static final DirectBuffer SWITCHING_PROTOCOLS = new UnsafeBuffer(
+            "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n".getBytes(US_ASCII));
+    static final DirectBuffer VERSION_NOT_SUPPORTED = new UnsafeBuffer(
+            "HTTP/1.1 505 HTTP Version Not Supported\r\nConnection: close\r\nContent-Length: 0\r\n\r\n".getBytes(US_ASCII));
+
+    private static final int FRAME_HEADER_SIZE = 9;
+    private static final int SETTING_SIZE = 6;
+    private static final int MAX_SETTINGS = 16;
+
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final MutableDirectBuffer settings =
+            new UnsafeBuffer(new byte[FRAME_HEADER_SIZE + MAX_SETTINGS * SETTING_SIZE]);
+    private int settingsLimit;
+
+    /*
+     * Decodes the request head
+     *
+     * @return length of the request head including the empty line
+     *         0 if the request head is incomplete
+     *         -1 if the request is malformed or cannot be upgraded to h2c
+     */
+    int decode(
+        DirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        final int headLength = headLength(buffer, offset, limit);
+        if (headLength > 0)
+        {
+            final String head = buffer.getStringWithoutLengthAscii(offset, headLength);
+            return decode(head) ? headLength : -1;
+        }
+        return headLength;
+    }
+
+    /*
+     * @return HTTP2 request headers for stream 1, pseudo-header fields first
+     */
+    Map<String, String> headers()
+    {
+        return headers;
+    }
+
+    /*
+     * @return a SETTINGS frame with the client's HTTP2-Settings
+     */
+    DirectBuffer settings()
+    {
+        return settings;
+    }
+
+    int settingsLimit()
+    {
+        return settingsLimit;
+    }
+
+    private boolean decode(
+        String head)
+    {
+        headers.clear();
+
+        final String[] lines = head.split("\r\n");
+        final String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !"HTTP/1.1".equals(requestLine[2]) || "CONNECT".equals(requestLine[0]))
+        {
+            return false;
+        }
+
+        String authority = null;
+        String upgrade = null;
+        String connection = null;
+        String http2Settings = null;
+        boolean body = false;
+
+        final Map<String, String> fields = new LinkedHashMap<>();
+        for (int i = 1; i < lines.length; i++)
+        {
+            final String line = lines[i];
+            final int colon = line.indexOf(':');
+            if (colon <= 0)
+            {
+                continue;
+            }
+
+            final String name = line.substring(0, colon).trim().toLowerCase();
+            final String value = line.substring(colon + 1).trim();
+            switch (name)
+            {
+            case "host":
+                authority = value;
+                break;
+            case "upgrade":
+                upgrade = value;
+                break;
+            case "connection":
+                connection = value;
+                break;
+            case "http2-settings":
+                if (http2Settings != null)
+                {
+                    return false;
+                }
+                http2Settings = value;
+                break;
+            case "content-length":
+                body |= !"0".equals(value);
+                break;
+            case "transfer-encoding":
+                body = true;
+                break;
+            case "keep-alive":
+            case "proxy-connection":
+            case "te":
+                // connection-specific header fields are not allowed in HTTP2 (8.1.2.2)
+                break;
+            default:
+                fields.merge(name, value, (v1, v2) -> v1 + ", " + v2);
+                break;
+            }
+        }
+
+        if (body || authority == null || http2Settings == null ||
+                !hasToken(upgrade, "h2c") || !hasToken(connection, "upgrade") || !hasToken(connection, "http2-settings") ||
+                !decodeSettings(http2Settings))
+        {
+            return false;
+        }
+
+        headers.put(":method", requestLine[0]);
+        headers.put(":scheme", "http");
+        headers.put(":authority", authority);
+        headers.put(":path", requestLine[1]);
+        fields.forEach(headers::putIfAbsent);
+
+        return true;
+    }
+
+    // HTTP2-Settings is the base64url encoded payload of a SETTINGS frame (3.2.1)
+    private boolean decodeSettings(
+        String http2Settings)
+    {
+        final byte[] payload;
+        try
+        {
+            payload = Base64.getUrlDecoder().decode(http2Settings);
+        }
+        catch (IllegalArgumentException ex)
+        {
+            return false;
+        }
+
+        if (payload.length % SETTING_SIZE != 0 || payload.length > MAX_SETTINGS * SETTING_SIZE)
+        {
+            return false;
+        }
+
+        settings.putByte(0, (byte) 0);
+        settings.putByte(1, (byte) (payload.length >> 8));
+        settings.putByte(2, (byte) payload.length);
+        settings.putByte(3, (byte) Http2FrameType.SETTINGS.type());
+        settings.putByte(4, (byte) 0);
+        settings.putInt(5, 0);
+        settings.putBytes(FRAME_HEADER_SIZE, payload);
+        settingsLimit = FRAME_HEADER_SIZE + payload.length;
+
+        return true;
+    }
+
+    private static boolean hasToken(
+        String value,
+        String token)
+    {
+        if (value != null)
+        {
+            for (String candidate : value.split(","))
+            {
+                if (token.equalsIgnoreCase(candidate.trim()))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * @return length of the request head up to and including CRLF CRLF
+     *         0 if CRLF CRLF is not found
+     */
+    static int headLength(
+        DirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        for (int i = offset; i + 3 < limit; i++)
+        {
+            if (buffer.getByte(i) == '\r' && buffer.getByte(i + 1) == '\n' &&
+                    buffer.getByte(i + 2) == '\r' && buffer.getByte(i + 3) == '\n')
+            {
+                return i + 4 - offset;
+            }
+        }
+        return 0;
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.reaktivity.nukleus.http2.internal;
 
+import static org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameType.CONTINUATION;
 import static org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameType.DATA;
 import static org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameType.GO_AWAY;
 import static org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameType.HEADERS;
@@ -33,7 +34,6 @@ import org.agrona.concurrent.UnsafeBuffer;
 import org.reaktivity.nukleus.function.MessageConsumer;
 import org.reaktivity.nukleus.http2.internal.types.HttpHeaderFW;
 import org.reaktivity.nukleus.http2.internal.types.ListFW;
-import org.reaktivity.nukleus.http2.internal.types.stream.HpackHeaderBlockFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.Http2ErrorCode;
 import org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameType;
 
@@ -44,9 +44,17 @@ public class Http2WriteScheduler implements WriteScheduler
     private final NukleusWriteScheduler writer;
     private final Deque<WriteScheduler.Entry> replyQueue;
 
+    // While client-initiated streams have frames to write, promised streams get
+    // one turn for every CLIENT_TURNS_PER_PUSH turns of client-initiated streams
+    private static final int CLIENT_TURNS_PER_PUSH = 4;
+
+    // A header block that does not fit in one write is not split into frames smaller than this
+    private static final int MIN_HEADER_FRAGMENT = 256;
+
     private boolean end;
     private boolean endSent;
     private int entryCount;
+    private int clientTurns;
 
     Http2WriteScheduler(
             Http2Connection connection,
@@ -60,6 +68,26 @@ public class Http2WriteScheduler implements WriteScheduler
         this.replyQueue = new LinkedList<>();
     }
 
+    // HTTP/1.1 response ahead of any HTTP2 frame, for a cleartext upgrade
+    @Override
+    public boolean http11Response(DirectBuffer response)
+    {
+        long traceId = connection.factory.supplyTrace.getAsLong();
+        int length = response.capacity();
+
+        if (!buffered() && writer.fits(length))
+        {
+            writer.http11Response(response);
+            writer.flush();
+        }
+        else
+        {
+            Entry entry = new Http11ResponseEntry(traceId, response);
+            addEntry(entry);
+        }
+        return true;
+    }
+
     @Override
     public boolean windowUpdate(int streamId, int update)
     {
@@ -72,7 +100,7 @@ public class Http2WriteScheduler implements WriteScheduler
         if (!buffered() && hasNukleusBudget(length))
         {
             int written = http2Writer.windowUpdate(writer.offset(), sizeof, streamId, update);
-            postWrite(stream, type, written);
+            postWrite(stream, streamId, type, written);
             writer.flush();
         }
         else
@@ -83,8 +111,19 @@ public class Http2WriteScheduler implements WriteScheduler
         return true;
     }
 
+    @Override
+    public boolean ping(DirectBuffer buffer, int offset, int length)
+    {
+        return ping(false, buffer, offset, length);
+    }
+
     @Override
     public boolean pingAck(DirectBuffer buffer, int offset, int length)
+    {
+        return ping(true, buffer, offset, length);
+    }
+
+    private boolean ping(boolean ack, DirectBuffer buffer, int offset, int length)
     {
         assert length == 8;
 
@@ -95,15 +134,16 @@ public class Http2WriteScheduler implements WriteScheduler
 
         if (!buffered() && hasNukleusBudget(length))
         {
-            int written = http2Writer.pingAck(writer.offset(), sizeof, buffer, offset, length);
-            postWrite(null, type, written);
+            int written = ack ? http2Writer.pingAck(writer.offset(), sizeof, buffer, offset, length)
+                              : http2Writer.ping(writer.offset(), sizeof, buffer, offset, length);
+            postWrite(null, 0, type, written);
             writer.flush();
         }
         else
         {
             MutableDirectBuffer copy = new UnsafeBuffer(new byte[8]);
             copy.putBytes(0, buffer, offset, length);
-            Entry entry = new PingAckEntry(null, streamId, traceId, length, type, copy, 0, length);
+            Entry entry = new PingEntry(null, streamId, traceId, length, type, ack, copy, 0, length);
             addEntry(entry);
         }
 
@@ -122,7 +162,7 @@ public class Http2WriteScheduler implements WriteScheduler
         if (!buffered() && hasNukleusBudget(length))
         {
             int written = http2Writer.goaway(writer.offset(), sizeof, lastStreamId, errorCode);
-            postWrite(null, type, written);
+            postWrite(null, 0, type, written);
             writer.flush();
         }
         else
@@ -146,7 +186,7 @@ public class Http2WriteScheduler implements WriteScheduler
         if (!buffered() && hasNukleusBudget(length))
         {
             int written = http2Writer.rst(writer.offset(), sizeof, streamId, errorCode);
-            postWrite(stream, type, written);
+            postWrite(stream, streamId, type, written);
             writer.flush();
         }
         else
@@ -159,23 +199,29 @@ public class Http2WriteScheduler implements WriteScheduler
     }
 
     @Override
-    public boolean settings(int maxConcurrentStreams, int initialWindowSize)
+    public boolean settings(Settings settings)
     {
         long traceId = connection.factory.supplyTrace.getAsLong();
         int streamId = 0;
-        int length = 12;                     // 6 for a setting
+        int headerTableSize = settings.headerTableSize;
+        int maxConcurrentStreams = settings.maxConcurrentStreams;
+        int initialWindowSize = settings.initialWindowSize;
+        int maxFrameSize = settings.maxFrameSize;
+        int length = Http2Writer.settingsLength(headerTableSize, maxFrameSize);
         int sizeof = length + 9;            // +9 for HTTP2 framing
         Http2FrameType type = SETTINGS;
 
         if (!buffered() && hasNukleusBudget(length))
         {
-            int written = http2Writer.settings(writer.offset(), sizeof, maxConcurrentStreams, initialWindowSize);
-            postWrite(null, type, written);
+            int written = http2Writer.settings(writer.offset(), sizeof, headerTableSize, maxConcurrentStreams,
+                    initialWindowSize, maxFrameSize);
+            postWrite(null, 0, type, written);
             writer.flush();
         }
         else
         {
-            Entry entry = new SettingsEntry(null, streamId, traceId, length, type, maxConcurrentStreams, initialWindowSize);
+            Entry entry = new SettingsEntry(null, streamId, traceId, length, type, headerTableSize, maxConcurrentStreams,
+                    initialWindowSize, maxFrameSize);
             addEntry(entry);
         }
 
@@ -194,7 +240,7 @@ public class Http2WriteScheduler implements WriteScheduler
         if (!buffered() && hasNukleusBudget(length))
         {
             int written = http2Writer.settingsAck(writer.offset(), sizeof);
-            postWrite(null, type, written);
+            postWrite(null, 0, type, written);
             writer.flush();
         }
         else
@@ -209,32 +255,34 @@ public class Http2WriteScheduler implements WriteScheduler
     @Override
     public boolean headers(long traceId, int streamId, byte flags, ListFW<HttpHeaderFW> headers)
     {
-        MutableDirectBuffer copy = null;
-        int length = headersLength(headers);        // estimate only
-        int sizeof = 9 + headersLength(headers);    // +9 for HTTP2 framing
+        // HPACK encoding updates the dynamic table, so the block is encoded exactly once
+        MutableDirectBuffer blockBuffer = connection.factory.headerBlockBuffer;
+        connection.factory.blockRW.wrap(blockBuffer, 0, blockBuffer.capacity());
+        connection.mapHeaders(headers, connection.factory.blockRW);
+        int blockLength = connection.factory.blockRW.build().sizeof();
+
+        int maxFrameSize = connection.remoteSettings.maxFrameSize;
+        int frames = Http2Writer.headerBlockFrames(blockLength, 0, maxFrameSize);
+        int length = blockLength + 9 * (frames - 1);    // all frames but the first are CONTINUATION
+        int sizeof = 9 + length;                        // +9 for HTTP2 framing
         Http2FrameType type = HEADERS;
         Http2Stream stream = stream(streamId);
 
-        if (buffered() || !hasNukleusBudget(length))
+        if (!buffered() && writer.fits(sizeof))
         {
-            copy = new UnsafeBuffer(new byte[8192]);
-            connection.factory.blockRW.wrap(copy, 0, copy.capacity());
-            connection.mapHeaders(headers, connection.factory.blockRW);
-            HpackHeaderBlockFW block = connection.factory.blockRW.build();
-            length = block.sizeof();
-            sizeof = 9 + length;
-        }
-
-        if (buffered() || !hasNukleusBudget(length))
-        {
-            Entry entry = new HeadersEntry(null, streamId, traceId, length, type, flags, copy, 0, length);
-            addEntry(entry);
+            int written = http2Writer.headers(writer.offset(), sizeof, streamId, flags,
+                    blockBuffer, 0, blockLength, maxFrameSize);
+            postWrite(stream, streamId, type, written);
+            postContinuations(frames);
+            writer.flush();
         }
         else
         {
-            int written = http2Writer.headers(writer.offset(), sizeof, streamId, flags, headers, connection::mapHeaders);
-            postWrite(stream, type, written);
-            writer.flush();
+            MutableDirectBuffer copy = new UnsafeBuffer(new byte[blockLength]);
+            copy.putBytes(0, blockBuffer, 0, blockLength);
+            Entry entry = new HeadersEntry(streamId, traceId, length, flags, copy, blockLength, maxFrameSize, frames);
+            addEntry(entry);
+            flush();            // a block larger than the write buffer starts to be written right away
         }
 
         return true;
@@ -243,33 +291,35 @@ public class Http2WriteScheduler implements WriteScheduler
     @Override
     public boolean pushPromise(long traceId, int streamId, int promisedStreamId, ListFW<HttpHeaderFW> headers)
     {
-        MutableDirectBuffer copy = null;
-        int length = headersLength(headers);            // estimate only
-        int sizeof = 9 + 4 + length;                    // +9 for HTTP2 framing, +4 for promised stream id
+        // HPACK encoding updates the dynamic table, so the block is encoded exactly once
+        MutableDirectBuffer blockBuffer = connection.factory.headerBlockBuffer;
+        connection.factory.blockRW.wrap(blockBuffer, 0, blockBuffer.capacity());
+        connection.mapPushPromise(headers, connection.factory.blockRW);
+        int blockLength = connection.factory.blockRW.build().sizeof();
+
+        int maxFrameSize = connection.remoteSettings.maxFrameSize;
+        int frames = Http2Writer.headerBlockFrames(blockLength, 4, maxFrameSize);
+        int length = 4 + blockLength + 9 * (frames - 1);    // +4 for promised stream id
+        int sizeof = 9 + length;                            // +9 for HTTP2 framing
         Http2FrameType type = PUSH_PROMISE;
         Http2Stream stream = stream(streamId);
 
-        if (buffered() || !hasNukleusBudget(length))
+        if (!buffered() && writer.fits(sizeof))
         {
-            copy = new UnsafeBuffer(new byte[8192]);
-            connection.factory.blockRW.wrap(copy, 0, copy.capacity());
-            connection.mapPushPromise(headers, connection.factory.blockRW);
-            HpackHeaderBlockFW block = connection.factory.blockRW.build();
-            length = block.sizeof() + 4;            // +4 for promised stream id
-            sizeof = 9 + length;                    // +9 for HTTP2 framing
-        }
-
-        if (buffered() || !hasNukleusBudget(length))
-        {
-            Entry entry = new PushPromiseEntry(null, streamId, traceId, length, type, promisedStreamId, copy, 0, length - 4);
-            addEntry(entry);
+            int written = http2Writer.pushPromise(writer.offset(), sizeof, streamId, promisedStreamId,
+                    blockBuffer, 0, blockLength, maxFrameSize);
+            postWrite(stream, streamId, type, written);
+            postContinuations(frames);
+            writer.flush();
         }
         else
         {
-            int written = http2Writer.pushPromise(writer.offset(), sizeof, streamId, promisedStreamId, headers,
-                    connection::mapPushPromise);
-            postWrite(stream, type, written);
-            writer.flush();
+            MutableDirectBuffer copy = new UnsafeBuffer(new byte[blockLength]);
+            copy.putBytes(0, blockBuffer, 0, blockLength);
+            Entry entry = new PushPromiseEntry(streamId, traceId, length, promisedStreamId, copy, blockLength,
+                    maxFrameSize, frames);
+            addEntry(entry);
+            flush();            // a block larger than the write buffer starts to be written right away
         }
 
         return true;
@@ -298,7 +348,7 @@ public class Http2WriteScheduler implements WriteScheduler
                 int chunk = Math.min(length, connection.remoteSettings.maxFrameSize);
                 int sizeof = chunk + 9;
                 int written = http2Writer.data(writer.offset(), sizeof, streamId, buffer, offset, chunk);
-                postWrite(stream, type, written);
+                postWrite(stream, streamId, type, written);
 
                 offset += chunk;
                 length -= chunk;
@@ -308,7 +358,7 @@ public class Http2WriteScheduler implements WriteScheduler
         else
         {
             // Buffer the data as there is no window
-            MutableDirectBuffer replyBuffer = stream.acquireReplyBuffer();
+            MutableDirectBuffer replyBuffer = stream.acquireReplyBuffer(length);
             if (replyBuffer == null)
             {
                 connection.doRstByUs(stream, Http2ErrorCode.INTERNAL_ERROR);
@@ -360,7 +410,7 @@ public class Http2WriteScheduler implements WriteScheduler
                 0 <= stream.http2OutWindow)
         {
             int written = http2Writer.dataEos(writer.offset(), sizeof, streamId);
-            postWrite(stream, type, written);
+            postWrite(stream, streamId, type, written);
             writer.flush();
 
             connection.closeStream(stream);
@@ -376,7 +426,8 @@ public class Http2WriteScheduler implements WriteScheduler
 
     private boolean hasNukleusBudget(int length)
     {
-        int frameCount = length == 0 ? 1 : (int) Math.ceil((double) length/connection.remoteSettings.maxFrameSize);
+        int maxFrameSize = connection.remoteSettings.maxFrameSize;
+        int frameCount = length == 0 ? 1 : (length + maxFrameSize - 1) / maxFrameSize;
         int sizeof = length + frameCount * 9;
         return writer.fits(sizeof);
     }
@@ -385,11 +436,7 @@ public class Http2WriteScheduler implements WriteScheduler
     {
         if (entry.type == DATA)
         {
-            Deque<WriteScheduler.Entry> queue = queue(entry.stream);
-            if (queue != null)
-            {
-                queue.add(entry);
-            }
+            entry.stream.replyQueue().add(entry);
         }
         else
         {
@@ -397,12 +444,12 @@ public class Http2WriteScheduler implements WriteScheduler
         }
     }
 
-    // Since it is not encoding, this gives an approximate length of header block
-    private int headersLength(ListFW<HttpHeaderFW> headers)
+    private void postContinuations(int frames)
     {
-        int[] length = new int[1];
-        headers.forEach(x -> length[0] += x.name().sizeof() + x.value().sizeof() + 4);
-        return length[0];
+        for (int i = 1; i < frames; i++)
+        {
+            connection.factory.counters.continuationFramesWritten.getAsLong();
+        }
     }
 
     @Override
@@ -418,6 +465,12 @@ public class Http2WriteScheduler implements WriteScheduler
         }
     }
 
+    @Override
+    public int entryCount()
+    {
+        return entryCount;
+    }
+
     private void flush()
     {
         if (connection.networkReplyBudget < connection.outWindowThreshold)
@@ -426,17 +479,27 @@ public class Http2WriteScheduler implements WriteScheduler
             return;
         }
 
-        Entry entry;
-        while ((entry = pop()) != null)
+        boolean written;
+        do
         {
-            entry.write();
-
-            if (!buffered(entry.stream) && entry.stream != null)
+            // frames that do not fit in the write buffer any more are written after it is flushed
+            written = false;
+            Entry entry;
+            while ((entry = pop()) != null)
             {
-                entry.stream.releaseReplyBuffer();
+                entry.write();
+                written = true;
+
+                if (!buffered(entry.stream) && entry.stream != null)
+                {
+                    entry.stream.releaseReplyBuffer();
+                }
             }
+            writer.flush();
         }
-        writer.flush();
+        while (written);
+
+        connection.resumeCompressions();
 
         for(Http2Stream stream : connection.http2Streams.values())
         {
@@ -451,6 +514,8 @@ public class Http2WriteScheduler implements WriteScheduler
             endSent = true;
             writer.doEnd();
         }
+
+        connection.resumeDeferredPushes();
     }
 
     @Override
@@ -480,14 +545,36 @@ public class Http2WriteScheduler implements WriteScheduler
             return pop(null);
         }
 
+        // Pushed responses have a lower weight than the responses the client asked for
+        final boolean pushTurn = clientTurns >= CLIENT_TURNS_PER_PUSH;
+        Entry entry = pop(!pushTurn);
+        boolean clientInitiated = !pushTurn;
+        if (entry == null)
+        {
+            entry = pop(pushTurn);
+            clientInitiated = pushTurn;
+        }
+
+        if (entry != null)
+        {
+            clientTurns = clientInitiated ? clientTurns + 1 : 0;
+        }
+        return entry;
+    }
+
+    private Entry pop(boolean clientInitiated)
+    {
         // TODO Map#values may not iterate randomly, randomly pick a stream ??
         // Select a frame on a HTTP2 stream that can be written
         for(Http2Stream stream : connection.http2Streams.values())
         {
-            Entry entry = pop(stream);
-            if (entry != null)
+            if (stream.isClientInitiated() == clientInitiated)
             {
-                return entry;
+                Entry entry = pop(stream);
+                if (entry != null)
+                {
+                    return entry;
+                }
             }
         }
 
@@ -545,7 +632,7 @@ public class Http2WriteScheduler implements WriteScheduler
         assert streamId != 0;
 
         Http2Stream stream = connection.http2Streams.get(streamId);
-        return !(stream == null || stream.replyQueue.isEmpty());
+        return stream != null && buffered(stream.replyQueue);
     }
 
     Http2Stream stream(int streamId)
@@ -553,11 +640,11 @@ public class Http2WriteScheduler implements WriteScheduler
         return streamId == 0 ? null : connection.http2Streams.get(streamId);
     }
 
-    private void postWrite(Http2Stream stream, Http2FrameType type, int written)
+    private void postWrite(Http2Stream stream, int streamId, Http2FrameType type, int written)
     {
         assert written >= 9;
 
-        if (canStreamWrite(stream, type))
+        if (canStreamWrite(stream, streamId, type))
         {
             if (type == DATA)
             {
@@ -570,10 +657,14 @@ public class Http2WriteScheduler implements WriteScheduler
         }
     }
 
-    private static boolean canStreamWrite(Http2Stream stream, Http2FrameType type)
+    private boolean canStreamWrite(Http2Stream stream, int streamId, Http2FrameType type)
     {
-        // After RST_STREAM is written, don't write any frame in the stream
-        return stream == null || type == RST_STREAM || stream.state != Http2StreamState.CLOSED;
+        // After RST_STREAM is written, don't write any frame in the stream. A queued entry may
+        // also refer to a pooled stream that has since been reused, on this or another connection.
+        // Stream ids are never reused within a connection, so connection and id identify the stream
+        return stream == null || type == RST_STREAM ||
+                (stream.connection == connection && stream.http2StreamId == streamId &&
+                 stream.state != Http2StreamState.CLOSED);
     }
 
     private abstract class Entry implements WriteScheduler.Entry
@@ -616,10 +707,14 @@ public class Http2WriteScheduler implements WriteScheduler
         @Override
         void write()
         {
+            boolean current = canStreamWrite(stream, streamId, type);
             int written = http2Writer.dataEos(writer.offset(), sizeof, streamId);
-            postWrite(stream, type, written);
+            postWrite(stream, streamId, type, written);
 
-            connection.closeStream(stream);
+            if (current)
+            {
+                connection.closeStream(stream);
+            }
         }
     }
 
@@ -637,7 +732,7 @@ public class Http2WriteScheduler implements WriteScheduler
         void write()
         {
             int written = http2Writer.rst(writer.offset(), sizeof, streamId, errorCode);
-            postWrite(stream, type, written);
+            postWrite(stream, streamId, type, written);
         }
     }
 
@@ -656,20 +751,22 @@ public class Http2WriteScheduler implements WriteScheduler
         void write()
         {
             int written = http2Writer.windowUpdate(writer.offset(), sizeof, streamId, update);
-            postWrite(stream, type, written);
+            postWrite(stream, streamId, type, written);
         }
     }
 
-    private class PingAckEntry extends Entry
+    private class PingEntry extends Entry
     {
+        private final boolean ack;
         private final DirectBuffer payloadBuffer;
         private final int payloadOffset;
         private final int payloadLength;
 
-        PingAckEntry(Http2Stream stream, int streamId, long traceId, int length, Http2FrameType type,
-                     DirectBuffer payloadBuffer, int payloadOffset, int payloadLength)
+        PingEntry(Http2Stream stream, int streamId, long traceId, int length, Http2FrameType type, boolean ack,
+                  DirectBuffer payloadBuffer, int payloadOffset, int payloadLength)
         {
             super(stream, streamId, traceId, length, type);
+            this.ack = ack;
             this.payloadBuffer = payloadBuffer;
             this.payloadOffset = payloadOffset;
             this.payloadLength = payloadLength;
@@ -678,8 +775,9 @@ public class Http2WriteScheduler implements WriteScheduler
         @Override
         void write()
         {
-            int written = http2Writer.pingAck(writer.offset(), sizeof, payloadBuffer, payloadOffset, payloadLength);
-            postWrite(stream, type, written);
+            int written = ack ? http2Writer.pingAck(writer.offset(), sizeof, payloadBuffer, payloadOffset, payloadLength)
+                              : http2Writer.ping(writer.offset(), sizeof, payloadBuffer, payloadOffset, payloadLength);
+            postWrite(stream, streamId, type, written);
         }
     }
 
@@ -700,7 +798,7 @@ public class Http2WriteScheduler implements WriteScheduler
         void write()
         {
             int written = http2Writer.goaway(writer.offset(), sizeof, lastStreamId, errorCode);
-            postWrite(stream, type, written);
+            postWrite(stream, streamId, type, written);
         }
     }
 
@@ -708,20 +806,48 @@ public class Http2WriteScheduler implements WriteScheduler
     {
         final int maxConcurrentStreams;
         final int initialWindowSize;
+        final int headerTableSize;
+        final int maxFrameSize;
 
         SettingsEntry(Http2Stream stream, int streamId, long traceId, int length, Http2FrameType type,
-                      int maxConcurrentStreams, int initialWindowSize)
+                      int headerTableSize, int maxConcurrentStreams, int initialWindowSize, int maxFrameSize)
         {
             super(stream, streamId, traceId, length, type);
+            this.headerTableSize = headerTableSize;
             this.maxConcurrentStreams = maxConcurrentStreams;
             this.initialWindowSize = initialWindowSize;
+            this.maxFrameSize = maxFrameSize;
         }
 
         @Override
         void write()
         {
-            int written = http2Writer.settings(writer.offset(), sizeof, maxConcurrentStreams, initialWindowSize);
-            postWrite(stream, type, written);
+            int written = http2Writer.settings(writer.offset(), sizeof, headerTableSize, maxConcurrentStreams,
+                    initialWindowSize, maxFrameSize);
+            postWrite(stream, streamId, type, written);
+        }
+    }
+
+    private class Http11ResponseEntry extends Entry
+    {
+        private final DirectBuffer response;
+
+        Http11ResponseEntry(long traceId, DirectBuffer response)
+        {
+            super(null, 0, traceId, response.capacity(), null);
+            this.response = response;
+        }
+
+        @Override
+        boolean fits()
+        {
+            return writer.fits(length);
+        }
+
+        @Override
+        void write()
+        {
+            writer.http11Response(response);
         }
     }
 
@@ -736,59 +862,148 @@ public class Http2WriteScheduler implements WriteScheduler
         void write()
         {
             int written = http2Writer.settingsAck(writer.offset(), sizeof);
-            postWrite(stream, type, written);
+            postWrite(stream, streamId, type, written);
         }
     }
 
-    private class HeadersEntry extends Entry
+    /*
+     * A header block is written in one go when it fits, otherwise frame by frame as the write
+     * buffer and budget allow. Its frames stay contiguous on the connection as no other frame is
+     * written while the connection queue is not empty (6.10).
+     */
+    private abstract class HeaderBlockEntry extends Entry
     {
-        private byte flags;
-        private DirectBuffer payloadBuffer;
-        private int payloadOffset;
-        private int payloadLength;
+        final DirectBuffer blockBuffer;
+        final int blockLength;
+        final int maxFrameSize;
+        final int frames;
+        private int blockOffset;
 
-        HeadersEntry(Http2Stream stream, int streamId, long traceId, int length, Http2FrameType type, byte flags,
-                     DirectBuffer payloadBuffer, int payloadOffset, int payloadLength)
+        HeaderBlockEntry(int streamId, long traceId, int length, Http2FrameType type,
+                         DirectBuffer blockBuffer, int blockLength, int maxFrameSize, int frames)
         {
-            super(stream, streamId, traceId, length, type);
-            this.flags = flags;
-            this.payloadBuffer = payloadBuffer;
-            this.payloadOffset = payloadOffset;
-            this.payloadLength = payloadLength;
+            super(null, streamId, traceId, length, type);
+            this.blockBuffer = blockBuffer;
+            this.blockLength = blockLength;
+            this.maxFrameSize = maxFrameSize;
+            this.frames = frames;
+        }
+
+        @Override
+        boolean fits()
+        {
+            final int fragmentLength = fragmentLength();
+            return fragmentLength == blockLength - blockOffset || fragmentLength >= MIN_HEADER_FRAGMENT;
         }
 
         @Override
         void write()
         {
-            int written = http2Writer.headers(writer.offset(), sizeof, streamId, flags,
-                    payloadBuffer, payloadOffset, payloadLength);
-            postWrite(stream, type, written);
+            if (blockOffset == 0 && writer.fits(sizeof))
+            {
+                postWrite(stream, streamId, type, writeBlock());
+                postContinuations(frames);
+                return;
+            }
+
+            final int fragmentLength = fragmentLength();
+            final boolean endHeaders = blockOffset + fragmentLength == blockLength;
+            if (blockOffset == 0)
+            {
+                postWrite(stream, streamId, type, writeFirst(fragmentLength, endHeaders));
+            }
+            else
+            {
+                int written = http2Writer.continuation(writer.offset(), streamId, blockBuffer, blockOffset,
+                        fragmentLength, endHeaders);
+                postWrite(stream, streamId, CONTINUATION, written);
+                connection.factory.counters.continuationFramesWritten.getAsLong();
+            }
+            blockOffset += fragmentLength;
+
+            if (!endHeaders)
+            {
+                // rest of the block is written next, ahead of any other frame
+                entryCount++;
+                replyQueue.addFirst(this);
+            }
+        }
+
+        // first frame carries the promised stream id of PUSH_PROMISE in its payload
+        abstract int prefix();
+
+        abstract int writeBlock();
+
+        abstract int writeFirst(int fragmentLength, boolean endHeaders);
+
+        private int fragmentLength()
+        {
+            final int prefix = blockOffset == 0 ? prefix() : 0;
+            final int fragmentLength = Math.min(blockLength - blockOffset, maxFrameSize - prefix);
+            return Math.max(Math.min(fragmentLength, writer.remaining() - 9 - prefix), 0);
         }
     }
 
-    private class PushPromiseEntry extends Entry
+    private class HeadersEntry extends HeaderBlockEntry
     {
-        private int promisedStreamId;
-        private DirectBuffer blockBuffer;
-        private int blockOffset;
-        private int blockLength;
+        private final byte flags;
 
-        PushPromiseEntry(Http2Stream stream, int streamId, long traceId, int length, Http2FrameType type, int promisedStreamId,
-                     DirectBuffer blockBuffer, int blockOffset, int blockLength)
+        HeadersEntry(int streamId, long traceId, int length, byte flags,
+                     DirectBuffer blockBuffer, int blockLength, int maxFrameSize, int frames)
         {
-            super(stream, streamId, traceId, length, type);
+            super(streamId, traceId, length, HEADERS, blockBuffer, blockLength, maxFrameSize, frames);
+            this.flags = flags;
+        }
+
+        @Override
+        int prefix()
+        {
+            return 0;
+        }
+
+        @Override
+        int writeBlock()
+        {
+            return http2Writer.headers(writer.offset(), sizeof, streamId, flags,
+                    blockBuffer, 0, blockLength, maxFrameSize);
+        }
+
+        @Override
+        int writeFirst(int fragmentLength, boolean endHeaders)
+        {
+            return http2Writer.headersFragment(writer.offset(), streamId, flags, blockBuffer, 0, fragmentLength, endHeaders);
+        }
+    }
+
+    private class PushPromiseEntry extends HeaderBlockEntry
+    {
+        private final int promisedStreamId;
+
+        PushPromiseEntry(int streamId, long traceId, int length, int promisedStreamId,
+                         DirectBuffer blockBuffer, int blockLength, int maxFrameSize, int frames)
+        {
+            super(streamId, traceId, length, PUSH_PROMISE, blockBuffer, blockLength, maxFrameSize, frames);
             this.promisedStreamId = promisedStreamId;
-            this.blockBuffer = blockBuffer;
-            this.blockOffset = blockOffset;
-            this.blockLength = blockLength;
         }
 
         @Override
-        void write()
+        int prefix()
         {
-            int written = http2Writer.pushPromise(writer.offset(), sizeof, streamId, promisedStreamId,
-                    blockBuffer, blockOffset, blockLength);
-            postWrite(stream, type, written);
+            return 4;
+        }
+
+        @Override
+        int writeBlock()
+        {
+            return http2Writer.pushPromise(writer.offset(), sizeof, streamId, promisedStreamId,
+                    blockBuffer, 0, blockLength, maxFrameSize);
+        }
+
+        @Override
+        int writeFirst(int fragmentLength, boolean endHeaders)
+        {
+            return http2Writer.pushPromiseFragment(writer.offset(), streamId, promisedStreamId, blockBuffer, 0,
+                    fragmentLength, endHeaders);
         }
     }
 
@@ -835,14 +1050,14 @@ public class Http2WriteScheduler implements WriteScheduler
         @Override
         void write()
         {
-            DirectBuffer read = stream.acquireReplyBuffer();
+            DirectBuffer read = stream.acquireReplyBuffer(0);
             assert read != null;
             int offset = stream.replyBuffer.readOffset();
             int readLength = stream.replyBuffer.read(length);
             assert readLength == length;
 
             int written = http2Writer.data(writer.offset(), sizeof, streamId, read, offset, readLength);
-            postWrite(stream, type, written);
+            postWrite(stream, streamId, type, written);
         }
 
         public String toString()
@@ -25,6 +25,7 @@ import org.reaktivity.nukleus.http2.internal.types.ListFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.DataFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.EndFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.HpackHeaderBlockFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2ContinuationFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.Http2DataFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.Http2ErrorCode;
 import org.reaktivity.nukleus.http2.internal.types.stream.Http2Flags;
@@ -49,6 +50,7 @@ class Http2Writer
     private final Http2DataFW.Builder http2DataRW = new Http2DataFW.Builder();
     private final Http2HeadersFW.Builder http2HeadersRW = new Http2HeadersFW.Builder();
     private final Http2PushPromiseFW.Builder pushPromiseRW = new Http2PushPromiseFW.Builder();
+    private final Http2ContinuationFW.Builder continuationRW = new Http2ContinuationFW.Builder();
 
     final MutableDirectBuffer writeBuffer;
 
@@ -92,14 +94,54 @@ class Http2Writer
         target.accept(end.typeId(), end.buffer(), end.offset(), end.sizeof());
     }
 
+    /*
+     * Writes a SETTINGS frame, header table size and max frame size are only
+     * advertised when they differ from the protocol defaults
+     */
     int settings(
         int offset,
         int length,
+        int headerTableSize,
         int maxConcurrentStreams,
+        int initialWindowSize,
+        int maxFrameSize)
+    {
+        settingsRW.wrap(writeBuffer, offset, offset + length);
+        if (headerTableSize != Settings.DEFAULT_HEADER_TABLE_SIZE)
+        {
+            settingsRW.headerTableSize(headerTableSize);
+        }
+        settingsRW.maxConcurrentStreams(maxConcurrentStreams)
+                  .initialWindowSize(initialWindowSize);
+        if (maxFrameSize != Settings.DEFAULT_MAX_FRAME_SIZE)
+        {
+            settingsRW.maxFrameSize(maxFrameSize);
+        }
+        int written = settingsRW.build().sizeof();
+        assert written == length;
+        return written;
+    }
+
+    /*
+     * @return payload length of the SETTINGS frame written by settings()
+     */
+    static int settingsLength(
+        int headerTableSize,
+        int maxFrameSize)
+    {
+        int length = 12;                    // 6 for a setting
+        length += headerTableSize != Settings.DEFAULT_HEADER_TABLE_SIZE ? 6 : 0;
+        length += maxFrameSize != Settings.DEFAULT_MAX_FRAME_SIZE ? 6 : 0;
+        return length;
+    }
+
+    int clientSettings(
+        int offset,
+        int length,
         int initialWindowSize)
     {
         int written = settingsRW.wrap(writeBuffer, offset, offset + length)
-                         .maxConcurrentStreams(maxConcurrentStreams)
+                         .disablePush()
                          .initialWindowSize(initialWindowSize)
                          .build()
                          .sizeof();
@@ -149,6 +191,21 @@ class Http2Writer
         return written;
     }
 
+    int ping(
+        int offset,
+        int length,
+        DirectBuffer payloadBuffer,
+        int payloadOffset,
+        int payloadLength)
+    {
+        int written = pingRW.wrap(writeBuffer, offset, offset + length)
+                      .payload(payloadBuffer, payloadOffset, payloadLength)
+                      .build()
+                      .sizeof();
+        assert written == length;
+        return written;
+    }
+
     int pingAck(
         int offset,
         int length,
@@ -233,6 +290,11 @@ class Http2Writer
         return written;
     }
 
+    /*
+     * Writes an encoded header block as a HEADERS frame followed by as many CONTINUATION
+     * frames as needed so that no frame payload exceeds maxFrameSize. Only the last frame
+     * carries END_HEADERS.
+     */
     int headers(
         int offset,
         int length,
@@ -240,60 +302,169 @@ class Http2Writer
         byte flags,
         DirectBuffer blockBuffer,
         int blockOffset,
-        int blockLength)
+        int blockLength,
+        int maxFrameSize)
     {
         assert streamId != 0;
 
-        byte headersFlags = (byte) (flags | Http2Flags.END_HEADERS);
+        final int fragmentLength = Math.min(blockLength, maxFrameSize);
+        final boolean endHeaders = fragmentLength == blockLength;
+        byte headersFlags = endHeaders ? (byte) (flags | Http2Flags.END_HEADERS) : flags;
         int written = http2HeadersRW.wrap(writeBuffer, offset, offset + length)
                              .streamId(streamId)
                              .flags(headersFlags)
-                             .payload(blockBuffer, blockOffset, blockLength)
+                             .payload(blockBuffer, blockOffset, fragmentLength)
                              .build()
                              .sizeof();
+        written += continuations(offset + written, offset + length, streamId,
+                blockBuffer, blockOffset + fragmentLength, blockLength - fragmentLength, maxFrameSize);
         assert written == length;
         return written;
     }
 
+    /*
+     * Writes an encoded header block as a PUSH_PROMISE frame followed by as many CONTINUATION
+     * frames as needed so that no frame payload, including the promised stream id, exceeds
+     * maxFrameSize
+     */
     int pushPromise(
         int offset,
-        int lengthGuess,
+        int length,
         int streamId,
         int promisedStreamId,
-        ListFW<HttpHeaderFW> headers,
-        BiConsumer<ListFW<HttpHeaderFW>, HpackHeaderBlockFW.Builder> builder)
+        DirectBuffer blockBuffer,
+        int blockOffset,
+        int blockLength,
+        int maxFrameSize)
     {
-        int written = pushPromiseRW.wrap(writeBuffer, offset, offset + lengthGuess)
-                            .streamId(streamId)
-                            .promisedStreamId(promisedStreamId)
-                            .endHeaders()
-                            .headers(b -> builder.accept(headers, b))
-                            .build()
-                            .sizeof();
-        assert written <= lengthGuess;
+        assert streamId != 0;
+
+        final int fragmentLength = Math.min(blockLength, maxFrameSize - 4);
+        pushPromiseRW.wrap(writeBuffer, offset, offset + length)
+                     .streamId(streamId)
+                     .promisedStreamId(promisedStreamId);
+        if (fragmentLength == blockLength)
+        {
+            pushPromiseRW.endHeaders();
+        }
+        int written = pushPromiseRW.headers(blockBuffer, blockOffset, fragmentLength)
+                                   .build()
+                                   .sizeof();
+        written += continuations(offset + written, offset + length, streamId,
+                blockBuffer, blockOffset + fragmentLength, blockLength - fragmentLength, maxFrameSize);
+        assert written == length;
         return written;
     }
 
-    int pushPromise(
+    /*
+     * Writes the HEADERS frame of a header block that is written over several writes, as the
+     * block does not fit in one. Only the frame that completes the block carries END_HEADERS.
+     */
+    int headersFragment(
+        int offset,
+        int streamId,
+        byte flags,
+        DirectBuffer blockBuffer,
+        int blockOffset,
+        int fragmentLength,
+        boolean endHeaders)
+    {
+        assert streamId != 0;
+
+        byte headersFlags = endHeaders ? (byte) (flags | Http2Flags.END_HEADERS) : flags;
+        return http2HeadersRW.wrap(writeBuffer, offset, writeBuffer.capacity())
+                             .streamId(streamId)
+                             .flags(headersFlags)
+                             .payload(blockBuffer, blockOffset, fragmentLength)
+                             .build()
+                             .sizeof();
+    }
+
+    /*
+     * Writes the PUSH_PROMISE frame of a header block that is written over several writes
+     */
+    int pushPromiseFragment(
         int offset,
-        int length,
         int streamId,
         int promisedStreamId,
         DirectBuffer blockBuffer,
         int blockOffset,
-        int blockLength)
+        int fragmentLength,
+        boolean endHeaders)
     {
         assert streamId != 0;
 
-        int written = pushPromiseRW.wrap(writeBuffer, offset, offset + length)
-                            .streamId(streamId)
-                            .promisedStreamId(promisedStreamId)
-                            .endHeaders()
-                            .headers(blockBuffer, blockOffset, blockLength)
+        pushPromiseRW.wrap(writeBuffer, offset, writeBuffer.capacity())
+                     .streamId(streamId)
+                     .promisedStreamId(promisedStreamId);
+        if (endHeaders)
+        {
+            pushPromiseRW.endHeaders();
+        }
+        return pushPromiseRW.headers(blockBuffer, blockOffset, fragmentLength)
                             .build()
                             .sizeof();
-        assert written == length;
+    }
+
+    /*
+     * Writes one CONTINUATION frame of a header block that is written over several writes
+     */
+    int continuation(
+        int offset,
+        int streamId,
+        DirectBuffer blockBuffer,
+        int blockOffset,
+        int fragmentLength,
+        boolean endHeaders)
+    {
+        continuationRW.wrap(writeBuffer, offset, writeBuffer.capacity())
+                      .streamId(streamId)
+                      .payload(blockBuffer, blockOffset, fragmentLength);
+        if (endHeaders)
+        {
+            continuationRW.endHeaders();
+        }
+        return continuationRW.build().sizeof();
+    }
+
+    private int continuations(
+        int offset,
+        int limit,
+        int streamId,
+        DirectBuffer blockBuffer,
+        int blockOffset,
+        int blockLength,
+        int maxFrameSize)
+    {
+        int written = 0;
+        while (blockLength > 0)
+        {
+            final int fragmentLength = Math.min(blockLength, maxFrameSize);
+            continuationRW.wrap(writeBuffer, offset + written, limit)
+                          .streamId(streamId)
+                          .payload(blockBuffer, blockOffset, fragmentLength);
+            if (fragmentLength == blockLength)
+            {
+                continuationRW.endHeaders();
+            }
+            written += continuationRW.build().sizeof();
+            blockOffset += fragmentLength;
+            blockLength -= fragmentLength;
+        }
         return written;
     }
 
+    /*
+     * @return number of frames needed to carry a header block of blockLength, given the
+     *         payload already taken in the first frame (4 for the promised stream id of PUSH_PROMISE)
+     */
+    static int headerBlockFrames(
+        int blockLength,
+        int firstFramePrefix,
+        int maxFrameSize)
+    {
+        final int remaining = Math.max(0, blockLength - (maxFrameSize - firstFramePrefix));
+        return 1 + (remaining + maxFrameSize - 1) / maxFrameSize;
+    }
+
 }
@@ -26,10 +26,11 @@ class HttpWriteScheduler
 {
     private final ServerStreamFactory factory;
     private final HttpWriter target;
-    private final long targetId;
-    private final MessageConsumer applicationTarget;
+    private final Http2Stream stream;
 
-    private Http2Stream stream;
+    private CircularDirectBuffer targetBufferRW;
+    private long targetId;
+    private MessageConsumer applicationTarget;
     private int slot = NO_SLOT;
     private CircularDirectBuffer targetBuffer;
     private boolean end;
@@ -41,20 +42,45 @@ class HttpWriteScheduler
     private int totalRead;
     private int totalWritten;
     private long traceId;
+    private RequestDecompressor decoder;
 
-    HttpWriteScheduler(ServerStreamFactory factory, MessageConsumer applicationTarget, HttpWriter target, long targetId,
-                       Http2Stream stream)
+    HttpWriteScheduler(ServerStreamFactory factory, HttpWriter target, Http2Stream stream)
     {
         this.factory = factory;
-        this.applicationTarget = applicationTarget;
         this.target = target;
-        this.targetId = targetId;
         this.stream = stream;
     }
 
+    // Re-initializes the scheduler for a (pooled) stream that is being reused
+    void init(MessageConsumer applicationTarget, long targetId)
+    {
+        assert slot == NO_SLOT;
+        assert decoder == null;
+
+        this.applicationTarget = applicationTarget;
+        this.targetId = targetId;
+        this.targetBuffer = null;
+        this.end = false;
+        this.endSent = false;
+        this.applicationBudget = 0;
+        this.applicationPadding = 0;
+        this.applicationGroupId = 0L;
+        this.totalRead = 0;
+        this.totalWritten = 0;
+        this.traceId = 0L;
+    }
+
+    // Request data is inflated by the decoder before it is written to the application
+    void decode(RequestDecompressor decoder)
+    {
+        assert this.decoder == null;
+
+        this.decoder = decoder;
+    }
+
     /*
      * @return true if the data is written or stored
-     *         false if there are no slots or no space in the buffer
+     *         false if there are no slots or no space in the buffer, or the data cannot be decoded
      */
     boolean onData(long traceId, Http2DataFW http2DataRO)
     {
@@ -65,17 +91,40 @@ class HttpWriteScheduler
         {
             this.traceId = traceId;
         }
-        totalRead += http2DataRO.dataLength();
         end = http2DataRO.endStream();
 
+        boolean written;
+        if (decoder != null)
+        {
+            written = decoder.append(http2DataRO.buffer(), http2DataRO.dataOffset(), http2DataRO.dataLength()) &&
+                    inflate();
+        }
+        else
+        {
+            totalRead += http2DataRO.dataLength();
+            written = write(http2DataRO.buffer(), http2DataRO.dataOffset(), http2DataRO.dataLength());
+        }
+
+        // since there is no data is pending, we can send END frame
+        if (written && end && !endSent && targetBuffer == null && (decoder == null || decoder.finished()) && !stream.queued)
+        {
+            endSent = true;
+            target.doHttpEnd(applicationTarget, targetId, traceId);
+        }
+
+        return written;
+    }
+
+    private boolean write(DirectBuffer buffer, int offset, int length)
+    {
         if (targetBuffer == null)
         {
-            int toSlab = http2DataRO.dataLength();
+            int toSlab = length;
             int toHttp = 0;
             int part;
             while((part = getPart(toSlab)) > 0)
             {
-                toHttp(http2DataRO.buffer(), http2DataRO.dataOffset() + toHttp, part);
+                toHttp(buffer, offset + toHttp, part);
                 toHttp += part;
                 toSlab -= part;
             }
@@ -86,7 +135,7 @@ class HttpWriteScheduler
                 MutableDirectBuffer dst = acquire();
                 if (dst != null)
                 {
-                    boolean written = targetBuffer.write(dst, http2DataRO.buffer(), http2DataRO.dataOffset() + toHttp, toSlab);
+                    boolean written = targetBuffer.write(dst, buffer, offset + toHttp, toSlab);
 //                    assert written;
 //                    assert totalRead == totalWritten + targetBuffer.size();
 
@@ -95,21 +144,13 @@ class HttpWriteScheduler
                 return false;                           // No slots
             }
 
-            // since there is no data is pending, we can send END frame
-            if (end && !endSent)
-            {
-                endSent = true;
-                target.doHttpEnd(applicationTarget, targetId, traceId);
-            }
-
             return true;
         }
         else
         {
             // Store the data in the existing buffer
-            MutableDirectBuffer buffer = acquire();
-            boolean written = targetBuffer.write(buffer, http2DataRO.buffer(), http2DataRO.dataOffset(),
-                    http2DataRO.dataLength());
+            MutableDirectBuffer dst = acquire();
+            boolean written = targetBuffer.write(dst, buffer, offset, length);
 //            assert written;
 //            assert totalRead == totalWritten + targetBuffer.size();
 
@@ -117,6 +158,43 @@ class HttpWriteScheduler
         }
     }
 
+    /*
+     * Inflates held input for as much output as the buffer has room for
+     *
+     * @return false if there are no slots, or the input is malformed or inflates beyond the ratio limit
+     */
+    private boolean inflate()
+    {
+        int room;
+        while ((room = inflateRoom()) > 0)
+        {
+            final int inflated = decoder.inflate(factory.inflateOutput, room);
+            if (inflated < 0)
+            {
+                return false;
+            }
+            else if (inflated == 0)
+            {
+                break;
+            }
+
+            totalRead += inflated;
+            if (!write(factory.inflateOutputRO, 0, inflated))
+            {
+                return false;
+            }
+        }
+
+        // after the last data frame, a decoder that is neither done nor waiting for room is truncated
+        return !end || room == 0 || decoder.finished();
+    }
+
+    private int inflateRoom()
+    {
+        int buffered = targetBuffer == null ? 0 : targetBuffer.size();
+        return Math.min(factory.inflateOutput.length, factory.httpWriterPool.slotCapacity() - buffered);
+    }
+
     void onWindow(int credit, int padding, long groupId)
     {
         if (stream.endDeferred && !endSent)
@@ -151,17 +229,23 @@ class HttpWriteScheduler
 
             if (targetBuffer.size() == 0)
             {
-                // since there is no data is pending in slab, we can send END frame right away
-                if (end && !endSent)
-                {
-                    endSent = true;
-                    target.doHttpEnd(applicationTarget, targetId, traceId);
-                }
-
                 release();
             }
         }
 
+        if (decoder != null && !decoder.finished() && !inflate())
+        {
+            stream.onDataRejected();
+            return;
+        }
+
+        // since there is no data is pending in slab, we can send END frame right away
+        if (targetBuffer == null && end && !endSent && (decoder == null || decoder.finished()))
+        {
+            endSent = true;
+            target.doHttpEnd(applicationTarget, targetId, traceId);
+        }
+
         sendHttp2Window();
     }
 
@@ -190,12 +274,18 @@ class HttpWriteScheduler
     void onReset()
     {
         release();
+        releaseDecoder();
     }
 
     void doAbort(long traceId)
     {
-        target.doHttpAbort(applicationTarget, targetId, traceId);
+        if (!stream.queued)
+        {
+            // a queued request is not begun on the application yet
+            target.doHttpAbort(applicationTarget, targetId, traceId);
+        }
         release();
+        releaseDecoder();
     }
 
     /*
@@ -206,11 +296,15 @@ class HttpWriteScheduler
     {
         if (slot == NO_SLOT)
         {
-            slot = factory.httpWriterPool.acquire(targetId);
+            slot = stream.connection.acquireSlot(factory.httpWriterPool, targetId);
             if (slot != NO_SLOT)
             {
                 int capacity = factory.httpWriterPool.buffer(slot).capacity();
-                targetBuffer = new CircularDirectBuffer(capacity);
+                if (targetBufferRW == null)
+                {
+                    targetBufferRW = new CircularDirectBuffer(capacity);
+                }
+                targetBuffer = targetBufferRW.reset(capacity);
             }
         }
         return slot != NO_SLOT ? factory.httpWriterPool.buffer(slot) : null;
@@ -220,19 +314,37 @@ class HttpWriteScheduler
     {
         if (slot != NO_SLOT)
         {
-            factory.httpWriterPool.release(slot);
+            stream.connection.releaseSlot(factory.httpWriterPool, slot);
             slot = NO_SLOT;
             targetBuffer = null;
         }
     }
 
+    private void releaseDecoder()
+    {
+        if (decoder != null)
+        {
+            if (!factory.decompressors.release(decoder))
+            {
+                decoder.close();
+            }
+            decoder = null;
+        }
+    }
+
     private void sendHttp2Window()
     {
         // buffer may already have some data, so can only send window for remaining
         int buffered = targetBuffer == null ? 0 : targetBuffer.size();
+        int capacity = stream.connection.slotBudget.scale(factory.httpWriterPool.slotCapacity());
         long applicationCredit = Math.min(
                 applicationBudget - Math.max(stream.http2InWindow, 0),    // http2InWindow can be -ve
-                factory.httpWriterPool.slotCapacity() - buffered);
+                capacity - buffered);
+        if (decoder != null)
+        {
+            // compressed data is held by the decoder until there is room to inflate it
+            applicationCredit = Math.min(applicationCredit, decoder.available() - Math.max(stream.http2InWindow, 0));
+        }
         if (applicationCredit > 0)
         {
             stream.http2InWindow += applicationCredit;
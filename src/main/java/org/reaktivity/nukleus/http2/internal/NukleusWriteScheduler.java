@@ -15,6 +15,7 @@
  */
 package org.reaktivity.nukleus.http2.internal;
 
+import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
 import org.reaktivity.nukleus.function.MessageConsumer;
 import org.reaktivity.nukleus.http2.internal.types.Flyweight;
@@ -73,6 +74,13 @@ class NukleusWriteScheduler
         accumulatedLength += length;
     }
 
+    void http11Response(
+        DirectBuffer response)
+    {
+        writeBuffer.putBytes(offset(), response, 0, response.capacity());
+        accumulatedLength += response.capacity();
+    }
+
     void doEnd()
     {
         http2Writer.doEnd(networkReply, networkReplyId);
@@ -99,14 +107,16 @@ class NukleusWriteScheduler
     {
         int candidateSizeof = accumulatedLength + sizeof;
 
-        // Every nukleus DATA frame incurs padding overhead
-        return candidateSizeof + connection.networkReplyPadding <= connection.networkReplyBudget;
+        // Every nukleus DATA frame incurs padding overhead, and frames are assembled in the write buffer
+        return candidateSizeof + connection.networkReplyPadding <= connection.networkReplyBudget &&
+                DataFW.FIELD_OFFSET_PAYLOAD + candidateSizeof <= writeBuffer.capacity();
     }
 
     int remaining()
     {
-        // Every nukleus DATA frame incurs padding overhead
+        // Every nukleus DATA frame incurs padding overhead, and frames are assembled in the write buffer
         int remaining = connection.networkReplyBudget - (accumulatedLength + connection.networkReplyPadding);
+        remaining = Math.min(remaining, writeBuffer.capacity() - offset());
         return Math.max(remaining, 0);
     }
 
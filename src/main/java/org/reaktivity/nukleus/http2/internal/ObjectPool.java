@@ -0,0 +1,71 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Supplier;
+
+/*
+ * A free list of reusable objects. Objects are handed out LIFO so that
+ * recently released (and likely cache-warm) instances are reused first.
+ * At most capacity idle objects are retained, the rest are left to GC.
+ *
+ * Callers are responsible for resetting an object's state before it
+ * is released, and for initializing it after it is acquired.
+ */
+final class ObjectPool<T>
+{
+    private final int capacity;
+    private final Supplier<T> supplier;
+    private final Deque<T> idle;
+
+    ObjectPool(
+        int capacity,
+        Supplier<T> supplier)
+    {
+        this.capacity = capacity;
+        this.supplier = supplier;
+        this.idle = new ArrayDeque<>();
+    }
+
+    T acquire()
+    {
+        T object = idle.pollFirst();
+        return object != null ? object : supplier.get();
+    }
+
+    /*
+     * @return true if the object is retained for reuse
+     */
+    boolean release(
+        T object)
+    {
+        assert object != null;
+
+        final boolean retained = idle.size() < capacity;
+        if (retained)
+        {
+            idle.addFirst(object);
+        }
+        return retained;
+    }
+
+    int size()
+    {
+        return idle.size();
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+/*
+ * Decides whether a server push goes ahead, so that pushed responses help latency
+ * instead of competing with the responses the client asked for.
+ *
+ * A push is skipped when the connection write queue is at the threshold, the
+ * connection window is exhausted, or too many pushes are already deferred. It is
+ * deferred (PUSH_PROMISE is sent, but the promised request waits) while frames
+ * are queued on the connection or less than half of the initial window is left.
+ */
+final class PushAdmission
+{
+    static final int ADMIT = 0;
+    static final int DEFER = 1;
+    static final int SKIP = 2;
+
+    private final int queueThreshold;
+
+    PushAdmission(
+        int queueThreshold)
+    {
+        this.queueThreshold = queueThreshold;
+    }
+
+    /*
+     * @param queuedEntries frames queued on the connection write scheduler
+     * @param window connection flow-control window
+     * @param initialWindow initial stream flow-control window of the peer, at most the default window
+     * @param deferredPushes pushes that are already deferred
+     *
+     * @return ADMIT, DEFER or SKIP
+     */
+    int admit(
+        int queuedEntries,
+        long window,
+        int initialWindow,
+        int deferredPushes)
+    {
+        if (queuedEntries >= queueThreshold || window <= 0L || deferredPushes >= queueThreshold)
+        {
+            return SKIP;
+        }
+        if (queuedEntries > 0 || window < initialWindow / 2 || deferredPushes > 0)
+        {
+            // deferred pushes go first, in the order they are promised
+            return DEFER;
+        }
+        return ADMIT;
+    }
+
+    /*
+     * @return true if a deferred push can be started
+     */
+    boolean resume(
+        int queuedEntries,
+        long window,
+        int initialWindow)
+    {
+        return queuedEntries == 0 && window >= initialWindow / 2 && window > 0L;
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import org.agrona.DirectBuffer;
+import org.reaktivity.nukleus.http2.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http2.internal.types.ListFW;
+import org.reaktivity.nukleus.http2.internal.types.String16FW;
+import org.reaktivity.nukleus.http2.internal.types.StringFW;
+
+/*
+ * Remembers the resources (:authority + :path) pushed on a connection in a
+ * Bloom filter, so that the same resource is not pushed again. A false positive
+ * only skips a push, and the client then requests the resource by itself.
+ *
+ * The bits are split into two generations so that the filter does not saturate
+ * on long-lived connections. Resources are added to the current generation and
+ * looked up in both, and once the current generation holds its capacity (about
+ * 0.5% false positives with 3 hashes) the older generation is cleared and becomes
+ * the current one. Resources pushed over two generations ago may be pushed again.
+ */
+final class PushedResources
+{
+    private static final byte[] AUTHORITY = ":authority".getBytes(US_ASCII);
+    private static final byte[] PATH = ":path".getBytes(US_ASCII);
+    private static final int HASH_COUNT = 3;
+    private static final int BITS_PER_RESOURCE = 16;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[][] generations;
+    private final int mask;
+    private final int capacity;
+    private final Consumer<HttpHeaderFW> hashHeader;
+
+    private int current;
+    private int count;                  // resources in the current generation
+
+    private long authorityHash;
+    private long pathHash;
+    private boolean hasPath;
+
+    PushedResources(
+        int bits)
+    {
+        final int generationBits = Integer.highestOneBit(Math.max(bits / 2 - 1, 63)) << 1;    // power of two, at least 64
+        this.generations = new long[2][generationBits >>> 6];
+        this.mask = generationBits - 1;
+        this.capacity = generationBits / BITS_PER_RESOURCE;
+        this.hashHeader = this::hashHeader;
+    }
+
+    /*
+     * @return true if the resource is added
+     *         false if the resource is (probably) already pushed
+     */
+    boolean add(
+        ListFW<HttpHeaderFW> headers)
+    {
+        authorityHash = FNV_OFFSET_BASIS;
+        pathHash = FNV_OFFSET_BASIS;
+        hasPath = false;
+        headers.forEach(hashHeader);
+
+        if (!hasPath)
+        {
+            return true;
+        }
+
+        final long hash = mix(authorityHash * 31 + pathHash);
+        final int hash1 = (int) hash;
+        final int hash2 = (int) (hash >>> 32);
+
+        if (contains(generations[current], hash1, hash2) || contains(generations[current ^ 1], hash1, hash2))
+        {
+            return false;
+        }
+
+        if (count == capacity)
+        {
+            current ^= 1;
+            Arrays.fill(generations[current], 0L);
+            count = 0;
+        }
+
+        final long[] words = generations[current];
+        for (int i = 0; i < HASH_COUNT; i++)
+        {
+            final int index = (hash1 + i * hash2) & mask;
+            words[index >>> 6] |= 1L << (index & 63);
+        }
+        count++;
+        return true;
+    }
+
+    private boolean contains(
+        long[] words,
+        int hash1,
+        int hash2)
+    {
+        for (int i = 0; i < HASH_COUNT; i++)
+        {
+            final int index = (hash1 + i * hash2) & mask;
+            if ((words[index >>> 6] & (1L << (index & 63))) == 0L)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void hashHeader(
+        HttpHeaderFW header)
+    {
+        final StringFW name = header.name();
+        final String16FW value = header.value();
+        final DirectBuffer buffer = value.buffer();
+        final int offset = value.offset() + 2;
+        final int length = value.sizeof() - 2;
+
+        if (equals(name, AUTHORITY))
+        {
+            authorityHash = hash(buffer, offset, length);
+        }
+        else if (equals(name, PATH))
+        {
+            pathHash = hash(buffer, offset, length);
+            hasPath = true;
+        }
+    }
+
+    private static boolean equals(
+        StringFW name,
+        byte[] expected)
+    {
+        final DirectBuffer buffer = name.buffer();
+        final int offset = name.offset() + 1;
+        if (name.sizeof() - 1 != expected.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++)
+        {
+            if (buffer.getByte(offset + i) != expected[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // FNV-1a
+    private static long hash(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < length; i++)
+        {
+            hash ^= buffer.getByte(offset + i) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // MurmurHash3 finalizer, spreads the bits for the derived hashes
+    private static long mix(
+        long hash)
+    {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
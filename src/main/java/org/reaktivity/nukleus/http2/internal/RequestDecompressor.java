@@ -0,0 +1,364 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.agrona.DirectBuffer;
+
+/*
+ * Streaming inflate of a gzip or deflate coded request body (RFC 7230 4.2). Compressed
+ * input is held until it is inflated, so output can be produced only as fast as the
+ * application takes it. The gzip and zlib framing is decoded here around a raw Inflater,
+ * so that one pooled Inflater serves either coding. A "deflate" body without zlib framing
+ * is inflated as raw deflate, as some clients send.
+ */
+final class RequestDecompressor
+{
+    private static final int HEADER = 0;
+    private static final int BODY = 1;
+    private static final int TRAILER = 2;
+    private static final int DONE = 3;
+
+    private static final int INCOMPLETE = -1;
+    private static final int MALFORMED = -2;
+
+    // a small body is not held to the ratio limit, as short repetitive content compresses well
+    private static final int RATIO_MIN_INPUT = 1024;
+
+    private static final int GZIP_FHCRC = 0x02;
+    private static final int GZIP_FEXTRA = 0x04;
+    private static final int GZIP_FNAME = 0x08;
+    private static final int GZIP_FCOMMENT = 0x10;
+    private static final int GZIP_RESERVED = 0xe0;
+
+    private final Inflater inflater;
+    private final CRC32 crc32;
+    private final Adler32 adler32;
+    private final byte[] input;
+
+    private int encoding;
+    private long ratioLimit;
+    private Checksum checksum;
+    private int trailerLength;
+    private int state;
+    private int inputOffset;
+    private int inputLimit;
+
+    RequestDecompressor(
+        int capacity)
+    {
+        this.inflater = new Inflater(true);
+        this.crc32 = new CRC32();
+        this.adler32 = new Adler32();
+        this.input = new byte[capacity];
+    }
+
+    RequestDecompressor init(
+        int encoding,
+        int ratioLimit)
+    {
+        assert encoding == ResponseCompressor.GZIP || encoding == ResponseCompressor.DEFLATE;
+
+        this.encoding = encoding;
+        this.ratioLimit = ratioLimit;
+        this.checksum = null;
+        this.trailerLength = 0;
+        this.state = HEADER;
+        this.inputOffset = 0;
+        this.inputLimit = 0;
+        crc32.reset();
+        adler32.reset();
+        inflater.reset();
+        return this;
+    }
+
+    /*
+     * @return space for more compressed input
+     */
+    int available()
+    {
+        return input.length - pending();
+    }
+
+    boolean finished()
+    {
+        return state == DONE;
+    }
+
+    /*
+     * Holds compressed input until it is inflated
+     *
+     * @return false if there is not enough space
+     */
+    boolean append(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        final int pending = pending();
+        if (pending + length > input.length)
+        {
+            return false;
+        }
+
+        System.arraycopy(input, inputLimit - pending, input, 0, pending);
+        buffer.getBytes(offset, input, pending, length);
+        inputOffset = 0;
+        inputLimit = pending + length;
+        if (state == BODY)
+        {
+            inflater.setInput(input, 0, inputLimit);
+        }
+        return true;
+    }
+
+    /*
+     * @return number of bytes inflated into output, at most length
+     *         -1 if the input is malformed, or inflates beyond the ratio limit
+     */
+    int inflate(
+        byte[] output,
+        int length)
+    {
+        int produced = 0;
+        while (produced < length && state != DONE)
+        {
+            if (state == HEADER)
+            {
+                final int header = header();
+                if (header == INCOMPLETE)
+                {
+                    break;
+                }
+                else if (header == MALFORMED)
+                {
+                    return -1;
+                }
+                inputOffset += header;
+                inflater.setInput(input, inputOffset, inputLimit - inputOffset);
+                state = BODY;
+            }
+            else if (state == BODY)
+            {
+                final int inflated;
+                try
+                {
+                    inflated = inflater.inflate(output, produced, length - produced);
+                }
+                catch (DataFormatException ex)
+                {
+                    return -1;
+                }
+
+                if (checksum != null)
+                {
+                    checksum.update(output, produced, inflated);
+                }
+                produced += inflated;
+                inputOffset = inputLimit - inflater.getRemaining();
+
+                final long inflatedTotal = inflater.getBytesWritten();
+                if (inflatedTotal > ratioLimit * Math.max(inflater.getBytesRead(), RATIO_MIN_INPUT) ||
+                        inflater.needsDictionary())
+                {
+                    return -1;
+                }
+
+                if (inflater.finished())
+                {
+                    state = TRAILER;
+                }
+                else if (inflated == 0)
+                {
+                    break;
+                }
+            }
+            else
+            {
+                if (pending() < trailerLength)
+                {
+                    break;
+                }
+                else if (!trailer())
+                {
+                    return -1;
+                }
+                state = DONE;
+            }
+        }
+        return produced;
+    }
+
+    void close()
+    {
+        inflater.end();
+    }
+
+    private int pending()
+    {
+        return inputLimit - inputOffset;
+    }
+
+    private int header()
+    {
+        return encoding == ResponseCompressor.GZIP ? gzipHeader() : zlibHeader();
+    }
+
+    // RFC 1952 2.3
+    private int gzipHeader()
+    {
+        final int limit = inputLimit;
+        int offset = inputOffset;
+        if (limit - offset < 10)
+        {
+            return INCOMPLETE;
+        }
+
+        final int flags = input[offset + 3] & 0xff;
+        if ((input[offset] & 0xff) != 0x1f || (input[offset + 1] & 0xff) != 0x8b || input[offset + 2] != 8 ||
+                (flags & GZIP_RESERVED) != 0)
+        {
+            return MALFORMED;
+        }
+        offset += 10;
+
+        if ((flags & GZIP_FEXTRA) != 0)
+        {
+            if (limit - offset < 2)
+            {
+                return INCOMPLETE;
+            }
+            offset += 2 + ((input[offset] & 0xff) | (input[offset + 1] & 0xff) << 8);
+        }
+        if ((flags & GZIP_FNAME) != 0)
+        {
+            offset = skipZeroTerminated(offset, limit);
+        }
+        if ((flags & GZIP_FCOMMENT) != 0)
+        {
+            offset = skipZeroTerminated(offset, limit);
+        }
+        if ((flags & GZIP_FHCRC) != 0)
+        {
+            offset += 2;
+        }
+
+        if (offset > limit)
+        {
+            return INCOMPLETE;
+        }
+
+        checksum = crc32;
+        trailerLength = 8;
+        return offset - inputOffset;
+    }
+
+    // RFC 1950 2.2, or none for raw deflate
+    private int zlibHeader()
+    {
+        if (pending() < 2)
+        {
+            return INCOMPLETE;
+        }
+
+        final int cmf = input[inputOffset] & 0xff;
+        final int flg = input[inputOffset + 1] & 0xff;
+        if ((cmf & 0x0f) != 8 || ((cmf << 8) | flg) % 31 != 0)
+        {
+            return 0;
+        }
+        else if ((flg & 0x20) != 0)
+        {
+            // preset dictionary
+            return MALFORMED;
+        }
+
+        checksum = adler32;
+        trailerLength = 4;
+        return 2;
+    }
+
+    private boolean trailer()
+    {
+        final int offset = inputOffset;
+        final long value = checksum != null ? checksum.getValue() : 0L;
+        final boolean valid;
+        if (encoding == ResponseCompressor.GZIP)
+        {
+            valid = getIntLittleEndian(offset) == value &&
+                    getIntLittleEndian(offset + 4) == (inflater.getBytesWritten() & 0xffff_ffffL);
+        }
+        else if (trailerLength == 4)
+        {
+            final long adler = (input[offset] & 0xffL) << 24 | (input[offset + 1] & 0xffL) << 16 |
+                    (input[offset + 2] & 0xffL) << 8 | (input[offset + 3] & 0xffL);
+            valid = adler == value;
+        }
+        else
+        {
+            valid = true;
+        }
+        inputOffset += trailerLength;
+        return valid;
+    }
+
+    private long getIntLittleEndian(
+        int offset)
+    {
+        return (input[offset] & 0xffL) | (input[offset + 1] & 0xffL) << 8 |
+                (input[offset + 2] & 0xffL) << 16 | (input[offset + 3] & 0xffL) << 24;
+    }
+
+    // @return offset after the zero byte, or beyond limit if there is none
+    private int skipZeroTerminated(
+        int offset,
+        int limit)
+    {
+        while (offset < limit && input[offset] != 0)
+        {
+            offset++;
+        }
+        return offset + 1;
+    }
+
+    /*
+     * @return GZIP or DEFLATE for a body with that single content coding
+     *         IDENTITY otherwise
+     */
+    static int encoding(
+        String contentEncoding)
+    {
+        int encoding = ResponseCompressor.IDENTITY;
+        if (contentEncoding != null)
+        {
+            final String coding = contentEncoding.trim();
+            if ("gzip".equalsIgnoreCase(coding) || "x-gzip".equalsIgnoreCase(coding))
+            {
+                encoding = ResponseCompressor.GZIP;
+            }
+            else if ("deflate".equalsIgnoreCase(coding))
+            {
+                encoding = ResponseCompressor.DEFLATE;
+            }
+        }
+        return encoding;
+    }
+}
@@ -0,0 +1,509 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static org.reaktivity.nukleus.buffer.BufferPool.NO_SLOT;
+
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.http2.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http2.internal.types.ListFW;
+
+/*
+ * Caches responses (headers + body) of GET requests by route + :authority + :path,
+ * so that push promises and repeated requests are served without a round trip to
+ * the application. The cache is shared by all connections of a ServerStreamFactory,
+ * and the route keeps responses of different sources or targets apart.
+ *
+ * A response is cached only when it is 200, has a positive (s-)max-age, is
+ * not no-store, no-cache or private and has no Vary or Set-Cookie header.
+ * Entries live in SizeClassBufferPool chunks of the smallest size class that
+ * fits them, and least recently used entries are evicted once their total
+ * capacity exceeds the configured capacity. A response being captured holds a
+ * full slot, which counts against the capacity until the response is committed
+ * or abandoned.
+ */
+final class ResponseCache
+{
+    private static final int MAX_ETAG_LENGTH = 512;
+
+    private final SizeClassBufferPool pool;
+    private final long capacity;
+    private final Http2Counters counters;
+    private final LongSupplier clock;
+    private final Long2ObjectHashMap<Entry> entries;
+    private final UnsafeBuffer copyRO;
+    private final ListFW<HttpHeaderFW> headersRO;
+    private final ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW> headersRW;
+    private final MutableDirectBuffer notModifiedBuffer;
+    private final Consumer<HttpHeaderFW> inspectHeader;
+
+    private Entry head;         // most recently used
+    private Entry tail;         // least recently used
+    private long used;
+    private long reserved;      // full slots of responses being captured
+
+    private String status;
+    private String cacheControl;
+    private String etag;
+    private boolean shared;
+
+    ResponseCache(
+        SizeClassBufferPool pool,
+        long capacity,
+        Http2Counters counters,
+        LongSupplier clock)
+    {
+        this.pool = pool;
+        this.capacity = capacity;
+        this.counters = counters;
+        this.clock = clock;
+        this.entries = new Long2ObjectHashMap<>();
+        this.copyRO = new UnsafeBuffer(new byte[0]);
+        this.headersRO = new ListFW<>(new HttpHeaderFW());
+        this.headersRW = new ListFW.Builder<>(new HttpHeaderFW.Builder(), new HttpHeaderFW());
+        this.notModifiedBuffer = new UnsafeBuffer(new byte[MAX_ETAG_LENGTH + 64]);
+        this.inspectHeader = this::inspectHeader;
+    }
+
+    boolean enabled()
+    {
+        return capacity > 0L;
+    }
+
+    int size()
+    {
+        return entries.size();
+    }
+
+    long used()
+    {
+        return used;
+    }
+
+    /*
+     * Entries are not keyed by authorization, so requests authorized by the nukleus
+     * or by an authorization header neither read from nor write to the cache
+     *
+     * @return true if the response to the request may be served from, or stored in, the cache
+     */
+    static boolean isCacheable(
+        long authorization,
+        Map<String, String> requestHeaders)
+    {
+        if (authorization != 0L || !"GET".equals(requestHeaders.get(":method")) ||
+                requestHeaders.containsKey("authorization"))
+        {
+            return false;
+        }
+        String requestCacheControl = requestHeaders.get("cache-control");
+        return requestCacheControl == null ||
+                !(requestCacheControl.contains("no-cache") || requestCacheControl.contains("no-store"));
+    }
+
+    /*
+     * @return cached entry of the resource, which becomes the most recently used entry
+     *         null if the resource is not cached or is expired
+     */
+    Entry lookup(
+        RouteTable.Route route,
+        String authority,
+        String path)
+    {
+        Entry entry = entries.get(key(route, authority, path));
+        if (entry != null && !entry.matches(route, authority, path))
+        {
+            entry = null;
+        }
+        if (entry != null && entry.expiresAt <= clock.getAsLong())
+        {
+            evict(entry);
+            entry = null;
+        }
+
+        if (entry == null)
+        {
+            counters.cacheMisses.getAsLong();
+        }
+        else
+        {
+            unlink(entry);
+            linkHead(entry);
+            counters.cacheHits.getAsLong();
+        }
+        return entry;
+    }
+
+    /*
+     * Starts capturing a response, the body is appended as it arrives and the entry
+     * becomes visible to lookups only once committed
+     *
+     * @return entry that captures the response
+     *         null if the response is not cacheable or there is no buffer for it
+     */
+    Entry begin(
+        RouteTable.Route route,
+        String authority,
+        String path,
+        ListFW<HttpHeaderFW> headers)
+    {
+        status = null;
+        cacheControl = null;
+        etag = null;
+        shared = true;
+        headers.forEach(inspectHeader);
+
+        final long maxAge = shared && "200".equals(status) ? maxAge(cacheControl) : -1L;
+        final int headersLength = headers.sizeof();
+        if (maxAge <= 0L || headersLength >= pool.slotCapacity() || !reserve(pool.slotCapacity()))
+        {
+            return null;
+        }
+
+        final int slot = pool.acquire(0L, pool.slotCapacity());
+        if (slot == NO_SLOT)
+        {
+            reserved -= pool.slotCapacity();
+            return null;
+        }
+        pool.buffer(slot).putBytes(0, headers.buffer(), headers.offset(), headersLength);
+
+        Entry entry = new Entry(route, authority, path, etag, clock.getAsLong() + maxAge * 1000L);
+        entry.slot = slot;
+        entry.headersLength = headersLength;
+        return entry;
+    }
+
+    /*
+     * @return true if the body fits in the entry
+     *         false otherwise, and the entry is to be abandoned
+     */
+    boolean append(
+        Entry entry,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        final int limit = entry.headersLength + entry.bodyLength;
+        final boolean fits = limit + length <= pool.capacity(entry.slot);
+        if (fits)
+        {
+            pool.buffer(entry.slot).putBytes(limit, buffer, offset, length);
+            entry.bodyLength += length;
+        }
+        return fits;
+    }
+
+    void commit(
+        Entry entry)
+    {
+        // move the response out of the capture buffer into the smallest size class that fits
+        final int newSlot = pool.acquire(0L, entry.headersLength + entry.bodyLength);
+        if (newSlot != NO_SLOT && pool.capacity(newSlot) < pool.capacity(entry.slot))
+        {
+            MutableDirectBuffer src = pool.buffer(entry.slot, copyRO);
+            pool.buffer(newSlot).putBytes(0, src, 0, entry.headersLength + entry.bodyLength);
+            pool.release(entry.slot);
+            entry.slot = newSlot;
+        }
+        else if (newSlot != NO_SLOT)
+        {
+            pool.release(newSlot);
+        }
+
+        Entry old = entries.put(entry.key, entry);
+        if (old != null)
+        {
+            release(old);
+            counters.cacheEvictions.getAsLong();
+        }
+
+        linkHead(entry);
+        reserved -= pool.slotCapacity();
+        used += pool.capacity(entry.slot);
+        while (used + reserved > capacity)
+        {
+            evict(tail);
+        }
+    }
+
+    void abandon(
+        Entry entry)
+    {
+        reserved -= pool.slotCapacity();
+        pool.release(entry.slot);
+        entry.slot = NO_SLOT;
+    }
+
+    ListFW<HttpHeaderFW> headers(
+        Entry entry)
+    {
+        return headersRO.wrap(pool.buffer(entry.slot), 0, entry.headersLength);
+    }
+
+    /*
+     * @return buffer with the body of the entry at headersLength, for bodyLength bytes
+     */
+    DirectBuffer buffer(
+        Entry entry)
+    {
+        return pool.buffer(entry.slot);
+    }
+
+    /*
+     * @return true if the client already has the cached representation
+     */
+    static boolean notModified(
+        Entry entry,
+        String ifNoneMatch)
+    {
+        return ifNoneMatch != null && entry.etag != null && ifNoneMatch.equals(entry.etag);
+    }
+
+    ListFW<HttpHeaderFW> notModifiedHeaders(
+        Entry entry)
+    {
+        final String etag = entry.etag;
+        return headersRW.wrap(notModifiedBuffer, 0, notModifiedBuffer.capacity())
+                        .item(b -> b.name(":status").value("304"))
+                        .item(b -> b.name("etag").value(etag))
+                        .build();
+    }
+
+    static long key(
+        RouteTable.Route route,
+        String authority,
+        String path)
+    {
+        int routeHash = route.source.hashCode();
+        routeHash = 31 * routeHash + Long.hashCode(route.sourceRef);
+        routeHash = 31 * routeHash + route.target.hashCode();
+        routeHash = 31 * routeHash + Long.hashCode(route.targetRef);
+        final int authorityHash = 31 * routeHash + (authority == null ? 0 : authority.hashCode());
+        return ((long) authorityHash << 32) | (path.hashCode() & 0xffff_ffffL);
+    }
+
+    /*
+     * @return freshness lifetime in seconds, s-maxage taking precedence over max-age
+     *         -1 if the response must not be stored
+     */
+    static long maxAge(
+        String cacheControl)
+    {
+        if (cacheControl == null)
+        {
+            return -1L;
+        }
+
+        long maxAge = -1L;
+        long sharedMaxAge = -1L;
+        for (String directive : cacheControl.split(","))
+        {
+            String name = directive.trim().toLowerCase();
+            if (name.startsWith("no-store") || name.startsWith("no-cache") || name.startsWith("private"))
+            {
+                return -1L;
+            }
+            else if (name.startsWith("s-maxage="))
+            {
+                sharedMaxAge = seconds(name.substring("s-maxage=".length()));
+            }
+            else if (name.startsWith("max-age="))
+            {
+                maxAge = seconds(name.substring("max-age=".length()));
+            }
+        }
+        return sharedMaxAge != -1L ? sharedMaxAge : maxAge;
+    }
+
+    private static long seconds(
+        String value)
+    {
+        try
+        {
+            return Long.parseLong(value);
+        }
+        catch (NumberFormatException ex)
+        {
+            return -1L;
+        }
+    }
+
+    /*
+     * @return false if a response with the header is per-user or negotiated, and so
+     *         is not shared by :authority + :path
+     */
+    static boolean isShared(
+        String headerName)
+    {
+        final String name = headerName.toLowerCase();
+        return !"set-cookie".equals(name) && !"vary".equals(name);
+    }
+
+    private void inspectHeader(
+        HttpHeaderFW header)
+    {
+        final String name = header.name().asString().toLowerCase();
+        shared &= isShared(name);
+        switch (name)
+        {
+        case ":status":
+            status = header.value().asString();
+            break;
+        case "cache-control":
+            cacheControl = header.value().asString();
+            break;
+        case "etag":
+            String value = header.value().asString();
+            etag = value.length() <= MAX_ETAG_LENGTH ? value : null;
+            break;
+        default:
+            break;
+        }
+    }
+
+    /*
+     * Reserves capacity for a response being captured, evicting least recently used
+     * entries while they are over the capacity
+     *
+     * @return true if reserved, false if responses already being captured take up the capacity
+     */
+    private boolean reserve(
+        int length)
+    {
+        if (reserved + length > capacity)
+        {
+            return false;
+        }
+
+        while (used + reserved + length > capacity)
+        {
+            evict(tail);
+        }
+        reserved += length;
+        return true;
+    }
+
+    private void evict(
+        Entry entry)
+    {
+        entries.remove(entry.key);
+        release(entry);
+        counters.cacheEvictions.getAsLong();
+    }
+
+    private void release(
+        Entry entry)
+    {
+        unlink(entry);
+        used -= pool.capacity(entry.slot);
+        pool.release(entry.slot);
+        entry.slot = NO_SLOT;
+    }
+
+    private void linkHead(
+        Entry entry)
+    {
+        entry.prev = null;
+        entry.next = head;
+        if (head != null)
+        {
+            head.prev = entry;
+        }
+        head = entry;
+        if (tail == null)
+        {
+            tail = entry;
+        }
+    }
+
+    private void unlink(
+        Entry entry)
+    {
+        if (entry.prev != null)
+        {
+            entry.prev.next = entry.next;
+        }
+        else
+        {
+            head = entry.next;
+        }
+        if (entry.next != null)
+        {
+            entry.next.prev = entry.prev;
+        }
+        else
+        {
+            tail = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    static final class Entry
+    {
+        final String source;
+        final long sourceRef;
+        final String target;
+        final long targetRef;
+        final String authority;
+        final String path;
+        final String etag;
+        final long expiresAt;
+        final long key;
+
+        int slot = NO_SLOT;
+        int headersLength;
+        int bodyLength;
+
+        private Entry prev;
+        private Entry next;
+
+        private Entry(
+            RouteTable.Route route,
+            String authority,
+            String path,
+            String etag,
+            long expiresAt)
+        {
+            this.source = route.source;
+            this.sourceRef = route.sourceRef;
+            this.target = route.target;
+            this.targetRef = route.targetRef;
+            this.authority = authority;
+            this.path = path;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+            this.key = key(route, authority, path);
+        }
+
+        private boolean matches(
+            RouteTable.Route route,
+            String authority,
+            String path)
+        {
+            return path.equals(this.path) && (authority == null ? this.authority == null : authority.equals(this.authority)) &&
+                    route.sourceRef == sourceRef && route.targetRef == targetRef &&
+                    route.source.equals(source) && route.target.equals(target);
+        }
+    }
+}
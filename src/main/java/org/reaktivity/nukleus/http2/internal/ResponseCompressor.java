@@ -0,0 +1,278 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+
+import org.agrona.DirectBuffer;
+
+/*
+ * Streaming gzip or deflate content coding of a response body (RFC 7230 4.2). Each
+ * input is sync flushed, so a streamed response is never held back by the encoder.
+ * The deflate stream is raw, and the gzip or zlib framing is written here, so that one
+ * pooled Deflater serves either coding.
+ */
+final class ResponseCompressor
+{
+    static final int IDENTITY = 0;
+    static final int GZIP = 1;
+    static final int DEFLATE = 2;
+
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, 0x08, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final byte[] ZLIB_HEADER = { 0x78, (byte) 0x9c };
+    private static final int TRAILER_SIZE = 8;
+
+    // smallest output that always makes progress, as the header or the trailer is not split
+    static final int MIN_OUTPUT = GZIP_HEADER.length + TRAILER_SIZE;
+
+    private final Deflater deflater;
+    private final CRC32 crc32;
+    private final Adler32 adler32;
+    private final byte[] input;
+
+    private int encoding;
+    private Checksum checksum;
+    private long inputLength;
+    private int inputLimit;
+    private boolean headerWritten;
+    private boolean finishing;
+    private boolean flushed;
+    private boolean trailerWritten;
+
+    ResponseCompressor(
+        int level,
+        int inputCapacity)
+    {
+        this.deflater = new Deflater(level, true);
+        this.crc32 = new CRC32();
+        this.adler32 = new Adler32();
+        this.input = new byte[inputCapacity];
+    }
+
+    ResponseCompressor init(
+        int encoding)
+    {
+        assert encoding == GZIP || encoding == DEFLATE;
+
+        this.encoding = encoding;
+        this.checksum = encoding == GZIP ? crc32 : adler32;
+        checksum.reset();
+        deflater.reset();
+        inputLength = 0L;
+        inputLimit = 0;
+        headerWritten = false;
+        finishing = false;
+        flushed = true;
+        trailerWritten = false;
+        return this;
+    }
+
+    int encoding()
+    {
+        return encoding;
+    }
+
+    /*
+     * Appends input to what is not compressed yet, which is kept here while the output is held back
+     *
+     * @return false if there is no room for the input
+     */
+    boolean setInput(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        assert !finishing;
+
+        final int remaining = pending();
+        if (remaining + length > input.length)
+        {
+            return false;
+        }
+
+        System.arraycopy(input, inputLimit - remaining, input, 0, remaining);
+        buffer.getBytes(offset, input, remaining, length);
+        checksum.update(input, remaining, length);
+        inputLength += length;
+        inputLimit = remaining + length;
+        deflater.setInput(input, 0, inputLimit);
+        flushed = false;
+        return true;
+    }
+
+    /*
+     * @return number of input bytes not compressed yet
+     */
+    int pending()
+    {
+        return (int) (inputLength - deflater.getBytesRead());
+    }
+
+    void finish()
+    {
+        deflater.finish();
+        finishing = true;
+    }
+
+    /*
+     * @return true if there is no more output for the input so far
+     */
+    boolean done()
+    {
+        return finishing ? trailerWritten : flushed;
+    }
+
+    /*
+     * Compresses the pending input into at most limit bytes of output, to be called until done()
+     *
+     * @return number of bytes written to output
+     */
+    int compress(
+        byte[] output,
+        int limit)
+    {
+        assert limit >= MIN_OUTPUT && limit <= output.length;
+
+        int offset = 0;
+        if (!headerWritten)
+        {
+            final byte[] header = encoding == GZIP ? GZIP_HEADER : ZLIB_HEADER;
+            System.arraycopy(header, 0, output, 0, header.length);
+            offset += header.length;
+            headerWritten = true;
+        }
+
+        final int available = limit - offset;
+        if (finishing)
+        {
+            if (!deflater.finished())
+            {
+                offset += deflater.deflate(output, offset, available);
+            }
+
+            if (deflater.finished() && limit - offset >= TRAILER_SIZE)
+            {
+                offset = trailer(output, offset);
+                trailerWritten = true;
+            }
+        }
+        else if (!flushed)
+        {
+            final int deflated = deflater.deflate(output, offset, available, Deflater.SYNC_FLUSH);
+            offset += deflated;
+
+            // a full output buffer may have more flushed output pending
+            flushed = deflated < available;
+        }
+
+        return offset;
+    }
+
+    void close()
+    {
+        deflater.end();
+    }
+
+    private int trailer(
+        byte[] output,
+        int offset)
+    {
+        final long value = checksum.getValue();
+        if (encoding == GZIP)
+        {
+            offset = putIntLittleEndian(output, offset, value);
+            offset = putIntLittleEndian(output, offset, inputLength);
+        }
+        else
+        {
+            output[offset++] = (byte) (value >>> 24);
+            output[offset++] = (byte) (value >>> 16);
+            output[offset++] = (byte) (value >>> 8);
+            output[offset++] = (byte) value;
+        }
+        return offset;
+    }
+
+    private static int putIntLittleEndian(
+        byte[] output,
+        int offset,
+        long value)
+    {
+        output[offset++] = (byte) value;
+        output[offset++] = (byte) (value >>> 8);
+        output[offset++] = (byte) (value >>> 16);
+        output[offset++] = (byte) (value >>> 24);
+        return offset;
+    }
+
+    /*
+     * @return GZIP and/or DEFLATE codings acceptable to the client, per its accept-encoding
+     */
+    static int acceptEncoding(
+        String acceptEncoding)
+    {
+        int accepted = IDENTITY;
+        if (acceptEncoding != null)
+        {
+            for (String candidate : acceptEncoding.split(","))
+            {
+                final int semicolon = candidate.indexOf(';');
+                final String coding = (semicolon != -1 ? candidate.substring(0, semicolon) : candidate).trim();
+                if (semicolon != -1 && isZeroQuality(candidate.substring(semicolon + 1)))
+                {
+                    continue;
+                }
+
+                if ("gzip".equalsIgnoreCase(coding) || "x-gzip".equalsIgnoreCase(coding) || "*".equals(coding))
+                {
+                    accepted |= GZIP;
+                }
+                else if ("deflate".equalsIgnoreCase(coding))
+                {
+                    accepted |= DEFLATE;
+                }
+            }
+        }
+        return accepted;
+    }
+
+    private static boolean isZeroQuality(
+        String parameters)
+    {
+        final String parameter = parameters.trim();
+        if (parameter.length() < 2 || Character.toLowerCase(parameter.charAt(0)) != 'q' || parameter.charAt(1) != '=')
+        {
+            return false;
+        }
+        try
+        {
+            return Double.parseDouble(parameter.substring(2).trim()) == 0.0;
+        }
+        catch (NumberFormatException ex)
+        {
+            return false;
+        }
+    }
+
+    static String codingName(
+        int encoding)
+    {
+        return encoding == GZIP ? "gzip" : "deflate";
+    }
+}
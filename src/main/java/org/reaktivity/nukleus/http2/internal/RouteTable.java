@@ -0,0 +1,222 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.agrona.DirectBuffer;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.http2.internal.types.OctetsFW;
+import org.reaktivity.nukleus.http2.internal.types.control.HttpRouteExFW;
+import org.reaktivity.nukleus.http2.internal.types.control.RouteFW;
+import org.reaktivity.nukleus.route.RouteManager;
+
+/*
+ * Routes of the stream factory, each parsed once when it is first seen, so that matching a
+ * request reads plain fields instead of decoding route flyweights and allocating strings.
+ * A parsed route is immutable, and route changes only add or drop entries. Entries are keyed
+ * by route correlation id and verified against the route bytes, in case an id is reused by
+ * another controller. The table is confined to the thread of its factory, so it needs no locks.
+ *
+ * Routes that are removed are pruned once the table has grown to twice the routes it held
+ * after the previous prune.
+ */
+final class RouteTable
+{
+    private static final int INITIAL_PRUNE_THRESHOLD = 64;
+
+    private final RouteManager router;
+    private final RouteFW routeRO = new RouteFW();
+    private final HttpRouteExFW routeExRO = new HttpRouteExFW();
+    private final Long2ObjectHashMap<Route> routes;
+    private final MessageConsumer markRoute;
+
+    private int pruneThreshold;
+    private int pruneEpoch;
+
+    RouteTable(
+        RouteManager router)
+    {
+        this.router = router;
+        this.routes = new Long2ObjectHashMap<>();
+        this.markRoute = this::markRoute;
+        this.pruneThreshold = INITIAL_PRUNE_THRESHOLD;
+    }
+
+    /*
+     * @return the parsed route of the route flyweight at index
+     */
+    Route supply(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        final RouteFW route = routeRO.wrap(buffer, index, index + length);
+        final long correlationId = route.correlationId();
+        Route parsed = routes.get(correlationId);
+        if (parsed == null || !parsed.is(buffer, index, length))
+        {
+            if (routes.size() >= pruneThreshold)
+            {
+                prune();
+            }
+            parsed = parse(route, buffer, index, length);
+            routes.put(correlationId, parsed);
+        }
+        return parsed;
+    }
+
+    int size()
+    {
+        return routes.size();
+    }
+
+    private Route parse(
+        RouteFW route,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        final List<String> headers = new ArrayList<>();
+        final OctetsFW extension = route.extension();
+        if (extension.sizeof() != 0)
+        {
+            final HttpRouteExFW routeEx = extension.get(routeExRO::wrap);
+            routeEx.headers().forEach(h ->
+            {
+                headers.add(h.name().asString());
+                headers.add(h.value().asString());
+            });
+        }
+
+        final byte[] bytes = new byte[length];
+        buffer.getBytes(index, bytes);
+
+        return new Route(route.source().asString(), route.sourceRef(), route.target().asString(), route.targetRef(),
+                headers.toArray(new String[headers.size()]), bytes);
+    }
+
+    private void prune()
+    {
+        pruneEpoch++;
+        router.forEach(markRoute);
+        routes.values().removeIf(r -> r.epoch != pruneEpoch);
+        pruneThreshold = Math.max(routes.size() * 2, INITIAL_PRUNE_THRESHOLD);
+    }
+
+    private void markRoute(
+        int msgTypeId,
+        DirectBuffer buffer,
+        int index,
+        int length)
+    {
+        final RouteFW route = routeRO.wrap(buffer, index, index + length);
+        final Route parsed = routes.get(route.correlationId());
+        if (parsed != null && parsed.is(buffer, index, length))
+        {
+            parsed.epoch = pruneEpoch;
+        }
+    }
+
+    static final class Route
+    {
+        final String source;
+        final long sourceRef;
+        final String target;
+        final long targetRef;
+
+        private final String[] headers;     // name, value pairs that a request must have
+        private final DirectBuffer bytes;
+        private int epoch;
+
+        Route(
+            String source,
+            long sourceRef,
+            String target,
+            long targetRef,
+            String[] headers,
+            byte[] bytes)
+        {
+            this.source = source;
+            this.sourceRef = sourceRef;
+            this.target = target;
+            this.targetRef = targetRef;
+            this.headers = headers;
+            this.bytes = new UnsafeBuffer(bytes);
+        }
+
+        boolean matchesSource(
+            long sourceRef,
+            String sourceName)
+        {
+            return this.sourceRef == sourceRef && source.equals(sourceName);
+        }
+
+        // all the route headers must be present in the request
+        boolean matches(
+            long sourceRef,
+            String sourceName,
+            Map<String, String> requestHeaders)
+        {
+            boolean matches = matchesSource(sourceRef, sourceName);
+            for (int i = 0; matches && i < headers.length; i += 2)
+            {
+                matches = headers[i + 1].equals(requestHeaders.get(headers[i]));
+            }
+            return matches;
+        }
+
+        // the same name, value pairs in any order
+        boolean sameHeaders(
+            Route other)
+        {
+            boolean same = headers.length == other.headers.length;
+            for (int i = 0; same && i < headers.length; i += 2)
+            {
+                same = false;
+                for (int j = 0; !same && j < other.headers.length; j += 2)
+                {
+                    same = headers[i].equals(other.headers[j]) && headers[i + 1].equals(other.headers[j + 1]);
+                }
+            }
+            return same;
+        }
+
+        private boolean is(
+            DirectBuffer buffer,
+            int index,
+            int length)
+        {
+            final int capacity = bytes.capacity();
+            boolean is = capacity == length;
+            int i = 0;
+            for (; is && i + Long.BYTES <= capacity; i += Long.BYTES)
+            {
+                is = bytes.getLong(i) == buffer.getLong(index + i);
+            }
+            for (; is && i < capacity; i++)
+            {
+                is = bytes.getByte(i) == buffer.getByte(index + i);
+            }
+            return is;
+        }
+    }
+}
@@ -17,6 +17,11 @@ package org.reaktivity.nukleus.http2.internal;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 import java.util.function.Function;
 import java.util.function.IntUnaryOperator;
 import java.util.function.LongFunction;
@@ -32,8 +37,6 @@ import org.reaktivity.nukleus.function.MessageFunction;
 import org.reaktivity.nukleus.function.MessagePredicate;
 import org.reaktivity.nukleus.http2.internal.types.HttpHeaderFW;
 import org.reaktivity.nukleus.http2.internal.types.ListFW;
-import org.reaktivity.nukleus.http2.internal.types.control.HttpRouteExFW;
-import org.reaktivity.nukleus.http2.internal.types.control.RouteFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.AbortFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.BeginFW;
 import org.reaktivity.nukleus.http2.internal.types.stream.DataFW;
@@ -62,7 +65,6 @@ public final class ServerStreamFactory implements StreamFactory
     private static final double OUTWINDOW_LOW_THRESHOLD = 0.5;      // TODO configuration
     private static final double INWINDOW_THRESHOLD = 0.5;
 
-    final RouteFW routeRO = new RouteFW();
 
     private final BeginFW beginRO = new BeginFW();
     private final DataFW dataRO = new DataFW();
@@ -75,7 +77,6 @@ public final class ServerStreamFactory implements StreamFactory
     final WindowFW windowRO = new WindowFW();
     final ResetFW resetRO = new ResetFW();
 
-    final HttpRouteExFW httpRouteExRO = new HttpRouteExFW();
     final Http2PrefaceFW prefaceRO = new Http2PrefaceFW();
     final Http2FrameFW http2RO = new Http2FrameFW();
     final Http2FrameHeaderFW http2HeaderRO = new Http2FrameHeaderFW();
@@ -88,16 +89,26 @@ public final class ServerStreamFactory implements StreamFactory
     final Http2RstStreamFW http2RstStreamRO = new Http2RstStreamFW();
     final Http2PriorityFW priorityRO = new Http2PriorityFW();
     final UnsafeBuffer scratch = new UnsafeBuffer(new byte[8192]);  // TODO
+    final MutableDirectBuffer pingBuffer = new UnsafeBuffer(new byte[8]);
+    final MutableDirectBuffer huffmanNameRW = new UnsafeBuffer(new byte[4096]);
+    final MutableDirectBuffer huffmanValueRW = new UnsafeBuffer(new byte[4096]);
+    final UnsafeBuffer huffmanNameRO = new UnsafeBuffer(new byte[0]);
+    final UnsafeBuffer huffmanValueRO = new UnsafeBuffer(new byte[0]);
     final HttpBeginExFW.Builder httpBeginExRW = new HttpBeginExFW.Builder();
     final ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW> headersRW =
             new ListFW.Builder<>(new HttpHeaderFW.Builder(), new HttpHeaderFW());
     final DirectBuffer nameRO = new UnsafeBuffer(new byte[0]);
     final DirectBuffer valueRO = new UnsafeBuffer(new byte[0]);
+    final UnsafeBuffer promoteRO = new UnsafeBuffer(new byte[0]);
     final HttpBeginExFW beginExRO = new HttpBeginExFW();
     final Http2DataExFW dataExRO = new Http2DataExFW();
     final HpackHeaderBlockFW.Builder blockRW = new HpackHeaderBlockFW.Builder();
+    final MutableDirectBuffer headerBlockBuffer;
+    final MutableDirectBuffer encodedHeadersBuffer;
+    final Map<String, String> responseHeaders = new HashMap<>();
 
     final Http2PingFW pingRO = new Http2PingFW();
+    final Http2Upgrade upgradeRO = new Http2Upgrade();
 
     private final WindowFW.Builder windowRW = new WindowFW.Builder();
     private final ResetFW.Builder resetRW = new ResetFW.Builder();
@@ -109,7 +120,7 @@ public final class ServerStreamFactory implements StreamFactory
     final BufferPool framePool;
     final BufferPool headersPool;
     final BufferPool httpWriterPool;
-    final BufferPool http2ReplyPool;
+    final SizeClassBufferPool http2ReplyPool;
     final LongSupplier supplyStreamId;
     final LongSupplier supplyTrace;
     final LongSupplier supplyCorrelationId;
@@ -119,12 +130,30 @@ public final class ServerStreamFactory implements StreamFactory
     // Buf to build HTTP error status code header
     final MutableDirectBuffer errorBuf = new UnsafeBuffer(new byte[64]);
 
-    final Long2ObjectHashMap<Correlation> correlations;
-    private final MessageFunction<RouteFW> wrapRoute;
+    final Correlations correlations;
+    final ObjectPool<Http2Stream> streamPool;
+    final ResponseCache responseCache;
+    final PushAdmission pushAdmission;
+    final RouteTable routeTable;
+    final MessageFunction<RouteTable.Route> supplyRoute;
     final LongSupplier supplyGroupId;
     final LongFunction<IntUnaryOperator> groupBudgetClaimer;
     final LongFunction<IntUnaryOperator> groupBudgetReleaser;
     final Http2Counters counters;
+    final Long2ObjectHashMap<Http2Connection> connections;
+    final int maxFrameSize;
+    final String[] compressionContentTypes;
+    final ObjectPool<ResponseCompressor> compressors;
+    final byte[] compressOutput;
+    final DirectBuffer compressOutputRO;
+    final boolean decompression;
+    final ObjectPool<RequestDecompressor> decompressors;
+    final byte[] inflateOutput;
+    final DirectBuffer inflateOutputRO;
+    final TargetAdmission<Http2Stream> targetAdmission;
+    final TargetBalancer targetBalancer;
+    final TimerWheel timers;
+    long drainDeadline;
 
     ServerStreamFactory(
         Http2Configuration config,
@@ -133,21 +162,26 @@ public final class ServerStreamFactory implements StreamFactory
         BufferPool bufferPool,
         LongSupplier supplyStreamId,
         LongSupplier supplyCorrelationId,
-        Long2ObjectHashMap<Correlation> correlations,
+        Correlations correlations,
         LongSupplier supplyGroupId,
         LongSupplier supplyTrace,
         LongFunction<IntUnaryOperator> groupBudgetClaimer,
         LongFunction<IntUnaryOperator> groupBudgetReleaser,
-        Function<String, LongSupplier> supplyCounter)
+        Function<String, LongSupplier> supplyCounter,
+        TimerWheel timers)
     {
         this.config = config;
         this.router = requireNonNull(router);
         this.writeBuffer = requireNonNull(writeBuffer);
+        // response headers arrive in one message, HPACK adds at most a few bytes per header field to them
+        this.headerBlockBuffer = new UnsafeBuffer(new byte[2 * writeBuffer.capacity()]);
+        this.encodedHeadersBuffer = new UnsafeBuffer(new byte[writeBuffer.capacity()]);
         this.bufferPool = requireNonNull(bufferPool);
         this.framePool = bufferPool.duplicate();
+        this.maxFrameSize = maxFrameSize(config.serverMaxFrameSize(), framePool.slotCapacity());
         this.headersPool = bufferPool.duplicate();
         this.httpWriterPool = bufferPool.duplicate();
-        this.http2ReplyPool = bufferPool.duplicate();
+        this.http2ReplyPool = new SizeClassBufferPool(bufferPool.duplicate());
         this.supplyStreamId = requireNonNull(supplyStreamId);
         this.supplyCorrelationId = requireNonNull(supplyCorrelationId);
         this.correlations = requireNonNull(correlations);
@@ -159,8 +193,68 @@ public final class ServerStreamFactory implements StreamFactory
         this.httpWriter = new HttpWriter(writeBuffer);
         this.http2Writer = new Http2Writer(writeBuffer);
         this.counters = new Http2Counters(supplyCounter);
+        this.streamPool = new ObjectPool<>(config.streamPoolCapacity(), () -> new Http2Stream(this));
+        this.responseCache = new ResponseCache(new SizeClassBufferPool(bufferPool.duplicate()), config.cacheCapacity(),
+                counters, System::currentTimeMillis);
+        this.pushAdmission = new PushAdmission(config.pushQueueThreshold());
+        this.connections = new Long2ObjectHashMap<>();
+        this.timers = requireNonNull(timers);
+        this.compressionContentTypes = Arrays.stream(config.compressionContentTypes().split(","))
+                .map(String::trim)
+                .filter(t -> !t.isEmpty())
+                .toArray(String[]::new);
+        this.compressors = new ObjectPool<>(config.compressionPoolCapacity(),
+                () -> new ResponseCompressor(config.compressionLevel(), bufferPool.slotCapacity()));
+        this.compressOutput = new byte[bufferPool.slotCapacity()];
+        this.compressOutputRO = new UnsafeBuffer(compressOutput);
+        this.decompression = config.decompression();
+        this.decompressors = new ObjectPool<>(config.decompressionPoolCapacity(),
+                () -> new RequestDecompressor(httpWriterPool.slotCapacity()));
+        this.inflateOutput = new byte[httpWriterPool.slotCapacity()];
+        this.inflateOutputRO = new UnsafeBuffer(inflateOutput);
+        this.targetAdmission = new TargetAdmission<>(config.targetConcurrentStreams(), config.targetQueueCapacity());
+        this.targetBalancer = new TargetBalancer(config.targetBalancer(), config.targetWeights(), new Random());
+
+        this.routeTable = new RouteTable(router);
+        this.supplyRoute = routeTable::supply;
+    }
 
-        this.wrapRoute = this::wrapRoute;
+    /*
+     * @return SETTINGS_MAX_FRAME_SIZE to advertise, so that an incomplete frame always fits in a frame slot
+     */
+    static int maxFrameSize(
+        int configured,
+        int frameSlotCapacity)
+    {
+        int maxFrameSize = Math.min(configured, Settings.MAX_FRAME_SIZE_LIMIT);
+        maxFrameSize = Math.min(maxFrameSize, frameSlotCapacity - 9);       // 9 for HTTP2 frame header
+        return Math.max(maxFrameSize, Settings.DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /*
+     * Drains the current connections, and the ones accepted afterwards, by the deadline
+     */
+    void drain(
+        long deadline)
+    {
+        drainDeadline = deadline;
+        connections.values().forEach(c -> c.drain(deadline));
+    }
+
+    /*
+     * @return number of draining connections that are closed as the deadline has passed
+     */
+    int closeDrained()
+    {
+        int workCount = 0;
+        if (!connections.isEmpty())
+        {
+            for (Http2Connection connection : new ArrayList<>(connections.values()))
+            {
+                workCount += connection.closeDrained();
+            }
+        }
+        return workCount;
     }
 
     @Override
@@ -195,14 +289,9 @@ public final class ServerStreamFactory implements StreamFactory
         final long networkRef = begin.sourceRef();
         final String acceptName = begin.source().asString();
 
-        final MessagePredicate filter = (t, b, o, l) ->
-        {
-            final RouteFW route = routeRO.wrap(b, o, l);
-            return networkRef == route.sourceRef() &&
-                    acceptName.equals(route.source().asString());
-        };
+        final MessagePredicate filter = (t, b, o, l) -> routeTable.supply(t, b, o, l).matchesSource(networkRef, acceptName);
 
-        final RouteFW route = router.resolve(begin.authorization(), filter, this::wrapRoute);
+        final RouteTable.Route route = router.resolve(begin.authorization(), filter, supplyRoute);
 
         MessageConsumer newStream = null;
 
@@ -225,15 +314,6 @@ public final class ServerStreamFactory implements StreamFactory
         return new ServerConnectReplyStream(throttle, throttleId)::handleStream;
     }
 
-    private RouteFW wrapRoute(
-        int msgTypeId,
-        DirectBuffer buffer,
-        int index,
-        int length)
-    {
-        return routeRO.wrap(buffer, index, index + length);
-    }
-
     private final class ServerAcceptStream
     {
         private final MessageConsumer networkThrottle;
@@ -328,7 +408,7 @@ public final class ServerStreamFactory implements StreamFactory
             this.streamState = this::afterBegin;
             http2Connection = new Http2Connection(ServerStreamFactory.this, router,
                     networkThrottle, networkId,
-                    networkReply, networkReplyId, wrapRoute);
+                    networkReply, networkReplyId);
             http2Connection.handleBegin(begin);
         }
 
@@ -366,8 +446,6 @@ public final class ServerStreamFactory implements StreamFactory
         private void handleAbort(
             AbortFW abort)
         {
-            correlations.remove(networkCorrelationId);
-
             // aborts reply stream
             doAbort(networkReply, networkReplyId);
 
@@ -429,7 +507,7 @@ public final class ServerStreamFactory implements StreamFactory
         private MessageConsumer streamState;
 
         private Http2Connection http2Connection;
-        private Correlation correlation;
+        private int http2StreamId;
 
         private ServerConnectReplyStream(
             MessageConsumer applicationReplyThrottle,
@@ -497,12 +575,14 @@ public final class ServerStreamFactory implements StreamFactory
         {
             final long sourceRef = begin.sourceRef();
             final long correlationId = begin.correlationId();
-            correlation = sourceRef == 0L ? correlations.remove(correlationId) : null;
-            if (correlation != null)
+            final long handle = sourceRef == 0L ? correlations.handle(correlationId) : Correlations.NO_HANDLE;
+            if (handle != Correlations.NO_HANDLE)
             {
-                http2Connection = correlation.http2Connection;
+                http2Connection = correlations.connection(handle);
+                http2StreamId = correlations.http2StreamId(handle);
+                correlations.remove(handle);
 
-                http2Connection.handleHttpBegin(begin, applicationReplyThrottle, applicationReplyId, correlation);
+                http2Connection.handleHttpBegin(begin, applicationReplyThrottle, applicationReplyId, http2StreamId);
 
                 this.streamState = this::afterBegin;
             }
@@ -515,19 +595,19 @@ public final class ServerStreamFactory implements StreamFactory
         private void handleData(
             DataFW data)
         {
-            http2Connection.handleHttpData(data, correlation);
+            http2Connection.handleHttpData(data, http2StreamId);
         }
 
         private void handleEnd(
             EndFW end)
         {
-            http2Connection.handleHttpEnd(end, correlation);
+            http2Connection.handleHttpEnd(end, http2StreamId);
         }
 
         private void handleAbort(
             AbortFW abort)
         {
-            http2Connection.handleHttpAbort(abort, correlation);
+            http2Connection.handleHttpAbort(abort, http2StreamId);
         }
 
     }
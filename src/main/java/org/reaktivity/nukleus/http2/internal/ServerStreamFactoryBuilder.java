@@ -22,7 +22,6 @@ import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 
 import org.agrona.MutableDirectBuffer;
-import org.agrona.collections.Long2ObjectHashMap;
 import org.reaktivity.nukleus.buffer.BufferPool;
 import org.reaktivity.nukleus.route.RouteManager;
 import org.reaktivity.nukleus.stream.StreamFactory;
@@ -31,7 +30,9 @@ import org.reaktivity.nukleus.stream.StreamFactoryBuilder;
 public final class ServerStreamFactoryBuilder implements StreamFactoryBuilder
 {
     private final Http2Configuration config;
-    private final Long2ObjectHashMap<Correlation> correlations;
+    private final Correlations correlations;
+    private final DrainAgent drainAgent;
+    private final TimerWheel timers;
 
     private RouteManager router;
     private MutableDirectBuffer writeBuffer;
@@ -45,10 +46,14 @@ public final class ServerStreamFactoryBuilder implements StreamFactoryBuilder
     private Function<String, LongSupplier> supplyCounter;
 
     ServerStreamFactoryBuilder(
-        Http2Configuration config)
+        Http2Configuration config,
+        DrainAgent drainAgent,
+        TimerWheel timers)
     {
         this.config = config;
-        this.correlations = new Long2ObjectHashMap<>();
+        this.correlations = new Correlations(config.correlationsCapacity());
+        this.drainAgent = drainAgent;
+        this.timers = timers;
     }
 
     @Override
@@ -134,7 +139,11 @@ public final class ServerStreamFactoryBuilder implements StreamFactoryBuilder
     {
         final BufferPool bufferPool = supplyBufferPool.get();
 
-        return new ServerStreamFactory(config, router, writeBuffer, bufferPool, supplyStreamId, supplyCorrelationId,
-                correlations, supplyGroupId, supplyTrace, groupBudgetClaimer, groupBudgetReleaser, supplyCounter);
+        final ServerStreamFactory factory = new ServerStreamFactory(config, router, writeBuffer, bufferPool, supplyStreamId,
+                supplyCorrelationId, correlations, supplyGroupId, supplyTrace, groupBudgetClaimer, groupBudgetReleaser,
+                supplyCounter, timers);
+        drainAgent.register(factory);
+
+        return factory;
     }
 }
@@ -21,7 +21,8 @@ class Settings
     static final boolean DEFAULT_ENABLE_PUSH = true;
     static final int DEFAULT_MAX_CONCURRENT_STREAMS = Integer.MAX_VALUE;
     static final int DEFAULT_INITIAL_WINDOW_SIZE = 65_535;
-    private static final int DEFAULT_MAX_FRAME_SIZE = 16_384;
+    static final int DEFAULT_MAX_FRAME_SIZE = 16_384;
+    static final int MAX_FRAME_SIZE_LIMIT = 16_777_215;
 
     int headerTableSize = DEFAULT_HEADER_TABLE_SIZE;
     boolean enablePush = DEFAULT_ENABLE_PUSH;
@@ -39,4 +40,15 @@ class Settings
     Settings()
     {
     }
+
+    Settings(
+        Settings settings)
+    {
+        this.headerTableSize = settings.headerTableSize;
+        this.enablePush = settings.enablePush;
+        this.maxConcurrentStreams = settings.maxConcurrentStreams;
+        this.initialWindowSize = settings.initialWindowSize;
+        this.maxFrameSize = settings.maxFrameSize;
+        this.maxHeaderListSize = settings.maxHeaderListSize;
+    }
 }
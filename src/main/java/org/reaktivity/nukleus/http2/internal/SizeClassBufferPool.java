@@ -0,0 +1,248 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static org.reaktivity.nukleus.buffer.BufferPool.NO_SLOT;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.IntArrayList;
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.nukleus.buffer.BufferPool;
+
+/*
+ * Hands out buffers in size classes of 1/64, 1/16, 1/4 and all of the
+ * underlying pool's slot capacity (1K/4K/16K/64K for 64K slots). Slots of the
+ * underlying BufferPool are split into equal chunks of a size class, and a slot
+ * is released back to the pool once all its chunks are free.
+ *
+ * A handle encodes the size class, chunk and underlying slot:
+ *
+ *  +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ *  |0|cls|   chunk   |                  slot (23 bits)             |
+ *  +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ */
+final class SizeClassBufferPool
+{
+    private static final int[] CHUNK_SHIFTS = { 6, 4, 2, 0 };   // 64, 16, 4, 1 chunks per slot
+
+    private static final int CLASS_SHIFT = 29;
+    private static final int CHUNK_SHIFT = 23;
+    private static final int CHUNK_MASK = 0x3f;
+    private static final int SLOT_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private final BufferPool pool;
+    private final int[] sizes;
+    private final IntArrayList[] partialSlots;      // per size class, slots with free chunks
+    private final Long2LongHashMap freeChunks;      // slot --> bit mask of free chunks
+    private final UnsafeBuffer bufferRW;
+
+    SizeClassBufferPool(
+        BufferPool pool)
+    {
+        this.pool = pool;
+        this.sizes = new int[CHUNK_SHIFTS.length];
+        this.partialSlots = new IntArrayList[CHUNK_SHIFTS.length];
+        for (int i = 0; i < CHUNK_SHIFTS.length; i++)
+        {
+            sizes[i] = Math.max(pool.slotCapacity() >> CHUNK_SHIFTS[i], 1);
+            partialSlots[i] = new IntArrayList();
+        }
+        this.freeChunks = new Long2LongHashMap(0L);
+        this.bufferRW = new UnsafeBuffer(new byte[0]);
+    }
+
+    int slotCapacity()
+    {
+        return pool.slotCapacity();
+    }
+
+    /*
+     * @return handle of a buffer with at least the given capacity
+     *         NO_SLOT if capacity exceeds slot capacity or all slots are taken
+     */
+    int acquire(
+        long streamId,
+        int capacity)
+    {
+        final int sizeClass = sizeClassOf(capacity);
+        if (sizeClass == -1)
+        {
+            return NO_SLOT;
+        }
+
+        final int chunks = chunks(sizeClass);
+        if (chunks == 1)
+        {
+            final int slot = pool.acquire(streamId);
+            return slot == NO_SLOT ? NO_SLOT : handle(sizeClass, 0, slot);
+        }
+
+        final IntArrayList partial = partialSlots[sizeClass];
+        int slot;
+        long mask;
+        if (partial.isEmpty())
+        {
+            slot = pool.acquire(streamId);
+            if (slot == NO_SLOT)
+            {
+                return NO_SLOT;
+            }
+            assert slot <= SLOT_MASK;
+            mask = chunks == 64 ? -1L : (1L << chunks) - 1;
+            partial.addInt(slot);
+        }
+        else
+        {
+            slot = partial.getInt(partial.size() - 1);
+            mask = freeChunks.get(slot);
+        }
+
+        final int chunk = Long.numberOfTrailingZeros(mask);
+        mask &= ~(1L << chunk);
+        if (mask == 0L)
+        {
+            freeChunks.remove(slot);
+            partial.fastUnorderedRemove(partial.size() - 1);
+        }
+        else
+        {
+            freeChunks.put(slot, mask);
+        }
+
+        return handle(sizeClass, chunk, slot);
+    }
+
+    int capacity(
+        int handle)
+    {
+        return sizes[sizeClass(handle)];
+    }
+
+    MutableDirectBuffer buffer(
+        int handle)
+    {
+        return buffer(handle, bufferRW);
+    }
+
+    /*
+     * Wraps the given view on the buffer, so that buffers of two handles can be used together
+     */
+    MutableDirectBuffer buffer(
+        int handle,
+        UnsafeBuffer view)
+    {
+        final int sizeClass = sizeClass(handle);
+        final int size = sizes[sizeClass];
+        final MutableDirectBuffer slotBuffer = pool.buffer(slot(handle));
+        view.wrap(slotBuffer, chunk(handle) * size, size);
+        return view;
+    }
+
+    void release(
+        int handle)
+    {
+        final int sizeClass = sizeClass(handle);
+        final int slot = slot(handle);
+        final int chunks = chunks(sizeClass);
+        if (chunks == 1)
+        {
+            pool.release(slot);
+            return;
+        }
+
+        final long bit = 1L << chunk(handle);
+        final long mask = freeChunks.get(slot);
+        assert (mask & bit) == 0L;
+
+        final long newMask = mask | bit;
+        final long allFree = chunks == 64 ? -1L : (1L << chunks) - 1;
+        final IntArrayList partial = partialSlots[sizeClass];
+        if (newMask == allFree)
+        {
+            freeChunks.remove(slot);
+            removeSlot(partial, slot);
+            pool.release(slot);
+        }
+        else
+        {
+            if (mask == 0L)
+            {
+                partial.addInt(slot);
+            }
+            freeChunks.put(slot, newMask);
+        }
+    }
+
+    private int sizeClassOf(
+        int capacity)
+    {
+        for (int i = 0; i < sizes.length; i++)
+        {
+            if (capacity <= sizes[i])
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int chunks(
+        int sizeClass)
+    {
+        return pool.slotCapacity() / sizes[sizeClass];
+    }
+
+    private static void removeSlot(
+        IntArrayList slots,
+        int slot)
+    {
+        for (int i = slots.size() - 1; i >= 0; i--)
+        {
+            if (slots.getInt(i) == slot)
+            {
+                slots.fastUnorderedRemove(i);
+                break;
+            }
+        }
+    }
+
+    private static int handle(
+        int sizeClass,
+        int chunk,
+        int slot)
+    {
+        return (sizeClass << CLASS_SHIFT) | (chunk << CHUNK_SHIFT) | slot;
+    }
+
+    private static int sizeClass(
+        int handle)
+    {
+        return handle >>> CLASS_SHIFT;
+    }
+
+    private static int chunk(
+        int handle)
+    {
+        return (handle >>> CHUNK_SHIFT) & CHUNK_MASK;
+    }
+
+    private static int slot(
+        int handle)
+    {
+        return handle & SLOT_MASK;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+/*
+ * Accounts the buffer slots held by a single HTTP2 connection (frame slot,
+ * headers slot, and per stream reply and http writer slots) against a cap, so
+ * that one connection cannot take all the slots of the shared BufferPool.
+ *
+ * The connection is "pressured" once it holds threshold (3/4 of max) slots and
+ * stays so until it falls back below half of the threshold. While pressured,
+ * window credit is scaled down linearly as the connection approaches its cap.
+ */
+final class SlotBudget
+{
+    private final int maxSlots;
+    private final int threshold;
+
+    private int acquired;
+    private boolean pressured;
+
+    SlotBudget(
+        int maxSlots)
+    {
+        assert maxSlots > 0;
+
+        this.maxSlots = maxSlots;
+        this.threshold = Math.max(maxSlots - maxSlots / 4, 1);
+    }
+
+    /*
+     * @return true if a slot can be acquired within the budget
+     *         false if the connection already holds max slots
+     */
+    boolean tryAcquire()
+    {
+        if (acquired == maxSlots)
+        {
+            return false;
+        }
+
+        acquired++;
+        if (acquired >= threshold)
+        {
+            pressured = true;
+        }
+        return true;
+    }
+
+    void release()
+    {
+        assert acquired > 0;
+
+        acquired--;
+        if (acquired < threshold / 2)
+        {
+            pressured = false;
+        }
+    }
+
+    boolean pressured()
+    {
+        return pressured;
+    }
+
+    boolean exhausted()
+    {
+        return acquired == maxSlots;
+    }
+
+    int acquired()
+    {
+        return acquired;
+    }
+
+    /*
+     * @return value as is until threshold slots are held, and then scaled
+     *         down linearly to value/(maxSlots - threshold + 1) at the cap
+     */
+    int scale(
+        int value)
+    {
+        if (acquired < threshold)
+        {
+            return value;
+        }
+
+        final int remaining = maxSlots - acquired + 1;
+        return (int) ((long) value * remaining / (maxSlots - threshold + 1));
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.Arrays;
+
+import org.agrona.collections.Int2IntHashMap;
+
+/*
+ * A set of HTTP2 stream ids with constant time add, remove and any().
+ * Ids are kept densely in an array and their positions in a primitive map,
+ * a removed id is replaced by the last id. So there is no allocation once
+ * the array has grown to the peak number of ids.
+ */
+public final class StreamIdSet
+{
+    public static final int NO_STREAM_ID = -1;
+
+    private final Int2IntHashMap positions;          // stream id --> index in ids
+    private int[] ids;
+    private int size;
+
+    public StreamIdSet()
+    {
+        this.positions = new Int2IntHashMap(-1);
+        this.ids = new int[16];
+    }
+
+    public boolean add(
+        int streamId)
+    {
+        assert streamId > 0;
+
+        if (positions.get(streamId) != -1)
+        {
+            return false;
+        }
+
+        if (size == ids.length)
+        {
+            ids = Arrays.copyOf(ids, size << 1);
+        }
+
+        ids[size] = streamId;
+        positions.put(streamId, size);
+        size++;
+        return true;
+    }
+
+    public boolean remove(
+        int streamId)
+    {
+        final int index = positions.remove(streamId);
+        if (index == -1)
+        {
+            return false;
+        }
+
+        final int last = --size;
+        if (index != last)
+        {
+            final int lastId = ids[last];
+            ids[index] = lastId;
+            positions.put(lastId, index);
+        }
+        return true;
+    }
+
+    public boolean contains(
+        int streamId)
+    {
+        return positions.get(streamId) != -1;
+    }
+
+    /*
+     * @return a stream id in the set
+     *         NO_STREAM_ID if the set is empty
+     */
+    public int any()
+    {
+        return size == 0 ? NO_STREAM_ID : ids[size - 1];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Limits the concurrent streams of each route target, so that a slow application cannot
+ * hold every stream that the clients are allowed to open. A stream over the limit waits in
+ * the bounded queue of its target until a stream of that target is closed, and is refused
+ * when the queue is full.
+ *
+ * Limits are a comma separated list of [target=]limit. A limit without a target applies to
+ * the targets that are not listed, and a limit of 0 is no limit.
+ */
+final class TargetAdmission<T>
+{
+    static final int ADMIT = 0;
+    static final int QUEUE = 1;
+    static final int REFUSE = 2;
+
+    private final Map<String, Integer> limits;
+    private final Map<String, Target<T>> targets;
+    private final int defaultLimit;
+    private final int queueCapacity;
+
+    TargetAdmission(
+        String limits,
+        int queueCapacity)
+    {
+        this.limits = new HashMap<>();
+        this.targets = new HashMap<>();
+        this.queueCapacity = queueCapacity;
+
+        int defaultLimit = 0;
+        for (String limit : limits.split(","))
+        {
+            final int equals = limit.indexOf('=');
+            if (equals != -1)
+            {
+                this.limits.put(limit.substring(0, equals).trim(), Integer.parseInt(limit.substring(equals + 1).trim()));
+            }
+            else if (!limit.trim().isEmpty())
+            {
+                defaultLimit = Integer.parseInt(limit.trim());
+            }
+        }
+        this.defaultLimit = defaultLimit;
+    }
+
+    boolean enabled()
+    {
+        return defaultLimit > 0 || !limits.isEmpty();
+    }
+
+    /*
+     * @return admission state of the target
+     *         null if the streams of the target are not limited
+     */
+    Target<T> supplyTarget(
+        String name)
+    {
+        Target<T> target = null;
+        if (enabled())
+        {
+            target = targets.get(name);
+            if (target == null)
+            {
+                final int limit = limits.getOrDefault(name, defaultLimit);
+                if (limit > 0)
+                {
+                    target = new Target<>(limit, queueCapacity);
+                    targets.put(name, target);
+                }
+            }
+        }
+        return target;
+    }
+
+    static final class Target<T>
+    {
+        private final int limit;
+        private final int queueCapacity;
+        private final Deque<T> queue;
+        private int active;
+
+        private Target(
+            int limit,
+            int queueCapacity)
+        {
+            this.limit = limit;
+            this.queueCapacity = queueCapacity;
+            this.queue = new ArrayDeque<>();
+        }
+
+        /*
+         * @return ADMIT when the stream is counted against the limit
+         *         QUEUE when the stream has to wait, see enqueue()
+         *         REFUSE when the queue is full
+         */
+        int admit()
+        {
+            int admission = REFUSE;
+            if (active < limit)
+            {
+                active++;
+                admission = ADMIT;
+            }
+            else if (queue.size() < queueCapacity)
+            {
+                admission = QUEUE;
+            }
+            return admission;
+        }
+
+        void enqueue(
+            T stream)
+        {
+            assert queue.size() < queueCapacity;
+
+            queue.add(stream);
+        }
+
+        /*
+         * Releases an admitted stream, its place is taken by the longest waiting stream
+         *
+         * @return the stream that is admitted from the queue
+         *         null if no stream is waiting
+         */
+        T release()
+        {
+            assert active > 0;
+
+            final T next = queue.poll();
+            if (next == null)
+            {
+                active--;
+            }
+            return next;
+        }
+
+        /*
+         * Removes a waiting stream that is closed or has waited too long
+         */
+        boolean remove(
+            T stream)
+        {
+            return queue.remove(stream);
+        }
+
+        int active()
+        {
+            return active;
+        }
+
+        int queued()
+        {
+            return queue.size();
+        }
+    }
+}
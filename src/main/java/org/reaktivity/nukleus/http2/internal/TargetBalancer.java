@@ -0,0 +1,257 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/*
+ * Spreads requests over the targets of the routes they match. Routes with the same source and
+ * headers but different targets are the candidates of a request, and one of them is selected
+ * by round robin, least outstanding streams or the better of two random choices. Each is
+ * weighted by the target weight, and the first matching route is used otherwise.
+ *
+ * Weights are a comma separated list of target=weight, a target that is not listed has weight 1.
+ */
+final class TargetBalancer
+{
+    static final int FIRST = 0;
+    static final int ROUND_ROBIN = 1;
+    static final int LEAST_STREAMS = 2;
+    static final int TWO_CHOICES = 3;
+
+    private final int strategy;
+    private final Map<String, Integer> weights;
+    private final Map<String, Target> targets;
+    private final List<Target> candidates;
+    private final Random random;
+
+    TargetBalancer(
+        String strategy,
+        String weights,
+        Random random)
+    {
+        this.strategy = strategy(strategy);
+        this.weights = new HashMap<>();
+        this.targets = new HashMap<>();
+        this.candidates = new ArrayList<>();
+        this.random = random;
+
+        for (String weight : weights.split(","))
+        {
+            final int equals = weight.indexOf('=');
+            if (equals != -1)
+            {
+                final int value = Integer.parseInt(weight.substring(equals + 1).trim());
+                if (value < 1)
+                {
+                    throw new IllegalArgumentException("target weight must be at least 1: " + weight);
+                }
+                this.weights.put(weight.substring(0, equals).trim(), value);
+            }
+        }
+    }
+
+    static int strategy(
+        String name)
+    {
+        switch (name)
+        {
+        case "first":
+            return FIRST;
+        case "round-robin":
+            return ROUND_ROBIN;
+        case "least-streams":
+            return LEAST_STREAMS;
+        case "two-choices":
+            return TWO_CHOICES;
+        default:
+            throw new IllegalArgumentException("unknown target balancer: " + name);
+        }
+    }
+
+    boolean enabled()
+    {
+        return strategy != FIRST;
+    }
+
+    /*
+     * @return outstanding streams of the target, counted once the stream is acquired
+     *         null if requests are not balanced
+     */
+    Target supplyTarget(
+        String name)
+    {
+        Target target = null;
+        if (enabled())
+        {
+            target = targets.get(name);
+            if (target == null)
+            {
+                target = new Target(weights.getOrDefault(name, 1));
+                targets.put(name, target);
+            }
+        }
+        return target;
+    }
+
+    // Starts collecting the candidates of a request
+    void reset()
+    {
+        candidates.clear();
+    }
+
+    void candidate(
+        String name)
+    {
+        candidates.add(supplyTarget(name));
+    }
+
+    /*
+     * @return index of the selected candidate, in the order they are collected
+     *         -1 if there are no candidates
+     */
+    int select()
+    {
+        final int size = candidates.size();
+        int selected = size == 0 ? -1 : 0;
+        if (size > 1)
+        {
+            switch (strategy)
+            {
+            case ROUND_ROBIN:
+                selected = selectRoundRobin();
+                break;
+            case LEAST_STREAMS:
+                selected = selectLeastStreams();
+                break;
+            case TWO_CHOICES:
+                selected = selectTwoChoices();
+                break;
+            default:
+                break;
+            }
+        }
+        return selected;
+    }
+
+    // Smooth weighted round robin, a target is selected weight times in every total weight selections
+    private int selectRoundRobin()
+    {
+        int total = 0;
+        int selected = 0;
+        for (int i = 0; i < candidates.size(); i++)
+        {
+            final Target candidate = candidates.get(i);
+            candidate.current += candidate.weight;
+            total += candidate.weight;
+            if (candidate.current > candidates.get(selected).current)
+            {
+                selected = i;
+            }
+        }
+        candidates.get(selected).current -= total;
+        return selected;
+    }
+
+    private int selectLeastStreams()
+    {
+        int selected = 0;
+        for (int i = 1; i < candidates.size(); i++)
+        {
+            if (lighter(candidates.get(i), candidates.get(selected)))
+            {
+                selected = i;
+            }
+        }
+        return selected;
+    }
+
+    private int selectTwoChoices()
+    {
+        final int first = pick(-1);
+        final int second = pick(first);
+        return lighter(candidates.get(second), candidates.get(first)) ? second : first;
+    }
+
+    // Weighted random candidate, other than the excluded one
+    private int pick(
+        int excluded)
+    {
+        int total = 0;
+        for (int i = 0; i < candidates.size(); i++)
+        {
+            total += i != excluded ? candidates.get(i).weight : 0;
+        }
+
+        int remaining = random.nextInt(total);
+        int picked = 0;
+        for (int i = 0; i < candidates.size(); i++)
+        {
+            if (i != excluded)
+            {
+                picked = i;
+                remaining -= candidates.get(i).weight;
+                if (remaining < 0)
+                {
+                    break;
+                }
+            }
+        }
+        return picked;
+    }
+
+    // Fewer outstanding streams for its weight
+    private static boolean lighter(
+        Target target,
+        Target other)
+    {
+        return (long) target.outstanding * other.weight < (long) other.outstanding * target.weight;
+    }
+
+    static final class Target
+    {
+        private final int weight;
+        private int outstanding;
+        private int current;
+
+        private Target(
+            int weight)
+        {
+            this.weight = weight;
+        }
+
+        void acquire()
+        {
+            outstanding++;
+        }
+
+        void release()
+        {
+            assert outstanding > 0;
+
+            outstanding--;
+        }
+
+        int outstanding()
+        {
+            return outstanding;
+        }
+    }
+}
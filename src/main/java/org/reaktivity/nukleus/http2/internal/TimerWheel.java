@@ -0,0 +1,180 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+import org.reaktivity.nukleus.Nukleus;
+
+/*
+ * Hashed timing wheel driven by the nukleus duty cycle. Timers are intrusive list nodes
+ * owned by connections and pooled streams, so scheduling and expiry do not allocate.
+ * A timer is hashed to the slot of its deadline tick, a timer more than one revolution
+ * away stays in its slot until a later revolution reaches the deadline.
+ */
+final class TimerWheel implements Nukleus
+{
+    private final LongSupplier currentTimeMillis;
+    private final long tickMillis;
+    private final int mask;
+    private final Timer[] wheel;
+
+    private long now;
+    private long tick;              // next tick to expire
+
+    TimerWheel(
+        LongSupplier currentTimeMillis,
+        long tickMillis,
+        int ticksPerWheel)
+    {
+        if (Integer.bitCount(ticksPerWheel) != 1)
+        {
+            throw new IllegalArgumentException("ticksPerWheel must be a power of 2: " + ticksPerWheel);
+        }
+        this.currentTimeMillis = currentTimeMillis;
+        this.tickMillis = tickMillis;
+        this.mask = ticksPerWheel - 1;
+        this.wheel = new Timer[ticksPerWheel];
+        this.now = currentTimeMillis.getAsLong();
+        this.tick = now / tickMillis;
+    }
+
+    /*
+     * @return time of the current duty cycle, cheap enough to be read per frame
+     */
+    long now()
+    {
+        return now;
+    }
+
+    void schedule(
+        Timer timer,
+        long deadline)
+    {
+        cancel(timer);
+
+        // rounded up, so that a timer never expires before its deadline
+        final long deadlineTick = Math.max((deadline + tickMillis - 1) / tickMillis, tick);
+        final int slot = (int) (deadlineTick & mask);
+        final Timer head = wheel[slot];
+
+        timer.deadline = deadline;
+        timer.slot = slot;
+        timer.prev = null;
+        timer.next = head;
+        if (head != null)
+        {
+            head.prev = timer;
+        }
+        wheel[slot] = timer;
+    }
+
+    void cancel(
+        Timer timer)
+    {
+        final int slot = timer.slot;
+        if (slot != Timer.NO_SLOT)
+        {
+            if (timer.prev != null)
+            {
+                timer.prev.next = timer.next;
+            }
+            else
+            {
+                wheel[slot] = timer.next;
+            }
+            if (timer.next != null)
+            {
+                timer.next.prev = timer.prev;
+            }
+            timer.prev = null;
+            timer.next = null;
+            timer.slot = Timer.NO_SLOT;
+        }
+    }
+
+    @Override
+    public int process()
+    {
+        int workCount = 0;
+
+        now = currentTimeMillis.getAsLong();
+        final long currentTick = now / tickMillis;
+
+        // after a stall, one revolution visits every slot
+        tick = Math.max(tick, currentTick - mask);
+
+        for (; tick <= currentTick; tick++)
+        {
+            final int slot = (int) (tick & mask);
+            Timer timer = wheel[slot];
+            while (timer != null)
+            {
+                Timer next = timer.next;
+                if (timer.deadline <= now)
+                {
+                    cancel(timer);
+                    timer.handler.accept(now);
+                    workCount++;
+
+                    if (next != null && next.slot != slot)
+                    {
+                        // the handler cancelled or rescheduled the next timer
+                        next = wheel[slot];
+                    }
+                }
+                timer = next;
+            }
+        }
+
+        return workCount;
+    }
+
+    @Override
+    public String name()
+    {
+        return "http2.timers";
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    static final class Timer
+    {
+        private static final int NO_SLOT = -1;
+
+        private final LongConsumer handler;
+
+        private long deadline;
+        private int slot = NO_SLOT;
+        private Timer prev;
+        private Timer next;
+
+        Timer(
+            LongConsumer handler)
+        {
+            this.handler = handler;
+        }
+
+        boolean scheduled()
+        {
+            return slot != NO_SLOT;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+/*
+ * Token bucket that bounds the rate of cheap inbound frames on a connection. Tokens
+ * are kept in thousandths so that refill per elapsed millisecond stays in integers.
+ */
+final class TokenBucket
+{
+    private static final long TOKEN = 1000L;
+
+    private final long rate;            // tokens per second, i.e. thousandths per millisecond
+    private final long capacity;
+
+    private long tokens;
+    private long refilledAt;
+
+    TokenBucket(
+        int ratePerSecond,
+        int burst,
+        long now)
+    {
+        this.rate = ratePerSecond;
+        this.capacity = burst * TOKEN;
+        this.tokens = capacity;
+        this.refilledAt = now;
+    }
+
+    /*
+     * @return true if a token is available at the given time in millis
+     *         false if the rate is exceeded
+     */
+    boolean tryAcquire(
+        long now)
+    {
+        if (now > refilledAt)
+        {
+            tokens = Math.min(tokens + (now - refilledAt) * rate, capacity);
+            refilledAt = now;
+        }
+
+        final boolean acquired = tokens >= TOKEN;
+        if (acquired)
+        {
+            tokens -= TOKEN;
+        }
+        return acquired;
+    }
+}
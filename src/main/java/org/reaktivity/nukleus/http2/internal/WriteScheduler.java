@@ -34,15 +34,19 @@ import org.reaktivity.nukleus.http2.internal.types.stream.Http2ErrorCode;
 public interface WriteScheduler
 {
 
+    boolean http11Response(DirectBuffer response);
+
     boolean windowUpdate(int streamId, int update);
 
+    boolean ping(DirectBuffer buffer, int offset, int length);
+
     boolean pingAck(DirectBuffer buffer, int offset, int length);
 
     boolean goaway(int lastStreamId, Http2ErrorCode errorCode);
 
     boolean rst(int streamId, Http2ErrorCode errorCode);
 
-    boolean settings(int maxConcurrentStreams, int initialWindowSize);
+    boolean settings(Settings settings);
 
     boolean settingsAck();
 
@@ -56,6 +60,8 @@ public interface WriteScheduler
 
     void doEnd();
 
+    int entryCount();
+
     void onWindow();
 
     void onHttp2Window();
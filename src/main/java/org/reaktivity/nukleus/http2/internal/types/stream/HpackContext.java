@@ -134,6 +134,10 @@ public class HpackContext
         private final DirectBuffer name;
         private final DirectBuffer value;
         private int size;
+        // decoded once, as a field is usually referenced many times. Static table fields are shared
+        // by all cores, where racing first uses only decode the same String more than once
+        private String nameString;
+        private String valueString;
 
         HeaderField(String name, String value)
         {
@@ -267,10 +271,17 @@ public class HpackContext
         return index != 0 && index < STATIC_TABLE.length + table.size();
     }
 
-    String name(int index)
+    /*
+     * @return name of the field at index, the String is created only on first use of the field
+     */
+    public String name(int index)
     {
-        DirectBuffer nameBuffer = nameBuffer(index);
-        return nameBuffer.getStringWithoutLengthUtf8(0, nameBuffer.capacity());
+        HeaderField field = field(index);
+        if (field.nameString == null)
+        {
+            field.nameString = field.name.getStringWithoutLengthUtf8(0, field.name.capacity());
+        }
+        return field.nameString;
     }
 
     public DirectBuffer nameBuffer(int index)
@@ -284,10 +295,28 @@ public class HpackContext
                 : table.get(table.size() - (index - STATIC_TABLE_LENGTH) - 1).name;
     }
 
-    String value(int index)
+    /*
+     * @return value of the field at index, the String is created only on first use of the field
+     */
+    public String value(int index)
+    {
+        HeaderField field = field(index);
+        if (field.valueString == null)
+        {
+            field.valueString = field.value.getStringWithoutLengthUtf8(0, field.value.capacity());
+        }
+        return field.valueString;
+    }
+
+    private HeaderField field(int index)
     {
-        DirectBuffer valueBuffer = valueBuffer(index);
-        return valueBuffer.getStringWithoutLengthUtf8(0, valueBuffer.capacity());
+        if (!valid(index))
+        {
+            throw new IllegalArgumentException("Invalid index = " + index + " in HPACK context");
+        }
+        return index < STATIC_TABLE.length
+                ? STATIC_TABLE[index]
+                : table.get(table.size() - (index - STATIC_TABLE_LENGTH) - 1);
     }
 
     public DirectBuffer valueBuffer(int index)
@@ -39,6 +39,22 @@ public class HpackHeaderBlockFW extends Flyweight
 {
 
     private final UnboundedListFW<HpackHeaderFieldFW> listFW = new UnboundedListFW<>(new HpackHeaderFieldFW());
+    private final HpackHeaderFieldFW fieldRO = new HpackHeaderFieldFW();
+
+    /*
+     * Receives the header fields of a block, in order, from visit()
+     */
+    public interface Visitor
+    {
+        /*
+         * @return true to continue with the next header field
+         */
+        boolean visitIndexed(int index);
+
+        boolean visitLiteral(HpackLiteralHeaderFieldFW literal);
+
+        boolean visitTableSizeUpdate(int tableSize);
+    }
 
     @Override
     public int limit()
@@ -57,6 +73,58 @@ public class HpackHeaderBlockFW extends Flyweight
         return listFW.anyMatch(HpackHeaderFieldFW::error);
     }
 
+    /*
+     * Decodes a header block in a single pass, each header field is wrapped and given to
+     * the visitor exactly once. Unlike wrap() and forEach(), the block is not walked upfront
+     * to find its limit, and malformed fields stop the walk instead of being revisited.
+     *
+     * @return true if all the header fields are visited
+     *         false if a header field is malformed or the visitor stopped the walk
+     */
+    public boolean visit(
+        DirectBuffer buffer,
+        int offset,
+        int limit,
+        Visitor visitor)
+    {
+        for (int progress = offset; progress < limit; progress = fieldRO.limit())
+        {
+            try
+            {
+                fieldRO.wrap(buffer, progress, limit);
+            }
+            catch (IndexOutOfBoundsException ex)
+            {
+                // header field runs past the end of the block
+                return false;
+            }
+
+            boolean proceed;
+            switch (fieldRO.type())
+            {
+            case INDEXED:
+                proceed = visitor.visitIndexed(fieldRO.index());
+                break;
+            case LITERAL:
+                HpackLiteralHeaderFieldFW literal = fieldRO.literal();
+                proceed = !literal.error() && visitor.visitLiteral(literal);
+                break;
+            case UPDATE:
+                proceed = visitor.visitTableSizeUpdate(fieldRO.tableSize());
+                break;
+            default:
+                proceed = false;
+                break;
+            }
+
+            if (!proceed)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public HpackHeaderBlockFW wrap(DirectBuffer buffer, int offset, int maxLimit)
     {
@@ -212,6 +212,12 @@ public class Http2SettingsFW extends Http2FrameFW
             return this;
         }
 
+        public Builder disablePush()
+        {
+            addSetting(x -> x.setting(ENABLE_PUSH.id(), 0L));
+            return this;
+        }
+
         public Builder maxConcurrentStreams(long streams)
         {
             addSetting(x -> x.setting(MAX_CONCURRENT_STREAMS.id(), streams));
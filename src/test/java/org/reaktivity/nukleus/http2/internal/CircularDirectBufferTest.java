@@ -95,6 +95,37 @@ public class CircularDirectBufferTest
         }
     }
 
+    @Test
+    public void promote()
+    {
+        int capacity = 10;
+        MutableDirectBuffer src = new UnsafeBuffer(new byte[capacity]);
+        MutableDirectBuffer small = new UnsafeBuffer(new byte[capacity]);
+        MutableDirectBuffer large = new UnsafeBuffer(new byte[4 * capacity]);
+        for (int i = 0; i < capacity; i++)
+        {
+            src.putByte(i, (byte) i);
+        }
+
+        // wrap the data around the end of the small buffer
+        CircularDirectBuffer cb = new CircularDirectBuffer(capacity);
+        assertTrue(cb.write(small, src, 0, 7));
+        assertEquals(7, read(cb, 7));
+        assertTrue(cb.write(small, src, 0, 6));
+        assertEquals(4, cb.available());
+
+        cb.promote(small, large, 4 * capacity);
+
+        assertEquals(6, cb.size());
+        assertEquals(34, cb.available());
+        assertEquals(0, cb.readOffset());
+        for (int i = 0; i < 6; i++)
+        {
+            assertEquals(i, large.getByte(i));
+        }
+        assertEquals(6, cb.read(6));
+    }
+
     private int write(CircularDirectBuffer cb, MutableDirectBuffer dst, MutableDirectBuffer src, int index, int length)
     {
         int part1 = cb.writeContiguous(dst, src, index, length);
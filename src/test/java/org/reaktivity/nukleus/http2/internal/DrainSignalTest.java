@@ -0,0 +1,57 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+
+public class DrainSignalTest
+{
+
+    @Test
+    public void shouldPublishGracePeriodWithNewGeneration()
+    {
+        UnsafeBuffer buffer = new UnsafeBuffer(new byte[DrainSignal.LENGTH]);
+        DrainSignal controller = new DrainSignal(buffer);
+        DrainSignal nukleus = new DrainSignal(buffer);
+
+        assertEquals(0L, nukleus.generation());
+
+        controller.request(5000L);
+        assertEquals(1L, nukleus.generation());
+        assertEquals(5000L, nukleus.gracePeriod());
+
+        controller.request(0L);
+        assertEquals(2L, nukleus.generation());
+        assertEquals(0L, nukleus.gracePeriod());
+    }
+
+    @Test
+    public void shouldCountRequestsOfEveryController()
+    {
+        UnsafeBuffer buffer = new UnsafeBuffer(new byte[DrainSignal.LENGTH]);
+        DrainSignal controller1 = new DrainSignal(buffer);
+        DrainSignal controller2 = new DrainSignal(buffer);
+        DrainSignal nukleus = new DrainSignal(buffer);
+
+        controller1.request(1000L);
+        controller2.request(1000L);
+        assertEquals(2L, nukleus.generation());
+    }
+
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+
+import org.agrona.DirectBuffer;
+import org.junit.Test;
+import org.reaktivity.nukleus.Configuration;
+import org.reaktivity.nukleus.ControllerSpi;
+import org.reaktivity.nukleus.function.MessageConsumer;
+import org.reaktivity.nukleus.function.MessagePredicate;
+
+public class Http2ControllerTest
+{
+
+    @Test
+    public void shouldPipelineRoutesUpToBatchSize()
+    {
+        TestControllerSpi controllerSpi = new TestControllerSpi();
+        Http2Controller controller = new Http2Controller(controllerSpi, config(2));
+
+        CompletableFuture<long[]> future = controller.routeServers("source", 1L, "http2", 0L, headerSets(5));
+        assertEquals(2, controllerSpi.routes.size());
+
+        controllerSpi.routes.get(1).complete(11L);
+        assertEquals(3, controllerSpi.routes.size());
+
+        controllerSpi.routes.get(0).complete(10L);
+        controllerSpi.routes.get(2).complete(12L);
+        assertEquals(5, controllerSpi.routes.size());
+        assertFalse(future.isDone());
+
+        controllerSpi.routes.get(4).complete(14L);
+        controllerSpi.routes.get(3).complete(13L);
+        assertArrayEquals(new long[] { 10L, 11L, 12L, 13L, 14L }, future.join());
+    }
+
+    @Test
+    public void shouldRouteWhenRoutesCompleteAsTheyAreSent()
+    {
+        TestControllerSpi controllerSpi = new TestControllerSpi();
+        controllerSpi.completeImmediately = true;
+        Http2Controller controller = new Http2Controller(controllerSpi, config(4));
+
+        CompletableFuture<long[]> future = controller.routeServers("source", 1L, "http2", 0L, headerSets(10_000));
+
+        assertEquals(10_000, future.join().length);
+    }
+
+    @Test
+    public void shouldStopOnFirstFailedRoute()
+    {
+        TestControllerSpi controllerSpi = new TestControllerSpi();
+        Http2Controller controller = new Http2Controller(controllerSpi, config(1));
+
+        CompletableFuture<long[]> future = controller.routeServers("source", 1L, "http2", 0L, headerSets(3));
+        controllerSpi.routes.get(0).completeExceptionally(new IllegalStateException());
+
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(1, controllerSpi.routes.size());
+    }
+
+    @Test
+    public void shouldCompleteEmptyBatch()
+    {
+        Http2Controller controller = new Http2Controller(new TestControllerSpi(), config(1));
+
+        assertEquals(0, controller.routeServers("source", 1L, "http2", 0L, headerSets(0)).join().length);
+    }
+
+    private static Http2Configuration config(
+        int batchSize)
+    {
+        Properties properties = new Properties();
+        properties.setProperty(Http2Configuration.HTTP2_CONTROLLER_ROUTE_BATCH_SIZE, Integer.toString(batchSize));
+        return new Http2Configuration(new Configuration(properties));
+    }
+
+    private static List<Map<String, String>> headerSets(
+        int count)
+    {
+        List<Map<String, String>> headerSets = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            headerSets.add(singletonMap(":authority", "host" + i + ".example.com"));
+        }
+        return headerSets;
+    }
+
+    private static final class TestControllerSpi implements ControllerSpi
+    {
+        private final List<CompletableFuture<Long>> routes = new ArrayList<>();
+        private boolean completeImmediately;
+        private long correlationId;
+
+        @Override
+        public long nextCorrelationId()
+        {
+            return ++correlationId;
+        }
+
+        @Override
+        public int doProcess()
+        {
+            return 0;
+        }
+
+        @Override
+        public void doClose()
+        {
+        }
+
+        @Override
+        public CompletableFuture<Long> doRoute(
+            int msgTypeId,
+            DirectBuffer buffer,
+            int index,
+            int length)
+        {
+            CompletableFuture<Long> route = new CompletableFuture<>();
+            routes.add(route);
+            if (completeImmediately)
+            {
+                route.complete((long) routes.size());
+            }
+            return route;
+        }
+
+        @Override
+        public CompletableFuture<Void> doUnroute(
+            int msgTypeId,
+            DirectBuffer buffer,
+            int index,
+            int length)
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> doFreeze(
+            int msgTypeId,
+            DirectBuffer buffer,
+            int index,
+            int length)
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public <T> T doSupplySource(
+            String source,
+            BiFunction<MessagePredicate, ToIntFunction<MessageConsumer>, T> factory)
+        {
+            return null;
+        }
+
+        @Override
+        public <T> T doSupplyTarget(
+            String target,
+            BiFunction<ToIntFunction<MessageConsumer>, MessagePredicate, T> factory)
+        {
+            return null;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import java.util.Properties;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.reaktivity.nukleus.route.RouteKind.CLIENT;
 import static org.reaktivity.nukleus.route.RouteKind.SERVER;
 
 public class Http2NukleusFactorySpiTest
@@ -50,6 +51,12 @@ public class Http2NukleusFactorySpiTest
         {
             {
                 oneOf(builder).streamFactory(with(SERVER), with(any(StreamFactoryBuilder.class)));
+                will(returnValue(builder));
+                oneOf(builder).streamFactory(with(CLIENT), with(any(StreamFactoryBuilder.class)));
+                will(returnValue(builder));
+                exactly(2).of(builder).inject(with(any(Nukleus.class)));
+                will(returnValue(builder));
+                oneOf(builder).build();
             }
         });
 
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+
+public class Http2UpgradeTest
+{
+
+    @Test
+    public void shouldDecodeUpgradeRequest()
+    {
+        String request = "GET /index.html HTTP/1.1\r\n" +
+                "Host: localhost:8080\r\n" +
+                "Connection: Upgrade, HTTP2-Settings\r\n" +
+                "Upgrade: h2c\r\n" +
+                "HTTP2-Settings: AAMAAABkAAQAAP__\r\n" +
+                "Accept: text/html\r\n" +
+                "\r\n";
+        DirectBuffer buffer = new UnsafeBuffer(request.getBytes(US_ASCII));
+        Http2Upgrade upgrade = new Http2Upgrade();
+
+        assertEquals(request.length(), upgrade.decode(buffer, 0, buffer.capacity()));
+
+        Map<String, String> headers = upgrade.headers();
+        assertEquals("[:method, :scheme, :authority, :path, accept]", headers.keySet().toString());
+        assertEquals("GET", headers.get(":method"));
+        assertEquals("http", headers.get(":scheme"));
+        assertEquals("localhost:8080", headers.get(":authority"));
+        assertEquals("/index.html", headers.get(":path"));
+        assertEquals("text/html", headers.get("accept"));
+
+        assertEquals(9 + 12, upgrade.settingsLimit());
+        assertEquals(12, upgrade.settings().getByte(2));
+        assertEquals(0x04, upgrade.settings().getByte(3));
+    }
+
+    @Test
+    public void shouldWaitForCompleteRequestHead()
+    {
+        String request = "GET / HTTP/1.1\r\nHost: localhost:8080\r\n";
+        DirectBuffer buffer = new UnsafeBuffer(request.getBytes(US_ASCII));
+
+        assertEquals(0, new Http2Upgrade().decode(buffer, 0, buffer.capacity()));
+    }
+
+    @Test
+    public void shouldRejectRequestWithoutUpgrade()
+    {
+        String request = "GET / HTTP/1.1\r\nHost: localhost:8080\r\n\r\n";
+        DirectBuffer buffer = new UnsafeBuffer(request.getBytes(US_ASCII));
+
+        assertEquals(-1, new Http2Upgrade().decode(buffer, 0, buffer.capacity()));
+    }
+
+    @Test
+    public void shouldRejectUpgradeWithRequestBody()
+    {
+        String request = "POST / HTTP/1.1\r\n" +
+                "Host: localhost:8080\r\n" +
+                "Connection: Upgrade, HTTP2-Settings\r\n" +
+                "Upgrade: h2c\r\n" +
+                "HTTP2-Settings: AAMAAABkAAQAAP__\r\n" +
+                "Content-Length: 5\r\n" +
+                "\r\n";
+        DirectBuffer buffer = new UnsafeBuffer(request.getBytes(US_ASCII));
+
+        assertEquals(-1, new Http2Upgrade().decode(buffer, 0, buffer.capacity()));
+    }
+
+    @Test
+    public void shouldRejectMalformedSettings()
+    {
+        String request = "GET / HTTP/1.1\r\n" +
+                "Host: localhost:8080\r\n" +
+                "Connection: Upgrade, HTTP2-Settings\r\n" +
+                "Upgrade: h2c\r\n" +
+                "HTTP2-Settings: AAMAAAB\r\n" +
+                "\r\n";
+        DirectBuffer buffer = new UnsafeBuffer(request.getBytes(US_ASCII));
+
+        assertEquals(-1, new Http2Upgrade().decode(buffer, 0, buffer.capacity()));
+    }
+
+}
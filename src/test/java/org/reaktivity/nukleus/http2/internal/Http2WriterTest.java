@@ -0,0 +1,167 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameType.CONTINUATION;
+import static org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameType.HEADERS;
+import static org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameType.PUSH_PROMISE;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2FrameFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2SettingsFW;
+
+public class Http2WriterTest
+{
+    private final MutableDirectBuffer writeBuffer = new UnsafeBuffer(new byte[1024]);
+    private final Http2Writer writer = new Http2Writer(writeBuffer);
+    private final Http2FrameFW frameRO = new Http2FrameFW();
+    private final Http2SettingsFW settingsRO = new Http2SettingsFW();
+
+    @Test
+    public void shouldWriteSmallHeaderBlockInSingleFrame()
+    {
+        MutableDirectBuffer block = block(30);
+        int frames = Http2Writer.headerBlockFrames(30, 0, 100);
+        int written = writer.headers(0, 9 * frames + 30, 3, (byte) 0, block, 0, 30, 100);
+
+        assertEquals(1, frames);
+        assertEquals(39, written);
+        Http2FrameFW frame = frameRO.wrap(writeBuffer, 0, written);
+        assertEquals(HEADERS, frame.type());
+        assertEquals(30, frame.payloadLength());
+        assertTrue((frame.flags() & 0x04) != 0);
+    }
+
+    @Test
+    public void shouldSplitHeaderBlockIntoContinuationFrames()
+    {
+        MutableDirectBuffer block = block(250);
+        int frames = Http2Writer.headerBlockFrames(250, 0, 100);
+        int written = writer.headers(0, 9 * frames + 250, 3, (byte) 0x01, block, 0, 250, 100);
+
+        assertEquals(3, frames);
+        assertEquals(277, written);
+
+        Http2FrameFW headers = frameRO.wrap(writeBuffer, 0, written);
+        assertEquals(HEADERS, headers.type());
+        assertEquals(100, headers.payloadLength());
+        assertEquals(0x01, headers.flags());
+
+        Http2FrameFW first = frameRO.wrap(writeBuffer, 109, written);
+        assertEquals(CONTINUATION, first.type());
+        assertEquals(3, first.streamId());
+        assertEquals(100, first.payloadLength());
+        assertFalse((first.flags() & 0x04) != 0);
+
+        Http2FrameFW last = frameRO.wrap(writeBuffer, 218, written);
+        assertEquals(CONTINUATION, last.type());
+        assertEquals(50, last.payloadLength());
+        assertEquals(0x04, last.flags());
+        assertEquals((byte) 200, last.payload().getByte(0));
+    }
+
+    @Test
+    public void shouldSplitPushPromiseIntoContinuationFrames()
+    {
+        MutableDirectBuffer block = block(196);
+        int frames = Http2Writer.headerBlockFrames(196, 4, 100);
+        int written = writer.pushPromise(0, 9 * frames + 4 + 196, 3, 2, block, 0, 196, 100);
+
+        assertEquals(2, frames);
+        assertEquals(218, written);
+
+        Http2FrameFW pushPromise = frameRO.wrap(writeBuffer, 0, written);
+        assertEquals(PUSH_PROMISE, pushPromise.type());
+        assertEquals(100, pushPromise.payloadLength());
+        assertEquals(0, pushPromise.flags());
+
+        Http2FrameFW last = frameRO.wrap(writeBuffer, 109, written);
+        assertEquals(CONTINUATION, last.type());
+        assertEquals(100, last.payloadLength());
+        assertEquals(0x04, last.flags());
+    }
+
+    @Test
+    public void shouldWriteHeaderBlockLargerThanWriteBufferOverSeveralWrites()
+    {
+        int blockLength = 2500;
+        MutableDirectBuffer block = block(blockLength);
+        MutableDirectBuffer received = new UnsafeBuffer(new byte[blockLength]);
+        int maxFrameSize = 16384;
+        int blockOffset = 0;
+        int frames = 0;
+
+        while (blockOffset < blockLength)
+        {
+            // every write starts at the beginning of the write buffer, as after a flush
+            int fragmentLength = Math.min(blockLength - blockOffset, Math.min(maxFrameSize, writeBuffer.capacity() - 9));
+            boolean endHeaders = blockOffset + fragmentLength == blockLength;
+            int written = blockOffset == 0
+                    ? writer.headersFragment(0, 3, (byte) 0x01, block, blockOffset, fragmentLength, endHeaders)
+                    : writer.continuation(0, 3, block, blockOffset, fragmentLength, endHeaders);
+
+            assertEquals(9 + fragmentLength, written);
+            Http2FrameFW frame = frameRO.wrap(writeBuffer, 0, written);
+            assertEquals(blockOffset == 0 ? HEADERS : CONTINUATION, frame.type());
+            assertEquals(3, frame.streamId());
+            assertEquals(endHeaders, (frame.flags() & 0x04) != 0);
+            assertEquals(blockOffset == 0, (frame.flags() & 0x01) != 0);
+
+            received.putBytes(blockOffset, frame.payload(), 0, frame.payloadLength());
+            blockOffset += fragmentLength;
+            frames++;
+        }
+
+        assertEquals(3, frames);
+        assertEquals(0, received.compareTo(block));
+    }
+
+    @Test
+    public void shouldAdvertiseOnlyNonDefaultSettings()
+    {
+        int length = Http2Writer.settingsLength(4096, 16384);
+        int written = writer.settings(0, 9 + length, 4096, 100, 0, 16384);
+
+        assertEquals(12, length);
+        assertEquals(21, written);
+
+        length = Http2Writer.settingsLength(65536, 1048576);
+        written = writer.settings(0, 9 + length, 65536, 100, 0, 1048576);
+
+        assertEquals(24, length);
+        Http2SettingsFW settings = settingsRO.wrap(writeBuffer, 0, written);
+        assertEquals(65536L, settings.headerTableSize());
+        assertEquals(100L, settings.maxConcurrentStreams());
+        assertEquals(1048576L, settings.maxFrameSize());
+    }
+
+    private static MutableDirectBuffer block(
+        int length)
+    {
+        MutableDirectBuffer block = new UnsafeBuffer(new byte[length]);
+        for (int i = 0; i < length; i++)
+        {
+            block.putByte(i, (byte) i);
+        }
+        return block;
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ObjectPoolTest
+{
+
+    @Test
+    public void shouldReuseReleasedObject()
+    {
+        ObjectPool<Object> pool = new ObjectPool<>(2, Object::new);
+
+        Object first = pool.acquire();
+        pool.release(first);
+
+        assertEquals(1, pool.size());
+        assertSame(first, pool.acquire());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void shouldReuseMostRecentlyReleasedFirst()
+    {
+        ObjectPool<Object> pool = new ObjectPool<>(2, Object::new);
+
+        Object first = pool.acquire();
+        Object second = pool.acquire();
+        assertNotSame(first, second);
+
+        pool.release(first);
+        pool.release(second);
+
+        assertSame(second, pool.acquire());
+        assertSame(first, pool.acquire());
+    }
+
+    @Test
+    public void shouldNotRetainMoreThanCapacity()
+    {
+        ObjectPool<Object> pool = new ObjectPool<>(1, Object::new);
+
+        Object first = pool.acquire();
+        Object second = pool.acquire();
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(1, pool.size());
+        assertSame(first, pool.acquire());
+    }
+
+}
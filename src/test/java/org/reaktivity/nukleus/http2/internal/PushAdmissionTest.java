@@ -0,0 +1,68 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.nukleus.http2.internal.PushAdmission.ADMIT;
+import static org.reaktivity.nukleus.http2.internal.PushAdmission.DEFER;
+import static org.reaktivity.nukleus.http2.internal.PushAdmission.SKIP;
+
+public class PushAdmissionTest
+{
+
+    @Test
+    public void shouldAdmitWhenConnectionIsIdle()
+    {
+        PushAdmission admission = new PushAdmission(8);
+
+        assertEquals(ADMIT, admission.admit(0, 65_535, 65_535, 0));
+        assertEquals(ADMIT, admission.admit(0, 40_000, 65_535, 0));
+    }
+
+    @Test
+    public void shouldDeferUnderPressure()
+    {
+        PushAdmission admission = new PushAdmission(8);
+
+        assertEquals(DEFER, admission.admit(1, 65_535, 65_535, 0));
+        assertEquals(DEFER, admission.admit(0, 30_000, 65_535, 0));
+        assertEquals(DEFER, admission.admit(0, 65_535, 65_535, 1));
+    }
+
+    @Test
+    public void shouldSkipWhenSaturated()
+    {
+        PushAdmission admission = new PushAdmission(8);
+
+        assertEquals(SKIP, admission.admit(8, 65_535, 65_535, 0));
+        assertEquals(SKIP, admission.admit(0, 0, 65_535, 0));
+        assertEquals(SKIP, admission.admit(0, 65_535, 65_535, 8));
+    }
+
+    @Test
+    public void shouldResumeOnceQueueDrainsAndWindowRecovers()
+    {
+        PushAdmission admission = new PushAdmission(8);
+
+        assertFalse(admission.resume(1, 65_535, 65_535));
+        assertFalse(admission.resume(0, 30_000, 65_535));
+        assertTrue(admission.resume(0, 40_000, 65_535));
+    }
+}
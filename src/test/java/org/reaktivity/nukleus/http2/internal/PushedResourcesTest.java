@@ -0,0 +1,106 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+import org.reaktivity.nukleus.http2.internal.types.HttpHeaderFW;
+import org.reaktivity.nukleus.http2.internal.types.ListFW;
+
+public class PushedResourcesTest
+{
+    private final ListFW.Builder<HttpHeaderFW.Builder, HttpHeaderFW> headersRW =
+            new ListFW.Builder<>(new HttpHeaderFW.Builder(), new HttpHeaderFW());
+    private final MutableDirectBuffer buffer = new UnsafeBuffer(new byte[1024]);
+
+    @Test
+    public void shouldSuppressDuplicatePush()
+    {
+        PushedResources pushed = new PushedResources(4096);
+
+        assertTrue(pushed.add(headers("localhost:8080", "/style.css")));
+        assertFalse(pushed.add(headers("localhost:8080", "/style.css")));
+    }
+
+    @Test
+    public void shouldAddDifferentResources()
+    {
+        PushedResources pushed = new PushedResources(4096);
+
+        assertTrue(pushed.add(headers("localhost:8080", "/style.css")));
+        assertTrue(pushed.add(headers("localhost:8080", "/script.js")));
+        assertTrue(pushed.add(headers("example.com", "/style.css")));
+    }
+
+    @Test
+    public void shouldNotSuppressWithoutPath()
+    {
+        PushedResources pushed = new PushedResources(64);
+        ListFW<HttpHeaderFW> headers = headersRW.wrap(buffer, 0, buffer.capacity())
+                                                .item(h -> h.name(":authority").value("localhost:8080"))
+                                                .build();
+
+        assertTrue(pushed.add(headers));
+        assertTrue(pushed.add(headers));
+    }
+
+    @Test
+    public void shouldNotSaturateOnManyResources()
+    {
+        PushedResources pushed = new PushedResources(4096);
+
+        int suppressed = 0;
+        for (int i = 0; i < 10_000; i++)
+        {
+            suppressed += pushed.add(headers("localhost:8080", "/resource/" + i)) ? 0 : 1;
+        }
+        assertTrue(suppressed < 100);
+    }
+
+    @Test
+    public void shouldSuppressRecentPushAcrossGenerations()
+    {
+        PushedResources pushed = new PushedResources(4096);     // 128 resources per generation
+
+        assertTrue(pushed.add(headers("localhost:8080", "/style.css")));
+        for (int i = 0; i < 200; i++)
+        {
+            pushed.add(headers("localhost:8080", "/resource/" + i));
+        }
+        assertFalse(pushed.add(headers("localhost:8080", "/style.css")));
+
+        for (int i = 200; i < 500; i++)
+        {
+            pushed.add(headers("localhost:8080", "/resource/" + i));
+        }
+        assertTrue(pushed.add(headers("localhost:8080", "/style.css")));
+    }
+
+    private ListFW<HttpHeaderFW> headers(
+        String authority,
+        String path)
+    {
+        return headersRW.wrap(buffer, 0, buffer.capacity())
+                        .item(h -> h.name(":method").value("GET"))
+                        .item(h -> h.name(":path").value(path))
+                        .item(h -> h.name(":authority").value(authority))
+                        .build();
+    }
+}
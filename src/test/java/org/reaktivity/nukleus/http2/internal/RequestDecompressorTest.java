@@ -0,0 +1,180 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.nukleus.http2.internal.ResponseCompressor.DEFLATE;
+import static org.reaktivity.nukleus.http2.internal.ResponseCompressor.GZIP;
+import static org.reaktivity.nukleus.http2.internal.ResponseCompressor.IDENTITY;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+
+public class RequestDecompressorTest
+{
+
+    @Test
+    public void shouldInflateGzipAcrossInputs() throws IOException
+    {
+        byte[] body = body(50_000);
+        byte[] inflated = inflate(new RequestDecompressor(4096).init(GZIP, 100), gzip(body), 100, 512);
+
+        assertArrayEquals(body, inflated);
+    }
+
+    @Test
+    public void shouldInflateGzipWithFileName() throws IOException
+    {
+        byte[] body = body(2_000);
+        byte[] compressed = gzip(body);
+        byte[] named = new byte[compressed.length + 10];
+        System.arraycopy(compressed, 0, named, 0, 10);
+        named[3] = 0x08;                                            // FNAME
+        System.arraycopy("body.json\0".getBytes(UTF_8), 0, named, 10, 10);
+        System.arraycopy(compressed, 10, named, 20, compressed.length - 10);
+
+        assertArrayEquals(body, inflate(new RequestDecompressor(4096).init(GZIP, 100), named, 7, 256));
+    }
+
+    @Test
+    public void shouldInflateZlibAndRawDeflate() throws IOException
+    {
+        byte[] body = body(20_000);
+
+        assertArrayEquals(body, inflate(new RequestDecompressor(4096).init(DEFLATE, 100), zlib(body, false), 1000, 1024));
+        assertArrayEquals(body, inflate(new RequestDecompressor(4096).init(DEFLATE, 100), zlib(body, true), 1000, 1024));
+    }
+
+    @Test
+    public void shouldRejectInflateBeyondRatioLimit() throws IOException
+    {
+        byte[] compressed = gzip(new byte[1_000_000]);
+        RequestDecompressor decompressor = new RequestDecompressor(4096).init(GZIP, 100);
+        byte[] output = new byte[4096];
+
+        int inflated = 0;
+        for (int offset = 0; offset < compressed.length && inflated >= 0; offset += 64)
+        {
+            int length = Math.min(64, compressed.length - offset);
+            assertTrue(decompressor.append(new UnsafeBuffer(compressed), offset, length));
+            while ((inflated = decompressor.inflate(output, output.length)) > 0)
+            {
+            }
+        }
+
+        assertEquals(-1, inflated);
+    }
+
+    @Test
+    public void shouldRejectCorruptChecksum() throws IOException
+    {
+        byte[] compressed = gzip(body(1_000));
+        compressed[compressed.length - 8] ^= 0x01;
+        RequestDecompressor decompressor = new RequestDecompressor(4096).init(GZIP, 100);
+        byte[] output = new byte[4096];
+
+        assertTrue(decompressor.append(new UnsafeBuffer(compressed), 0, compressed.length));
+        assertEquals(-1, decompressor.inflate(output, output.length));
+        assertFalse(decompressor.finished());
+    }
+
+    @Test
+    public void shouldHoldInputUpToCapacity()
+    {
+        RequestDecompressor decompressor = new RequestDecompressor(16).init(GZIP, 100);
+
+        assertTrue(decompressor.append(new UnsafeBuffer(new byte[8]), 0, 8));
+        assertEquals(8, decompressor.available());
+        assertFalse(decompressor.append(new UnsafeBuffer(new byte[9]), 0, 9));
+    }
+
+    @Test
+    public void shouldDetectContentEncoding()
+    {
+        assertEquals(GZIP, RequestDecompressor.encoding("gzip"));
+        assertEquals(DEFLATE, RequestDecompressor.encoding(" Deflate "));
+        assertEquals(IDENTITY, RequestDecompressor.encoding("gzip, br"));
+        assertEquals(IDENTITY, RequestDecompressor.encoding(null));
+    }
+
+    private static byte[] inflate(
+        RequestDecompressor decompressor,
+        byte[] compressed,
+        int inputSize,
+        int outputSize)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        UnsafeBuffer buffer = new UnsafeBuffer(compressed);
+        byte[] output = new byte[outputSize];
+        for (int offset = 0; offset < compressed.length; offset += inputSize)
+        {
+            int length = Math.min(inputSize, compressed.length - offset);
+            assertTrue(decompressor.append(buffer, offset, length));
+            for (int inflated = decompressor.inflate(output, output.length); inflated > 0;
+                    inflated = decompressor.inflate(output, output.length))
+            {
+                out.write(output, 0, inflated);
+            }
+        }
+        assertTrue(decompressor.finished());
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(
+        byte[] body) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out))
+        {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] zlib(
+        byte[] body,
+        boolean raw) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(6, raw)))
+        {
+            deflate.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] body(
+        int length)
+    {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; body.length() < length; i++)
+        {
+            body.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i % 17).append("\"},");
+        }
+        return body.substring(0, length).getBytes(UTF_8);
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCacheTest
+{
+
+    @Test
+    public void shouldPreferSharedMaxAge()
+    {
+        assertEquals(60L, ResponseCache.maxAge("max-age=60"));
+        assertEquals(600L, ResponseCache.maxAge("public, max-age=60, s-maxage=600"));
+        assertEquals(600L, ResponseCache.maxAge("S-MAXAGE=600, max-age=60"));
+    }
+
+    @Test
+    public void shouldNotStoreUncacheableResponses()
+    {
+        assertEquals(-1L, ResponseCache.maxAge(null));
+        assertEquals(-1L, ResponseCache.maxAge("public"));
+        assertEquals(-1L, ResponseCache.maxAge("max-age=60, no-store"));
+        assertEquals(-1L, ResponseCache.maxAge("no-cache=\"set-cookie\", max-age=60"));
+        assertEquals(-1L, ResponseCache.maxAge("private, max-age=60"));
+        assertEquals(-1L, ResponseCache.maxAge("max-age=abc"));
+    }
+
+    @Test
+    public void shouldCacheOnlyAnonymousGetRequests()
+    {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(":method", "GET");
+        headers.put(":path", "/style.css");
+        assertTrue(ResponseCache.isCacheable(0L, headers));
+
+        headers.put("cache-control", "no-cache");
+        assertFalse(ResponseCache.isCacheable(0L, headers));
+
+        headers.remove("cache-control");
+        headers.put("authorization", "Bearer token");
+        assertFalse(ResponseCache.isCacheable(0L, headers));
+
+        headers.remove("authorization");
+        assertFalse(ResponseCache.isCacheable(1L, headers));
+
+        headers.put(":method", "POST");
+        assertFalse(ResponseCache.isCacheable(0L, headers));
+    }
+
+    @Test
+    public void shouldNotShareVaryingResponses()
+    {
+        assertTrue(ResponseCache.isShared("content-type"));
+        assertFalse(ResponseCache.isShared("vary"));
+        assertFalse(ResponseCache.isShared("Vary"));
+        assertFalse(ResponseCache.isShared("Set-Cookie"));
+    }
+
+    @Test
+    public void shouldKeyByRouteAuthorityAndPath()
+    {
+        RouteTable.Route route = new RouteTable.Route("source", 1L, "http", 2L, new String[0], new byte[0]);
+        RouteTable.Route sameRoute = new RouteTable.Route("source", 1L, "http", 2L, new String[0], new byte[0]);
+
+        assertEquals(ResponseCache.key(route, "example.com", "/"), ResponseCache.key(sameRoute, "example.com", "/"));
+        assertNotEquals(ResponseCache.key(route, "example.com", "/"), ResponseCache.key(route, "example.net", "/"));
+        assertNotEquals(ResponseCache.key(route, "example.com", "/"), ResponseCache.key(route, null, "/"));
+    }
+
+    @Test
+    public void shouldKeyRoutesApart()
+    {
+        RouteTable.Route route = new RouteTable.Route("source", 1L, "http", 2L, new String[0], new byte[0]);
+
+        long key = ResponseCache.key(route, "example.com", "/");
+        assertNotEquals(key, ResponseCache.key(new RouteTable.Route("other", 1L, "http", 2L, new String[0], new byte[0]),
+                "example.com", "/"));
+        assertNotEquals(key, ResponseCache.key(new RouteTable.Route("source", 3L, "http", 2L, new String[0], new byte[0]),
+                "example.com", "/"));
+        assertNotEquals(key, ResponseCache.key(new RouteTable.Route("source", 1L, "other", 2L, new String[0], new byte[0]),
+                "example.com", "/"));
+        assertNotEquals(key, ResponseCache.key(new RouteTable.Route("source", 1L, "http", 3L, new String[0], new byte[0]),
+                "example.com", "/"));
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.nukleus.http2.internal.ResponseCompressor.DEFLATE;
+import static org.reaktivity.nukleus.http2.internal.ResponseCompressor.GZIP;
+import static org.reaktivity.nukleus.http2.internal.ResponseCompressor.IDENTITY;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+
+public class ResponseCompressorTest
+{
+
+    @Test
+    public void shouldCompressGzipAcrossInputs() throws IOException
+    {
+        byte[] body = body(100_000);
+        byte[] compressed = compress(new ResponseCompressor(6, 8192).init(GZIP), body, 4096, 64);
+
+        assertTrue(compressed.length < body.length / 5);
+        assertArrayEquals(body, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void shouldCompressDeflate() throws IOException
+    {
+        byte[] body = body(10_000);
+        byte[] compressed = compress(new ResponseCompressor(6, 8192).init(DEFLATE), body, 1000, 1024);
+
+        assertArrayEquals(body, readAll(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void shouldReuseAfterInit() throws IOException
+    {
+        ResponseCompressor compressor = new ResponseCompressor(6, 8192);
+        compress(compressor.init(DEFLATE), body(5_000), 500, 256);
+
+        byte[] body = body(5_000);
+        byte[] compressed = compress(compressor.init(GZIP), body, 500, 256);
+
+        assertArrayEquals(body, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void shouldKeepInputWhileOutputIsHeldBack() throws IOException
+    {
+        ResponseCompressor compressor = new ResponseCompressor(6, 2048).init(GZIP);
+        UnsafeBuffer body = new UnsafeBuffer(body(3000));
+        byte[] output = new byte[2048];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertTrue(compressor.setInput(body, 0, 1500));
+        assertEquals(1500, compressor.pending());
+        assertFalse(compressor.setInput(body, 1500, 600));
+        assertTrue(compressor.setInput(body, 1500, 500));
+        assertEquals(2000, compressor.pending());
+
+        out.write(output, 0, compressor.compress(output, ResponseCompressor.MIN_OUTPUT));
+        assertFalse(compressor.done());
+        drain(compressor, output, out);
+
+        assertTrue(compressor.setInput(body, 2000, 1000));
+        compressor.finish();
+        while (!compressor.done())
+        {
+            out.write(output, 0, compressor.compress(output, ResponseCompressor.MIN_OUTPUT));
+        }
+
+        assertArrayEquals(body.byteArray(), readAll(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))));
+    }
+
+    @Test
+    public void shouldParseAcceptEncoding()
+    {
+        assertEquals(IDENTITY, ResponseCompressor.acceptEncoding(null));
+        assertEquals(IDENTITY, ResponseCompressor.acceptEncoding("br, identity"));
+        assertEquals(GZIP | DEFLATE, ResponseCompressor.acceptEncoding("gzip, deflate, br"));
+        assertEquals(DEFLATE, ResponseCompressor.acceptEncoding("gzip;q=0, deflate;q=0.5"));
+        assertEquals(GZIP, ResponseCompressor.acceptEncoding("GZIP ; q=1.0"));
+        assertEquals(GZIP, ResponseCompressor.acceptEncoding("*"));
+    }
+
+    private static byte[] compress(
+        ResponseCompressor compressor,
+        byte[] body,
+        int inputSize,
+        int outputSize)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] input = new byte[inputSize];
+        byte[] output = new byte[outputSize];
+        for (int offset = 0; offset < body.length; offset += inputSize)
+        {
+            int length = Math.min(inputSize, body.length - offset);
+            System.arraycopy(body, offset, input, 0, length);
+            assertTrue(compressor.setInput(new UnsafeBuffer(input), 0, length));
+            drain(compressor, output, out);
+        }
+        compressor.finish();
+        drain(compressor, output, out);
+        return out.toByteArray();
+    }
+
+    private static void drain(
+        ResponseCompressor compressor,
+        byte[] output,
+        ByteArrayOutputStream out)
+    {
+        while (!compressor.done())
+        {
+            out.write(output, 0, compressor.compress(output, output.length));
+        }
+    }
+
+    private static byte[] body(
+        int length)
+    {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; body.length() < length; i++)
+        {
+            body.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i % 17).append("\"},");
+        }
+        return body.substring(0, length).getBytes(UTF_8);
+    }
+
+    private static byte[] readAll(
+        InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer))
+        {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RouteTableTest
+{
+
+    @Test
+    public void shouldMatchSource()
+    {
+        RouteTable.Route route = new RouteTable.Route("source", 1L, "http2", 2L, new String[0], new byte[0]);
+
+        assertTrue(route.matchesSource(1L, "source"));
+        assertFalse(route.matchesSource(2L, "source"));
+        assertFalse(route.matchesSource(1L, "other"));
+    }
+
+    @Test
+    public void shouldMatchRequestWithAllRouteHeaders()
+    {
+        RouteTable.Route route = new RouteTable.Route("source", 1L, "http2", 2L,
+                new String[] { ":authority", "example.com", ":path", "/api" }, new byte[0]);
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put(":authority", "example.com");
+        headers.put(":path", "/api");
+        headers.put(":method", "GET");
+
+        assertTrue(route.matches(1L, "source", headers));
+        assertFalse(route.matches(1L, "other", headers));
+
+        headers.put(":path", "/");
+        assertFalse(route.matches(1L, "source", headers));
+
+        headers.remove(":path");
+        assertFalse(route.matches(1L, "source", headers));
+    }
+
+    @Test
+    public void shouldMatchAnyRequestWithoutRouteHeaders()
+    {
+        RouteTable.Route route = new RouteTable.Route("source", 1L, "http2", 2L, new String[0], new byte[0]);
+
+        assertTrue(route.matches(1L, "source", new HashMap<>()));
+    }
+
+    @Test
+    public void shouldCompareRouteHeadersInAnyOrder()
+    {
+        RouteTable.Route route = new RouteTable.Route("source", 1L, "http", 2L,
+                new String[] { ":authority", "example.com", ":path", "/api" }, new byte[0]);
+        RouteTable.Route reordered = new RouteTable.Route("source", 1L, "app", 3L,
+                new String[] { ":path", "/api", ":authority", "example.com" }, new byte[0]);
+        RouteTable.Route catchAll = new RouteTable.Route("source", 1L, "app", 3L, new String[0], new byte[0]);
+        RouteTable.Route other = new RouteTable.Route("source", 1L, "app", 3L,
+                new String[] { ":authority", "example.com", ":path", "/" }, new byte[0]);
+
+        assertTrue(route.sameHeaders(reordered));
+        assertFalse(route.sameHeaders(catchAll));
+        assertFalse(catchAll.sameHeaders(route));
+        assertFalse(route.sameHeaders(other));
+        assertTrue(catchAll.sameHeaders(catchAll));
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.nukleus.buffer.BufferPool.NO_SLOT;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+import org.reaktivity.nukleus.buffer.BufferPool;
+
+public class SizeClassBufferPoolTest
+{
+    private static final int SLOT_CAPACITY = 65536;
+
+    @Test
+    public void shouldAcquireAndReleaseInEachSizeClass()
+    {
+        TestBufferPool slots = new TestBufferPool(4, SLOT_CAPACITY);
+        SizeClassBufferPool pool = new SizeClassBufferPool(slots);
+
+        int[] capacities = { 1024, 4096, 16384, 65536 };
+        int[] handles = new int[capacities.length];
+        for (int i = 0; i < capacities.length; i++)
+        {
+            handles[i] = pool.acquire(1L, capacities[i] - 1);
+            assertNotEquals(NO_SLOT, handles[i]);
+            assertEquals(capacities[i], pool.capacity(handles[i]));
+            assertEquals(capacities[i], pool.buffer(handles[i]).capacity());
+        }
+        assertEquals(4, slots.acquired());
+        assertEquals(NO_SLOT, pool.acquire(1L, SLOT_CAPACITY + 1));
+
+        for (int handle : handles)
+        {
+            pool.release(handle);
+        }
+        assertEquals(0, slots.acquired());
+    }
+
+    @Test
+    public void shouldReuseReleasedChunk()
+    {
+        TestBufferPool slots = new TestBufferPool(1, SLOT_CAPACITY);
+        SizeClassBufferPool pool = new SizeClassBufferPool(slots);
+
+        int first = pool.acquire(1L, 1024);
+        int second = pool.acquire(1L, 1024);
+        pool.release(first);
+
+        assertEquals(first, pool.acquire(1L, 1024));
+        assertEquals(1, slots.acquired());
+
+        pool.release(first);
+        pool.release(second);
+        assertEquals(0, slots.acquired());
+    }
+
+    @Test
+    public void shouldFillSlotBeforeAcquiringAnother()
+    {
+        TestBufferPool slots = new TestBufferPool(2, SLOT_CAPACITY);
+        SizeClassBufferPool pool = new SizeClassBufferPool(slots);
+
+        List<Integer> handles = new ArrayList<>();
+        for (int i = 0; i < 16; i++)
+        {
+            handles.add(pool.acquire(1L, 4096));
+        }
+        assertEquals(1, slots.acquired());
+
+        int next = pool.acquire(1L, 4096);
+        assertNotEquals(NO_SLOT, next);
+        assertEquals(2, slots.acquired());
+        pool.release(next);
+        assertEquals(1, slots.acquired());
+
+        handles.forEach(pool::release);
+        assertEquals(0, slots.acquired());
+    }
+
+    @Test
+    public void shouldNotAcquireWhenSlotsAreTaken()
+    {
+        TestBufferPool slots = new TestBufferPool(1, SLOT_CAPACITY);
+        SizeClassBufferPool pool = new SizeClassBufferPool(slots);
+
+        int handle = pool.acquire(1L, 1024);
+        assertEquals(NO_SLOT, pool.acquire(1L, 4096));
+
+        pool.release(handle);
+        assertNotEquals(NO_SLOT, pool.acquire(1L, 4096));
+    }
+
+    @Test
+    public void shouldNotOverlapBuffersOfLiveHandles()
+    {
+        TestBufferPool slots = new TestBufferPool(4, SLOT_CAPACITY);
+        SizeClassBufferPool pool = new SizeClassBufferPool(slots);
+
+        List<Integer> handles = new ArrayList<>();
+        for (int i = 0; i < 64; i++)
+        {
+            handles.add(pool.acquire(1L, 1024));
+        }
+        for (int i = 0; i < 8; i++)
+        {
+            handles.add(pool.acquire(1L, 4096));
+        }
+        handles.add(pool.acquire(1L, 16384));
+        assertFalse(handles.contains(NO_SLOT));
+
+        for (int handle : handles)
+        {
+            MutableDirectBuffer buffer = pool.buffer(handle);
+            buffer.setMemory(0, buffer.capacity(), (byte) 0);
+            buffer.putInt(0, handle);
+            buffer.putInt(buffer.capacity() - Integer.BYTES, handle);
+        }
+
+        UnsafeBuffer view = new UnsafeBuffer(new byte[0]);
+        for (int handle : handles)
+        {
+            MutableDirectBuffer buffer = pool.buffer(handle, view);
+            assertEquals(handle, buffer.getInt(0));
+            assertEquals(handle, buffer.getInt(buffer.capacity() - Integer.BYTES));
+        }
+        assertTrue(slots.acquired() <= 3);
+    }
+
+    private static final class TestBufferPool implements BufferPool
+    {
+        private final int slotCapacity;
+        private final MutableDirectBuffer[] buffers;
+        private final boolean[] used;
+
+        TestBufferPool(
+            int slotCount,
+            int slotCapacity)
+        {
+            this.slotCapacity = slotCapacity;
+            this.buffers = new MutableDirectBuffer[slotCount];
+            this.used = new boolean[slotCount];
+            for (int i = 0; i < slotCount; i++)
+            {
+                buffers[i] = new UnsafeBuffer(new byte[slotCapacity]);
+            }
+        }
+
+        int acquired()
+        {
+            int acquired = 0;
+            for (boolean slot : used)
+            {
+                acquired += slot ? 1 : 0;
+            }
+            return acquired;
+        }
+
+        @Override
+        public int slotCapacity()
+        {
+            return slotCapacity;
+        }
+
+        @Override
+        public int acquire(
+            long streamId)
+        {
+            for (int slot = 0; slot < used.length; slot++)
+            {
+                if (!used[slot])
+                {
+                    used[slot] = true;
+                    return slot;
+                }
+            }
+            return NO_SLOT;
+        }
+
+        @Override
+        public MutableDirectBuffer buffer(
+            int slot)
+        {
+            return buffers[slot];
+        }
+
+        @Override
+        public void release(
+            int slot)
+        {
+            assert used[slot];
+            used[slot] = false;
+        }
+
+        @Override
+        public BufferPool duplicate()
+        {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlotBudgetTest
+{
+
+    @Test
+    public void shouldNotAcquireBeyondMaxSlots()
+    {
+        SlotBudget budget = new SlotBudget(2);
+
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.exhausted());
+        assertFalse(budget.tryAcquire());
+        assertEquals(2, budget.acquired());
+
+        budget.release();
+        assertFalse(budget.exhausted());
+        assertTrue(budget.tryAcquire());
+    }
+
+    @Test
+    public void shouldBePressuredUntilBelowHalfThreshold()
+    {
+        SlotBudget budget = new SlotBudget(8);      // threshold is 6
+
+        for (int i = 0; i < 5; i++)
+        {
+            assertTrue(budget.tryAcquire());
+        }
+        assertFalse(budget.pressured());
+
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.pressured());
+
+        budget.release();
+        budget.release();
+        budget.release();
+        assertTrue(budget.pressured());
+
+        budget.release();
+        assertFalse(budget.pressured());
+    }
+
+    @Test
+    public void shouldScaleDownTowardsCap()
+    {
+        SlotBudget budget = new SlotBudget(8);      // threshold is 6
+
+        for (int i = 0; i < 5; i++)
+        {
+            budget.tryAcquire();
+        }
+        assertEquals(1200, budget.scale(1200));
+
+        budget.tryAcquire();
+        assertEquals(1200, budget.scale(1200));
+
+        budget.tryAcquire();
+        assertEquals(800, budget.scale(1200));
+
+        budget.tryAcquire();
+        assertEquals(400, budget.scale(1200));
+    }
+
+}
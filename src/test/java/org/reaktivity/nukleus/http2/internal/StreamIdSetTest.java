@@ -0,0 +1,71 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.nukleus.http2.internal.StreamIdSet.NO_STREAM_ID;
+
+import org.junit.Test;
+
+public class StreamIdSetTest
+{
+
+    @Test
+    public void shouldAddAndRemove()
+    {
+        StreamIdSet set = new StreamIdSet();
+        assertEquals(NO_STREAM_ID, set.any());
+
+        assertTrue(set.add(1));
+        assertTrue(set.add(3));
+        assertFalse(set.add(3));
+        assertEquals(2, set.size());
+        assertTrue(set.contains(1));
+
+        assertTrue(set.remove(1));
+        assertFalse(set.remove(1));
+        assertFalse(set.contains(1));
+        assertEquals(3, set.any());
+
+        assertTrue(set.remove(3));
+        assertEquals(NO_STREAM_ID, set.any());
+    }
+
+    @Test
+    public void shouldKeepIdsWhenRemovingFromMiddle()
+    {
+        StreamIdSet set = new StreamIdSet();
+        for (int id = 1; id < 100; id += 2)
+        {
+            set.add(id);
+        }
+
+        for (int id = 1; id < 100; id += 4)
+        {
+            assertTrue(set.remove(id));
+        }
+
+        assertEquals(25, set.size());
+        for (int id = 3; id < 100; id += 4)
+        {
+            assertTrue(set.contains(id));
+        }
+        assertTrue(set.contains(set.any()));
+    }
+
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.nukleus.http2.internal.TargetAdmission.ADMIT;
+import static org.reaktivity.nukleus.http2.internal.TargetAdmission.QUEUE;
+import static org.reaktivity.nukleus.http2.internal.TargetAdmission.REFUSE;
+
+public class TargetAdmissionTest
+{
+
+    @Test
+    public void shouldNotLimitByDefault()
+    {
+        TargetAdmission<String> admission = new TargetAdmission<>("", 16);
+
+        assertFalse(admission.enabled());
+        assertNull(admission.supplyTarget("http2"));
+    }
+
+    @Test
+    public void shouldApplyDefaultAndTargetLimits()
+    {
+        TargetAdmission<String> admission = new TargetAdmission<>("2, slow=1, fast=0", 0);
+
+        TargetAdmission.Target<String> http2 = admission.supplyTarget("http2");
+        assertSame(http2, admission.supplyTarget("http2"));
+        assertEquals(ADMIT, http2.admit());
+        assertEquals(ADMIT, http2.admit());
+        assertEquals(REFUSE, http2.admit());
+
+        TargetAdmission.Target<String> slow = admission.supplyTarget("slow");
+        assertEquals(ADMIT, slow.admit());
+        assertEquals(REFUSE, slow.admit());
+
+        assertNull(admission.supplyTarget("fast"));
+    }
+
+    @Test
+    public void shouldQueueUntilQueueIsFull()
+    {
+        TargetAdmission<String> admission = new TargetAdmission<>("1", 2);
+        TargetAdmission.Target<String> target = admission.supplyTarget("http2");
+
+        assertEquals(ADMIT, target.admit());
+        assertEquals(QUEUE, target.admit());
+        target.enqueue("stream3");
+        assertEquals(QUEUE, target.admit());
+        target.enqueue("stream5");
+        assertEquals(REFUSE, target.admit());
+
+        assertEquals(1, target.active());
+        assertEquals(2, target.queued());
+    }
+
+    @Test
+    public void shouldAdmitLongestWaitingOnRelease()
+    {
+        TargetAdmission<String> admission = new TargetAdmission<>("1", 2);
+        TargetAdmission.Target<String> target = admission.supplyTarget("http2");
+
+        assertEquals(ADMIT, target.admit());
+        assertEquals(QUEUE, target.admit());
+        target.enqueue("stream3");
+        assertEquals(QUEUE, target.admit());
+        target.enqueue("stream5");
+
+        assertEquals("stream3", target.release());
+        assertEquals("stream5", target.release());
+        assertNull(target.release());
+
+        assertEquals(0, target.active());
+        assertEquals(0, target.queued());
+    }
+
+    @Test
+    public void shouldRemoveWaitingStream()
+    {
+        TargetAdmission<String> admission = new TargetAdmission<>("1", 2);
+        TargetAdmission.Target<String> target = admission.supplyTarget("http2");
+
+        assertEquals(ADMIT, target.admit());
+        assertEquals(QUEUE, target.admit());
+        target.enqueue("stream3");
+
+        assertTrue(target.remove("stream3"));
+        assertFalse(target.remove("stream3"));
+        assertNull(target.release());
+        assertEquals(ADMIT, target.admit());
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class TargetBalancerTest
+{
+
+    @Test
+    public void shouldSelectFirstRouteByDefault()
+    {
+        TargetBalancer balancer = new TargetBalancer("first", "", new Random(0));
+
+        assertFalse(balancer.enabled());
+        assertNull(balancer.supplyTarget("app0"));
+    }
+
+    @Test
+    public void shouldSelectNoneWithoutCandidates()
+    {
+        TargetBalancer balancer = new TargetBalancer("round-robin", "", new Random(0));
+
+        balancer.reset();
+        assertEquals(-1, balancer.select());
+    }
+
+    @Test
+    public void shouldSelectByWeightedRoundRobin()
+    {
+        TargetBalancer balancer = new TargetBalancer("round-robin", "app0=2", new Random(0));
+
+        int[] selections = new int[2];
+        for (int i = 0; i < 30; i++)
+        {
+            balancer.reset();
+            balancer.candidate("app0");
+            balancer.candidate("app1");
+            selections[balancer.select()]++;
+        }
+
+        assertEquals(20, selections[0]);
+        assertEquals(10, selections[1]);
+    }
+
+    @Test
+    public void shouldSelectLeastOutstandingStreams()
+    {
+        TargetBalancer balancer = new TargetBalancer("least-streams", "app1=4", new Random(0));
+        balancer.supplyTarget("app0").acquire();
+        balancer.supplyTarget("app1").acquire();
+        balancer.supplyTarget("app1").acquire();
+
+        balancer.reset();
+        balancer.candidate("app0");
+        balancer.candidate("app1");
+        assertEquals(1, balancer.select());
+
+        balancer.supplyTarget("app1").acquire();
+        balancer.supplyTarget("app1").acquire();
+        balancer.supplyTarget("app1").acquire();
+        assertEquals(0, balancer.select());
+
+        balancer.supplyTarget("app1").release();
+        assertEquals(4, balancer.supplyTarget("app1").outstanding());
+    }
+
+    @Test
+    public void shouldSelectLighterOfTwoChoices()
+    {
+        TargetBalancer balancer = new TargetBalancer("two-choices", "", new Random(0));
+        for (int i = 0; i < 8; i++)
+        {
+            balancer.supplyTarget("app0").acquire();
+        }
+        for (int i = 0; i < 4; i++)
+        {
+            balancer.supplyTarget("app1").acquire();
+        }
+
+        for (int i = 0; i < 100; i++)
+        {
+            balancer.reset();
+            balancer.candidate("app0");
+            balancer.candidate("app1");
+            assertEquals(1, balancer.select());
+
+            // the most loaded target always loses to the other choice
+            balancer.candidate("app2");
+            assertNotEquals(0, balancer.select());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownBalancer()
+    {
+        new TargetBalancer("random", "", new Random(0));
+    }
+}
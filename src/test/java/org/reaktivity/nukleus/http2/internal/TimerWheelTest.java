@@ -0,0 +1,135 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TimerWheelTest
+{
+    private long currentTimeMillis;
+    private final List<String> expired = new ArrayList<>();
+
+    @Test
+    public void shouldExpireTimerAtDeadline()
+    {
+        TimerWheel timers = new TimerWheel(() -> currentTimeMillis, 10, 8);
+        TimerWheel.Timer timer = new TimerWheel.Timer(now -> expired.add("a@" + now));
+
+        timers.schedule(timer, 25);
+        assertTrue(timer.scheduled());
+
+        currentTimeMillis = 24;
+        assertEquals(0, timers.process());
+
+        currentTimeMillis = 30;
+        assertEquals(1, timers.process());
+        assertEquals("[a@30]", expired.toString());
+        assertFalse(timer.scheduled());
+    }
+
+    @Test
+    public void shouldExpireTimerBeyondOneRevolution()
+    {
+        TimerWheel timers = new TimerWheel(() -> currentTimeMillis, 10, 8);
+        TimerWheel.Timer timer = new TimerWheel.Timer(now -> expired.add("a@" + now));
+
+        timers.schedule(timer, 250);
+
+        for (currentTimeMillis = 10; currentTimeMillis < 250; currentTimeMillis += 10)
+        {
+            assertEquals(0, timers.process());
+        }
+
+        assertEquals(1, timers.process());
+        assertEquals("[a@250]", expired.toString());
+    }
+
+    @Test
+    public void shouldExpireTimersAfterStall()
+    {
+        TimerWheel timers = new TimerWheel(() -> currentTimeMillis, 10, 8);
+        timers.schedule(new TimerWheel.Timer(now -> expired.add("a")), 20);
+        timers.schedule(new TimerWheel.Timer(now -> expired.add("b")), 70);
+
+        currentTimeMillis = 1000;
+        assertEquals(2, timers.process());
+        assertEquals(2, expired.size());
+    }
+
+    @Test
+    public void shouldNotExpireCancelledTimer()
+    {
+        TimerWheel timers = new TimerWheel(() -> currentTimeMillis, 10, 8);
+        TimerWheel.Timer timer = new TimerWheel.Timer(now -> expired.add("a"));
+
+        timers.schedule(timer, 20);
+        timers.cancel(timer);
+
+        currentTimeMillis = 100;
+        assertEquals(0, timers.process());
+        assertTrue(expired.isEmpty());
+    }
+
+    @Test
+    public void shouldExpireTimersCancelledByHandler()
+    {
+        TimerWheel timers = new TimerWheel(() -> currentTimeMillis, 10, 8);
+        TimerWheel.Timer b = new TimerWheel.Timer(now -> expired.add("b"));
+        TimerWheel.Timer c = new TimerWheel.Timer(now -> expired.add("c"));
+        TimerWheel.Timer a = new TimerWheel.Timer(now ->
+        {
+            expired.add("a");
+            timers.cancel(b);
+        });
+
+        timers.schedule(c, 20);
+        timers.schedule(b, 20);
+        timers.schedule(a, 20);
+
+        currentTimeMillis = 20;
+        assertEquals(2, timers.process());
+        assertEquals("[a, c]", expired.toString());
+    }
+
+    @Test
+    public void shouldRescheduleFromHandler()
+    {
+        TimerWheel timers = new TimerWheel(() -> currentTimeMillis, 10, 8);
+        TimerWheel.Timer[] timer = new TimerWheel.Timer[1];
+        timer[0] = new TimerWheel.Timer(now ->
+        {
+            expired.add("a@" + now);
+            timers.schedule(timer[0], now + 100);
+        });
+
+        timers.schedule(timer[0], 20);
+
+        currentTimeMillis = 20;
+        assertEquals(1, timers.process());
+        currentTimeMillis = 110;
+        assertEquals(0, timers.process());
+        currentTimeMillis = 120;
+        assertEquals(1, timers.process());
+        assertEquals("[a@20, a@120]", expired.toString());
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TokenBucketTest
+{
+
+    @Test
+    public void shouldAllowBurstThenLimitRate()
+    {
+        TokenBucket bucket = new TokenBucket(10, 3, 0L);
+
+        assertTrue(bucket.tryAcquire(0L));
+        assertTrue(bucket.tryAcquire(0L));
+        assertTrue(bucket.tryAcquire(0L));
+        assertFalse(bucket.tryAcquire(0L));
+
+        assertFalse(bucket.tryAcquire(99L));
+        assertTrue(bucket.tryAcquire(100L));
+        assertFalse(bucket.tryAcquire(100L));
+    }
+
+    @Test
+    public void shouldNotRefillBeyondBurst()
+    {
+        TokenBucket bucket = new TokenBucket(10, 2, 0L);
+
+        assertTrue(bucket.tryAcquire(60_000L));
+        assertTrue(bucket.tryAcquire(60_000L));
+        assertFalse(bucket.tryAcquire(60_000L));
+    }
+
+}
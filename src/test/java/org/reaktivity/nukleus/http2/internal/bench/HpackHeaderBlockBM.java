@@ -0,0 +1,157 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal.bench;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.reaktivity.nukleus.http2.internal.types.stream.HpackLiteralHeaderFieldFW.LiteralType.WITHOUT_INDEXING;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reaktivity.nukleus.http2.internal.types.stream.HpackHeaderBlockFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.HpackHeaderFieldFW;
+import org.reaktivity.nukleus.http2.internal.types.stream.HpackLiteralHeaderFieldFW;
+
+/*
+ * Decoding of a request header block: wrap(), error() and forEach() each walk the
+ * header fields, visit() wraps and yields each header field once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class HpackHeaderBlockBM
+{
+    @Param({"10", "30", "80"})
+    public int headers;
+
+    private final HpackHeaderBlockFW blockRO = new HpackHeaderBlockFW();
+    private final LengthVisitor visitor = new LengthVisitor();
+
+    private DirectBuffer block;
+    private int length;
+    private int sum;
+
+    @Setup(Level.Trial)
+    public void init()
+    {
+        UnsafeBuffer buffer = new UnsafeBuffer(new byte[64 * 1024]);
+        HpackHeaderBlockFW.Builder builder = new HpackHeaderBlockFW.Builder().wrap(buffer, 0, buffer.capacity());
+        builder.header(h -> h.indexed(2))       // :method: GET
+               .header(h -> h.indexed(6))       // :scheme: http
+               .header(h -> h.indexed(4))       // :path: /
+               .header(h -> h.literal(l -> l.type(WITHOUT_INDEXING).name(1).value("www.example.com")));
+        for (int i = 4; i < headers; i++)
+        {
+            final int n = i;
+            builder.header(h -> h.literal(l -> l.type(WITHOUT_INDEXING).name("x-header-" + n).value("value-" + n)));
+        }
+        length = builder.build().sizeof();
+        block = buffer;
+    }
+
+    @Benchmark
+    public int multiPass()
+    {
+        sum = 0;
+        HpackHeaderBlockFW headerBlock = blockRO.wrap(block, 0, length);
+        if (!headerBlock.error())
+        {
+            headerBlock.forEach(this::accumulate);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int singlePass()
+    {
+        visitor.sum = 0;
+        blockRO.visit(block, 0, length, visitor);
+        return visitor.sum;
+    }
+
+    private void accumulate(
+        HpackHeaderFieldFW field)
+    {
+        switch (field.type())
+        {
+        case INDEXED:
+            sum += field.index();
+            break;
+        case LITERAL:
+            HpackLiteralHeaderFieldFW literal = field.literal();
+            sum += literal.valueLiteral().payload().capacity();
+            break;
+        default:
+            break;
+        }
+    }
+
+    private static final class LengthVisitor implements HpackHeaderBlockFW.Visitor
+    {
+        private int sum;
+
+        @Override
+        public boolean visitIndexed(
+            int index)
+        {
+            sum += index;
+            return true;
+        }
+
+        @Override
+        public boolean visitLiteral(
+            HpackLiteralHeaderFieldFW literal)
+        {
+            sum += literal.valueLiteral().payload().capacity();
+            return true;
+        }
+
+        @Override
+        public boolean visitTableSizeUpdate(
+            int tableSize)
+        {
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(HpackHeaderBlockBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal.bench;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reaktivity.nukleus.http2.internal.types.stream.Http2DataFW;
+
+/*
+ * Framing of a 1 MB response body into DATA frames, one operation per body, for
+ * the protocol default max frame size and larger sizes a peer may allow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class Http2DataFramingBM
+{
+    private static final int BODY_SIZE = 1024 * 1024;
+
+    @Param({"16384", "65536", "262144", "1048576"})
+    public int maxFrameSize;
+
+    private final Http2DataFW.Builder dataRW = new Http2DataFW.Builder();
+
+    private MutableDirectBuffer body;
+    private MutableDirectBuffer writeBuffer;
+
+    @Setup(Level.Trial)
+    public void init()
+    {
+        body = new UnsafeBuffer(new byte[BODY_SIZE]);
+        writeBuffer = new UnsafeBuffer(new byte[BODY_SIZE + (BODY_SIZE / 16_384) * 9]);
+    }
+
+    @Benchmark
+    public int frames()
+    {
+        int frames = 0;
+        int offset = 0;
+        int written = 0;
+        while (offset < BODY_SIZE)
+        {
+            int chunk = Math.min(BODY_SIZE - offset, maxFrameSize);
+            written += dataRW.wrap(writeBuffer, written, writeBuffer.capacity())
+                             .streamId(1)
+                             .payload(body, offset, chunk)
+                             .build()
+                             .sizeof();
+            offset += chunk;
+            frames++;
+        }
+        return frames;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(Http2DataFramingBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
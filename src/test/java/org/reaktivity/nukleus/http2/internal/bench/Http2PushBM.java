@@ -0,0 +1,138 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal.bench;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.reaktivity.nukleus.http2.internal.Http2StreamState.CLOSED;
+import static org.reaktivity.nukleus.http2.internal.Http2StreamState.HALF_CLOSED_REMOTE;
+import static org.reaktivity.nukleus.http2.internal.Http2StreamState.OPEN;
+
+import java.util.Map;
+
+import org.agrona.collections.Int2ObjectHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reaktivity.nukleus.http2.internal.Http2StreamState;
+import org.reaktivity.nukleus.http2.internal.StreamIdSet;
+
+/*
+ * Push fan-out: a pushed response pushes fanOut more resources, each needing a
+ * client-initiated stream to send PUSH_PROMISE on, while client streams open and close.
+ * Compares the indexed lookup against a scan of all the connection's streams.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class Http2PushBM
+{
+    @Param({"10", "100", "1000"})
+    public int streams;
+
+    @Param({"16"})
+    public int fanOut;
+
+    private final Int2ObjectHashMap<Http2StreamState> http2Streams = new Int2ObjectHashMap<>();
+    private final StreamIdSet pushableStreamIds = new StreamIdSet();
+
+    private int nextStreamId;
+
+    @Setup(Level.Trial)
+    public void init()
+    {
+        http2Streams.clear();
+        nextStreamId = 1;
+        for (int i = 0; i < streams; i++)
+        {
+            // promised streams (even) are not eligible for PUSH_PROMISE
+            http2Streams.put(nextStreamId + 1, HALF_CLOSED_REMOTE);
+            openClientStream();
+        }
+    }
+
+    @Benchmark
+    public int indexed()
+    {
+        int pushId = 0;
+        for (int i = 0; i < fanOut; i++)
+        {
+            pushId += pushableStreamIds.any();
+        }
+        churn();
+        return pushId;
+    }
+
+    @Benchmark
+    public int scan()
+    {
+        int pushId = 0;
+        for (int i = 0; i < fanOut; i++)
+        {
+            pushId += http2Streams.entrySet()
+                                  .stream()
+                                  .filter(e -> (e.getKey() & 0x01) == 1)     // client-initiated stream
+                                  .filter(e -> e.getValue() == OPEN || e.getValue() == HALF_CLOSED_REMOTE)
+                                  .mapToInt(Map.Entry::getKey)
+                                  .findAny()
+                                  .orElse(-1);
+        }
+        churn();
+        return pushId;
+    }
+
+    // the oldest client stream completes and a new one is opened
+    private void churn()
+    {
+        final int closedStreamId = nextStreamId - 2 * streams;
+        http2Streams.put(closedStreamId, CLOSED);
+        http2Streams.remove(closedStreamId);
+        pushableStreamIds.remove(closedStreamId);
+        openClientStream();
+    }
+
+    private void openClientStream()
+    {
+        http2Streams.put(nextStreamId, OPEN);
+        pushableStreamIds.add(nextStreamId);
+        nextStreamId += 2;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(Http2PushBM.class.getSimpleName())
+                .forks(0)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
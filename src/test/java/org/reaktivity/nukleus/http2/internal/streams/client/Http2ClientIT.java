@@ -0,0 +1,105 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal.streams.client;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.rules.RuleChain.outerRule;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+import org.kaazing.k3po.junit.annotation.Specification;
+import org.kaazing.k3po.junit.rules.K3poRule;
+import org.reaktivity.nukleus.http2.internal.Http2Controller;
+import org.reaktivity.reaktor.test.ReaktorRule;
+
+public class Http2ClientIT
+{
+    private static final long SOURCE_REF = 101L;
+    private static final long TARGET_REF = 201L;
+
+    private final K3poRule k3po = new K3poRule()
+            .addScriptRoot("client", "org/reaktivity/nukleus/http2/internal/streams/client");
+
+    private final TestRule timeout = new DisableOnDebug(new Timeout(10, SECONDS));
+
+    private final ReaktorRule reaktor = new ReaktorRule()
+            .directory("target/nukleus-itests")
+            .commandBufferCapacity(1024)
+            .responseBufferCapacity(1024)
+            .nukleus("http2"::equals)
+            .controller("http2"::equals)
+            .clean();
+
+    @Rule
+    public final TestRule chain = outerRule(reaktor).around(k3po).around(timeout);
+
+    @Test
+    @Specification({
+            "${client}/request.response/client",
+            "${client}/request.response/server" })
+    public void requestResponse() throws Exception
+    {
+        routeClient();
+    }
+
+    @Test
+    @Specification({
+            "${client}/connection.reuse/client",
+            "${client}/connection.reuse/server" })
+    public void connectionReuse() throws Exception
+    {
+        routeClient();
+    }
+
+    @Test
+    @Specification({
+            "${client}/server.goaway/client",
+            "${client}/server.goaway/server" })
+    public void serverGoaway() throws Exception
+    {
+        routeClient();
+    }
+
+    @Test
+    @Specification({
+            "${client}/continuation.response/client",
+            "${client}/continuation.response/server" })
+    public void continuationResponse() throws Exception
+    {
+        routeClient();
+    }
+
+    private void routeClient() throws Exception
+    {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(":authority", "localhost:8080");
+
+        k3po.start();
+
+        reaktor.controller(Http2Controller.class)
+               .routeClient("app", SOURCE_REF, "target", TARGET_REF, headers)
+               .get();
+
+        k3po.notifyBarrier("ROUTED_CLIENT");
+        k3po.finish();
+    }
+}
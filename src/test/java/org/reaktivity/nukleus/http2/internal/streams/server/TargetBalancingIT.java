@@ -0,0 +1,94 @@
+/**
+ * Copyright 2016-2017 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.nukleus.http2.internal.streams.server;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.rules.RuleChain.outerRule;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+import org.kaazing.k3po.junit.annotation.Specification;
+import org.kaazing.k3po.junit.rules.K3poRule;
+import org.reaktivity.nukleus.http2.internal.Http2Controller;
+import org.reaktivity.reaktor.test.ReaktorRule;
+
+public class TargetBalancingIT
+{
+    private static final long SOURCE_REF = 101L;
+    private static final long HTTP_TARGET_REF = 201L;
+    private static final long APP_TARGET_REF = 202L;
+
+    private final K3poRule k3po = new K3poRule()
+            .addScriptRoot("balancing", "org/reaktivity/nukleus/http2/internal/streams/server/balancing");
+
+    private final TestRule timeout = new DisableOnDebug(new Timeout(10, SECONDS));
+
+    private final ReaktorRule reaktor = new ReaktorRule()
+            .directory("target/nukleus-itests")
+            .commandBufferCapacity(1024)
+            .responseBufferCapacity(1024)
+            .nukleus("http2"::equals)
+            .controller("http2"::equals)
+            .configure("nukleus.http2.server.target.balancer", "round-robin")
+            .clean();
+
+    @Rule
+    public final TestRule chain = outerRule(reaktor).around(k3po).around(timeout);
+
+    @Test
+    @Specification({
+            "${balancing}/round.robin/client",
+            "${balancing}/round.robin/server" })
+    public void roundRobin() throws Exception
+    {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(":authority", "localhost:8080");
+
+        k3po.start();
+
+        Http2Controller controller = reaktor.controller(Http2Controller.class);
+        controller.routeServer("source", SOURCE_REF, "http", HTTP_TARGET_REF, headers).get();
+        controller.routeServer("source", SOURCE_REF, "app", APP_TARGET_REF, headers).get();
+
+        k3po.notifyBarrier("ROUTED_SERVER");
+        k3po.finish();
+    }
+
+    @Test
+    @Specification({
+            "${balancing}/specific.route/client",
+            "${balancing}/specific.route/server" })
+    public void specificRouteBeforeCatchAll() throws Exception
+    {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(":authority", "localhost:8080");
+
+        k3po.start();
+
+        Http2Controller controller = reaktor.controller(Http2Controller.class);
+        controller.routeServer("source", SOURCE_REF, "http", HTTP_TARGET_REF, headers).get();
+        controller.routeServer("source", SOURCE_REF, "app", APP_TARGET_REF, null).get();
+
+        k3po.notifyBarrier("ROUTED_SERVER");
+        k3po.finish();
+    }
+}
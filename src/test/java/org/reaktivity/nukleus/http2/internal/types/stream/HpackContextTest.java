@@ -18,6 +18,7 @@ package org.reaktivity.nukleus.http2.internal.types.stream;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class HpackContextTest
 {
@@ -169,4 +170,17 @@ public class HpackContextTest
 
     }
 
+    @Test
+    public void decodeStringsOnce()
+    {
+        HpackContext context = new HpackContext(150, false);
+        context.add("name1", "value1");
+
+        assertEquals("name1", context.name(62));
+        assertEquals("value1", context.value(62));
+        assertSame(context.name(62), context.name(62));
+        assertSame(context.value(62), context.value(62));
+        assertSame(context.name(2), context.name(2));
+    }
+
 }
\ No newline at end of file
@@ -16,6 +16,7 @@
 package org.reaktivity.nukleus.http2.internal.types.stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.reaktivity.nukleus.http2.internal.types.stream.HpackLiteralHeaderFieldFW.LiteralType.INCREMENTAL_INDEXING;
 
@@ -499,6 +500,77 @@ public class HpackHeaderBlockFWTest
         };
     }
 
+    @Test
+    public void shouldVisitHeaderFieldsInSinglePass()
+    {
+        byte[] bytes = BitUtil.fromHex("00" + "828684410f7777772e6578616d706c652e636f6d" + "00");
+        DirectBuffer buffer = new UnsafeBuffer(bytes);
+        HpackContext context = new HpackContext();
+        Map<String, String> headers = new LinkedHashMap<>();
+
+        boolean visited = new HpackHeaderBlockFW().visit(buffer, 1, buffer.capacity() - 1, new HpackHeaderBlockFW.Visitor()
+        {
+            @Override
+            public boolean visitIndexed(int index)
+            {
+                headers.put(context.name(index), context.value(index));
+                return true;
+            }
+
+            @Override
+            public boolean visitLiteral(HpackLiteralHeaderFieldFW literal)
+            {
+                headers.put(context.name(literal.nameIndex()), string(literal.valueLiteral()));
+                return true;
+            }
+
+            @Override
+            public boolean visitTableSizeUpdate(int tableSize)
+            {
+                return true;
+            }
+        });
+
+        assertTrue(visited);
+        assertEquals("{:method=GET, :scheme=http, :path=/, :authority=www.example.com}", headers.toString());
+    }
+
+    @Test
+    public void shouldNotVisitTruncatedHeaderField()
+    {
+        // literal :authority value is 15 octets, but the block ends after 4
+        byte[] bytes = BitUtil.fromHex("828684410f77777777");
+        DirectBuffer buffer = new UnsafeBuffer(bytes);
+        int[] fields = new int[1];
+
+        boolean visited = new HpackHeaderBlockFW().visit(buffer, 0, buffer.capacity(), new HpackHeaderBlockFW.Visitor()
+        {
+            @Override
+            public boolean visitIndexed(int index)
+            {
+                fields[0]++;
+                return true;
+            }
+
+            @Override
+            public boolean visitLiteral(HpackLiteralHeaderFieldFW literal)
+            {
+                fields[0]++;
+                return true;
+            }
+
+            @Override
+            public boolean visitTableSizeUpdate(int tableSize)
+            {
+                fields[0]++;
+                return true;
+            }
+        });
+
+        assertFalse(visited);
+        assertEquals(3, fields[0]);
+    }
+
     private static String string(HpackStringFW value)
     {
         DirectBuffer valuePayload = value.payload();